@@ -5,14 +5,20 @@ import me.armar.plugins.autorank.api.API;
 import me.armar.plugins.autorank.backup.BackupManager;
 import me.armar.plugins.autorank.commands.manager.CommandsManager;
 import me.armar.plugins.autorank.config.*;
+import me.armar.plugins.autorank.config.SettingsConfig.LocalStorageType;
 import me.armar.plugins.autorank.converter.DataConverter;
+import me.armar.plugins.autorank.data.PlaytimeStorage;
+import me.armar.plugins.autorank.data.archive.ArchiveManager;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager;
 import me.armar.plugins.autorank.data.mysql.MySQLManager;
+import me.armar.plugins.autorank.data.sqlite.SQLiteManager;
+import me.armar.plugins.autorank.data.transfer.DataTransfer;
 import me.armar.plugins.autorank.debugger.Debugger;
 import me.armar.plugins.autorank.hooks.DependencyManager;
 import me.armar.plugins.autorank.language.LanguageHandler;
 import me.armar.plugins.autorank.leaderboard.LeaderboardHandler;
 import me.armar.plugins.autorank.listeners.PlayerJoinListener;
+import me.armar.plugins.autorank.listeners.PlayerQuitListener;
 import me.armar.plugins.autorank.pathbuilder.PathManager;
 import me.armar.plugins.autorank.pathbuilder.builders.RequirementBuilder;
 import me.armar.plugins.autorank.pathbuilder.builders.ResultBuilder;
@@ -26,6 +32,7 @@ import me.armar.plugins.autorank.statsmanager.handlers.FallbackHandler;
 import me.armar.plugins.autorank.updater.UpdateHandler;
 import me.armar.plugins.autorank.updater.Updater;
 import me.armar.plugins.autorank.util.AutorankTools;
+import me.armar.plugins.autorank.util.DataLoader;
 import me.armar.plugins.autorank.util.uuid.storage.UUIDStorage;
 import me.armar.plugins.autorank.validations.ValidateHandler;
 import me.armar.plugins.autorank.warningmanager.WarningManager;
@@ -75,7 +82,12 @@ public class Autorank extends JavaPlugin {
 
     // Data connection
     private MySQLManager mysqlManager;
-    private FlatFileManager flatFileManager;
+    private PlaytimeStorage playtimeStorage;
+    private ArchiveManager archiveManager;
+    private DataTransfer dataTransfer;
+
+    // Loads data files in parallel while Autorank is enabling
+    private DataLoader dataLoader;
 
     // UUID storage
     private UUIDStorage uuidStorage;
@@ -112,15 +124,21 @@ public class Autorank extends JavaPlugin {
 
         // ------------- Save files and databases -------------
 
-        this.getFlatFileManager().saveFiles();
+        // UUIDs and player data can be stored in the SQLite database, so save them before it is closed.
+        getUUIDStorage().shutdown();
+
+        // Save playerdata.yml
+        this.getPlayerDataConfig().shutdown();
+
+        this.getPlaytimeStorage().shutdown();
 
-        getUUIDStorage().saveAllFiles();
+        this.getArchiveManager().shutdown();
 
         // Close database connection
         this.getMySQLManager().disconnectDatabase();
 
-        // Save playerdata.yml
-        this.getPlayerDataConfig().saveConfig();
+        // Store leaderboards for the next start
+        this.getLeaderboardManager().saveLeaderboards();
 
         // ------------- Say bye-bye -------------
 
@@ -135,9 +153,13 @@ public class Autorank extends JavaPlugin {
     @Override
     public void onEnable() {
 
+        final long startTime = System.currentTimeMillis();
+
         // ------------- Init static variables -------------
         autorank = this;
 
+        dataLoader = new DataLoader();
+
         // ------------- Create files & folders -------------
 
         // Register configs
@@ -165,8 +187,12 @@ public class Autorank extends JavaPlugin {
         // Create MySQL Manager
         setMySQLManager(new MySQLManager(this));
 
-        // Create FlatFile Manager
-        setFlatFileManager(new FlatFileManager(this));
+        // Create storage of local play time
+        setPlaytimeStorage(createPlaytimeStorage());
+        // Create archive of inactive players
+        setArchiveManager(new ArchiveManager(this));
+        // Create importer and exporter of player data
+        setDataTransfer(new DataTransfer(this));
 
         // Load AutorankDependency manager
         setDependencyManager(new DependencyManager(this));
@@ -202,6 +228,10 @@ public class Autorank extends JavaPlugin {
         // Create uuid storage
         setUUIDStorage(new UUIDStorage(this));
 
+        if (getPlaytimeStorage() instanceof SQLiteManager) {
+            getUUIDStorage().useDatabase((SQLiteManager) getPlaytimeStorage());
+        }
+
         // ------------- Initialize others -------------
 
         // Create playtime class
@@ -235,6 +265,7 @@ public class Autorank extends JavaPlugin {
 
         // Register listeners
         getServer().getPluginManager().registerEvents(new PlayerJoinListener(this), this);
+        getServer().getPluginManager().registerEvents(new PlayerQuitListener(this), this);
 
         // ------------- Schedule tasks -------------
 
@@ -285,10 +316,10 @@ public class Autorank extends JavaPlugin {
 
                 if (!getInternalPropertiesConfig().isConvertedToNewFormat()) return;
 
-                // Remove old entries
-                int removed = getFlatFileManager().removeOldEntries();
+                // Archive old entries
+                int archived = getArchiveManager().archiveInactivePlayers();
 
-                getLogger().info("Removed " + removed + " old data entries from database!");
+                getLogger().info("Archived " + archived + " old data entries from database!");
             }
         }, 0, (long) AutorankTools.TICKS_PER_MINUTE * 60 * 24);
 
@@ -325,13 +356,17 @@ public class Autorank extends JavaPlugin {
         this.getUUIDStorage().transferUUIDs();
 
         // Check whether the data files are still up to date.
-        this.getFlatFileManager().doCalendarCheck();
+        this.getPlaytimeStorage().doCalendarCheck();
 
         // Spawn thread to check if MySQL database times are up to date
         this.getMySQLManager().refreshGlobalTime();
 
         // ------------- Say Welcome! -------------
-        getLogger().info(String.format("Autorank %s has been enabled!", getDescription().getVersion()));
+        getLogger().info(String.format("Autorank %s has been enabled in %d ms!", getDescription().getVersion(),
+                System.currentTimeMillis() - startTime));
+
+        // All data files are being loaded now, so the loader can stop when it is done.
+        dataLoader.shutdown();
 
         // Run converter to Autorank 4.0
         getServer().getScheduler().runTaskLaterAsynchronously(this, new Runnable() {
@@ -351,6 +386,29 @@ public class Autorank extends JavaPlugin {
     //
     //
 
+    /**
+     * Create the storage of local play time that is chosen in the Settings.yml.
+     * Falls back to flat files if the SQLite database cannot be opened.
+     *
+     * @return storage to use for local play time.
+     */
+    private PlaytimeStorage createPlaytimeStorage() {
+        if (getSettingsConfig().getLocalStorageType() == LocalStorageType.SQLITE) {
+            final SQLiteManager sqliteManager = new SQLiteManager(this);
+
+            if (sqliteManager.connect()) {
+                // Store the properties of players in the same database.
+                getPlayerDataConfig().useDatabase(sqliteManager);
+
+                return sqliteManager;
+            }
+
+            getLogger().warning("Could not use SQLite database, using data files instead!");
+        }
+
+        return new FlatFileManager(this);
+    }
+
     private void initializeReqsAndRes() {
         // Register 'main' requirements
         RequirementBuilder.registerRequirement("exp", ExpAbstractRequirement.class);
@@ -537,6 +595,10 @@ public class Autorank extends JavaPlugin {
         return updateHandler;
     }
 
+    public DataLoader getDataLoader() {
+        return dataLoader;
+    }
+
     public UUIDStorage getUUIDStorage() {
         return uuidStorage;
     }
@@ -701,12 +763,28 @@ public class Autorank extends JavaPlugin {
         this.mysqlManager = mysqlManager;
     }
 
-    public FlatFileManager getFlatFileManager() {
-        return flatFileManager;
+    public PlaytimeStorage getPlaytimeStorage() {
+        return playtimeStorage;
+    }
+
+    public void setPlaytimeStorage(PlaytimeStorage playtimeStorage) {
+        this.playtimeStorage = playtimeStorage;
+    }
+
+    public ArchiveManager getArchiveManager() {
+        return archiveManager;
+    }
+
+    public void setArchiveManager(ArchiveManager archiveManager) {
+        this.archiveManager = archiveManager;
+    }
+
+    public DataTransfer getDataTransfer() {
+        return dataTransfer;
     }
 
-    public void setFlatFileManager(FlatFileManager flatFileManager) {
-        this.flatFileManager = flatFileManager;
+    public void setDataTransfer(DataTransfer dataTransfer) {
+        this.dataTransfer = dataTransfer;
     }
 
     public DataConverter getDataConverter() {
@@ -10,8 +10,12 @@ import me.armar.plugins.autorank.pathbuilder.result.AbstractResult;
 import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <b>Autorank's API class:</b>
@@ -89,6 +93,48 @@ public class API {
         return plugin.getMySQLManager().getGlobalTime(uuid);
     }
 
+    /**
+     * Get the global play time of a group of players at once. Players whose
+     * time is not cached are looked up with as few queries as possible, so
+     * this is much faster than calling {@link #getGlobalPlayTime(UUID)} for
+     * every player.
+     * <p>
+     * This can block the thread it's on, so do not call it on the main thread.
+     *
+     * @param uuids UUIDs of the players
+     * @return a map with the play time of every player. 0 if no entry was
+     * found for a player.
+     */
+    public Map<UUID, Integer> getGlobalPlayTimes(final Collection<UUID> uuids) {
+        return plugin.getMySQLManager().getGlobalTimes(uuids);
+    }
+
+    /**
+     * Get the global play time of a player without blocking the thread that
+     * calls this method. Chain on the returned future (for example with
+     * {@link CompletableFuture#thenAccept}) to use the time when it is
+     * available.
+     *
+     * @param uuid UUID of the player
+     * @return a future that gives the play time of a player. 0 if no entry was
+     * found.
+     */
+    public CompletableFuture<Integer> getGlobalPlayTimeAsync(final UUID uuid) {
+        return plugin.getMySQLManager().getGlobalTimeAsync(uuid);
+    }
+
+    /**
+     * Get the global play time of a group of players without blocking the
+     * thread that calls this method.
+     *
+     * @param uuids UUIDs of the players
+     * @return a future that gives the same result as
+     * {@link #getGlobalPlayTimes(Collection)}.
+     */
+    public CompletableFuture<Map<UUID, Integer>> getGlobalPlayTimesAsync(final Collection<UUID> uuids) {
+        return plugin.getMySQLManager().getGlobalTimesAsync(uuids);
+    }
+
     /**
      * Get the local play time of this player on this server according to
      * Autorank (in minutes).<br>
@@ -99,7 +145,65 @@ public class API {
      * @return play time of this player or 0 if not found.
      */
     public int getLocalPlayTime(final UUID uuid) {
-        return plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid);
+        return plugin.getPlaytimeStorage().getLocalTime(TimeType.TOTAL_TIME, uuid);
+    }
+
+    /**
+     * Get the local play time of this player on this server in the last
+     * couple of days (in minutes), including today.<br>
+     * Autorank keeps track of the last 35 days, so a larger number of days
+     * gives the same result as 35 days.
+     *
+     * @param uuid UUID of the player
+     * @param days Number of days to look back
+     * @return play time of this player in the given days or 0 if not found.
+     */
+    public int getRecentPlayTime(final UUID uuid, final int days) {
+        return plugin.getPlaytimeStorage().getRecentTime(uuid, days);
+    }
+
+    /**
+     * Get the rank of a player on a leaderboard, as it is shown by /ar
+     * leaderboard. Players that are exempted from the leaderboard are not
+     * counted. The rank is looked up in a sorted index, so the leaderboard
+     * does not have to be updated.
+     * <p>
+     * This can block the thread it's on when the leaderboard shows global
+     * times, so do not call it on the main thread.
+     *
+     * @param uuid UUID of the player
+     * @param type Type of leaderboard
+     * @return the rank of the player (1 for the highest time), or -1 if the
+     * player is not on the leaderboard.
+     */
+    public int getRank(final UUID uuid, final TimeType type) {
+        return plugin.getLeaderboardManager().getRank(uuid, type);
+    }
+
+    /**
+     * Get a page of a leaderboard, as it is shown by /ar leaderboard. Players
+     * that are exempted from the leaderboard are not on it. Only the players
+     * on the page are looked up, so the leaderboard does not have to be
+     * updated.
+     * <p>
+     * This can block the thread it's on when the leaderboard shows global
+     * times, so do not call it on the main thread.
+     *
+     * @param type     Type of leaderboard
+     * @param page     Number of the page (the first page is 1)
+     * @param pageSize Number of players on a page
+     * @return a map with the times of the players on the page (in minutes),
+     * from the highest to the lowest time. An empty map if there are no
+     * players on the page.
+     */
+    public LinkedHashMap<UUID, Integer> getLeaderboardPage(final TimeType type, final int page, final int pageSize) {
+        if (page < 1) {
+            return new LinkedHashMap<UUID, Integer>();
+        }
+
+        final int offset = (int) Math.min((long) (page - 1) * pageSize, Integer.MAX_VALUE);
+
+        return plugin.getLeaderboardManager().getLeaderboardPage(type, offset, pageSize);
     }
 
     /**
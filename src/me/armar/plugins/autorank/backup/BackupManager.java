@@ -2,8 +2,6 @@ package me.armar.plugins.autorank.backup;
 
 import com.google.common.io.Files;
 import me.armar.plugins.autorank.Autorank;
-import me.armar.plugins.autorank.data.flatfile.FlatFileManager;
-import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
 import org.bukkit.ChatColor;
 
 import java.io.File;
@@ -37,7 +35,6 @@ public class BackupManager {
      * @param storePath      Path to backup the file to, can be null
      */
     public void backupFile(final String sourceFileName, final String storePath) {
-        // CAN ONLY COPY YML
         final String folderPath = plugin.getDataFolder().getAbsolutePath() + File.separator;
         final File sourceFile = new File(folderPath + sourceFileName);
 
@@ -45,11 +42,15 @@ public class BackupManager {
 
         String dateFormatForFiles = dateFormat.format(new Date());
 
+        // Keep the extension of the file, so a backup of a .dat or .db file can be used as it is.
+        String extension = Files.getFileExtension(sourceFileName);
+        extension = extension.isEmpty() ? "" : "." + extension;
+
         if (storePath == null) {
             copyFile = new File(
-                    folderPath + sourceFileName.replace(".yml", "") + "-backup-" + dateFormatForFiles + ".yml");
+                    folderPath + sourceFileName.replace(extension, "") + "-backup-" + dateFormatForFiles + extension);
         } else {
-            copyFile = new File(storePath.replace(".yml", "") + "-backup-" + dateFormatForFiles + ".yml");
+            copyFile = new File(storePath.replace(extension, "") + "-backup-" + dateFormatForFiles + extension);
         }
 
         // Create folder if it doesn't exist.
@@ -76,16 +77,21 @@ public class BackupManager {
         if (dataType.equalsIgnoreCase("data")) {
             plugin.debugMessage(ChatColor.GREEN + "Making a backup of all data files!");
 
-            // For every type of time data file
-            for (TimeType type : TimeType.values()) {
+            // For every file that stores play time
+            for (String path : plugin.getPlaytimeStorage().getDataFilePaths()) {
 
-                // Get the path to the file and back it up!
-                String path = FlatFileManager.dataTypePaths.get(type);
+                // Back up the file!
 
                 plugin.getBackupManager().backupFile(path, plugin.getDataFolder().getAbsolutePath()
                         + File.separator + "backups" + File.separator + path.replace("/data/", ""));
             }
 
+            // Back up archive of inactive players
+            final String archivePath = plugin.getArchiveManager().getArchivePath();
+
+            plugin.getBackupManager().backupFile(archivePath, plugin.getDataFolder().getAbsolutePath()
+                    + File.separator + "backups" + File.separator + archivePath.replace("/data/", ""));
+
             // Update latest backup time so backup manager does not backup again within 24 hours.
             backupDataManager.getConfig().set("data", System.currentTimeMillis());
 
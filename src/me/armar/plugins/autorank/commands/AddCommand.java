@@ -48,13 +48,22 @@ public class AddCommand extends AutorankCommand {
         }
 
         if (value >= 0) {
-
-            if (plugin.getUUIDStorage().hasRealName(uuid)) {
-                args[1] = plugin.getUUIDStorage().getRealName(uuid);
-            }
-
-            plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid) + value, uuid);
-            AutorankTools.sendColoredMessage(sender, Lang.PLAYTIME_CHANGED.getConfigValue(args[1], value + ""));
+            final int addedValue = value;
+
+            // Bring back data of the player if it was archived.
+            plugin.getArchiveManager().restorePlayer(uuid, new Runnable() {
+                @Override
+                public void run() {
+                    if (plugin.getUUIDStorage().hasRealName(uuid)) {
+                        args[1] = plugin.getUUIDStorage().getRealName(uuid);
+                    }
+
+                    plugin.getPlaytimeStorage().addLocalTime(uuid, addedValue, TimeType.TOTAL_TIME);
+                    plugin.getLeaderboardManager().invalidateLeaderboard(TimeType.TOTAL_TIME);
+                    AutorankTools.sendColoredMessage(sender,
+                            Lang.PLAYTIME_CHANGED.getConfigValue(args[1], addedValue + ""));
+                }
+            });
         } else {
             AutorankTools.sendColoredMessage(sender, Lang.INVALID_FORMAT.getConfigValue("/ar add [player] [value]"));
         }
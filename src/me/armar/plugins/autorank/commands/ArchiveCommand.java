@@ -43,7 +43,7 @@ public class ArchiveCommand extends AutorankCommand {
             return true;
         }
 
-        sender.sendMessage(ChatColor.GREEN + "Removed " + ChatColor.YELLOW + plugin.getFlatFileManager().archive(rate)
+        sender.sendMessage(ChatColor.GREEN + "Archived " + ChatColor.YELLOW + plugin.getArchiveManager().archive(rate)
                 + "" + ChatColor.GREEN + " records below " + ChatColor.YELLOW
                 + AutorankTools.timeToString(rate, Time.MINUTES) + ChatColor.GREEN + ".");
         return true;
@@ -185,21 +185,27 @@ public class CheckCommand extends AutorankCommand {
             final Player player = plugin.getServer().getPlayer(args[1]);
             if (player == null) {
 
-                final int time = plugin.getPlaytimes().getTimeOfPlayer(args[1], true);
-
-                if (time <= 0) {
-                    sender.sendMessage(Lang.PLAYER_IS_INVALID.getConfigValue(args[1]));
-                    return true;
-                }
-
                 final UUID uuid = plugin.getUUIDStorage().getStoredUUID(args[1]);
 
-                if (plugin.getUUIDStorage().hasRealName(uuid)) {
-                    args[1] = plugin.getUUIDStorage().getRealName(uuid);
-                }
-
-                AutorankTools.sendColoredMessage(sender,
-                        Lang.HAS_PLAYED_FOR.getConfigValue(args[1], AutorankTools.timeToString(time, Time.SECONDS)));
+                // Bring back data of the player if it was archived.
+                plugin.getArchiveManager().restorePlayer(uuid, new Runnable() {
+                    @Override
+                    public void run() {
+                        final int time = plugin.getPlaytimes().getTimeOfPlayer(args[1], true);
+
+                        if (time <= 0) {
+                            sender.sendMessage(Lang.PLAYER_IS_INVALID.getConfigValue(args[1]));
+                            return;
+                        }
+
+                        if (plugin.getUUIDStorage().hasRealName(uuid)) {
+                            args[1] = plugin.getUUIDStorage().getRealName(uuid);
+                        }
+
+                        AutorankTools.sendColoredMessage(sender, Lang.HAS_PLAYED_FOR.getConfigValue(args[1],
+                                AutorankTools.timeToString(time, Time.SECONDS)));
+                    }
+                });
             } else {
                 if (AutorankTools.isExcludedFromRanking(player)) {
                     sender.sendMessage(ChatColor.RED + Lang.PLAYER_IS_EXCLUDED.getConfigValue(player.getName()));
@@ -0,0 +1,97 @@
+package me.armar.plugins.autorank.commands;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.commands.manager.AutorankCommand;
+import me.armar.plugins.autorank.data.transfer.DataTransfer;
+import me.armar.plugins.autorank.data.transfer.TransferFormat;
+import me.armar.plugins.autorank.permissions.AutorankPermission;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * The command delegator for the '/ar export' command.
+ */
+public class ExportCommand extends AutorankCommand {
+
+    private final Autorank plugin;
+
+    public ExportCommand(final Autorank instance) {
+        plugin = instance;
+    }
+
+    @Override
+    public boolean onCommand(final CommandSender sender, final Command cmd, final String label, final String[] args) {
+
+        if (!this.hasPermission(AutorankPermission.EXPORT_DATA, sender)) {
+            return true;
+        }
+
+        final TransferFormat format = args.length > 1 ? TransferFormat.fromName(args[1]) : TransferFormat.CSV;
+
+        if (format == null) {
+            sender.sendMessage(ChatColor.RED + "Invalid format. You can only export to 'csv' or 'binary'.");
+            return true;
+        }
+
+        if (plugin.getDataTransfer().isRunning()) {
+            sender.sendMessage(ChatColor.RED + "Another import or export is still running!");
+            return true;
+        }
+
+        final File file = plugin.getDataTransfer().getTransferFile("playtime-"
+                + new SimpleDateFormat("yyyy-MM-dd-HHmmss").format(new Date()) + "." + format.getExtension());
+
+        sender.sendMessage(ChatColor.GREEN + "Exporting data to " + ChatColor.YELLOW + file.getName()
+                + ChatColor.GREEN + "...");
+
+        // Exporting can take a while, so do it async.
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    final long records = plugin.getDataTransfer().exportData(file, format,
+                            new DataTransfer.ProgressListener() {
+
+                                @Override
+                                public void onProgress(final long records, final int percentage) {
+                                    sender.sendMessage(ChatColor.GRAY + "Exported " + records + " records ("
+                                            + percentage + "%)");
+                                }
+                            });
+
+                    sender.sendMessage(ChatColor.GREEN + "Successfully exported " + ChatColor.YELLOW + records
+                            + ChatColor.GREEN + " records to " + ChatColor.YELLOW + file.getPath());
+                } catch (final IllegalStateException e) {
+                    sender.sendMessage(ChatColor.RED + "Another import or export is still running!");
+                } catch (final IOException e) {
+                    sender.sendMessage(ChatColor.RED + "Could not export data: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Export time and progress of all players to a file.";
+    }
+
+    @Override
+    public String getPermission() {
+        return AutorankPermission.EXPORT_DATA;
+    }
+
+    @Override
+    public String getUsage() {
+        return "/ar export <csv/binary>";
+    }
+}
@@ -61,10 +61,12 @@ public class GlobalAddCommand extends AutorankCommand {
                 }
 
                 if (value >= 0) {
-                    if (!plugin.getMySQLManager().setGlobalTime(uuid, plugin.getMySQLManager().getFreshGlobalTime(uuid) + value)) {
+                    if (!plugin.getMySQLManager().isMySQLEnabled()) {
                         sender.sendMessage(Lang.MYSQL_IS_NOT_ENABLED.getConfigValue());
                         return;
                     }
+
+                    plugin.getMySQLManager().addGlobalTime(uuid, value);
                     AutorankTools.sendColoredMessage(sender, Lang.PLAYTIME_CHANGED.getConfigValue(args[1], value + ""));
                 } else {
                     AutorankTools.sendColoredMessage(sender,
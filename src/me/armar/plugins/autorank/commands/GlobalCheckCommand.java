@@ -12,6 +12,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 /**
  * The command delegator for the '/ar gcheck' command.
@@ -53,23 +54,7 @@ public class GlobalCheckCommand extends AutorankCommand {
                     args[1] = plugin.getUUIDStorage().getRealName(uuid);
                 }
 
-                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-                    @Override
-                    public void run() {
-                        final int minutes = plugin.getMySQLManager().getGlobalTime(uuid);
-
-                        if (minutes < 0) {
-                            sender.sendMessage(Lang.PLAYER_IS_INVALID.getConfigValue(args[1]));
-                            return;
-                        }
-
-                        AutorankTools.sendColoredMessage(sender, args[1] + " has played for "
-                                + AutorankTools.timeToString(minutes, Time.MINUTES) + " across all servers.");
-
-                    }
-
-                });
+                sendGlobalTime(sender, uuid, args[1], args[1] + " has played for ");
                 return true;
 
             } else {
@@ -85,23 +70,7 @@ public class GlobalCheckCommand extends AutorankCommand {
                     return true;
                 }
 
-                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-                    @Override
-                    public void run() {
-                        final int minutes = plugin.getMySQLManager().getGlobalTime(uuid);
-
-                        if (minutes < 0) {
-                            sender.sendMessage(Lang.PLAYER_IS_INVALID.getConfigValue(args[1]));
-                            return;
-                        }
-
-                        AutorankTools.sendColoredMessage(sender, player.getName() + " has played for "
-                                + AutorankTools.timeToString(minutes, Time.MINUTES) + " across all servers.");
-
-                    }
-
-                });
+                sendGlobalTime(sender, uuid, args[1], player.getName() + " has played for ");
             }
         } else if (sender instanceof Player) {
             if (!this.hasPermission(AutorankPermission.CHECK_GLOBAL, sender)) {
@@ -117,15 +86,7 @@ public class GlobalCheckCommand extends AutorankCommand {
 
             final UUID uuid = plugin.getUUIDStorage().getStoredUUID(player.getName());
 
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-                @Override
-                public void run() {
-                    AutorankTools.sendColoredMessage(sender,
-                            "You have played for " + AutorankTools
-                                    .timeToString(plugin.getMySQLManager().getGlobalTime(uuid), Time.MINUTES)
-                                    + " across all servers.");
-                }
-            });
+            sendGlobalTime(sender, uuid, player.getName(), "You have played for ");
 
         } else {
             AutorankTools.sendColoredMessage(sender, Lang.CANNOT_CHECK_CONSOLE.getConfigValue());
@@ -133,6 +94,37 @@ public class GlobalCheckCommand extends AutorankCommand {
         return true;
     }
 
+    /**
+     * Send the global time of a player when it is looked up. The lookup does
+     * not block the thread that calls this method.
+     *
+     * @param sender     Sender to send the time to
+     * @param uuid       UUID of the player
+     * @param playerName Name of the player
+     * @param prefix     Start of the message, before the time
+     */
+    private void sendGlobalTime(final CommandSender sender, final UUID uuid, final String playerName,
+                                final String prefix) {
+        plugin.getMySQLManager().getGlobalTimeAsync(uuid).whenComplete(new BiConsumer<Integer, Throwable>() {
+            @Override
+            public void accept(final Integer minutes, final Throwable t) {
+                if (t != null) {
+                    sender.sendMessage(ChatColor.RED + "Could not get the global time of " + playerName + ".");
+                    t.printStackTrace();
+                    return;
+                }
+
+                if (minutes < 0) {
+                    sender.sendMessage(Lang.PLAYER_IS_INVALID.getConfigValue(playerName));
+                    return;
+                }
+
+                AutorankTools.sendColoredMessage(sender,
+                        prefix + AutorankTools.timeToString(minutes, Time.MINUTES) + " across all servers.");
+            }
+        });
+    }
+
     @Override
     public String getDescription() {
         return "Check [player]'s global playtime.";
@@ -2,12 +2,18 @@ package me.armar.plugins.autorank.commands;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.commands.manager.AutorankCommand;
+import me.armar.plugins.autorank.data.transfer.DataTransfer;
+import me.armar.plugins.autorank.data.transfer.TransferFormat;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
 import me.armar.plugins.autorank.util.AutorankTools;
+import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * The command delegator for the '/ar import' command.
  */
@@ -26,15 +32,69 @@ public class ImportCommand extends AutorankCommand {
             return true;
         }
 
-        AutorankTools.sendColoredMessage(sender, Lang.DATA_IMPORTED.getConfigValue());
-        plugin.getFlatFileManager().importData();
+        if (args.length < 2) {
+            AutorankTools.sendColoredMessage(sender, Lang.DATA_IMPORTED.getConfigValue());
+            plugin.getPlaytimeStorage().importData();
+
+            return true;
+        }
+
+        final File file = plugin.getDataTransfer().getTransferFile(args[1]);
+
+        if (file == null || !file.isFile()) {
+            sender.sendMessage(ChatColor.RED + "There is no file called " + args[1] + " in "
+                    + plugin.getDataTransfer().getTransferFolder().getPath() + ".");
+            return true;
+        }
+
+        final TransferFormat format = TransferFormat.fromFileName(file.getName());
+
+        if (format == null) {
+            sender.sendMessage(ChatColor.RED + "Unknown file type. You can only import '.csv' or '.dat' files.");
+            return true;
+        }
+
+        if (plugin.getDataTransfer().isRunning()) {
+            sender.sendMessage(ChatColor.RED + "Another import or export is still running!");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.GREEN + "Importing data from " + ChatColor.YELLOW + file.getName()
+                + ChatColor.GREEN + "...");
+
+        // Importing can take a while, so do it async.
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    final long records = plugin.getDataTransfer().importData(file, format,
+                            new DataTransfer.ProgressListener() {
+
+                                @Override
+                                public void onProgress(final long records, final int percentage) {
+                                    sender.sendMessage(ChatColor.GRAY + "Imported " + records + " records ("
+                                            + percentage + "%)");
+                                }
+                            });
+
+                    sender.sendMessage(ChatColor.GREEN + "Successfully imported " + ChatColor.YELLOW + records
+                            + ChatColor.GREEN + " records!");
+                } catch (final IllegalStateException e) {
+                    sender.sendMessage(ChatColor.RED + "Another import or export is still running!");
+                } catch (final IOException e) {
+                    sender.sendMessage(ChatColor.RED + "Could not import all data: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        });
 
         return true;
     }
 
     @Override
     public String getDescription() {
-        return "Import old data.";
+        return "Import old data, or data of a file that was exported.";
     }
 
     @Override
@@ -44,6 +104,6 @@ public class ImportCommand extends AutorankCommand {
 
     @Override
     public String getUsage() {
-        return "/ar import";
+        return "/ar import [file]";
     }
 }
@@ -4,10 +4,16 @@ import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.commands.manager.AutorankCommand;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.leaderboard.StatRankings;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
+import me.armar.plugins.autorank.statsmanager.StatsPlugin.StatType;
+import me.armar.plugins.autorank.util.AutorankTools;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
 
 /**
  * The command delegator for the '/ar leaderboard' command.
@@ -53,10 +59,16 @@ public class LeaderboardCommand extends AutorankCommand {
             }
         }
 
+        // Show the leaderboard of a stat
+        if (args.length > 1 && args[1].equalsIgnoreCase("stat")) {
+            return showStat(sender, args);
+        }
+
         String leaderboardType = "total";
         TimeType type = null;
 
-        if (args.length > 1 && !args[1].equalsIgnoreCase("force") && !args[1].equalsIgnoreCase("broadcast")) {
+        if (args.length > 1 && !args[1].equalsIgnoreCase("force") && !args[1].equalsIgnoreCase("broadcast")
+                && !args[1].equalsIgnoreCase("page") && !args[1].equalsIgnoreCase("rank")) {
             leaderboardType = args[1].toLowerCase();
         }
 
@@ -75,6 +87,15 @@ public class LeaderboardCommand extends AutorankCommand {
             return true;
         }
 
+        // Show a page of the leaderboard or the rank of a player
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("page")) {
+                return showPage(sender, type, i + 1 < args.length ? args[i + 1] : "1");
+            } else if (args[i].equalsIgnoreCase("rank")) {
+                return showRank(sender, type, i + 1 < args.length ? args[i + 1] : null);
+            }
+        }
+
         final TimeType type2 = type;
 
         if (force) {
@@ -105,6 +126,102 @@ public class LeaderboardCommand extends AutorankCommand {
         return true;
     }
 
+    private boolean showPage(final CommandSender sender, final TimeType type, final String pageArg) {
+        int page;
+
+        try {
+            page = Integer.parseInt(pageArg);
+        } catch (final NumberFormatException e) {
+            sender.sendMessage(ChatColor.RED + Lang.INVALID_NUMBER.getConfigValue(pageArg));
+            return true;
+        }
+
+        if (page < 1) {
+            sender.sendMessage(Lang.LEADERBOARD_INVALID_PAGE.getConfigValue(page));
+            return true;
+        }
+
+        plugin.getLeaderboardManager().sendLeaderboardPage(sender, type, page);
+
+        return true;
+    }
+
+    private boolean showStat(final CommandSender sender, final String[] args) {
+        if (!plugin.getHookedStatsPlugin().isEnabled()) {
+            sender.sendMessage(ChatColor.RED + "There is no stats plugin hooked, so there are no stats to show.");
+            return true;
+        }
+
+        StatType statType = null;
+
+        if (args.length > 2) {
+            try {
+                statType = StatType.valueOf(args[2].toUpperCase().replace("-", "_"));
+            } catch (final IllegalArgumentException e) {
+                statType = null;
+            }
+        }
+
+        if (statType == null || !StatRankings.isSupported(statType)) {
+            final StringBuilder stats = new StringBuilder();
+
+            for (final StatType supported : StatRankings.getSupportedStats()) {
+                if (stats.length() > 0) {
+                    stats.append(", ");
+                }
+
+                stats.append(supported.toString().toLowerCase().replace("_", "-"));
+            }
+
+            AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_INVALID_STAT.getConfigValue(stats.toString()));
+            return true;
+        }
+
+        int page = 1;
+
+        if (args.length > 4 && args[3].equalsIgnoreCase("page")) {
+            try {
+                page = Integer.parseInt(args[4]);
+            } catch (final NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + Lang.INVALID_NUMBER.getConfigValue(args[4]));
+                return true;
+            }
+
+            if (page < 1) {
+                sender.sendMessage(Lang.LEADERBOARD_INVALID_PAGE.getConfigValue(page));
+                return true;
+            }
+        }
+
+        plugin.getLeaderboardManager().sendStatLeaderboard(sender, statType, page);
+
+        return true;
+    }
+
+    private boolean showRank(final CommandSender sender, final TimeType type, String targetName) {
+        if (targetName == null) {
+            if (!(sender instanceof Player)) {
+                AutorankTools.sendColoredMessage(sender, Lang.CANNOT_CHECK_CONSOLE.getConfigValue());
+                return true;
+            }
+
+            targetName = sender.getName();
+        }
+
+        final UUID uuid = plugin.getUUIDStorage().getStoredUUID(targetName);
+
+        if (uuid == null) {
+            sender.sendMessage(Lang.UNKNOWN_PLAYER.getConfigValue(targetName));
+            return true;
+        }
+
+        final String realName = plugin.getUUIDStorage().getRealName(uuid);
+
+        plugin.getLeaderboardManager().sendRank(sender, type, uuid, realName == null ? targetName : realName);
+
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return "Show the leaderboard.";
@@ -117,6 +234,6 @@ public class LeaderboardCommand extends AutorankCommand {
 
     @Override
     public String getUsage() {
-        return "/ar leaderboard <type>";
+        return "/ar leaderboard <type|stat <stat>> [page <number>|rank <player>]";
     }
 }
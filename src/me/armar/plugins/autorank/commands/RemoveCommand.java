@@ -7,10 +7,12 @@ import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
 import me.armar.plugins.autorank.util.AutorankTools;
 import me.armar.plugins.autorank.util.AutorankTools.Time;
+import me.armar.plugins.autorank.util.DataWriter;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 
 import java.util.UUID;
+import java.util.concurrent.Future;
 
 /**
  * The command delegator for the '/ar remove' command.
@@ -42,11 +44,23 @@ public class RemoveCommand extends AutorankCommand {
             return true;
         }
 
+        // Bring back data of the player if it was archived.
+        plugin.getArchiveManager().restorePlayer(uuid, new Runnable() {
+            @Override
+            public void run() {
+                removeTime(sender, uuid, args);
+            }
+        });
+
+        return true;
+    }
+
+    private void removeTime(final CommandSender sender, final UUID uuid, final String[] args) {
         if (plugin.getUUIDStorage().hasRealName(uuid)) {
             args[1] = plugin.getUUIDStorage().getRealName(uuid);
         }
 
-        int value = 0;
+        int changeValue = 0;
 
         if (args.length > 2) {
 
@@ -56,30 +70,32 @@ public class RemoveCommand extends AutorankCommand {
                 builder.append(args[i]);
             }
 
-            int changeValue = 0;
-
             if (!builder.toString().contains("m") && !builder.toString().contains("h")
                     && !builder.toString().contains("d")) {
                 changeValue = (int) AutorankTools.stringToDouble(builder.toString().trim());
             } else {
                 changeValue = AutorankTools.stringToTime(builder.toString(), Time.MINUTES);
             }
-
-            if (changeValue < 0) {
-                value = -1;
-            } else {
-                value += plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid) - changeValue;
-            }
         }
 
-        if (value >= 0) {
-            plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, value, uuid);
-            AutorankTools.sendColoredMessage(sender, Lang.PLAYTIME_CHANGED.getConfigValue(args[1], value + ""));
-        } else {
+        if (changeValue < 0) {
             AutorankTools.sendColoredMessage(sender, Lang.INVALID_FORMAT.getConfigValue("/ar remove [player] [value]"));
+            return;
         }
 
-        return true;
+        // Removed in a single change, so play time that is added in the meantime is not lost.
+        final Future<Integer> newValue = plugin.getPlaytimeStorage().removeLocalTime(uuid, changeValue,
+                TimeType.TOTAL_TIME);
+        plugin.getLeaderboardManager().invalidateLeaderboard(TimeType.TOTAL_TIME);
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            @Override
+            public void run() {
+                final int value = DataWriter.await(newValue);
+
+                AutorankTools.sendColoredMessage(sender, Lang.PLAYTIME_CHANGED.getConfigValue(args[1], value + ""));
+            }
+        });
     }
 
     @Override
@@ -44,6 +44,18 @@ public class ResetCommand extends AutorankCommand {
             return true;
         }
 
+        // Bring back data of the player if it was archived.
+        plugin.getArchiveManager().restorePlayer(uuid, new Runnable() {
+            @Override
+            public void run() {
+                resetData(sender, uuid, action);
+            }
+        });
+
+        return true;
+    }
+
+    private void resetData(final CommandSender sender, final UUID uuid, final String action) {
         final String realName = plugin.getUUIDStorage().getRealName(uuid);
 
         if (action.equalsIgnoreCase("progress")) {
@@ -58,10 +70,7 @@ public class ResetCommand extends AutorankCommand {
             sender.sendMessage(ChatColor.GREEN + "Reset completed paths of " + ChatColor.YELLOW + realName);
         } else {
             sender.sendMessage(ChatColor.RED + "Invalid action. You can only use: progress, chosenpath or completedpaths.");
-            return true;
         }
-
-        return true;
     }
 
     @Override
@@ -49,13 +49,22 @@ public class SetCommand extends AutorankCommand {
                 return true;
             }
 
-            if (plugin.getUUIDStorage().hasRealName(uuid)) {
-                args[1] = plugin.getUUIDStorage().getRealName(uuid);
-            }
-
-            plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, value, uuid);
-            AutorankTools.sendColoredMessage(sender,
-                    Lang.PLAYTIME_CHANGED.getConfigValue(args[1], value + " " + Lang.MINUTE_PLURAL.getConfigValue()));
+            final int newValue = value;
+
+            // Bring back data of the player if it was archived.
+            plugin.getArchiveManager().restorePlayer(uuid, new Runnable() {
+                @Override
+                public void run() {
+                    if (plugin.getUUIDStorage().hasRealName(uuid)) {
+                        args[1] = plugin.getUUIDStorage().getRealName(uuid);
+                    }
+
+                    plugin.getPlaytimeStorage().setLocalTime(TimeType.TOTAL_TIME, newValue, uuid);
+                    plugin.getLeaderboardManager().invalidateLeaderboard(TimeType.TOTAL_TIME);
+                    AutorankTools.sendColoredMessage(sender, Lang.PLAYTIME_CHANGED.getConfigValue(args[1],
+                            newValue + " " + Lang.MINUTE_PLURAL.getConfigValue()));
+                }
+            });
         } else {
             AutorankTools.sendColoredMessage(sender, Lang.INVALID_FORMAT.getConfigValue("/ar set <player> <value>"));
         }
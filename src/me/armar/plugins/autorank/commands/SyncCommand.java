@@ -3,13 +3,16 @@ package me.armar.plugins.autorank.commands;
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.commands.manager.AutorankCommand;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.flatfile.PlaytimeIndex;
+import me.armar.plugins.autorank.data.mysql.GlobalTimeHandler;
+import me.armar.plugins.autorank.data.mysql.GrabChangedTimesTask;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 
-import java.util.Map.Entry;
+import java.sql.Timestamp;
 import java.util.UUID;
 
 /**
@@ -50,20 +53,40 @@ public class SyncCommand extends AutorankCommand {
         sender.sendMessage(ChatColor.RED + "You do not have to use this command regularly.");
 
         if (reverse) {
+            // Only records that changed since the last reverse sync are read, unless a full sync is asked for.
+            final boolean fullSync = args.length > 2 && args[2].equalsIgnoreCase("full");
+
             plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
 
                 @Override
                 public void run() {
-                    int count = 0;
+                    final long lastSync = plugin.getInternalPropertiesConfig().getLastReverseSyncTime();
+
+                    // Update all data.yml records, while they are read (so they do not all have to fit in memory)
+                    final GrabChangedTimesTask.ChangedTimes changes = plugin.getMySQLManager()
+                            .getChangedPlayersFromDatabase(fullSync || lastSync <= 0 ? null : new Timestamp(lastSync),
+                                    new GlobalTimeHandler() {
+                                        @Override
+                                        public void handle(final UUID uuid, final int time) {
+                                            plugin.getPlaytimeStorage().setLocalTime(TimeType.TOTAL_TIME, time,
+                                                    uuid);
+                                        }
+                                    });
+
+                    if (changes == null) {
+                        sender.sendMessage(ChatColor.RED + "Could not read records from the MySQL database!");
+                        return;
+                    }
+
+                    final long count = changes.getCount();
 
-                    // Update all data.yml records
-                    for (Entry<UUID, Integer> entry : plugin.getMySQLManager().getAllPlayersFromDatabase().entrySet()) {
-                        plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, entry.getValue(), entry.getKey());
-                        count++;
+                    if (changes.getHighWaterMark() != null) {
+                        plugin.getInternalPropertiesConfig()
+                                .setLastReverseSyncTime(changes.getHighWaterMark().getTime());
                     }
 
                     sender.sendMessage(ChatColor.GREEN + "Successfully updated Data.yml from " + count
-                            + " MySQL database records!");
+                            + (fullSync || lastSync <= 0 ? "" : " changed") + " MySQL database records!");
                 }
             });
         } else {
@@ -73,12 +96,17 @@ public class SyncCommand extends AutorankCommand {
                 @Override
                 public void run() {
                     // Update all mysql records
-                    for (final UUID uuid : plugin.getFlatFileManager().getUUIDKeys(TimeType.TOTAL_TIME)) {
-                        final int localTime = plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid);
+                    final PlaytimeIndex.Snapshot localTimes = plugin.getPlaytimeStorage()
+                            .getLocalTimes(TimeType.TOTAL_TIME);
+
+                    for (int i = 0; i < localTimes.size(); i++) {
+                        final int localTime = localTimes.getValue(i);
 
                         if (localTime <= 0)
                             continue;
 
+                        final UUID uuid = localTimes.getUUID(i);
+
                         final int globalTime = plugin.getMySQLManager().getGlobalTime(uuid);
 
                         plugin.getMySQLManager().setGlobalTime(uuid, localTime + globalTime);
@@ -103,6 +131,6 @@ public class SyncCommand extends AutorankCommand {
 
     @Override
     public String getUsage() {
-        return "/ar sync";
+        return "/ar sync [reverse [full]]";
     }
 }
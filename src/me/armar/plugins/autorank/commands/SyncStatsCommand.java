@@ -38,7 +38,7 @@ public class SyncStatsCommand extends AutorankCommand {
         int count = 0;
 
         // Sync playtime of every player
-        for (final UUID uuid : plugin.getFlatFileManager().getUUIDKeys(TimeType.TOTAL_TIME)) {
+        for (final UUID uuid : plugin.getPlaytimeStorage().getUUIDKeys(TimeType.TOTAL_TIME)) {
 
             final OfflinePlayer p = plugin.getServer().getOfflinePlayer(uuid);
 
@@ -51,7 +51,7 @@ public class SyncStatsCommand extends AutorankCommand {
             }
 
             // Update time
-            plugin.getFlatFileManager().setLocalTime(TimeType.TOTAL_TIME, Math.round(statsPlayTime / 60), uuid);
+            plugin.getPlaytimeStorage().setLocalTime(TimeType.TOTAL_TIME, Math.round(statsPlayTime / 60), uuid);
 
             // Increment count
             count++;
@@ -62,18 +62,30 @@ public class TimesCommand extends AutorankCommand {
             return true;
         }
 
+        // Bring back data of the player if it was archived.
+        plugin.getArchiveManager().restorePlayer(uuid, new Runnable() {
+            @Override
+            public void run() {
+                showTimes(sender, uuid);
+            }
+        });
+
+        return true;
+    }
+
+    private void showTimes(final CommandSender sender, final UUID uuid) {
         // Now show data for target.
-        targetName = plugin.getUUIDStorage().getRealName(uuid);
+        String targetName = plugin.getUUIDStorage().getRealName(uuid);
 
         if (targetName == null) {
             // This player has no real name stored -> use cached name
             targetName = plugin.getUUIDStorage().getCachedPlayerName(uuid);
         }
 
-        final int daily = plugin.getFlatFileManager().getLocalTime(TimeType.DAILY_TIME, uuid);
-        final int weekly = plugin.getFlatFileManager().getLocalTime(TimeType.WEEKLY_TIME, uuid);
-        final int monthly = plugin.getFlatFileManager().getLocalTime(TimeType.MONTHLY_TIME, uuid);
-        final int total = plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid);
+        final int daily = plugin.getPlaytimeStorage().getLocalTime(TimeType.DAILY_TIME, uuid);
+        final int weekly = plugin.getPlaytimeStorage().getLocalTime(TimeType.WEEKLY_TIME, uuid);
+        final int monthly = plugin.getPlaytimeStorage().getLocalTime(TimeType.MONTHLY_TIME, uuid);
+        final int total = plugin.getPlaytimeStorage().getLocalTime(TimeType.TOTAL_TIME, uuid);
 
         sender.sendMessage(Lang.AR_TIMES_HEADER.getConfigValue(targetName));
         sender.sendMessage(Lang.AR_TIMES_PLAYER_PLAYED.getConfigValue(targetName));
@@ -81,8 +93,6 @@ public class TimesCommand extends AutorankCommand {
         sender.sendMessage(Lang.AR_TIMES_THIS_WEEK.getConfigValue(AutorankTools.timeToString(weekly, Time.MINUTES)));
         sender.sendMessage(Lang.AR_TIMES_THIS_MONTH.getConfigValue(AutorankTools.timeToString(monthly, Time.MINUTES)));
         sender.sendMessage(Lang.AR_TIMES_TOTAL.getConfigValue(AutorankTools.timeToString(total, Time.MINUTES)));
-
-        return true;
     }
 
     @Override
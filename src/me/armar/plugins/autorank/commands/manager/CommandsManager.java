@@ -54,6 +54,7 @@ public class CommandsManager implements TabExecutor {
         registeredCommands.put(Arrays.asList("syncstats"), new SyncStatsCommand(plugin));
         registeredCommands.put(Arrays.asList("reload"), new ReloadCommand(plugin));
         registeredCommands.put(Arrays.asList("import"), new ImportCommand(plugin));
+        registeredCommands.put(Arrays.asList("export"), new ExportCommand(plugin));
         registeredCommands.put(Arrays.asList("complete"), new CompleteCommand(plugin));
         registeredCommands.put(Arrays.asList("check"), new CheckCommand(plugin));
         registeredCommands.put(Arrays.asList("archive", "arch"), new ArchiveCommand(plugin));
@@ -46,6 +46,16 @@ public class InternalPropertiesConfig extends AbstractConfig {
         return this.getConfig().getLong("leaderboards." + type.toString().toLowerCase() + ".last updated", 0);
     }
 
+    /**
+     * Get the modified timestamp of the latest MySQL record that was synced to
+     * the local data with /ar sync reverse (UNIX timestamp).
+     *
+     * @return a UNIX timestamp or 0 if never synced before.
+     */
+    public long getLastReverseSyncTime() {
+        return this.getConfig().getLong("last reverse sync", 0);
+    }
+
     /**
      * Get the last stored value of a time type. Autorank stores the current
      * day, week and month. On a new calendar day, any of will be changed (as a
@@ -152,6 +162,22 @@ public class InternalPropertiesConfig extends AbstractConfig {
         this.saveConfig();
     }
 
+    /**
+     * Set the cached leaderboard for a certain time type, together with the
+     * time it was updated. The file is saved once.
+     *
+     * @param type              Type of time
+     * @param cachedLeaderboard A list of strings
+     * @param time              Update time of the leaderboard (UNIX timestamp)
+     */
+    public void setCachedLeaderboard(final TimeType type, final List<String> cachedLeaderboard, final long time) {
+        this.getConfig().set("leaderboards." + type.toString().toLowerCase() + ".cached leaderboard",
+                cachedLeaderboard);
+        this.getConfig().set("leaderboards." + type.toString().toLowerCase() + ".last updated", time);
+
+        this.saveConfig();
+    }
+
     /**
      * Set the time any leaderboard was last updated.
      *
@@ -163,6 +189,18 @@ public class InternalPropertiesConfig extends AbstractConfig {
         this.saveConfig();
     }
 
+    /**
+     * Set the modified timestamp of the latest MySQL record that was synced to
+     * the local data. See {@link #getLastReverseSyncTime()}.
+     *
+     * @param time Modified timestamp (UNIX timestamp)
+     */
+    public void setLastReverseSyncTime(final long time) {
+        this.getConfig().set("last reverse sync", time);
+
+        this.saveConfig();
+    }
+
     /**
      * Set the value of a time type. See {@link #getTrackedTimeType(TimeType)}
      * for more info.
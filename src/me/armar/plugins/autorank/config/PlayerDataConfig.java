@@ -1,9 +1,19 @@
 package me.armar.plugins.autorank.config;
 
 import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.sqlite.SQLiteManager;
 import me.armar.plugins.autorank.util.AutorankTools;
-
+import me.armar.plugins.autorank.util.DataWriter;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -12,6 +22,16 @@ import java.util.UUID;
  * <p>
  * PlayerDataConfig uses a file (/playerdata/Playerdata.yml) which keeps tracks
  * of these things.
+ * <p>
+ * All changes are applied one at a time by a {@link DataWriter}, so changes
+ * that read the current progress of a player and then change it cannot get in
+ * each other's way. Methods that change data return when the change is
+ * applied.
+ * <p>
+ * When the local play time is stored in SQLite, the properties are stored in
+ * that database as well (see {@link #useDatabase(SQLiteManager)}). They are
+ * still kept in memory, but every change is written to the database instead
+ * of saving the whole file.
  *
  * @author Staartvin
  */
@@ -21,6 +41,18 @@ public class PlayerDataConfig extends AbstractConfig {
 
     private boolean convertingData = false;
 
+    // Applies all changes, one at a time
+    private final DataWriter writer = new DataWriter("Autorank player data writer");
+
+    // Players that are exempted from the leaderboards, or null if they have to be looked up again.
+    private volatile Set<UUID> leaderboardExemptions = null;
+    // Number of times the exemptions were changed, so a set looked up before a change is not remembered.
+    private long exemptionsGeneration = 0;
+    private final Object exemptionsLock = new Object();
+
+    // Database that stores the properties, or null if they are stored in the file.
+    private volatile SQLiteManager database = null;
+
     public PlayerDataConfig(final Autorank instance) {
         setPlugin(instance);
         setFileName(fileName);
@@ -42,14 +74,19 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param reqID ID of the requirement
      */
     public void addCompletedRequirement(final UUID uuid, final int reqID) {
-        final List<Integer> progress = getCompletedRequirements(uuid);
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                final List<Integer> progress = getCompletedRequirements(uuid);
 
-        if (hasCompletedRequirement(reqID, uuid))
-            return;
+                if (hasCompletedRequirement(reqID, uuid))
+                    return;
 
-        progress.add(reqID);
+                progress.add(reqID);
 
-        setCompletedRequirements(uuid, progress);
+                setCompletedRequirements(uuid, progress);
+            }
+        });
     }
 
     /**
@@ -59,7 +96,7 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param requirements Requirements that the player completed.
      */
     public void setCompletedRequirements(final UUID uuid, final List<Integer> requirements) {
-        this.getConfig().set(uuid.toString() + ".completed requirements", requirements);
+        this.set(uuid.toString() + ".completed requirements", requirements);
     }
 
     /**
@@ -94,14 +131,19 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param preReqID ID of the prerequisite
      */
     public void addCompletedPrerequisite(final UUID uuid, final int preReqID) {
-        final List<Integer> progress = getCompletedPrerequisites(uuid);
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                final List<Integer> progress = getCompletedPrerequisites(uuid);
 
-        if (hasCompletedPrerequisite(preReqID, uuid))
-            return;
+                if (hasCompletedPrerequisite(preReqID, uuid))
+                    return;
 
-        progress.add(preReqID);
+                progress.add(preReqID);
 
-        setCompletedPrerequisites(uuid, progress);
+                setCompletedPrerequisites(uuid, progress);
+            }
+        });
     }
 
     /**
@@ -111,7 +153,7 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param prerequisites Prerequisites that the player completed.
      */
     public void setCompletedPrerequisites(final UUID uuid, final List<Integer> prerequisites) {
-        this.getConfig().set(uuid.toString() + ".completed prerequisites", prerequisites);
+        this.set(uuid.toString() + ".completed prerequisites", prerequisites);
     }
 
     /**
@@ -146,15 +188,20 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param pathName Name (internal name) of the path
      */
     public void addCompletedPath(final UUID uuid, final String pathName) {
-        final List<String> completed = getCompletedPaths(uuid);
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> completed = getCompletedPaths(uuid);
 
-        if (completed.contains(pathName)) {
-            return;
-        }
+                if (completed.contains(pathName)) {
+                    return;
+                }
 
-        completed.add(pathName);
+                completed.add(pathName);
 
-        setCompletedPaths(uuid, completed);
+                setCompletedPaths(uuid, completed);
+            }
+        });
     }
 
     /**
@@ -190,15 +237,20 @@ public class PlayerDataConfig extends AbstractConfig {
                     if (uuid == null)
                         continue;
 
-                    final List<Integer> progress = getConfig().getIntegerList(name + ".progress");
-                    final String lastKnownGroup = getConfig().getString(name + ".last group");
+                    writer.run(new Runnable() {
+                        @Override
+                        public void run() {
+                            final List<Integer> progress = getConfig().getIntegerList(name + ".progress");
+                            final String lastKnownGroup = getConfig().getString(name + ".last group");
 
-                    // Remove name
-                    getConfig().set(name, null);
+                            // Remove name
+                            apply(name, null);
 
-                    // Replace name with UUID
-                    getConfig().set(uuid.toString() + ".progress", progress);
-                    getConfig().set(uuid.toString() + ".last group", lastKnownGroup);
+                            // Replace name with UUID
+                            apply(uuid.toString() + ".progress", progress);
+                            apply(uuid.toString() + ".last group", lastKnownGroup);
+                        }
+                    });
                 }
 
                 getPlugin().getLogger().info("Converted playerdata.yml to UUID format");
@@ -259,12 +311,87 @@ public class PlayerDataConfig extends AbstractConfig {
 
     /**
      * Set whether a player is exempted from appearing on any leaderboard.
+     * Nothing is written when the player already has the given status, so
+     * this is cheap to call for every online player. The change is applied
+     * without waiting for the writer.
      *
      * @param uuid  UUID of the player
      * @param value Value to set the exemption status to.
      */
     public void hasLeaderboardExemption(final UUID uuid, final boolean value) {
-        this.getConfig().set(uuid.toString() + ".exempt leaderboard", value);
+        if (hasLeaderboardExemption(uuid) == value) {
+            return;
+        }
+
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                // Check again, as another change may have been applied in the meantime.
+                if (hasLeaderboardExemption(uuid) == value) {
+                    return;
+                }
+
+                apply(uuid.toString() + ".exempt leaderboard", value);
+
+                invalidateLeaderboardExemptions();
+            }
+        });
+    }
+
+    /**
+     * Get all players that are exempted from appearing on any leaderboard.
+     * The players are looked up once and remembered until an exemption
+     * changes, so this is cheap to call often.
+     *
+     * @return an unmodifiable set with the UUIDs of the exempted players.
+     */
+    public Set<UUID> getLeaderboardExemptions() {
+        Set<UUID> exemptions = leaderboardExemptions;
+
+        if (exemptions != null) {
+            return exemptions;
+        }
+
+        final long generation;
+
+        synchronized (exemptionsLock) {
+            generation = exemptionsGeneration;
+        }
+
+        final Set<UUID> found = new HashSet<UUID>();
+
+        for (final String key : this.getConfig().getKeys(false)) {
+            if (!this.getConfig().getBoolean(key + ".exempt leaderboard", false)) {
+                continue;
+            }
+
+            try {
+                found.add(UUID.fromString(key));
+            } catch (final IllegalArgumentException e) {
+                // Data that is not stored by UUID (yet)
+            }
+        }
+
+        exemptions = Collections.unmodifiableSet(found);
+
+        synchronized (exemptionsLock) {
+            if (generation == exemptionsGeneration) {
+                leaderboardExemptions = exemptions;
+            }
+        }
+
+        return exemptions;
+    }
+
+    /**
+     * Forget the exempted players, so they are looked up again. Must be
+     * called after an exemption was changed.
+     */
+    private void invalidateLeaderboardExemptions() {
+        synchronized (exemptionsLock) {
+            exemptionsGeneration++;
+            leaderboardExemptions = null;
+        }
     }
 
     /**
@@ -273,15 +400,20 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param uuid     UUID of the player
      * @param pathName Name of the path
      */
-    public void addStartedPath(UUID uuid, String pathName) {
-        // Don't add a path if it's already in there.
-        if (this.getStartedPaths(uuid).contains(pathName)) return;
+    public void addStartedPath(final UUID uuid, final String pathName) {
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                // Don't add a path if it's already in there.
+                if (getStartedPaths(uuid).contains(pathName)) return;
 
-        List<String> startedPaths = this.getStartedPaths(uuid);
+                List<String> startedPaths = getStartedPaths(uuid);
 
-        startedPaths.add(pathName);
+                startedPaths.add(pathName);
 
-        this.setStartedPaths(uuid, startedPaths);
+                setStartedPaths(uuid, startedPaths);
+            }
+        });
     }
 
     /**
@@ -290,15 +422,20 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param uuid     UUID of the player
      * @param pathName Name of the path
      */
-    public void removeStartedPath(UUID uuid, String pathName) {
-        // Don't remove a path if it's not in there.
-        if (!this.getStartedPaths(uuid).contains(pathName)) return;
+    public void removeStartedPath(final UUID uuid, final String pathName) {
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                // Don't remove a path if it's not in there.
+                if (!getStartedPaths(uuid).contains(pathName)) return;
 
-        List<String> startedPaths = this.getStartedPaths(uuid);
+                List<String> startedPaths = getStartedPaths(uuid);
 
-        startedPaths.remove(pathName);
+                startedPaths.remove(pathName);
 
-        this.setStartedPaths(uuid, startedPaths);
+                setStartedPaths(uuid, startedPaths);
+            }
+        });
     }
 
     /**
@@ -320,7 +457,7 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param pathNames The paths the player started
      */
     public void setStartedPaths(UUID uuid, List<String> pathNames) {
-        this.getConfig().set(uuid + ".started paths", pathNames);
+        this.set(uuid + ".started paths", pathNames);
     }
 
     /**
@@ -341,7 +478,7 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param path Name of path
      */
     public void setChosenPath(final UUID uuid, final String path) {
-        this.getConfig().set(uuid.toString() + ".chosen path", path);
+        this.set(uuid.toString() + ".chosen path", path);
     }
 
     /**
@@ -351,7 +488,250 @@ public class PlayerDataConfig extends AbstractConfig {
      * @param completedPaths Paths that the player has completed
      */
     public void setCompletedPaths(final UUID uuid, final List<String> completedPaths) {
-        this.getConfig().set(uuid.toString() + ".completed paths", completedPaths);
+        this.set(uuid.toString() + ".completed paths", completedPaths);
+    }
+
+    /**
+     * Check whether any properties of a player are stored.
+     *
+     * @param uuid UUID of the player
+     * @return true if properties of the player are stored, false otherwise.
+     */
+    public boolean hasPlayerData(final UUID uuid) {
+        return this.getConfig().isConfigurationSection(uuid.toString());
+    }
+
+    /**
+     * Get all stored properties of a player, so they can be stored somewhere
+     * else (for example when the player is archived).
+     *
+     * @param uuid UUID of the player
+     * @return the properties of the player as a YAML string, or null if
+     * nothing is stored for the player.
+     */
+    public String exportPlayerData(final UUID uuid) {
+        final YamlConfiguration playerData = new YamlConfiguration();
+
+        // The section of the player is read under the lock that changes to the file take.
+        synchronized (this.getConfig()) {
+            final ConfigurationSection section = this.getConfig().getConfigurationSection(uuid.toString());
+
+            if (section == null) {
+                return null;
+            }
+
+            for (final Map.Entry<String, Object> entry : section.getValues(true).entrySet()) {
+                if (!(entry.getValue() instanceof ConfigurationSection)) {
+                    playerData.set(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return playerData.saveToString();
+    }
+
+    /**
+     * Store properties of a player that were exported by
+     * {@link #exportPlayerData(UUID)}. Properties that are already stored for
+     * the player are overwritten.
+     *
+     * @param uuid       UUID of the player
+     * @param playerData Properties of the player as a YAML string
+     * @throws InvalidConfigurationException if the given string is not valid
+     *                                       YAML.
+     */
+    public void importPlayerData(final UUID uuid, final String playerData) throws InvalidConfigurationException {
+        final YamlConfiguration imported = new YamlConfiguration();
+        imported.loadFromString(playerData);
+
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                for (final Map.Entry<String, Object> entry : imported.getValues(true).entrySet()) {
+                    if (!(entry.getValue() instanceof ConfigurationSection)) {
+                        apply(uuid.toString() + "." + entry.getKey(), entry.getValue());
+                    }
+                }
+
+                invalidateLeaderboardExemptions();
+            }
+        });
+    }
+
+    /**
+     * Remove all stored properties of a player.
+     *
+     * @param uuid UUID of the player
+     */
+    public void removePlayerData(final UUID uuid) {
+        this.set(uuid.toString(), null);
+    }
+
+    /**
+     * Change a value in the file, after all changes that were made before.
+     *
+     * @param path  Path of the value
+     * @param value New value, or null to remove the value
+     */
+    private void set(final String path, final Object value) {
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                apply(path, value);
+
+                // The exemption of a player is removed.
+                if (value == null) {
+                    invalidateLeaderboardExemptions();
+                }
+            }
+        });
+    }
+
+    /**
+     * Change a value in memory and in the database, if it is used. May only
+     * be called by the writer.
+     *
+     * @param path  Path of the value, starting with the key of the player
+     * @param value New value, or null to remove the value
+     */
+    private void apply(final String path, final Object value) {
+        getConfig().set(path, value);
+
+        final SQLiteManager database = this.database;
+
+        if (database == null) {
+            return;
+        }
+
+        final int separator = path.indexOf('.');
+
+        if (separator < 0) {
+            // All properties of a player are removed.
+            database.removePlayerProperties(path);
+        } else {
+            database.setPlayerProperty(path.substring(0, separator), path.substring(separator + 1), value);
+        }
+    }
+
+    /**
+     * Store the properties of players in the given database from now on.
+     * When the database does not have any properties yet, the properties in
+     * the file are copied to it. Otherwise, the properties in the database
+     * replace the ones that were read from the file.
+     *
+     * @param database Database to store the properties in
+     */
+    public void useDatabase(final SQLiteManager database) {
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                if (database.hasPlayerProperties()) {
+                    loadFromDatabase(database);
+                } else {
+                    final Map<String, Map<String, Object>> players = new HashMap<String, Map<String, Object>>();
+
+                    for (final String key : getConfig().getKeys(false)) {
+                        final ConfigurationSection section = getConfig().getConfigurationSection(key);
+
+                        if (section == null) {
+                            continue;
+                        }
+
+                        final Map<String, Object> properties = new HashMap<String, Object>();
+
+                        for (final Map.Entry<String, Object> entry : section.getValues(true).entrySet()) {
+                            if (!(entry.getValue() instanceof ConfigurationSection)) {
+                                properties.put(entry.getKey(), entry.getValue());
+                            }
+                        }
+
+                        players.put(key, properties);
+                    }
+
+                    database.importPlayerProperties(players);
+
+                    getPlugin().getLogger().info("Copied the data of " + players.size()
+                            + " players from PlayerData.yml to the SQLite database.");
+                }
+
+                PlayerDataConfig.this.database = database;
+            }
+        });
+    }
+
+    /**
+     * Replace the properties in memory by the ones in the database. May only
+     * be called by the writer.
+     *
+     * @param database Database to read the properties from
+     */
+    private void loadFromDatabase(final SQLiteManager database) {
+        for (final String key : getConfig().getKeys(false)) {
+            getConfig().set(key, null);
+        }
+
+        for (final Map.Entry<String, Map<String, Object>> player : database.loadPlayerProperties().entrySet()) {
+            for (final Map.Entry<String, Object> property : player.getValue().entrySet()) {
+                getConfig().set(player.getKey() + "." + property.getKey(), property.getValue());
+            }
+        }
+
+        invalidateLeaderboardExemptions();
+    }
+
+    /**
+     * Apply all changes that were made and save the file. Should be called
+     * when Autorank is disabled.
+     */
+    public void shutdown() {
+        if (!writer.shutdown()) {
+            getPlugin().getLogger().warning("Not all player data changes could be applied before shutting down!");
+        }
+
+        saveConfig();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see me.armar.plugins.autorank.config.AbstractConfig#saveConfig()
+     */
+    @Override
+    public void saveConfig() {
+        // Exemptions are changed without waiting, so apply them before saving.
+        writer.flush();
+
+        // Every change is already written to the database.
+        if (database != null) {
+            return;
+        }
+
+        super.saveConfig();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see me.armar.plugins.autorank.config.AbstractConfig#reloadConfig()
+     */
+    @Override
+    public void reloadConfig() {
+        final SQLiteManager database = this.database;
+
+        if (database != null) {
+            writer.run(new Runnable() {
+                @Override
+                public void run() {
+                    loadFromDatabase(database);
+                }
+            });
+
+            return;
+        }
+
+        super.reloadConfig();
+
+        invalidateLeaderboardExemptions();
     }
 
 }
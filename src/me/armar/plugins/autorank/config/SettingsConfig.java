@@ -20,6 +20,13 @@ public class SettingsConfig extends AbstractConfig {
         DATABASE, HOSTNAME, PASSWORD, TABLE, USERNAME
     }
 
+    /**
+     * The different ways Autorank can store the local play time of players.
+     */
+    public enum LocalStorageType {
+        FLATFILE, SQLITE
+    }
+
     private String fileName = "Settings.yml";
 
     public SettingsConfig(final Autorank instance) {
@@ -48,6 +55,21 @@ public class SettingsConfig extends AbstractConfig {
         return this.getConfig().getBoolean("auto-updater.check-for-new-versions", true);
     }
 
+    /**
+     * Get the way Autorank should store the local play time of players.
+     *
+     * @return {@link LocalStorageType#SQLITE} if a SQLite database file should
+     * be used, {@link LocalStorageType#FLATFILE} otherwise.
+     */
+    public LocalStorageType getLocalStorageType() {
+        final String storageType = this.getConfig().getString("local storage", "flatfile");
+
+        if (storageType.equalsIgnoreCase("SQLite"))
+            return LocalStorageType.SQLITE;
+        else
+            return LocalStorageType.FLATFILE;
+    }
+
     /**
      * Get the layout of the /ar check command.
      *
@@ -110,6 +132,27 @@ public class SettingsConfig extends AbstractConfig {
         }
     }
 
+    /**
+     * Get the maximum number of connections Autorank can have open to the
+     * MySQL database at the same time.
+     *
+     * @return maximum number of connections. By default 4.
+     */
+    public int getMySQLPoolSize() {
+        return Math.max(1, this.getConfig().getInt("sql.connection pool size", 4));
+    }
+
+    /**
+     * Get the time (in minutes) between two syncs of global times that were
+     * changed in the MySQL database by other servers.
+     *
+     * @return sync interval in minutes, or 0 if Autorank should not sync. By
+     * default 1.
+     */
+    public int getMySQLSyncInterval() {
+        return Math.max(0, this.getConfig().getInt("sql.sync interval", 1));
+    }
+
     /**
      * Check whether Autorank should disable automatically checking whether a
      * player has completed a path.
@@ -181,6 +224,16 @@ public class SettingsConfig extends AbstractConfig {
         return this.getConfig().getBoolean("use debug", false);
     }
 
+    /**
+     * Check whether Autorank should store the leaderboards on disk when the
+     * server stops, so they can be shown right away after a restart.
+     *
+     * @return true if Autorank should, false otherwise.
+     */
+    public boolean shouldStoreLeaderboardsOnDisk() {
+        return this.getConfig().getBoolean("store leaderboards on disk", true);
+    }
+
     /**
      * Check whether Autorank should display the global time of players instead
      * of their local time in any of the leaderboards.
@@ -232,7 +285,8 @@ public class SettingsConfig extends AbstractConfig {
     }
 
     /**
-     * Check whether Autorank should automatically remove old data from its database.
+     * Check whether Autorank should automatically archive data of players that
+     * have not been online for a while.
      *
      * @return true if it should, false otherwise.
      */
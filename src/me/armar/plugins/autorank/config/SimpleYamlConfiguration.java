@@ -1,5 +1,7 @@
 package me.armar.plugins.autorank.config;
 
+import org.bukkit.configuration.Configuration;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -7,12 +9,26 @@ import org.bukkit.plugin.java.JavaPlugin;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ConcurrentModificationException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This represents any YAML file that Autorank uses. <br>
  * It is used for the data.yml, playerdata.yml and daily/monthly/weekly data
  * files.
+ * <p>
+ * The file keeps track of whether it was changed since it was last loaded or
+ * saved. Saving a file that did not change does nothing. Changes should be made
+ * through {@link #set(String, Object)} of this file (and not through a
+ * configuration section of it), or {@link #markDirty()} should be called
+ * afterwards.
+ * <p>
+ * Changes and reads through this file lock the file, so values can be read
+ * from any thread while another thread changes them. All typed getters (such
+ * as {@link #getString(String)}) read through {@link #get(String, Object)}.
  *
  * @author Staartvin
  */
@@ -20,6 +36,12 @@ public class SimpleYamlConfiguration extends YamlConfiguration {
 
     File file;
 
+    // Whether this file was changed since it was last loaded or saved
+    private volatile boolean dirty = false;
+
+    // Makes sure only one thread writes the file at a time
+    private final Object saveLock = new Object();
+
     /**
      * Create a new YAML file.
      *
@@ -28,6 +50,21 @@ public class SimpleYamlConfiguration extends YamlConfiguration {
      * @param name     Name of the file that is used to show in the console.
      */
     public SimpleYamlConfiguration(final JavaPlugin plugin, final String fileName, final String name) {
+        this(plugin, fileName, name, true);
+    }
+
+    /**
+     * Create a new YAML file.
+     *
+     * @param plugin     Plugin to create it for.
+     * @param fileName   Path of the file.
+     * @param name       Name of the file that is used to show in the console.
+     * @param logLoading Whether to show in the console that the file was
+     *                   loaded. Files that are loaded in large numbers
+     *                   should not, to keep the console readable.
+     */
+    public SimpleYamlConfiguration(final JavaPlugin plugin, final String fileName, final String name,
+                                   final boolean logLoading) {
         /*
          * accepts null as configDefaults -> check for resource and copies it if
          * found, makes an empty config if nothing is found
@@ -48,7 +85,10 @@ public class SimpleYamlConfiguration extends YamlConfiguration {
         } else {
             try {
                 this.load(file);
-                plugin.getLogger().info(name + " file loaded");
+
+                if (logLoading) {
+                    plugin.getLogger().info(name + " file loaded");
+                }
             } catch (final Exception e) {
                 e.printStackTrace();
             }
@@ -56,6 +96,16 @@ public class SimpleYamlConfiguration extends YamlConfiguration {
 
     }
 
+    /**
+     * Create an empty YAML file that is not read from disk, for data that is
+     * stored somewhere else and only kept in memory.
+     *
+     * @param file Path the file would be saved to.
+     */
+    public SimpleYamlConfiguration(final File file) {
+        this.file = file;
+    }
+
     /**
      * Get the internal YAML file.
      */
@@ -87,15 +137,133 @@ public class SimpleYamlConfiguration extends YamlConfiguration {
     }
 
     /**
-     * Save the YAML file.
+     * Save the YAML file if it was changed since it was last loaded or saved.
+     * <br>
+     * A copy of the file is made while holding a lock, which is then written to
+     * disk. Changing the file (from another thread) while it is being written is
+     * therefore safe.
      */
     public void saveFile() {
-        try {
-            this.save(file);
-        } catch (final ConcurrentModificationException e) {
-            saveFile();
-        } catch (final IOException e) {
-            e.printStackTrace();
+        if (!dirty) {
+            return;
+        }
+
+        synchronized (saveLock) {
+            final YamlConfiguration snapshot;
+
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+
+                snapshot = createSnapshot();
+                dirty = false;
+            }
+
+            try {
+                snapshot.save(file);
+            } catch (final IOException e) {
+                // Try again next time.
+                dirty = true;
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Check whether this file was changed since it was last loaded or saved.
+     *
+     * @return true if the file has unsaved changes, false otherwise.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Mark this file as changed so it is written to disk the next time it is
+     * saved.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void set(final String path, final Object value) {
+        super.set(path, value);
+        dirty = true;
+    }
+
+    @Override
+    public synchronized Object get(final String path, final Object def) {
+        return super.get(path, def);
+    }
+
+    @Override
+    public synchronized Set<String> getKeys(final boolean deep) {
+        return super.getKeys(deep);
+    }
+
+    @Override
+    public synchronized Map<String, Object> getValues(final boolean deep) {
+        return super.getValues(deep);
+    }
+
+    @Override
+    public synchronized ConfigurationSection createSection(final String path) {
+        dirty = true;
+        return super.createSection(path);
+    }
+
+    @Override
+    public synchronized void addDefault(final String path, final Object value) {
+        super.addDefault(path, value);
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void setDefaults(final Configuration defaults) {
+        super.setDefaults(defaults);
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void loadFromString(final String contents) throws InvalidConfigurationException {
+        super.loadFromString(contents);
+
+        // What is in memory is now the same as what is on disk.
+        dirty = false;
+    }
+
+    /**
+     * Create a copy of this file that can be written to disk without holding a
+     * lock on this file.
+     */
+    private YamlConfiguration createSnapshot() {
+        final YamlConfiguration snapshot = new YamlConfiguration();
+
+        snapshot.options().pathSeparator(options().pathSeparator());
+        snapshot.options().header(options().header());
+        snapshot.options().copyHeader(options().copyHeader());
+
+        copySection(this, snapshot);
+
+        return snapshot;
+    }
+
+    private static void copySection(final ConfigurationSection source, final ConfigurationSection target) {
+        // Also includes defaults if they should be copied.
+        for (final Map.Entry<String, Object> entry : source.getValues(false).entrySet()) {
+            final Object value = entry.getValue();
+
+            if (value instanceof ConfigurationSection) {
+                copySection((ConfigurationSection) value, target.createSection(entry.getKey()));
+            } else if (value instanceof List) {
+                target.set(entry.getKey(), new ArrayList<Object>((List<?>) value));
+            } else if (value instanceof Map) {
+                target.set(entry.getKey(), new LinkedHashMap<Object, Object>((Map<?, ?>) value));
+            } else {
+                target.set(entry.getKey(), value);
+            }
         }
     }
 }
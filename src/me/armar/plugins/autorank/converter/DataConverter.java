@@ -2,7 +2,6 @@ package me.armar.plugins.autorank.converter;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.config.SimpleYamlConfiguration;
-import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
 import org.bukkit.configuration.ConfigurationSection;
 
 import java.io.File;
@@ -87,10 +86,7 @@ public class DataConverter {
         plugin.getInternalPropertiesConfig().setConvertedToNewFormat(true);
 
         // Reload file
-        plugin.getFlatFileManager().getDataFile(TimeType.TOTAL_TIME).reloadFile();
-        plugin.getFlatFileManager().getDataFile(TimeType.WEEKLY_TIME).reloadFile();
-        plugin.getFlatFileManager().getDataFile(TimeType.MONTHLY_TIME).reloadFile();
-        plugin.getFlatFileManager().getDataFile(TimeType.DAILY_TIME).reloadFile();
+        plugin.getPlaytimeStorage().reloadDataFiles();
 
         return true;
     }
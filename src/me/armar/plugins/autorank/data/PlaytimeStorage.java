@@ -0,0 +1,749 @@
+package me.armar.plugins.autorank.data;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.flatfile.PlaytimeIndex;
+import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.leaderboard.RankedIndex;
+import me.armar.plugins.autorank.util.DataWriter;
+import me.armar.plugins.autorank.util.uuid.UUIDManager;
+import org.bukkit.OfflinePlayer;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+
+/**
+ * Represents a place where Autorank stores the local play time of players.
+ * Callers should only use this class, so they do not need to know whether the
+ * play time is stored in flat files or in a database.
+ * <p>
+ * Daily, weekly and monthly time are derived from the time a player played on
+ * each of the last {@value PlaytimeIndex#HISTORY_DAYS} days.
+ * <p>
+ * All changes are applied one at a time by a {@link DataWriter}, in the order
+ * they were made. Methods that change data return a future that is done when
+ * the change is applied; reads see the change from then on.
+ * <p>
+ * For every time type, the players are kept sorted on their time in a
+ * {@link RankedIndex}, which the writer updates with every change. A ranking is
+ * built the first time it is asked for, and only built again after changes to
+ * all players (such as a reset or a new day).
+ *
+ * @author Staartvin
+ */
+public abstract class PlaytimeStorage {
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    // Number of days after which data of players that were not online is removed
+    protected static final int OLD_ENTRY_DAYS = 60;
+
+    // Number of players of which the last played day is looked up before it is stored
+    private static final int LAST_PLAYED_BATCH_SIZE = 500;
+
+    protected final Autorank plugin;
+
+    // Applies all changes, one at a time
+    private final DataWriter writer = new DataWriter("Autorank play time writer");
+
+    // Players sorted on their time, per time type. Only changed by the writer.
+    private final ConcurrentMap<TimeType, RankedIndex> rankings = new ConcurrentHashMap<TimeType, RankedIndex>();
+
+    public PlaytimeStorage(final Autorank instance) {
+        this.plugin = instance;
+    }
+
+    /**
+     * Get the local play time of a player on this server as stored by Autorank.
+     *
+     * @param type
+     *            Type of time
+     * @param uuid
+     *            UUID of the player
+     * @return play time of that player or 0 if not found.
+     */
+    public abstract int getLocalTime(TimeType type, UUID uuid);
+
+    /**
+     * Set the local play time of a player. Daily, weekly and monthly time are
+     * set by clearing the other days of the period and storing the value as
+     * the time of today, so changing one of them also changes the others.
+     *
+     * @param type
+     *            Type of time
+     * @param value
+     *            Value (in minutes) to set the play time to.
+     * @param uuid
+     *            UUID of the player
+     * @return a future that is done when the time is set.
+     */
+    public Future<?> setLocalTime(final TimeType type, final int value, final UUID uuid) {
+        return writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                doSetLocalTime(type, value, uuid);
+                updateRankings(uuid);
+            }
+        });
+    }
+
+    /**
+     * Set the local play time of a player. Only called by the writer.
+     *
+     * @see #setLocalTime(TimeType, int, UUID)
+     */
+    protected abstract void doSetLocalTime(TimeType type, int value, UUID uuid);
+
+    /**
+     * Set the total time of many players at once, for example when importing
+     * data. Backends that can store many values at once faster than one by
+     * one should override this.
+     *
+     * @param totalTimes
+     *            UUIDs of players and the total time (in minutes) to set. The
+     *            map must not be changed afterwards.
+     * @return a future that is done when the times are set.
+     */
+    public Future<?> setTotalTimes(final Map<UUID, Integer> totalTimes) {
+        return writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                doSetTotalTimes(totalTimes);
+
+                for (final UUID uuid : totalTimes.keySet()) {
+                    updateRankings(uuid);
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the total time of many players at once. Only called by the writer.
+     *
+     * @see #setTotalTimes(Map)
+     */
+    protected void doSetTotalTimes(final Map<UUID, Integer> totalTimes) {
+        for (final Entry<UUID, Integer> entry : totalTimes.entrySet()) {
+            doSetLocalTime(TimeType.TOTAL_TIME, entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * Add local play time of a player to the currently stored play time. Time
+     * that is added to daily, weekly or monthly time is added to the time of
+     * today, so it counts for all three of them.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param timeDifference
+     *            Time (in minutes) to add
+     * @param type
+     *            Type of time
+     * @return a future that is done when the time is added.
+     */
+    public Future<?> addLocalTime(final UUID uuid, final int timeDifference, final TimeType type) {
+        return writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                doAddLocalTime(uuid, timeDifference, type);
+                updateRankings(uuid);
+            }
+        });
+    }
+
+    /**
+     * Remove local play time of a player from the currently stored play time.
+     * The play time never drops below zero. Reading the stored time and
+     * changing it is a single change, so time that is added in the meantime
+     * is not lost.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param minutes
+     *            Time (in minutes) to remove
+     * @param type
+     *            Type of time
+     * @return a future with the play time (in minutes) after the time was
+     *         removed.
+     */
+    public Future<Integer> removeLocalTime(final UUID uuid, final int minutes, final TimeType type) {
+        return writer.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                final int value = Math.max(getLocalTime(type, uuid) - minutes, 0);
+
+                doSetLocalTime(type, value, uuid);
+                updateRankings(uuid);
+
+                return value;
+            }
+        });
+    }
+
+    /**
+     * Add local play time of a player. Only called by the writer.
+     *
+     * @see #addLocalTime(UUID, int, TimeType)
+     */
+    protected abstract void doAddLocalTime(UUID uuid, int timeDifference, TimeType type);
+
+    /**
+     * Add time that a player has played. This is added to the total time and
+     * to the time of today (and therefore to the daily, weekly and monthly
+     * time).
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param minutes
+     *            Time (in minutes) to add
+     * @return a future that is done when the time is added.
+     */
+    public Future<?> addPlayedTime(final UUID uuid, final int minutes) {
+        return writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                doAddPlayedTime(uuid, minutes);
+                updateRankings(uuid);
+            }
+        });
+    }
+
+    /**
+     * Add time that a player has played. Only called by the writer.
+     *
+     * @see #addPlayedTime(UUID, int)
+     */
+    protected void doAddPlayedTime(final UUID uuid, final int minutes) {
+        doAddLocalTime(uuid, minutes, TimeType.TOTAL_TIME);
+        doAddLocalTime(uuid, minutes, TimeType.DAILY_TIME);
+    }
+
+    /**
+     * Get the time a player played in the last couple of days (including
+     * today).
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param days
+     *            Number of days to look back, at most
+     *            {@value PlaytimeIndex#HISTORY_DAYS}.
+     * @return play time (in minutes) of the player in the given number of
+     *         days.
+     */
+    public abstract int getRecentTime(UUID uuid, int days);
+
+    /**
+     * Get a copy of the play times of all players for a time type. This is
+     * much cheaper than looking up the time of every player separately.
+     * Players without any time of the given type are left out.
+     *
+     * @param type
+     *            Type of time
+     * @return a snapshot of all players and their play time (in minutes).
+     */
+    public abstract PlaytimeIndex.Snapshot getLocalTimes(TimeType type);
+
+    /**
+     * Get a copy of the time all players played in the last couple of days
+     * (including today). Players that did not play in these days are left out.
+     *
+     * @param days
+     *            Number of days to look back, at most
+     *            {@value PlaytimeIndex#HISTORY_DAYS}.
+     * @return a snapshot of all players and their recent play time (in
+     *         minutes).
+     */
+    public abstract PlaytimeIndex.Snapshot getRecentTimes(int days);
+
+    /**
+     * Get the players sorted on their time. The ranking is kept up to date
+     * with every change, so it can be read at any time. It is built the
+     * first time it is asked for, which blocks the thread it's on until all
+     * changes that were made before are applied.
+     *
+     * @param type
+     *            Type of time
+     * @return the players sorted on their time of the given type. It should
+     *         not be changed.
+     */
+    public RankedIndex getRanking(final TimeType type) {
+        final RankedIndex ranking = rankings.get(type);
+
+        if (ranking != null) {
+            return ranking;
+        }
+
+        return writer.call(new Callable<RankedIndex>() {
+            @Override
+            public RankedIndex call() {
+                final RankedIndex existing = rankings.get(type);
+
+                if (existing != null) {
+                    return existing;
+                }
+
+                final PlaytimeIndex.Snapshot times = getLocalTimes(type);
+                final RankedIndex newRanking = new RankedIndex();
+
+                for (int i = 0; i < times.size(); i++) {
+                    newRanking.set(times.getUUID(i), times.getValue(i));
+                }
+
+                rankings.put(type, newRanking);
+
+                return newRanking;
+            }
+        });
+    }
+
+    /**
+     * Get the version of the ranking of a time type (see
+     * {@link RankedIndex#getVersion()}). This does not build the ranking, so
+     * it never blocks.
+     *
+     * @param type
+     *            Type of time
+     * @return the version of the ranking, or -1 if the ranking is not built
+     *         (yet).
+     */
+    public long getRankingVersion(final TimeType type) {
+        final RankedIndex ranking = rankings.get(type);
+
+        return ranking == null ? -1 : ranking.getVersion();
+    }
+
+    /**
+     * Update the rank of a player in every ranking that was built. Only
+     * called by the writer.
+     */
+    private void updateRankings(final UUID uuid) {
+        for (final Entry<TimeType, RankedIndex> entry : rankings.entrySet()) {
+            entry.getValue().set(uuid, getLocalTime(entry.getKey(), uuid));
+        }
+    }
+
+    /**
+     * Get all players that have not been online for more than
+     * {@value #OLD_ENTRY_DAYS} days. Autorank keeps track of when it last saw
+     * each player, so only players that were not seen for that long are
+     * looked at.
+     *
+     * @return a list of UUIDs of inactive players.
+     */
+    public List<UUID> getInactivePlayers() {
+        final List<UUID> unseenPlayers = writer.call(new Callable<List<UUID>>() {
+            @Override
+            public List<UUID> call() {
+                return findUnseenPlayers();
+            }
+        });
+
+        // Players that were not seen yet get the day the server last saw them. Looking that up is slow, so it is
+        // not done by the writer: only the results are stored by it, in batches.
+        for (int start = 0; start < unseenPlayers.size(); start += LAST_PLAYED_BATCH_SIZE) {
+            final Map<UUID, Integer> lastPlayedDays = new HashMap<UUID, Integer>();
+
+            for (final UUID uuid : unseenPlayers.subList(start,
+                    Math.min(start + LAST_PLAYED_BATCH_SIZE, unseenPlayers.size()))) {
+                lastPlayedDays.put(uuid, getLastPlayedDay(uuid));
+            }
+
+            writer.run(new Runnable() {
+                @Override
+                public void run() {
+                    doSetLastPlayedDays(lastPlayedDays);
+                }
+            });
+        }
+
+        return writer.call(new Callable<List<UUID>>() {
+            @Override
+            public List<UUID> call() {
+                return findInactivePlayers();
+            }
+        });
+    }
+
+    /**
+     * Get all players with a total time of which Autorank does not know when
+     * they were last seen. Only called by the writer.
+     *
+     * @see #getInactivePlayers()
+     */
+    protected abstract List<UUID> findUnseenPlayers();
+
+    /**
+     * Store the day players were last seen, for players of which it is not
+     * known yet. Only called by the writer.
+     *
+     * @param lastPlayedDays
+     *            Day every player last played, or -1 if it is not known
+     * @see #getInactivePlayers()
+     */
+    protected abstract void doSetLastPlayedDays(Map<UUID, Integer> lastPlayedDays);
+
+    /**
+     * Get all players that have not been online for a while. Only called by
+     * the writer.
+     *
+     * @see #getInactivePlayers()
+     */
+    protected abstract List<UUID> findInactivePlayers();
+
+    /**
+     * Remove the total time of a player and forget when the player was last
+     * seen. The day history of the player is kept; it is removed after
+     * {@value PlaytimeIndex#HISTORY_DAYS} days anyway.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return a future that is done when the player is removed.
+     */
+    public Future<?> removePlayer(final UUID uuid) {
+        return writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                doRemovePlayer(uuid);
+                updateRankings(uuid);
+            }
+        });
+    }
+
+    /**
+     * Remove the total time of a player. Only called by the writer.
+     *
+     * @see #removePlayer(UUID)
+     */
+    protected abstract void doRemovePlayer(UUID uuid);
+
+    /**
+     * Record that a player is online today. Should be called when a player
+     * joins or leaves and every time the play time of online players is
+     * updated.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return a future that is done when the day is stored.
+     */
+    public Future<?> updateLastSeen(final UUID uuid) {
+        return writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                doUpdateLastSeen(uuid);
+            }
+        });
+    }
+
+    /**
+     * Record that a player is online today. Only called by the writer.
+     *
+     * @see #updateLastSeen(UUID)
+     */
+    protected abstract void doUpdateLastSeen(UUID uuid);
+
+    /**
+     * Get the day a player was last online according to the server. This is
+     * slow, as the server may have to read the data file of the player, so it
+     * should only be used for players that Autorank has not seen itself (for
+     * example when data of an older version of Autorank is used).
+     *
+     * @param uuid
+     *            UUID of the player
+     * @return the day the player last played, or -1 if the server does not
+     *         know the player.
+     */
+    protected int getLastPlayedDay(final UUID uuid) {
+        final OfflinePlayer offPlayer = plugin.getServer().getOfflinePlayer(uuid);
+
+        if (offPlayer.getName() == null || offPlayer.getLastPlayed() <= 0) {
+            return -1;
+        }
+
+        final Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(offPlayer.getLastPlayed());
+
+        return getDay(cal);
+    }
+
+    /**
+     * Reset the data of a certain time type. For daily, weekly and monthly
+     * time, the history of the current day, week or month is cleared.
+     *
+     * @param type
+     *            Type of time
+     * @return a future that is done when the data is reset.
+     */
+    public Future<?> resetDatafile(final TimeType type) {
+        return writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                doResetDatafile(type);
+                // Clearing days changes the daily, weekly and monthly time at once.
+                rankings.clear();
+            }
+        });
+    }
+
+    /**
+     * Reset the data of a certain time type. Only called by the writer.
+     *
+     * @see #resetDatafile(TimeType)
+     */
+    protected abstract void doResetDatafile(TimeType type);
+
+    /**
+     * Wait until all changes that were made so far are applied.
+     */
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * Make sure all changes are stored on disk.
+     */
+    public abstract void saveFiles();
+
+    /**
+     * Apply all remaining changes, save all data and release the files that
+     * are used. Should be called when Autorank is disabled.
+     */
+    public void shutdown() {
+        if (!writer.shutdown()) {
+            plugin.getLogger().warning("Not all play time changes could be applied before shutting down!");
+        }
+
+        doShutdown();
+    }
+
+    /**
+     * Save all data and release the files that are used. Called after all
+     * changes are applied.
+     */
+    protected abstract void doShutdown();
+
+    /**
+     * Import total play time from the {@link TimeType#TOTAL_TIME} data file.
+     */
+    public void importData() {
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                doImportData();
+                rankings.clear();
+            }
+        });
+    }
+
+    /**
+     * Import total play time. Only called by the writer.
+     *
+     * @see #importData()
+     */
+    protected abstract void doImportData();
+
+    /**
+     * Reload all data files from disk. Any changes that were not saved yet are
+     * lost.
+     */
+    public void reloadDataFiles() {
+        writer.run(new Runnable() {
+            @Override
+            public void run() {
+                doReloadDataFiles();
+                rankings.clear();
+            }
+        });
+    }
+
+    /**
+     * Reload all data files from disk. Only called by the writer.
+     *
+     * @see #reloadDataFiles()
+     */
+    protected abstract void doReloadDataFiles();
+
+    /**
+     * Get the paths (relative to the data folder of Autorank) of the files
+     * that contain the play time of players. These are used for backups.
+     *
+     * @return a collection of paths of data files.
+     */
+    public abstract Collection<String> getDataFilePaths();
+
+    /**
+     * Get a list of all the player UUIDs that are stored in a data file
+     *
+     * @param type
+     *            Type of time.
+     * @return a list of UUIDs of players that are stored in the given data
+     *         file.
+     */
+    public List<UUID> getUUIDKeys(final TimeType type) {
+        final PlaytimeIndex.Snapshot snapshot = getLocalTimes(type);
+
+        final List<UUID> uuids = new ArrayList<UUID>(snapshot.size());
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            uuids.add(snapshot.getUUID(i));
+        }
+
+        return uuids;
+    }
+
+    /**
+     * Get a list of all the player names that are stored in a data file
+     *
+     * @param type
+     *            Type of time.
+     * @return a list of names of players that are stored in the given data
+     *         file.
+     */
+    public List<String> getPlayerKeys(final TimeType type) {
+        final List<UUID> uuids = getUUIDKeys(type);
+
+        final List<String> playerNames = new ArrayList<String>();
+
+        final Map<UUID, String> foundPlayers = UUIDManager.getPlayers(uuids);
+
+        for (final Entry<UUID, String> entry : foundPlayers.entrySet()) {
+            playerNames.add(entry.getValue());
+        }
+
+        return playerNames;
+    }
+
+    /**
+     * Check whether a new day, week or month has started. Autorank stores what
+     * values were previously found for the day, week and month and compares
+     * these to the current values. Daily, weekly and monthly time are computed
+     * from the day history, so no data has to be reset; only the leaderboards
+     * are refreshed.
+     */
+    public void doCalendarCheck() {
+        // Check if a new day, week or month has started.
+
+        final Calendar cal = Calendar.getInstance();
+        cal.setFirstDayOfWeek(Calendar.MONDAY);
+
+        for (final TimeType type : TimeType.values()) {
+            if (this.shouldResetDatafile(type)) {
+
+                int value = 0;
+                if (type == TimeType.DAILY_TIME) {
+                    value = cal.get(Calendar.DAY_OF_WEEK);
+
+                    if (plugin.getConfigHandler().shouldBroadcastDataReset()) {
+                        // Should we broadcast the reset?
+                        plugin.getServer().broadcastMessage(Lang.RESET_DAILY_TIME.getConfigValue());
+                    }
+
+                } else if (type == TimeType.WEEKLY_TIME) {
+                    value = cal.get(Calendar.WEEK_OF_YEAR);
+
+                    if (plugin.getConfigHandler().shouldBroadcastDataReset()) {
+                        // Should we broadcast the reset?
+
+                        plugin.getServer().broadcastMessage(Lang.RESET_WEEKLY_TIME.getConfigValue());
+                    }
+                } else if (type == TimeType.MONTHLY_TIME) {
+                    value = cal.get(Calendar.MONTH);
+
+                    if (plugin.getConfigHandler().shouldBroadcastDataReset()) {
+                        // Should we broadcast the reset?
+
+                        plugin.getServer().broadcastMessage(Lang.RESET_MONTHLY_TIME.getConfigValue());
+                    }
+                }
+
+                // The time of all players changed, so sort them again.
+                writer.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        rankings.remove(type);
+                    }
+                });
+
+                // Update tracked data type
+                plugin.getInternalPropertiesConfig().setTrackedTimeType(type, value);
+                // The cached leaderboard is outdated now.
+                plugin.getLeaderboardManager().invalidateLeaderboard(type);
+
+                // Update leaderboard of reset time
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+                    public void run() {
+                        plugin.getLeaderboardManager().updateLeaderboard(type);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Check whether a new period (day, week or month) has started for a time
+     * type since it was last checked.
+     *
+     * @param type
+     *            Type of time
+     * @return true if a new period has started, false otherwise.
+     */
+    public boolean shouldResetDatafile(final TimeType type) {
+        // Should we reset a specific data file?
+        // Compare date to last date in internal properties
+        final Calendar cal = Calendar.getInstance();
+        cal.setFirstDayOfWeek(Calendar.MONDAY);
+
+        if (type == TimeType.DAILY_TIME) {
+            return cal.get(Calendar.DAY_OF_WEEK) != plugin.getInternalPropertiesConfig().getTrackedTimeType(type);
+        } else if (type == TimeType.WEEKLY_TIME) {
+            return cal.get(Calendar.WEEK_OF_YEAR) != plugin.getInternalPropertiesConfig().getTrackedTimeType(type);
+        } else if (type == TimeType.MONTHLY_TIME) {
+            return cal.get(Calendar.MONTH) != plugin.getInternalPropertiesConfig().getTrackedTimeType(type);
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the current day, as the number of days since 1 January 1970 in the
+     * time zone of the server.
+     *
+     * @return the number of the current day.
+     */
+    public static int getCurrentDay() {
+        return getDay(Calendar.getInstance());
+    }
+
+    protected static int getDay(final Calendar cal) {
+        final long localTime = cal.getTimeInMillis() + cal.get(Calendar.ZONE_OFFSET) + cal.get(Calendar.DST_OFFSET);
+
+        return (int) (localTime / MILLIS_PER_DAY);
+    }
+
+    /**
+     * Get the first day of the period of a time type. For daily time, this is
+     * today. For weekly time, this is the last monday. For monthly time, this
+     * is the first day of the month.
+     */
+    protected static int getFirstDay(final TimeType type, final Calendar cal) {
+        final int today = getDay(cal);
+
+        if (type == TimeType.WEEKLY_TIME) {
+            // Weeks start on monday
+            return today - (cal.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+        } else if (type == TimeType.MONTHLY_TIME) {
+            return today - (cal.get(Calendar.DAY_OF_MONTH) - 1);
+        }
+
+        return today;
+    }
+}
@@ -0,0 +1,323 @@
+package me.armar.plugins.autorank.data.archive;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.flatfile.PlaytimeIndex;
+import me.armar.plugins.autorank.data.transfer.PlayerRecord;
+import me.armar.plugins.autorank.util.DataWriter;
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This class moves data of inactive players out of memory and into an archive
+ * file. The total time and the progress (see
+ * {@link me.armar.plugins.autorank.config.PlayerDataConfig}) of a player are
+ * archived together, and are restored as soon as the player joins again or is
+ * looked up by a command.
+ * <p>
+ * This way, the memory Autorank uses depends on the number of active players
+ * instead of the number of players that ever joined.
+ *
+ * @author Staartvin
+ */
+public class ArchiveManager {
+
+    // Path of the archive file, relative to the data folder of Autorank
+    private static final String ARCHIVE_PATH = "/data/Archive.dat";
+
+    private static final int PAYLOAD_VERSION = 1;
+
+    private final Autorank plugin;
+
+    private final PlayerArchive archive;
+
+    // Whether the archive file could be opened
+    private volatile boolean available = false;
+
+    public ArchiveManager(final Autorank instance) {
+        this.plugin = instance;
+
+        this.archive = new PlayerArchive(new File(plugin.getDataFolder(), ARCHIVE_PATH));
+
+        try {
+            archive.open();
+            available = true;
+
+            plugin.debugMessage("Loaded archive with data of " + archive.size() + " players.");
+        } catch (final IOException e) {
+            plugin.getLogger().severe("Could not open archive file, data of inactive players is deleted instead!");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Archive the data of all players that have not been online for a while.
+     *
+     * @return the number of players that were archived.
+     */
+    public int archiveInactivePlayers() {
+        return archivePlayers(plugin.getPlaytimeStorage().getInactivePlayers());
+    }
+
+    /**
+     * Archive the data of all players that have a total time below a
+     * threshold.
+     *
+     * @param minimum Lowest total time (in minutes) of a player that is not
+     *                archived
+     * @return the number of players that were archived.
+     */
+    public int archive(final int minimum) {
+        final PlaytimeIndex.Snapshot totalTimes = plugin.getPlaytimeStorage().getLocalTimes(TimeType.TOTAL_TIME);
+
+        final List<UUID> uuids = new ArrayList<UUID>();
+
+        for (int i = 0; i < totalTimes.size(); i++) {
+            if (totalTimes.getValue(i) < minimum) {
+                uuids.add(totalTimes.getUUID(i));
+            }
+        }
+
+        return archivePlayers(uuids);
+    }
+
+    private synchronized int archivePlayers(final List<UUID> uuids) {
+        // Make sure the time that is archived includes all changes.
+        plugin.getPlaytimeStorage().flush();
+
+        int counter = 0;
+
+        for (final UUID uuid : uuids) {
+            if (archivePlayer(uuid)) {
+                counter++;
+            }
+        }
+
+        if (!available) {
+            return counter;
+        }
+
+        archive.flush();
+
+        plugin.getPlaytimeStorage().flush();
+
+        // Make sure removed players do not come back from the hot data files after a crash.
+        plugin.getPlaytimeStorage().saveFiles();
+
+        if (archive.shouldCompact()) {
+            try {
+                archive.compact();
+            } catch (final IOException e) {
+                plugin.getLogger().warning("Could not compact archive file!");
+                e.printStackTrace();
+            }
+        }
+
+        return counter;
+    }
+
+    /**
+     * Move the data of a player to the archive.
+     *
+     * @return true if the player had data, false otherwise.
+     */
+    private boolean archivePlayer(final UUID uuid) {
+        // Merge with data that was archived before, so that is not overwritten.
+        restoreArchivedPlayer(uuid);
+
+        final int totalTime = plugin.getPlaytimeStorage().getLocalTime(TimeType.TOTAL_TIME, uuid);
+        final String progress = plugin.getPlayerDataConfig().exportPlayerData(uuid);
+
+        if (available && (totalTime > 0 || progress != null)) {
+            try {
+                archive.store(uuid, writePayload(totalTime, progress));
+            } catch (final IOException e) {
+                plugin.getLogger().warning("Could not archive data of " + uuid + ", it is kept instead.");
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        plugin.getPlaytimeStorage().removePlayer(uuid);
+
+        if (progress != null) {
+            plugin.getPlayerDataConfig().removePlayerData(uuid);
+        }
+
+        return totalTime > 0 || progress != null;
+    }
+
+    /**
+     * Restore the data of a player if it was archived, and run a task on the
+     * main thread afterwards. The data is restored on another thread, so the
+     * main thread does not wait for the disk. When the player is not
+     * archived, the task is run right away.
+     *
+     * @param uuid UUID of the player, can be null
+     * @param task Task to run when the data of the player is restored
+     */
+    public void restorePlayer(final UUID uuid, final Runnable task) {
+        if (uuid == null || !isArchived(uuid)) {
+            task.run();
+            return;
+        }
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            @Override
+            public void run() {
+                restorePlayer(uuid);
+
+                plugin.getServer().getScheduler().runTask(plugin, task);
+            }
+        });
+    }
+
+    /**
+     * Restore the data of a player if it was archived. Time the player
+     * gathered since it was archived is kept. <br>
+     * This reads from the disk and waits for the time to be stored, so it
+     * should not be called on the main thread (see
+     * {@link #restorePlayer(UUID, Runnable)}).
+     *
+     * @param uuid UUID of the player, can be null
+     * @return true if data of the player was restored, false otherwise.
+     */
+    public boolean restorePlayer(final UUID uuid) {
+        // Most players are not archived, so do not wait for archiving that is running.
+        if (uuid == null || !isArchived(uuid)) {
+            return false;
+        }
+
+        synchronized (this) {
+            return restoreArchivedPlayer(uuid);
+        }
+    }
+
+    private boolean restoreArchivedPlayer(final UUID uuid) {
+        // The player may have been restored while waiting.
+        if (!isArchived(uuid)) {
+            return false;
+        }
+
+        final PlayerRecord record = getArchivedRecord(uuid);
+
+        if (record == null) {
+            return false;
+        }
+
+        try {
+            if (record.getTotalTime() > 0) {
+                // Wait for the time to be added, so it is not archived twice when the player is archived again.
+                DataWriter.await(
+                        plugin.getPlaytimeStorage().addLocalTime(uuid, record.getTotalTime(), TimeType.TOTAL_TIME));
+            }
+
+            if (record.getProgress() != null) {
+                plugin.getPlayerDataConfig().importPlayerData(uuid, record.getProgress());
+            }
+
+            archive.remove(uuid);
+        } catch (final IOException e) {
+            plugin.getLogger().warning("Could not restore archived data of " + uuid + "!");
+            e.printStackTrace();
+            return false;
+        } catch (final InvalidConfigurationException e) {
+            plugin.getLogger().warning("Could not restore archived progress of " + uuid + "!");
+            e.printStackTrace();
+            return false;
+        }
+
+        plugin.debugMessage("Restored archived data of " + uuid);
+
+        return true;
+    }
+
+    /**
+     * Read the archived data of a player, without restoring it.
+     *
+     * @param uuid UUID of the player
+     * @return the archived data of the player, or null if the player is not
+     * archived or the data could not be read.
+     */
+    public synchronized PlayerRecord getArchivedRecord(final UUID uuid) {
+        if (!isArchived(uuid)) {
+            return null;
+        }
+
+        try {
+            final DataInputStream input = new DataInputStream(new ByteArrayInputStream(archive.load(uuid)));
+
+            if (input.readInt() != PAYLOAD_VERSION) {
+                plugin.getLogger().warning("Archived data of " + uuid + " has an unknown format!");
+                return null;
+            }
+
+            final int totalTime = input.readInt();
+
+            final byte[] progress = new byte[input.readInt()];
+            input.readFully(progress);
+
+            return new PlayerRecord(uuid, totalTime, progress.length > 0 ? new String(progress, "UTF-8") : null);
+        } catch (final IOException e) {
+            plugin.getLogger().warning("Could not read archived data of " + uuid + "!");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static byte[] writePayload(final int totalTime, final String progress) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+
+        final byte[] progressBytes = progress == null ? new byte[0] : progress.getBytes("UTF-8");
+
+        output.writeInt(PAYLOAD_VERSION);
+        output.writeInt(totalTime);
+        output.writeInt(progressBytes.length);
+        output.write(progressBytes);
+        output.close();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Check whether data of a player is archived.
+     */
+    public boolean isArchived(final UUID uuid) {
+        return available && archive.contains(uuid);
+    }
+
+    /**
+     * Get the UUIDs of all players whose data is archived.
+     */
+    public List<UUID> getArchivedPlayers() {
+        return available ? archive.getUUIDs() : new ArrayList<UUID>();
+    }
+
+    /**
+     * Get the number of players whose data is archived.
+     */
+    public int getArchivedPlayerCount() {
+        return available ? archive.size() : 0;
+    }
+
+    /**
+     * Get the path of the archive file, relative to the data folder of
+     * Autorank.
+     */
+    public String getArchivePath() {
+        return ARCHIVE_PATH;
+    }
+
+    /**
+     * Close the archive file. Should be called when Autorank is disabled.
+     */
+    public synchronized void shutdown() {
+        archive.close();
+        available = false;
+    }
+}
@@ -0,0 +1,509 @@
+package me.armar.plugins.autorank.data.archive;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An append-only file that stores a compressed blob of data per player.
+ * Storing data of a player again or removing it appends a new record; the
+ * last record of a player is the one that counts. Only the position of the
+ * last record of every player is kept in memory, in primitive arrays.
+ * <p>
+ * Records that are not used anymore are removed by {@link #compact()}.
+ * <p>
+ * All methods are thread-safe.
+ *
+ * @author Staartvin
+ */
+public class PlayerArchive {
+
+    private static final int FILE_MAGIC = 0x41524143;
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte OP_STORE = 1;
+    private static final byte OP_REMOVE = 2;
+
+    // Operation, UUID, compressed length and original length
+    private static final int RECORD_HEADER_SIZE = 1 + 8 + 8 + 4 + 4;
+
+    // Only compact files that are at least this large
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final File file;
+
+    private RandomAccessFile data = null;
+
+    // Open addressing table of UUIDs and the position of their last record; a position of 0 is an empty slot.
+    private long[] mostSigBits = new long[INITIAL_CAPACITY];
+    private long[] leastSigBits = new long[INITIAL_CAPACITY];
+    private long[] positions = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // Number of records in the file that are not the last record of a player
+    private long unusedRecords = 0;
+
+    public PlayerArchive(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Open the archive file, creating it if it does not exist, and read the
+     * position of the last record of every player. A record that was only
+     * partly written (because the server crashed) is thrown away.
+     *
+     * @throws IOException if the file could not be opened or has an unknown
+     *                     format.
+     */
+    public synchronized void open() throws IOException {
+        file.getParentFile().mkdirs();
+
+        final File tempFile = getTempFile();
+
+        // A compaction could not replace the archive file, so the compacted file is the only one left.
+        if (!file.exists() && tempFile.exists()) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        data = new RandomAccessFile(file, "rw");
+
+        clearPositions();
+
+        if (data.length() < HEADER_SIZE) {
+            data.setLength(0);
+            data.writeInt(FILE_MAGIC);
+            data.writeInt(FILE_VERSION);
+            return;
+        }
+
+        if (data.readInt() != FILE_MAGIC || data.readInt() != FILE_VERSION) {
+            data.close();
+            data = null;
+
+            throw new IOException("Archive file " + file.getName() + " has an unknown format");
+        }
+
+        final long length = data.length();
+        final DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+
+        long position = HEADER_SIZE;
+
+        try {
+            skipFully(input, HEADER_SIZE);
+
+            while (position + RECORD_HEADER_SIZE <= length) {
+                final byte operation = input.readByte();
+                final long msb = input.readLong();
+                final long lsb = input.readLong();
+                final int storedLength = input.readInt();
+                input.readInt();
+
+                if (storedLength < 0 || position + RECORD_HEADER_SIZE + storedLength > length) {
+                    break;
+                }
+
+                skipFully(input, storedLength);
+
+                if (operation == OP_STORE) {
+                    putPosition(msb, lsb, position);
+                } else {
+                    removePosition(msb, lsb);
+                    unusedRecords++;
+                }
+
+                position += RECORD_HEADER_SIZE + storedLength;
+            }
+        } finally {
+            input.close();
+        }
+
+        // Get rid of a record that was not completely written.
+        if (position < length) {
+            data.setLength(position);
+        }
+    }
+
+    private static void skipFully(final DataInput input, final int bytes) throws IOException {
+        int skipped = 0;
+
+        while (skipped < bytes) {
+            final int step = input.skipBytes(bytes - skipped);
+
+            if (step <= 0) {
+                throw new EOFException();
+            }
+
+            skipped += step;
+        }
+    }
+
+    /**
+     * Close the archive file.
+     */
+    public synchronized void close() {
+        if (data == null) {
+            return;
+        }
+
+        try {
+            data.close();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+
+        data = null;
+    }
+
+    /**
+     * Check whether data of a player is stored in this archive.
+     */
+    public synchronized boolean contains(final UUID uuid) {
+        return getPosition(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) != 0;
+    }
+
+    /**
+     * Get the number of players in this archive.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Get the UUIDs of all players in this archive.
+     */
+    public synchronized List<UUID> getUUIDs() {
+        final List<UUID> uuids = new ArrayList<UUID>(size);
+
+        for (int slot = 0; slot < positions.length; slot++) {
+            if (positions[slot] != 0) {
+                uuids.add(new UUID(mostSigBits[slot], leastSigBits[slot]));
+            }
+        }
+
+        return uuids;
+    }
+
+    /**
+     * Store data of a player. Data that was stored before is replaced.
+     *
+     * @param uuid    UUID of the player
+     * @param payload Data to store
+     * @throws IOException if the data could not be written.
+     */
+    public synchronized void store(final UUID uuid, final byte[] payload) throws IOException {
+        final byte[] compressed = compress(payload);
+        final long position = data.length();
+
+        writeRecord(position, OP_STORE, uuid, compressed, payload.length);
+
+        putPosition(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), position);
+    }
+
+    /**
+     * Get the data of a player.
+     *
+     * @param uuid UUID of the player
+     * @return the stored data, or null if there is no data of the player.
+     * @throws IOException if the data could not be read.
+     */
+    public synchronized byte[] load(final UUID uuid) throws IOException {
+        final long position = getPosition(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+        if (position == 0) {
+            return null;
+        }
+
+        data.seek(position + 1 + 8 + 8);
+
+        final byte[] compressed = new byte[data.readInt()];
+        final byte[] payload = new byte[data.readInt()];
+
+        data.readFully(compressed);
+
+        final Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(compressed);
+
+            if (inflater.inflate(payload) != payload.length) {
+                throw new IOException("Archived data of " + uuid + " is corrupt");
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException("Archived data of " + uuid + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        return payload;
+    }
+
+    /**
+     * Remove the data of a player.
+     *
+     * @param uuid UUID of the player
+     * @return true if there was data of the player, false otherwise.
+     * @throws IOException if the removal could not be written.
+     */
+    public synchronized boolean remove(final UUID uuid) throws IOException {
+        if (!contains(uuid)) {
+            return false;
+        }
+
+        writeRecord(data.length(), OP_REMOVE, uuid, new byte[0], 0);
+
+        removePosition(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+        // The removal record itself is not needed after a compaction either.
+        unusedRecords++;
+
+        return true;
+    }
+
+    private void writeRecord(final long position, final byte operation, final UUID uuid, final byte[] stored,
+                             final int length) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORD_HEADER_SIZE + stored.length);
+        final DataOutputStream output = new DataOutputStream(bytes);
+
+        output.writeByte(operation);
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+        output.writeInt(stored.length);
+        output.writeInt(length);
+        output.write(stored);
+
+        data.seek(position);
+        data.write(bytes.toByteArray());
+    }
+
+    private static byte[] compress(final byte[] payload) {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(payload.length / 2 + 16);
+        final byte[] buffer = new byte[1024];
+
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Make sure all records are written to the disk.
+     */
+    public synchronized void flush() {
+        try {
+            data.getFD().sync();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Check whether the archive file contains so many unused records that it
+     * should be compacted.
+     */
+    public synchronized boolean shouldCompact() {
+        try {
+            return data.length() >= MIN_COMPACTION_SIZE && unusedRecords > size;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Rewrite the archive file so it only contains the last record of every
+     * player. The new file is written next to the archive file first, so a
+     * crash while compacting does not corrupt the archive.
+     *
+     * @throws IOException if the archive could not be compacted.
+     */
+    public synchronized void compact() throws IOException {
+        final File tempFile = getTempFile();
+
+        final long[] newPositions = new long[positions.length];
+
+        final FileOutputStream fileOutput = new FileOutputStream(tempFile);
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput, 64 * 1024));
+
+        try {
+            output.writeInt(FILE_MAGIC);
+            output.writeInt(FILE_VERSION);
+
+            long position = HEADER_SIZE;
+
+            for (int slot = 0; slot < positions.length; slot++) {
+                if (positions[slot] == 0) {
+                    continue;
+                }
+
+                data.seek(positions[slot] + 1 + 8 + 8);
+
+                final byte[] record = new byte[RECORD_HEADER_SIZE + data.readInt()];
+                data.seek(positions[slot]);
+                data.readFully(record);
+
+                output.write(record);
+
+                newPositions[slot] = position;
+                position += record.length;
+            }
+
+            // The new file has to be on the disk before it replaces the archive file.
+            output.flush();
+            fileOutput.getFD().sync();
+        } finally {
+            output.close();
+        }
+
+        data.close();
+        data = null;
+
+        try {
+            // Replace the archive file in one step, so it is never missing.
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            // The archive file was not replaced, so keep using it.
+            if (file.exists()) {
+                tempFile.delete();
+                data = new RandomAccessFile(file, "rw");
+            } else {
+                // Only the new file is left, so use that one. It is moved in place when the archive is opened again.
+                data = new RandomAccessFile(tempFile, "rw");
+                positions = newPositions;
+                unusedRecords = 0;
+            }
+
+            throw new IOException("Could not replace archive file " + file.getName(), e);
+        }
+
+        data = new RandomAccessFile(file, "rw");
+
+        positions = newPositions;
+        unusedRecords = 0;
+    }
+
+    private File getTempFile() {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    private void clearPositions() {
+        mostSigBits = new long[INITIAL_CAPACITY];
+        leastSigBits = new long[INITIAL_CAPACITY];
+        positions = new long[INITIAL_CAPACITY];
+        size = 0;
+        unusedRecords = 0;
+    }
+
+    private static int hash(final long msb, final long lsb) {
+        long hash = msb ^ lsb;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return (int) hash;
+    }
+
+    private int findSlot(final long msb, final long lsb) {
+        final int mask = positions.length - 1;
+        int slot = hash(msb, lsb) & mask;
+
+        while (positions[slot] != 0 && (mostSigBits[slot] != msb || leastSigBits[slot] != lsb)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private long getPosition(final long msb, final long lsb) {
+        return positions[findSlot(msb, lsb)];
+    }
+
+    private void putPosition(final long msb, final long lsb, final long position) {
+        final int slot = findSlot(msb, lsb);
+
+        if (positions[slot] != 0) {
+            // The old record of this player is not used anymore.
+            unusedRecords++;
+        } else {
+            mostSigBits[slot] = msb;
+            leastSigBits[slot] = lsb;
+            size++;
+        }
+
+        positions[slot] = position;
+
+        if (size * 4 >= positions.length * 3) {
+            resize(positions.length * 2);
+        }
+    }
+
+    private void removePosition(final long msb, final long lsb) {
+        final int mask = positions.length - 1;
+        int slot = findSlot(msb, lsb);
+
+        if (positions[slot] == 0) {
+            return;
+        }
+
+        positions[slot] = 0;
+        size--;
+        unusedRecords++;
+
+        // Move entries after the removed slot back, so lookups do not stop at the gap.
+        int next = (slot + 1) & mask;
+
+        while (positions[next] != 0) {
+            final int home = hash(mostSigBits[next], leastSigBits[next]) & mask;
+
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                mostSigBits[slot] = mostSigBits[next];
+                leastSigBits[slot] = leastSigBits[next];
+                positions[slot] = positions[next];
+                positions[next] = 0;
+                slot = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void resize(final int capacity) {
+        final long[] oldMostSigBits = mostSigBits;
+        final long[] oldLeastSigBits = leastSigBits;
+        final long[] oldPositions = positions;
+
+        mostSigBits = new long[capacity];
+        leastSigBits = new long[capacity];
+        positions = new long[capacity];
+
+        for (int i = 0; i < oldPositions.length; i++) {
+            if (oldPositions[i] == 0) {
+                continue;
+            }
+
+            final int slot = findSlot(oldMostSigBits[i], oldLeastSigBits[i]);
+
+            mostSigBits[slot] = oldMostSigBits[i];
+            leastSigBits[slot] = oldLeastSigBits[i];
+            positions[slot] = oldPositions[i];
+        }
+    }
+}
@@ -2,13 +2,17 @@ package me.armar.plugins.autorank.data.flatfile;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.config.SimpleYamlConfiguration;
-import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.data.PlaytimeStorage;
 import me.armar.plugins.autorank.util.AutorankTools;
-import me.armar.plugins.autorank.util.uuid.UUIDManager;
-import org.bukkit.OfflinePlayer;
+import me.armar.plugins.autorank.util.DataLoader;
+import org.bukkit.configuration.file.YamlConfiguration;
 
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Future;
 
 /**
  * This class is used for getting and setting play time data of players.
@@ -20,282 +24,840 @@ import java.util.Map.Entry;
  * Type a nice description here
  *
  */
-public class FlatFileManager {
-
-    private Autorank plugin;
+public class FlatFileManager extends PlaytimeStorage {
 
     /**
-     * Get a data file for a specific time type.
+     * Get the file that the given time type is stored in. Daily, weekly and
+     * monthly time are all stored in the day history file.
      *
      * @param type
      *            Type of time
      * @return a data file where the given time type is stored.
      */
-    public SimpleYamlConfiguration getDataFile(final TimeType type) {
-        return dataFiles.get(type);
+    public File getDataFile(final TimeType type) {
+        return new File(plugin.getDataFolder(), dataTypePaths.get(type));
     }
 
     public static HashMap<TimeType, String> dataTypePaths = new HashMap<>();
 
-    private final HashMap<TimeType, SimpleYamlConfiguration> dataFiles = new HashMap<TimeType, SimpleYamlConfiguration>();
+    // Path of the file that stores the day history of all players
+    private static final String HISTORY_PATH = "/data/Day_history.dat";
+
+    // Path of the file that stores the day every player was last seen
+    private static final String LAST_SEEN_PATH = "/data/Last_seen.dat";
+
+    private static final int HISTORY_FILE_MAGIC = 0x41524448;
+    private static final int LAST_SEEN_FILE_MAGIC = 0x41524c53;
+    private static final int BINARY_FILE_VERSION = 1;
+
+    // Files that stored daily, weekly and monthly time before the day history was used
+    private static final HashMap<TimeType, String> legacyDataPaths = new HashMap<TimeType, String>();
+
+    static {
+        dataTypePaths.put(TimeType.TOTAL_TIME, "/data/Total_time.yml");
+        dataTypePaths.put(TimeType.DAILY_TIME, HISTORY_PATH);
+        dataTypePaths.put(TimeType.WEEKLY_TIME, HISTORY_PATH);
+        dataTypePaths.put(TimeType.MONTHLY_TIME, HISTORY_PATH);
+
+        legacyDataPaths.put(TimeType.DAILY_TIME, "/data/Daily_time.yml");
+        legacyDataPaths.put(TimeType.WEEKLY_TIME, "/data/Weekly_time.yml");
+        legacyDataPaths.put(TimeType.MONTHLY_TIME, "/data/Monthly_time.yml");
+    }
+
+    // All play times are kept in memory, the data files are only used to persist them.
+    private final PlaytimeIndex index = new PlaytimeIndex();
+
+    // The day every player was last seen online
+    private final LastSeenIndex lastSeen = new LastSeenIndex();
+
+    private final BinaryData lastSeenData = new BinaryData() {
+        @Override
+        public void read(final DataInput input) throws IOException {
+            lastSeen.read(input);
+        }
+
+        @Override
+        public long write(final DataOutput output) throws IOException {
+            return lastSeen.write(output);
+        }
+    };
+
+    // Modification counts of the indexes when they were last written to disk
+    private volatile long savedTotalModifications = -1;
+    private volatile long savedHistoryModifications = -1;
+    private volatile long savedLastSeenModifications = -1;
+
+    // Compact the journal into the data files every 30 minutes
+    private static final int COMPACTION_INTERVAL_MINUTES = 30;
+
+    // Compact earlier when the journal grows larger than this number of records
+    private static final long MAX_JOURNAL_RECORDS = 250000;
+
+    private final PlaytimeJournal journal;
+
+    // Whether a compaction is running at the moment
+    private boolean compacting = false;
+
+    private int minutesSinceCompaction = 0;
+
+    // Done when the data files are loaded and the journal is replayed
+    private final Future<?> loaded;
 
     public FlatFileManager(Autorank instance) {
-        this.plugin = instance;
+        super(instance);
+
+        this.journal = new PlaytimeJournal(new File(plugin.getDataFolder(), "data"));
+
+        // The calendar check updates the tracked periods on the main thread, so read them before loading.
+        final Set<TimeType> endedPeriods = getEndedPeriods();
+
+        // Load files in the background, methods that need the data wait until they are loaded.
+        this.loaded = plugin.getDataLoader().submit(new Runnable() {
+            public void run() {
+                final long startTime = System.currentTimeMillis();
+
+                try {
+                    // Load files
+                    loadDataFiles(endedPeriods);
+                    // Apply changes that were not stored in the data files yet
+                    replayJournal();
+                } catch (final RuntimeException e) {
+                    // Nothing may be saved now, as that would overwrite the data files with incomplete data.
+                    plugin.getLogger().severe("Could not load play time data!");
+                    throw e;
+                }
+
+                plugin.getLogger().info("Loaded play time data in " + (System.currentTimeMillis() - startTime)
+                        + " ms.");
+            }
+        });
 
-        // Load files
-        this.loadDataFiles();
         // Then register tasks
         this.registerTasks();
     }
 
     /**
-     * Load all the data files (daily time, weekly time, etc.).
+     * Wait until the data files are loaded. Should be called before the play
+     * time of players is used.
      */
-    public void loadDataFiles() {
+    private void awaitLoaded() {
+        if (!loaded.isDone()) {
+            plugin.debugMessage("Waiting for play time data to be loaded...");
+        }
 
-        dataTypePaths.put(TimeType.TOTAL_TIME, "/data/Total_time.yml");
-        dataTypePaths.put(TimeType.DAILY_TIME, "/data/Daily_time.yml");
-        dataTypePaths.put(TimeType.WEEKLY_TIME, "/data/Weekly_time.yml");
-        dataTypePaths.put(TimeType.MONTHLY_TIME, "/data/Monthly_time.yml");
+        DataLoader.await(loaded);
+    }
 
-        dataFiles.put(TimeType.TOTAL_TIME,
-                new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.TOTAL_TIME), "Total data"));
-        dataFiles.put(TimeType.DAILY_TIME,
-                new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.DAILY_TIME), "Daily data"));
-        dataFiles.put(TimeType.WEEKLY_TIME,
-                new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.WEEKLY_TIME), "Weekly data"));
-        dataFiles.put(TimeType.MONTHLY_TIME,
-                new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.MONTHLY_TIME), "Monthly data"));
+    /**
+     * Load all the data files (total time, day history and last seen) into
+     * memory.
+     *
+     * @param endedPeriods
+     *            Time types of which the period ended, see
+     *            {@link #convertLegacyDataFiles(Set)}
+     */
+    private void loadDataFiles(final Set<TimeType> endedPeriods) {
+        loadTotalTimes();
+        loadHistory(endedPeriods);
+        loadLastSeen();
     }
 
     /**
-     * Register tasks for saving and updating time of players.
+     * Get the time types of which the period (day, week or month) ended since
+     * Autorank last checked.
      */
-    public void registerTasks() {
-        // Run save task every 30 seconds
-        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
-            public void run() {
-                saveFiles();
+    private Set<TimeType> getEndedPeriods() {
+        final Set<TimeType> endedPeriods = EnumSet.noneOf(TimeType.class);
+
+        for (final TimeType type : TimeType.values()) {
+            if (this.shouldResetDatafile(type)) {
+                endedPeriods.add(type);
             }
-        }, AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_MINUTE);
+        }
+
+        return endedPeriods;
     }
 
     /**
-     * Save all data files.
+     * Load the total time data file into memory. Total times that were in
+     * memory are replaced.
      */
-    public void saveFiles() {
-        for (final Entry<TimeType, SimpleYamlConfiguration> entry : dataFiles.entrySet()) {
-            entry.getValue().saveFile();
+    private void loadTotalTimes() {
+        index.clearTotals();
+
+        readTotalTimes(plugin, index);
+
+        // Memory is the same as the data file now.
+        savedTotalModifications = index.getTotalModificationCount();
+    }
+
+    /**
+     * Read the total time data file of Autorank into an index. Total times of
+     * the index that are not in the file are left untouched.
+     *
+     * @param plugin
+     *            Autorank instance
+     * @param index
+     *            Index to read the total times into
+     */
+    public static void readTotalTimes(final Autorank plugin, final PlaytimeIndex index) {
+        final SimpleYamlConfiguration data = new SimpleYamlConfiguration(plugin,
+                dataTypePaths.get(TimeType.TOTAL_TIME), "Total data");
+
+        for (final String uuidString : data.getKeys(false)) {
+            UUID uuid = null;
+            try {
+                uuid = UUID.fromString(uuidString);
+            } catch (final IllegalArgumentException e) {
+                continue;
+            }
+
+            index.setTotal(uuid, data.getInt(uuidString, 0));
         }
     }
 
     /**
-     * Check whether all the data files are still correct or if they should be
-     * reset. Autorank stores what values were previously found for the day,
-     * week and month and compares these to the current values. If a new day has
-     * arrived, the daily time file has to be reset.
+     * Load the day history file into memory. If daily, weekly or monthly data
+     * files of an older version of Autorank are found, they are converted to
+     * the day history.
      */
-    public void doCalendarCheck() {
-        // Check if all data files are still up to date.
-        // Check if daily, weekly or monthly files should be reset.
+    private void loadHistory(final Set<TimeType> endedPeriods) {
+        index.clearHistory();
 
-        final Calendar cal = Calendar.getInstance();
-        cal.setFirstDayOfWeek(Calendar.MONDAY);
+        readHistoryFile(plugin, index);
 
-        for (final TimeType type : TimeType.values()) {
-            if (this.shouldResetDatafile(type)) {
+        savedHistoryModifications = index.getHistoryModificationCount();
 
-                // We should reset it now, it has expired.
-                this.resetDatafile(type);
+        convertLegacyDataFiles(endedPeriods);
+    }
 
-                int value = 0;
-                if (type == TimeType.DAILY_TIME) {
-                    value = cal.get(Calendar.DAY_OF_WEEK);
+    /**
+     * Read the day history file of Autorank into an index. Days of the index
+     * that are not in the file are left untouched.
+     *
+     * @param plugin
+     *            Autorank instance
+     * @param index
+     *            Index to read the day history into
+     * @return true if the day history file was read, false if it does not
+     *         exist or could not be read.
+     */
+    public static boolean readHistoryFile(final Autorank plugin, final PlaytimeIndex index) {
+        return readBinaryFile(plugin, HISTORY_PATH, HISTORY_FILE_MAGIC, "Day history", new BinaryData() {
+            @Override
+            public void read(final DataInput input) throws IOException {
+                index.readHistory(input);
+            }
 
-                    if (plugin.getConfigHandler().shouldBroadcastDataReset()) {
-                        // Should we broadcast the reset?
-                        plugin.getServer().broadcastMessage(Lang.RESET_DAILY_TIME.getConfigValue());
-                    }
+            @Override
+            public long write(final DataOutput output) throws IOException {
+                return index.writeHistory(output);
+            }
+        });
+    }
 
-                } else if (type == TimeType.WEEKLY_TIME) {
-                    value = cal.get(Calendar.WEEK_OF_YEAR);
+    /**
+     * Load the last seen file into memory.
+     */
+    private void loadLastSeen() {
+        lastSeen.clear();
+
+        readBinaryFile(plugin, LAST_SEEN_PATH, LAST_SEEN_FILE_MAGIC, "Last seen", lastSeenData);
 
-                    if (plugin.getConfigHandler().shouldBroadcastDataReset()) {
-                        // Should we broadcast the reset?
+        savedLastSeenModifications = lastSeen.getModificationCount();
+    }
 
-                        plugin.getServer().broadcastMessage(Lang.RESET_WEEKLY_TIME.getConfigValue());
-                    }
-                } else if (type == TimeType.MONTHLY_TIME) {
-                    value = cal.get(Calendar.MONTH);
+    private static boolean readBinaryFile(final Autorank plugin, final String path, final int magic,
+                                          final String name, final BinaryData data) {
+        final File dataFile = new File(plugin.getDataFolder(), path);
+
+        if (!dataFile.exists()) {
+            return false;
+        }
 
-                    if (plugin.getConfigHandler().shouldBroadcastDataReset()) {
-                        // Should we broadcast the reset?
+        DataInputStream input = null;
 
-                        plugin.getServer().broadcastMessage(Lang.RESET_MONTHLY_TIME.getConfigValue());
-                    }
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
+
+            if (input.readInt() != magic || input.readInt() != BINARY_FILE_VERSION) {
+                plugin.getLogger().warning(name + " file has an unknown format and was not loaded!");
+                return false;
+            }
+
+            data.read(input);
+        } catch (final IOException e) {
+            plugin.getLogger().severe("Could not load " + name.toLowerCase() + " file!");
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (final IOException e) {
+                    // Ignore
                 }
+            }
+        }
+
+        plugin.getLogger().info(name + " file loaded");
+
+        return true;
+    }
+
+    /**
+     * Convert the daily, weekly and monthly data files of older versions of
+     * Autorank to the day history. These files only store a sum per period, so
+     * the time is spread over the buckets such that the daily, weekly and
+     * monthly time of every player stay the same. The old files are deleted
+     * once the day history has been written.
+     *
+     * @param endedPeriods
+     *            Time types of which the period ended since Autorank last
+     *            checked. Their data files are not converted, as that data is
+     *            outdated.
+     */
+    private void convertLegacyDataFiles(final Set<TimeType> endedPeriods) {
+        final Map<TimeType, YamlConfiguration> legacyFiles = new EnumMap<TimeType, YamlConfiguration>(
+                TimeType.class);
+
+        for (final Entry<TimeType, String> entry : legacyDataPaths.entrySet()) {
+            final File file = new File(plugin.getDataFolder(), entry.getValue());
+
+            if (!file.exists()) {
+                continue;
+            }
+
+            // Data of a period that already ended is useless.
+            if (endedPeriods.contains(entry.getKey())) {
+                legacyFiles.put(entry.getKey(), new YamlConfiguration());
+            } else {
+                legacyFiles.put(entry.getKey(), YamlConfiguration.loadConfiguration(file));
+            }
+        }
+
+        if (legacyFiles.isEmpty()) {
+            return;
+        }
+
+        plugin.getLogger().info("Converting daily, weekly and monthly data files to day history...");
+
+        final Calendar cal = Calendar.getInstance();
+        final int today = getDay(cal);
+        final int weekStart = getFirstDay(TimeType.WEEKLY_TIME, cal);
+        final int monthStart = getFirstDay(TimeType.MONTHLY_TIME, cal);
+
+        final Set<String> uuidStrings = new HashSet<String>();
+
+        for (final YamlConfiguration data : legacyFiles.values()) {
+            uuidStrings.addAll(data.getKeys(false));
+        }
+
+        for (final String uuidString : uuidStrings) {
+            UUID uuid = null;
+            try {
+                uuid = UUID.fromString(uuidString);
+            } catch (final IllegalArgumentException e) {
+                continue;
+            }
+
+            final int daily = getLegacyTime(legacyFiles, TimeType.DAILY_TIME, uuidString);
+            final int weekly = Math.max(getLegacyTime(legacyFiles, TimeType.WEEKLY_TIME, uuidString), daily);
+            final int monthly = Math.max(getLegacyTime(legacyFiles, TimeType.MONTHLY_TIME, uuidString), weekly);
+
+            if (daily > 0) {
+                index.addToDay(uuid, today, daily);
+            }
+
+            // Time of this week (that was not played today) belongs to the start of the week.
+            if (weekly > daily) {
+                index.addToDay(uuid, Math.max(weekStart, monthStart), weekly - daily);
+            }
+
+            // Time of this month that was not played this week belongs to the start of the month.
+            if (monthly > weekly && monthStart < weekStart) {
+                index.addToDay(uuid, monthStart, monthly - weekly);
+            }
+        }
 
-                // Update tracked data type
-                plugin.getInternalPropertiesConfig().setTrackedTimeType(type, value);
-                // We reset leaderboard time so it refreshes again.
-                plugin.getInternalPropertiesConfig().setLeaderboardLastUpdateTime(type, 0);
+        if (!writeHistoryFile()) {
+            return;
+        }
+
+        for (final TimeType type : legacyFiles.keySet()) {
+            final File file = new File(plugin.getDataFolder(), legacyDataPaths.get(type));
 
-                // Update leaderboard of reset time
-                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-                    public void run() {
-                        plugin.getLeaderboardManager().updateLeaderboard(type);
-                    }
-                });
+            if (!file.delete()) {
+                plugin.getLogger().warning("Could not delete " + file.getName() + ", it is not used anymore.");
             }
         }
+
+        plugin.getLogger().info("Converted data of " + uuidStrings.size() + " players to day history.");
+    }
+
+    private int getLegacyTime(final Map<TimeType, YamlConfiguration> legacyFiles, final TimeType type,
+                              final String uuidString) {
+        final YamlConfiguration data = legacyFiles.get(type);
+
+        if (data == null) {
+            return 0;
+        }
+
+        return Math.max(data.getInt(uuidString, 0), 0);
     }
 
     /**
-     * Set the local play time of a player.
+     * Reload all data files from disk. Any changes that were not saved yet are
+     * lost.
+     */
+    @Override
+    protected void doReloadDataFiles() {
+        awaitLoaded();
+
+        loadTotalTimes();
+        loadHistory(getEndedPeriods());
+
+        // Changes in the journal are older than the data on disk, so get rid of them.
+        saveFiles();
+    }
+
+    /**
+     * Write the total time of all players to its data file. The file is written
+     * to a temporary file first, so a crash while writing does not corrupt the
+     * data file.
      *
-     * @param type
-     *            Type of time
-     * @param value
-     *            Value (in minutes) to set the play time to.
-     * @param uuid
-     *            UUID of the player
+     * @return true if the file was written, false otherwise.
      */
-    public void setLocalTime(final TimeType type, final int value, final UUID uuid) {
-        // Set time of a player of a specific type
+    private boolean writeTotalTimes() {
+        // Nothing changed since the data file was last written.
+        if (savedTotalModifications == index.getTotalModificationCount()) {
+            return true;
+        }
+
+        final PlaytimeIndex.Snapshot snapshot = index.snapshotTotals();
+
+        final File dataFile = getDataFile(TimeType.TOTAL_TIME);
+        final File tempFile = new File(dataFile.getPath() + ".tmp");
+
+        dataFile.getParentFile().mkdirs();
+
+        Writer writer = null;
 
-        final SimpleYamlConfiguration data = this.getDataFile(type);
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+
+            // Every line is a valid YAML mapping of a UUID to a value.
+            for (int i = 0; i < snapshot.size(); i++) {
+                writer.write(snapshot.getUUID(i).toString());
+                writer.write(": ");
+                writer.write(Integer.toString(snapshot.getValue(i)));
+                writer.write('\n');
+            }
+
+            writer.close();
+            writer = null;
+
+            if (!replaceFile(tempFile, dataFile)) {
+                return false;
+            }
 
-        data.set(uuid.toString(), value);
+            savedTotalModifications = snapshot.getModificationCount();
+
+            return true;
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    // Ignore
+                }
+            }
+        }
     }
 
     /**
-     * Check whether Autorank should reset a specific data file.
+     * Write the day history of all players to its data file. The file is
+     * written to a temporary file first, so a crash while writing does not
+     * corrupt the data file.
      *
-     * @param type
-     *            Type of time
-     * @return true if Autorank should reset the file, false otherwise.
+     * @return true if the file was written, false otherwise.
      */
-    public boolean shouldResetDatafile(final TimeType type) {
-        // Should we reset a specific data file?
-        // Compare date to last date in internal properties
-        final Calendar cal = Calendar.getInstance();
-        cal.setFirstDayOfWeek(Calendar.MONDAY);
+    private boolean writeHistoryFile() {
+        // Nothing changed since the data file was last written.
+        if (savedHistoryModifications == index.getHistoryModificationCount()) {
+            return true;
+        }
+
+        final long modificationCount = writeBinaryFile(HISTORY_PATH, HISTORY_FILE_MAGIC, new BinaryData() {
+            @Override
+            public void read(final DataInput input) throws IOException {
+                index.readHistory(input);
+            }
+
+            @Override
+            public long write(final DataOutput output) throws IOException {
+                return index.writeHistory(output);
+            }
+        });
 
-        if (type == TimeType.DAILY_TIME) {
-            return cal.get(Calendar.DAY_OF_WEEK) != plugin.getInternalPropertiesConfig().getTrackedTimeType(type);
-        } else if (type == TimeType.WEEKLY_TIME) {
-            return cal.get(Calendar.WEEK_OF_YEAR) != plugin.getInternalPropertiesConfig().getTrackedTimeType(type);
-        } else if (type == TimeType.MONTHLY_TIME) {
-            return cal.get(Calendar.MONTH) != plugin.getInternalPropertiesConfig().getTrackedTimeType(type);
+        if (modificationCount < 0) {
+            return false;
         }
 
-        return false;
+        savedHistoryModifications = modificationCount;
+
+        return true;
     }
 
     /**
-     * Add local play time of a player to the currently stored play time.
+     * Write the day every player was last seen to its data file.
      *
-     * @param uuid
-     *            UUID of the player
-     * @param timeDifference
-     *            Time (in minutes) to add
-     * @param type
-     *            Type of time
+     * @return true if the file was written, false otherwise.
      */
-    public void addLocalTime(final UUID uuid, final int timeDifference, final TimeType type) {
+    private boolean writeLastSeenFile() {
+        // Nothing changed since the data file was last written.
+        if (savedLastSeenModifications == lastSeen.getModificationCount()) {
+            return true;
+        }
 
-        final int time = this.getLocalTime(type, uuid);
+        final long modificationCount = writeBinaryFile(LAST_SEEN_PATH, LAST_SEEN_FILE_MAGIC, lastSeenData);
 
-        if (time >= 0) {
-            setLocalTime(type, time + timeDifference, uuid);
+        if (modificationCount < 0) {
+            return false;
         }
+
+        savedLastSeenModifications = modificationCount;
+
+        return true;
     }
 
     /**
-     * Archive old records. Records below the minimum value will be removed
-     * because they are 'inactive'.
+     * Write a binary data file. The file is written to a temporary file first,
+     * so a crash while writing does not corrupt the data file.
      *
-     * @param minimum
-     *            Lowest threshold to check for
-     * @return Number of records that were removed
+     * @return the modification count of the data that was written, or -1 if
+     *         the file could not be written.
      */
-    public int archive(final int minimum) {
-        // Keep a counter of archived items
-        int counter = 0;
+    private long writeBinaryFile(final String path, final int magic, final BinaryData data) {
+        final File dataFile = new File(plugin.getDataFolder(), path);
+        final File tempFile = new File(dataFile.getPath() + ".tmp");
 
-        final SimpleYamlConfiguration data = this.getDataFile(TimeType.TOTAL_TIME);
+        dataFile.getParentFile().mkdirs();
 
-        for (final UUID uuid : getUUIDKeys(TimeType.TOTAL_TIME)) {
-            final int time = this.getLocalTime(TimeType.TOTAL_TIME, uuid);
+        DataOutputStream output = null;
+
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            output.writeInt(magic);
+            output.writeInt(BINARY_FILE_VERSION);
 
-            // Found a record to be archived
-            if (time < minimum) {
-                counter++;
-                // Remove record
-                data.set(uuid.toString(), null);
+            final long modificationCount = data.write(output);
+
+            output.close();
+            output = null;
+
+            if (!replaceFile(tempFile, dataFile)) {
+                return -1;
+            }
+
+            return modificationCount;
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return -1;
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (final IOException e) {
+                    // Ignore
+                }
             }
         }
+    }
 
-        saveFiles();
-        return counter;
+    private boolean replaceFile(final File source, final File target) {
+        try {
+            // Replace the data file in one step, so it is never missing.
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (final IOException e) {
+            plugin.getLogger().warning("Could not replace data file " + target.getName() + ": " + e.getMessage());
+            return false;
+        }
     }
 
     /**
-     * Remove entries from Autorank's database when the user has not been online for more than 30 days.
-     * @return number of entries that were deleted.
+     * Apply all changes in the journal to the loaded data and open the journal
+     * for new changes. If the journal contained any changes, a compaction is
+     * scheduled so they end up in the data files.
      */
-    public int removeOldEntries() {
-        int counter = 0;
-        // Remove data from users that haven't been online for a while
+    private void replayJournal() {
+        final int replayed = replayJournal(journal, index);
+
+        try {
+            journal.open();
+        } catch (final IOException e) {
+            plugin.getLogger().severe("Could not open play time journal, changes will only be saved periodically!");
+            e.printStackTrace();
+        }
 
-        int daysThreshold = 60;
+        if (replayed > 0) {
+            plugin.getLogger().info("Replayed " + replayed + " play time changes from journal.");
 
-        final SimpleYamlConfiguration data = this.getDataFile(TimeType.TOTAL_TIME);
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+                public void run() {
+                    saveFiles();
+                }
+            });
+        }
+    }
 
-        long currentTime = System.currentTimeMillis();
+    /**
+     * Apply all changes in the journal of Autorank to an index, for example
+     * to read changes that are not in the data files yet.
+     *
+     * @param plugin
+     *            Autorank instance
+     * @param index
+     *            Index to apply the changes to
+     * @return the number of changes that were applied.
+     */
+    public static int replayJournal(final Autorank plugin, final PlaytimeIndex index) {
+        return replayJournal(new PlaytimeJournal(new File(plugin.getDataFolder(), "data")), index);
+    }
 
-        for (final UUID uuid : getUUIDKeys(TimeType.TOTAL_TIME)) {
-            OfflinePlayer offPlayer = plugin.getServer().getOfflinePlayer(uuid);
+    private static int replayJournal(final PlaytimeJournal journal, final PlaytimeIndex index) {
+        return journal.replay(new PlaytimeJournal.Handler() {
+            @Override
+            public void onSet(final TimeType type, final UUID uuid, final int value) {
+                if (type == TimeType.TOTAL_TIME) {
+                    index.setTotal(uuid, value);
+                }
+            }
 
-            if (offPlayer.getName() == null) {
-                // Remove record
-                data.set(uuid.toString(), null);
-                counter++;
-                continue;
+            @Override
+            public void onRemove(final TimeType type, final UUID uuid) {
+                if (type == TimeType.TOTAL_TIME) {
+                    index.removeTotal(uuid);
+                }
+            }
+
+            @Override
+            public void onClear(final TimeType type) {
+                if (type == TimeType.TOTAL_TIME) {
+                    index.clearTotals();
+                }
             }
 
-            long lastPlayed = offPlayer.getLastPlayed();
+            @Override
+            public void onSetDay(final UUID uuid, final int day, final int value) {
+                index.setDay(uuid, day, value);
+            }
+
+            @Override
+            public void onClearDays(final int fromDay, final int toDay) {
+                index.clearDays(fromDay, toDay);
+            }
+        });
+    }
+
+    /**
+     * Register tasks for saving and updating time of players.
+     */
+    public void registerTasks() {
+        // Flush the journal every minute and compact it every once in a while.
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
+            public void run() {
+                journal.flush();
+
+                minutesSinceCompaction++;
 
-            if (lastPlayed <= 0 || (currentTime - lastPlayed) / 86400000 >= daysThreshold) {
-                // Remove record
-                data.set(uuid.toString(), null);
-                counter++;
+                if (minutesSinceCompaction >= COMPACTION_INTERVAL_MINUTES
+                        || journal.getRecordCount() >= MAX_JOURNAL_RECORDS) {
+                    saveFiles();
+                }
+            }
+        }, AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_MINUTE);
+    }
+
+    /**
+     * Save all data files. This compacts the journal: all changes in the
+     * journal are written to the data files, after which the journal is
+     * cleared.
+     */
+    @Override
+    public void saveFiles() {
+        awaitLoaded();
+
+        synchronized (this) {
+            if (compacting) {
+                return;
+            }
+
+            compacting = true;
+        }
+
+        try {
+            minutesSinceCompaction = 0;
+
+            // Changes made from now on end up in a new journal.
+            final boolean rotated = journal.rotate();
+
+            // Players that did not play for a while do not need a history anymore.
+            index.pruneHistory(getCurrentDay() - PlaytimeIndex.HISTORY_DAYS + 1);
+
+            final boolean written = writeTotalTimes() & writeHistoryFile() & writeLastSeenFile();
+
+            // Data files now contain everything in the old journal.
+            if (rotated && written) {
+                journal.deleteRotated();
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
             }
         }
+    }
 
-        return counter;
+    /**
+     * Save all data files and close the journal. Should be called when
+     * Autorank is disabled.
+     */
+    @Override
+    protected void doShutdown() {
+        saveFiles();
+
+        journal.close();
     }
 
     /**
-     * Get a list of all the player names that are stored in a data file
+     * Set the local play time of a player. Daily, weekly and monthly time are
+     * changed by changing the time of today, so changing one of them also
+     * changes the others.
      *
      * @param type
-     *            Type of time.
-     * @return a list of names of players that are stored in the given data
-     *         file.
+     *            Type of time
+     * @param value
+     *            Value (in minutes) to set the play time to.
+     * @param uuid
+     *            UUID of the player
      */
-    public List<String> getPlayerKeys(final TimeType type) {
-        final List<UUID> uuids = getUUIDKeys(type);
+    @Override
+    protected void doSetLocalTime(final TimeType type, final int value, final UUID uuid) {
+        awaitLoaded();
+
+        // Set time of a player of a specific type
+        if (type == TimeType.TOTAL_TIME) {
+            index.setTotal(uuid, value);
 
-        final List<String> playerNames = new ArrayList<String>();
+            journal.logSet(type, uuid, value);
+            return;
+        }
 
-        final Map<UUID, String> foundPlayers = UUIDManager.getPlayers(uuids);
+        // Clear the other days of the period, so the time of a day never becomes negative.
+        final Calendar cal = Calendar.getInstance();
+        final int today = getDay(cal);
 
-        for (final Entry<UUID, String> entry : foundPlayers.entrySet()) {
-            playerNames.add(entry.getValue());
+        for (int day = getFirstDay(type, cal); day < today; day++) {
+            if (index.getDaySum(uuid, day, day) != 0) {
+                index.setDay(uuid, day, 0);
+
+                journal.logSetDay(uuid, day, 0);
+            }
         }
 
-        return playerNames;
+        index.setDay(uuid, today, value);
+
+        journal.logSetDay(uuid, today, value);
+    }
+
+    /**
+     * Add local play time of a player to the currently stored play time. Time
+     * that is added to daily, weekly or monthly time is added to the time of
+     * today, so it counts for all three of them.
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param timeDifference
+     *            Time (in minutes) to add
+     * @param type
+     *            Type of time
+     */
+    @Override
+    protected void doAddLocalTime(final UUID uuid, final int timeDifference, final TimeType type) {
+        awaitLoaded();
+
+
+        if (type == TimeType.TOTAL_TIME) {
+            final int time = index.addTotal(uuid, timeDifference);
+
+            journal.logSet(type, uuid, time);
+            return;
+        }
+
+        final int today = getCurrentDay();
+
+        final int time = index.addToDay(uuid, today, timeDifference);
+
+        journal.logSetDay(uuid, today, time);
+    }
+
+    @Override
+    protected List<UUID> findUnseenPlayers() {
+        awaitLoaded();
+
+        final List<UUID> unseenPlayers = new ArrayList<UUID>();
+
+        for (final UUID uuid : getUUIDKeys(TimeType.TOTAL_TIME)) {
+            if (!lastSeen.contains(uuid)) {
+                unseenPlayers.add(uuid);
+            }
+        }
+
+        return unseenPlayers;
+    }
+
+    @Override
+    protected void doSetLastPlayedDays(final Map<UUID, Integer> lastPlayedDays) {
+        awaitLoaded();
+
+        for (final Entry<UUID, Integer> entry : lastPlayedDays.entrySet()) {
+            // The player may have been seen while the day was looked up.
+            if (!lastSeen.contains(entry.getKey())) {
+                lastSeen.update(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    protected List<UUID> findInactivePlayers() {
+        awaitLoaded();
+
+        return lastSeen.getPlayersNotSeenSince(getCurrentDay() - OLD_ENTRY_DAYS + 1);
+    }
+
+    @Override
+    protected void doRemovePlayer(final UUID uuid) {
+        awaitLoaded();
+
+        if (index.containsTotal(uuid)) {
+            index.removeTotal(uuid);
+            journal.logRemove(TimeType.TOTAL_TIME, uuid);
+        }
+
+        lastSeen.remove(uuid);
+    }
+
+    @Override
+    protected void doUpdateLastSeen(final UUID uuid) {
+        awaitLoaded();
+
+        lastSeen.update(uuid, getCurrentDay());
     }
 
     /**
@@ -307,80 +869,139 @@ public class FlatFileManager {
      *            Type of time
      * @return play time of that player or 0 if not found.
      */
+    @Override
     public int getLocalTime(final TimeType type, final UUID uuid) {
+        awaitLoaded();
+
         // Get time of a player with specific type
-        final SimpleYamlConfiguration data = this.getDataFile(type);
+        if (type == TimeType.TOTAL_TIME) {
+            return index.getTotal(uuid);
+        }
+
+        final Calendar cal = Calendar.getInstance();
+
+        return index.getDaySum(uuid, getFirstDay(type, cal), getDay(cal));
+    }
+
+    /**
+     * Get the time a player played in the last couple of days (including
+     * today).
+     *
+     * @param uuid
+     *            UUID of the player
+     * @param days
+     *            Number of days to look back, at most
+     *            {@value PlaytimeIndex#HISTORY_DAYS}.
+     * @return play time (in minutes) of the player in the given number of
+     *         days.
+     */
+    @Override
+    public int getRecentTime(final UUID uuid, final int days) {
+        awaitLoaded();
 
-        return data.getInt(uuid.toString(), 0);
+        final int today = getCurrentDay();
+
+        return index.getDaySum(uuid, today - Math.min(days, PlaytimeIndex.HISTORY_DAYS) + 1, today);
     }
 
     /**
-     * Reset the data file of certain time type.
+     * Get a copy of the play times of all players for a time type. This is
+     * much cheaper than looking up the time of every player separately.
+     * Players without any time of the given type are left out.
      *
      * @param type
      *            Type of time
+     * @return a snapshot of all players and their play time (in minutes).
      */
-    public void resetDatafile(final TimeType type) {
-        final SimpleYamlConfiguration data = this.getDataFile(type);
+    @Override
+    public PlaytimeIndex.Snapshot getLocalTimes(final TimeType type) {
+        awaitLoaded();
 
-        plugin.debugMessage("Resetting data file '" + type + "'!");
+        if (type == TimeType.TOTAL_TIME) {
+            return index.snapshotTotals();
+        }
 
-        // Delete file
-        final boolean deleted = data.getInternalFile().delete();
+        final Calendar cal = Calendar.getInstance();
 
-        // Don't create a new file if it wasn't deleted in the first place.
-        if (!deleted) {
-            plugin.debugMessage("Tried deleting data file, but could not delete!");
-            return;
-        }
+        return index.snapshotDays(getFirstDay(type, cal), getDay(cal));
+    }
 
-        // Create a new file so it's empty
-        if (type == TimeType.DAILY_TIME) {
-            dataFiles.put(TimeType.DAILY_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.DAILY_TIME), "Daily data"));
-        } else if (type == TimeType.WEEKLY_TIME) {
-            dataFiles.put(TimeType.WEEKLY_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.WEEKLY_TIME), "Weekly data"));
-        } else if (type == TimeType.MONTHLY_TIME) {
-            dataFiles.put(TimeType.MONTHLY_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.MONTHLY_TIME), "Monthly data"));
-        } else if (type == TimeType.TOTAL_TIME) {
-            dataFiles.put(TimeType.TOTAL_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.TOTAL_TIME), "Total data"));
-        }
+    /**
+     * Get a copy of the time all players played in the last couple of days
+     * (including today). Players that did not play in these days are left out.
+     *
+     * @param days
+     *            Number of days to look back, at most
+     *            {@value PlaytimeIndex#HISTORY_DAYS}.
+     * @return a snapshot of all players and their recent play time (in
+     *         minutes).
+     */
+    @Override
+    public PlaytimeIndex.Snapshot getRecentTimes(final int days) {
+        awaitLoaded();
+
+        final int today = getCurrentDay();
+
+        return index.snapshotDays(today - Math.min(days, PlaytimeIndex.HISTORY_DAYS) + 1, today);
     }
 
     /**
-     * Get a list of all the player UUIDs that are stored in a data file
+     * Reset the data of a certain time type. For daily, weekly and monthly
+     * time, the history of the current day, week or month is cleared.
      *
      * @param type
-     *            Type of time.
-     * @return a list of UUIDs of players that are stored in the given data
-     *         file.
+     *            Type of time
      */
-    public List<UUID> getUUIDKeys(final TimeType type) {
+    @Override
+    protected void doResetDatafile(final TimeType type) {
+        awaitLoaded();
 
-        final List<UUID> uuids = new ArrayList<UUID>();
+        plugin.debugMessage("Resetting data file '" + type + "'!");
 
-        final SimpleYamlConfiguration data = this.getDataFile(type);
+        if (type != TimeType.TOTAL_TIME) {
+            final Calendar cal = Calendar.getInstance();
 
-        for (final String uuidString : data.getKeys(false)) {
-            UUID uuid = null;
-            try {
-                uuid = UUID.fromString(uuidString);
-            } catch (final IllegalArgumentException e) {
-                continue;
-            }
+            final int fromDay = getFirstDay(type, cal);
+            final int toDay = getDay(cal);
 
-            // Invalid uuid
-            if (uuid == null) {
-                continue;
-            }
+            index.clearDays(fromDay, toDay);
+            journal.logClearDays(fromDay, toDay);
+            return;
+        }
+
+        index.clearTotals();
 
-            uuids.add(uuid);
+        // Make sure old changes in the journal are not replayed onto the new file.
+        journal.logClear(type);
+
+        // Delete file so it's empty
+        final File dataFile = getDataFile(type);
+
+        if (dataFile.exists() && !dataFile.delete()) {
+            plugin.debugMessage("Tried deleting data file, but could not delete!");
         }
+    }
+
+    @Override
+    public Collection<String> getDataFilePaths() {
+        final Set<String> paths = new HashSet<String>(dataTypePaths.values());
 
-        return uuids;
+        paths.add(LAST_SEEN_PATH);
+
+        return paths;
+    }
+
+    /**
+     * Data that is stored in a binary data file.
+     */
+    private interface BinaryData {
+
+        void read(DataInput input) throws IOException;
+
+        /**
+         * @return the modification count of the data that was written.
+         */
+        long write(DataOutput output) throws IOException;
     }
 
     /**
@@ -395,9 +1016,14 @@ public class FlatFileManager {
      * Import total play time from the current {@link TimeType.TOTAL_TIME} data
      * file.
      */
-    public void importData() {
-        final SimpleYamlConfiguration data = this.getDataFile(TimeType.TOTAL_TIME);
-        data.reloadFile();
+    @Override
+    protected void doImportData() {
+        awaitLoaded();
+
+        loadTotalTimes();
+
+        // Changes in the journal are older than the imported data, so get rid of them.
+        saveFiles();
     }
 
 }
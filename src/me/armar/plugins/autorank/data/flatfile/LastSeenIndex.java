@@ -0,0 +1,195 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Keeps track of the last day Autorank saw each player online. Players are
+ * also kept sorted by that day, so the players that have not been seen since a
+ * certain day can be found without looking at every player.
+ * <p>
+ * All methods are thread-safe.
+ *
+ * @author Staartvin
+ */
+public class LastSeenIndex {
+
+    private final Map<UUID, Integer> lastSeenDays = new HashMap<UUID, Integer>();
+
+    // Players grouped by the day they were last seen, oldest day first
+    private final TreeMap<Integer, Set<UUID>> playersByDay = new TreeMap<Integer, Set<UUID>>();
+
+    private long modificationCount = 0;
+
+    /**
+     * Record that a player was seen on a day. Nothing changes if the player
+     * was already seen on that day or later.
+     *
+     * @param uuid UUID of the player
+     * @param day  Day the player was seen
+     * @return true if the last seen day of the player changed, false otherwise.
+     */
+    public synchronized boolean update(final UUID uuid, final int day) {
+        final Integer oldDay = lastSeenDays.get(uuid);
+
+        if (oldDay != null) {
+            if (oldDay >= day) {
+                return false;
+            }
+
+            removeFromDay(uuid, oldDay);
+        }
+
+        lastSeenDays.put(uuid, day);
+
+        Set<UUID> players = playersByDay.get(day);
+
+        if (players == null) {
+            players = new HashSet<UUID>();
+            playersByDay.put(day, players);
+        }
+
+        players.add(uuid);
+        modificationCount++;
+
+        return true;
+    }
+
+    /**
+     * Get the last day a player was seen.
+     *
+     * @param uuid UUID of the player
+     * @return the last day the player was seen, or -1 if the player was never
+     * seen.
+     */
+    public synchronized int getLastSeenDay(final UUID uuid) {
+        final Integer day = lastSeenDays.get(uuid);
+
+        return day == null ? -1 : day;
+    }
+
+    public synchronized boolean contains(final UUID uuid) {
+        return lastSeenDays.containsKey(uuid);
+    }
+
+    /**
+     * Forget when a player was last seen.
+     *
+     * @param uuid UUID of the player
+     */
+    public synchronized void remove(final UUID uuid) {
+        final Integer day = lastSeenDays.remove(uuid);
+
+        if (day != null) {
+            removeFromDay(uuid, day);
+            modificationCount++;
+        }
+    }
+
+    private void removeFromDay(final UUID uuid, final int day) {
+        final Set<UUID> players = playersByDay.get(day);
+
+        players.remove(uuid);
+
+        if (players.isEmpty()) {
+            playersByDay.remove(day);
+        }
+    }
+
+    /**
+     * Get all players that were last seen before a certain day. Only the days
+     * before the given day are looked at.
+     *
+     * @param day First day that does not count as 'before'
+     * @return a list of UUIDs of players that were not seen on or after the
+     * given day.
+     */
+    public synchronized List<UUID> getPlayersNotSeenSince(final int day) {
+        final List<UUID> players = new ArrayList<UUID>();
+
+        for (final Set<UUID> playersOfDay : playersByDay.headMap(day, false).values()) {
+            players.addAll(playersOfDay);
+        }
+
+        return players;
+    }
+
+    public synchronized int size() {
+        return lastSeenDays.size();
+    }
+
+    /**
+     * Get the number of changes made to this index. Can be used to check
+     * whether the index changed since it was last written.
+     */
+    public synchronized long getModificationCount() {
+        return modificationCount;
+    }
+
+    public synchronized void clear() {
+        lastSeenDays.clear();
+        playersByDay.clear();
+        modificationCount++;
+    }
+
+    /**
+     * Write all players and the day they were last seen.
+     *
+     * @param output Output to write to
+     * @return the modification count of the index that was written.
+     * @throws IOException when the data could not be written.
+     */
+    public long write(final DataOutput output) throws IOException {
+        final long[] mostSigBits;
+        final long[] leastSigBits;
+        final int[] days;
+        final long writtenModificationCount;
+
+        // Copy the data, so the index is not locked while writing.
+        synchronized (this) {
+            mostSigBits = new long[lastSeenDays.size()];
+            leastSigBits = new long[lastSeenDays.size()];
+            days = new int[lastSeenDays.size()];
+
+            int i = 0;
+
+            for (final Map.Entry<UUID, Integer> entry : lastSeenDays.entrySet()) {
+                mostSigBits[i] = entry.getKey().getMostSignificantBits();
+                leastSigBits[i] = entry.getKey().getLeastSignificantBits();
+                days[i] = entry.getValue();
+                i++;
+            }
+
+            writtenModificationCount = modificationCount;
+        }
+
+        output.writeInt(days.length);
+
+        for (int i = 0; i < days.length; i++) {
+            output.writeLong(mostSigBits[i]);
+            output.writeLong(leastSigBits[i]);
+            output.writeInt(days[i]);
+        }
+
+        return writtenModificationCount;
+    }
+
+    /**
+     * Read players and the day they were last seen, as written by
+     * {@link #write(DataOutput)}.
+     *
+     * @param input Input to read from
+     * @throws IOException when the data could not be read.
+     */
+    public void read(final DataInput input) throws IOException {
+        final int players = input.readInt();
+
+        for (int i = 0; i < players; i++) {
+            final UUID uuid = new UUID(input.readLong(), input.readLong());
+
+            update(uuid, input.readInt());
+        }
+    }
+}
@@ -0,0 +1,790 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * This class is the in-memory store of all play times that Autorank keeps
+ * track of. It is an open-addressing hash table (with linear probing) that is
+ * keyed by the two longs of a UUID. No UUID strings or boxed integers are
+ * created when looking up or changing the time of a player.
+ * <p>
+ * For every player two things can be stored: the total play time and a history
+ * of the last {@value #HISTORY_DAYS} days. The history is a ring of day
+ * buckets, so the time of a day, week or month is simply the sum of a range of
+ * buckets. Old buckets are overwritten when a new day starts, so no data has to
+ * be reset at midnight.
+ * <p>
+ * Days are identified by the number of days since 1 January 1970.
+ *
+ * @author Staartvin
+ */
+public class PlaytimeIndex {
+
+    /**
+     * Number of days that the history of a player goes back.
+     */
+    public static final int HISTORY_DAYS = 35;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // Grow the table when it is more than 60% full
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private static final byte STORED_TOTAL = 1;
+    private static final byte STORED_HISTORY = 2;
+
+    private long[] mostSigBits;
+    private long[] leastSigBits;
+
+    private int[] totals;
+
+    // Day buckets of every slot. The last element holds the most recent day of the ring.
+    private int[][] history;
+
+    // What is stored for a slot, 0 if the slot is empty.
+    private byte[] stored;
+
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    private int totalCount;
+    private int historyCount;
+
+    // Number of changes, used to detect unchanged data.
+    private long totalModifications;
+    private long historyModifications;
+
+    public PlaytimeIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new index that can hold the given number of players without
+     * having to grow.
+     *
+     * @param expectedSize Expected number of players
+     */
+    public PlaytimeIndex(final int expectedSize) {
+        allocate(tableSizeFor((int) Math.ceil(Math.max(expectedSize, 16) / LOAD_FACTOR)));
+    }
+
+    private static int tableSizeFor(final int capacity) {
+        int size = 1;
+
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        return size;
+    }
+
+    private static int hash(final long mostSigBits, final long leastSigBits) {
+        long hash = mostSigBits * 0x9E3779B97F4A7C15L ^ leastSigBits;
+
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+
+        return (int) hash;
+    }
+
+    private void allocate(final int capacity) {
+        mostSigBits = new long[capacity];
+        leastSigBits = new long[capacity];
+        totals = new int[capacity];
+        history = new int[capacity][];
+        stored = new byte[capacity];
+
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Find the slot of a player.
+     *
+     * @return the slot of the player, or -1 if the player is not stored.
+     */
+    private int find(final long mostSig, final long leastSig) {
+        int slot = hash(mostSig, leastSig) & mask;
+
+        while (stored[slot] != 0) {
+            if (mostSigBits[slot] == mostSig && leastSigBits[slot] == leastSig) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private int find(final UUID uuid) {
+        return find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Find the slot of a player, or claim a new slot if the player was not
+     * stored yet. The caller has to mark what is stored in a new slot.
+     */
+    private int findOrInsert(final long mostSig, final long leastSig) {
+        int slot = hash(mostSig, leastSig) & mask;
+
+        while (stored[slot] != 0) {
+            if (mostSigBits[slot] == mostSig && leastSigBits[slot] == leastSig) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        if (size + 1 > resizeThreshold) {
+            resize(stored.length * 2);
+            return findOrInsert(mostSig, leastSig);
+        }
+
+        mostSigBits[slot] = mostSig;
+        leastSigBits[slot] = leastSig;
+        size++;
+
+        return slot;
+    }
+
+    private int findOrInsert(final UUID uuid) {
+        return findOrInsert(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    private void resize(final int newCapacity) {
+        final long[] oldMostSigBits = mostSigBits;
+        final long[] oldLeastSigBits = leastSigBits;
+        final int[] oldTotals = totals;
+        final int[][] oldHistory = history;
+        final byte[] oldStored = stored;
+
+        allocate(newCapacity);
+
+        for (int oldSlot = 0; oldSlot < oldStored.length; oldSlot++) {
+            if (oldStored[oldSlot] == 0) {
+                continue;
+            }
+
+            int slot = hash(oldMostSigBits[oldSlot], oldLeastSigBits[oldSlot]) & mask;
+
+            while (stored[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            mostSigBits[slot] = oldMostSigBits[oldSlot];
+            leastSigBits[slot] = oldLeastSigBits[oldSlot];
+            totals[slot] = oldTotals[oldSlot];
+            history[slot] = oldHistory[oldSlot];
+            stored[slot] = oldStored[oldSlot];
+        }
+    }
+
+    /**
+     * Remove a slot and shift the slots after it backwards so that no gaps
+     * appear in a probe sequence.
+     */
+    private void deleteSlot(int gap) {
+        int slot = gap;
+
+        while (true) {
+            slot = (slot + 1) & mask;
+
+            if (stored[slot] == 0) {
+                break;
+            }
+
+            final int home = hash(mostSigBits[slot], leastSigBits[slot]) & mask;
+
+            // Only move the slot if the gap is not before its home slot.
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                mostSigBits[gap] = mostSigBits[slot];
+                leastSigBits[gap] = leastSigBits[slot];
+                totals[gap] = totals[slot];
+                history[gap] = history[slot];
+                stored[gap] = stored[slot];
+
+                gap = slot;
+            }
+        }
+
+        mostSigBits[gap] = 0;
+        leastSigBits[gap] = 0;
+        totals[gap] = 0;
+        history[gap] = null;
+        stored[gap] = 0;
+
+        size--;
+    }
+
+    /**
+     * Rebuild the table so that slots that became empty are removed properly.
+     */
+    private void rebuild() {
+        final long[] oldMostSigBits = mostSigBits;
+        final long[] oldLeastSigBits = leastSigBits;
+        final int[] oldTotals = totals;
+        final int[][] oldHistory = history;
+        final byte[] oldStored = stored;
+
+        allocate(oldStored.length);
+        size = 0;
+
+        for (int oldSlot = 0; oldSlot < oldStored.length; oldSlot++) {
+            if (oldStored[oldSlot] == 0) {
+                continue;
+            }
+
+            final int slot = findOrInsert(oldMostSigBits[oldSlot], oldLeastSigBits[oldSlot]);
+
+            totals[slot] = oldTotals[oldSlot];
+            history[slot] = oldHistory[oldSlot];
+            stored[slot] = oldStored[oldSlot];
+        }
+    }
+
+    // ---------- TOTAL TIME ---------- \\
+
+    /**
+     * Get the total time of a player.
+     *
+     * @param uuid UUID of the player
+     * @return the total time or 0 if the player is not stored.
+     */
+    public synchronized int getTotal(final UUID uuid) {
+        final int slot = find(uuid);
+
+        if (slot < 0) {
+            return 0;
+        }
+
+        return totals[slot];
+    }
+
+    /**
+     * Check whether the total time of a player is stored.
+     *
+     * @param uuid UUID of the player
+     * @return true if the player has a total time, false otherwise.
+     */
+    public synchronized boolean containsTotal(final UUID uuid) {
+        final int slot = find(uuid);
+
+        return slot >= 0 && (stored[slot] & STORED_TOTAL) != 0;
+    }
+
+    /**
+     * Set the total time of a player.
+     *
+     * @param uuid  UUID of the player
+     * @param value New value
+     */
+    public synchronized void setTotal(final UUID uuid, final int value) {
+        final int slot = findOrInsert(uuid);
+
+        markTotal(slot);
+
+        totals[slot] = value;
+        totalModifications++;
+    }
+
+    /**
+     * Add a value to the total time of a player. This is done atomically.
+     *
+     * @param uuid  UUID of the player
+     * @param delta Value to add
+     * @return the new total time of the player.
+     */
+    public synchronized int addTotal(final UUID uuid, final int delta) {
+        final int slot = findOrInsert(uuid);
+
+        markTotal(slot);
+
+        totalModifications++;
+
+        return totals[slot] += delta;
+    }
+
+    private void markTotal(final int slot) {
+        if ((stored[slot] & STORED_TOTAL) == 0) {
+            stored[slot] |= STORED_TOTAL;
+            totalCount++;
+        }
+    }
+
+    /**
+     * Remove the total time of a player. The history of the player is kept.
+     *
+     * @param uuid UUID of the player
+     * @return true if the player had a total time, false otherwise.
+     */
+    public synchronized boolean removeTotal(final UUID uuid) {
+        final int slot = find(uuid);
+
+        if (slot < 0 || (stored[slot] & STORED_TOTAL) == 0) {
+            return false;
+        }
+
+        stored[slot] &= ~STORED_TOTAL;
+        totals[slot] = 0;
+        totalCount--;
+        totalModifications++;
+
+        if (stored[slot] == 0) {
+            deleteSlot(slot);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the total time of all players.
+     */
+    public synchronized void clearTotals() {
+        for (int slot = 0; slot < stored.length; slot++) {
+            stored[slot] &= ~STORED_TOTAL;
+            totals[slot] = 0;
+        }
+
+        totalCount = 0;
+        totalModifications++;
+
+        rebuild();
+    }
+
+    /**
+     * Get the number of players that have a total time.
+     */
+    public synchronized int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Get the number of changes that were made to the total times. If this
+     * number did not change, the total times did not change either.
+     */
+    public synchronized long getTotalModificationCount() {
+        return totalModifications;
+    }
+
+    /**
+     * Create a copy of the total time of all players. The copy is made while
+     * the index is locked, but it can be read afterwards without blocking any
+     * changes to the index.
+     *
+     * @return a snapshot of all total times.
+     */
+    public synchronized Snapshot snapshotTotals() {
+        final long[] snapshotMostSigBits = new long[totalCount];
+        final long[] snapshotLeastSigBits = new long[totalCount];
+        final int[] snapshotValues = new int[totalCount];
+
+        int index = 0;
+
+        for (int slot = 0; slot < stored.length && index < totalCount; slot++) {
+            if ((stored[slot] & STORED_TOTAL) == 0) {
+                continue;
+            }
+
+            snapshotMostSigBits[index] = mostSigBits[slot];
+            snapshotLeastSigBits[index] = leastSigBits[slot];
+            snapshotValues[index] = totals[slot];
+            index++;
+        }
+
+        return new Snapshot(snapshotMostSigBits, snapshotLeastSigBits, snapshotValues, index,
+                totalModifications);
+    }
+
+    // ---------- DAY HISTORY ---------- \\
+
+    /**
+     * Move the ring of a player forward to the given day. Buckets of days that
+     * fall out of the ring are cleared.
+     */
+    private static void advance(final int[] ring, final int day) {
+        final int lastDay = ring[HISTORY_DAYS];
+
+        if (day <= lastDay) {
+            return;
+        }
+
+        if (day - lastDay >= HISTORY_DAYS) {
+            Arrays.fill(ring, 0, HISTORY_DAYS, 0);
+        } else {
+            for (int i = lastDay + 1; i <= day; i++) {
+                ring[i % HISTORY_DAYS] = 0;
+            }
+        }
+
+        ring[HISTORY_DAYS] = day;
+    }
+
+    /**
+     * Check whether the bucket of a day is still in the ring.
+     */
+    private static boolean inRing(final int[] ring, final int day) {
+        final int lastDay = ring[HISTORY_DAYS];
+
+        return day <= lastDay && day > lastDay - HISTORY_DAYS;
+    }
+
+    private static int sum(final int[] ring, final int fromDay, final int toDay) {
+        final int lastDay = ring[HISTORY_DAYS];
+
+        final int from = Math.max(fromDay, lastDay - HISTORY_DAYS + 1);
+        final int to = Math.min(toDay, lastDay);
+
+        int sum = 0;
+
+        for (int day = from; day <= to; day++) {
+            sum += ring[day % HISTORY_DAYS];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Get the ring of a slot, creating it if it did not exist yet.
+     */
+    private int[] ringOf(final int slot, final int day) {
+        int[] ring = history[slot];
+
+        if (ring == null) {
+            ring = new int[HISTORY_DAYS + 1];
+            ring[HISTORY_DAYS] = day;
+
+            history[slot] = ring;
+            stored[slot] |= STORED_HISTORY;
+            historyCount++;
+        }
+
+        return ring;
+    }
+
+    /**
+     * Add time to the bucket of a day of a player. Days that are older than the
+     * history of the player are ignored.
+     *
+     * @param uuid  UUID of the player
+     * @param day   Day to add the time to
+     * @param delta Time to add
+     * @return the new value of the bucket.
+     */
+    public synchronized int addToDay(final UUID uuid, final int day, final int delta) {
+        final int[] ring = ringOf(findOrInsert(uuid), day);
+
+        advance(ring, day);
+
+        if (!inRing(ring, day)) {
+            return 0;
+        }
+
+        historyModifications++;
+
+        return ring[day % HISTORY_DAYS] += delta;
+    }
+
+    /**
+     * Set the bucket of a day of a player. Days that are older than the
+     * history of the player are ignored.
+     *
+     * @param uuid  UUID of the player
+     * @param day   Day to set
+     * @param value New value of the bucket
+     */
+    public synchronized void setDay(final UUID uuid, final int day, final int value) {
+        final int[] ring = ringOf(findOrInsert(uuid), day);
+
+        advance(ring, day);
+
+        if (!inRing(ring, day)) {
+            return;
+        }
+
+        ring[day % HISTORY_DAYS] = value;
+        historyModifications++;
+    }
+
+    /**
+     * Get the time a player played in a range of days.
+     *
+     * @param uuid    UUID of the player
+     * @param fromDay First day of the range (inclusive)
+     * @param toDay   Last day of the range (inclusive)
+     * @return the sum of the buckets in the range, or 0 if the player has no
+     * history.
+     */
+    public synchronized int getDaySum(final UUID uuid, final int fromDay, final int toDay) {
+        final int slot = find(uuid);
+
+        if (slot < 0 || history[slot] == null) {
+            return 0;
+        }
+
+        return sum(history[slot], fromDay, toDay);
+    }
+
+    /**
+     * Clear the buckets in a range of days for all players.
+     *
+     * @param fromDay First day of the range (inclusive)
+     * @param toDay   Last day of the range (inclusive)
+     */
+    public synchronized void clearDays(final int fromDay, final int toDay) {
+        for (final int[] ring : history) {
+            if (ring == null) {
+                continue;
+            }
+
+            for (int day = fromDay; day <= toDay; day++) {
+                if (inRing(ring, day)) {
+                    ring[day % HISTORY_DAYS] = 0;
+                }
+            }
+        }
+
+        historyModifications++;
+    }
+
+    /**
+     * Remove the history of all players.
+     */
+    public synchronized void clearHistory() {
+        for (int slot = 0; slot < stored.length; slot++) {
+            stored[slot] &= ~STORED_HISTORY;
+            history[slot] = null;
+        }
+
+        historyCount = 0;
+        historyModifications++;
+
+        rebuild();
+    }
+
+    /**
+     * Remove the history of players that did not play since the given day.
+     *
+     * @param oldestDay Oldest day that should be kept
+     * @return the number of players whose history was removed.
+     */
+    public synchronized int pruneHistory(final int oldestDay) {
+        int pruned = 0;
+
+        for (int slot = 0; slot < stored.length; slot++) {
+            final int[] ring = history[slot];
+
+            if (ring == null || sum(ring, oldestDay, Integer.MAX_VALUE) > 0) {
+                continue;
+            }
+
+            history[slot] = null;
+            stored[slot] &= ~STORED_HISTORY;
+            historyCount--;
+            pruned++;
+        }
+
+        if (pruned > 0) {
+            historyModifications++;
+            rebuild();
+        }
+
+        return pruned;
+    }
+
+    /**
+     * Get the number of changes that were made to the history. If this number
+     * did not change, the history did not change either.
+     */
+    public synchronized long getHistoryModificationCount() {
+        return historyModifications;
+    }
+
+    /**
+     * Create a copy of the time all players played in a range of days. Players
+     * that did not play in the range are left out.
+     *
+     * @param fromDay First day of the range (inclusive)
+     * @param toDay   Last day of the range (inclusive)
+     * @return a snapshot of the time played in the range.
+     */
+    public synchronized Snapshot snapshotDays(final int fromDay, final int toDay) {
+        final long[] snapshotMostSigBits = new long[historyCount];
+        final long[] snapshotLeastSigBits = new long[historyCount];
+        final int[] snapshotValues = new int[historyCount];
+
+        int index = 0;
+
+        for (int slot = 0; slot < stored.length; slot++) {
+            if (history[slot] == null) {
+                continue;
+            }
+
+            final int value = sum(history[slot], fromDay, toDay);
+
+            if (value <= 0) {
+                continue;
+            }
+
+            snapshotMostSigBits[index] = mostSigBits[slot];
+            snapshotLeastSigBits[index] = leastSigBits[slot];
+            snapshotValues[index] = value;
+            index++;
+        }
+
+        return new Snapshot(snapshotMostSigBits, snapshotLeastSigBits, snapshotValues, index,
+                historyModifications);
+    }
+
+    /**
+     * Write the history of all players to the given output. Only buckets that
+     * are not empty are written. The history is copied while the index is
+     * locked, and written afterwards.
+     *
+     * @param output Output to write to
+     * @return the modification count of the history that was written.
+     * @throws IOException when the history could not be written.
+     */
+    public long writeHistory(final DataOutput output) throws IOException {
+        final long[] copyMostSigBits;
+        final long[] copyLeastSigBits;
+        final int[][] copyHistory;
+        final long modificationCount;
+
+        synchronized (this) {
+            copyMostSigBits = new long[historyCount];
+            copyLeastSigBits = new long[historyCount];
+            copyHistory = new int[historyCount][];
+
+            int index = 0;
+
+            for (int slot = 0; slot < stored.length && index < historyCount; slot++) {
+                if (history[slot] == null) {
+                    continue;
+                }
+
+                copyMostSigBits[index] = mostSigBits[slot];
+                copyLeastSigBits[index] = leastSigBits[slot];
+                copyHistory[index] = history[slot].clone();
+                index++;
+            }
+
+            modificationCount = historyModifications;
+        }
+
+        output.writeInt(copyHistory.length);
+
+        for (int i = 0; i < copyHistory.length; i++) {
+            final int[] ring = copyHistory[i];
+            final int lastDay = ring[HISTORY_DAYS];
+
+            int buckets = 0;
+
+            for (int j = 0; j < HISTORY_DAYS; j++) {
+                if (ring[j] != 0) {
+                    buckets++;
+                }
+            }
+
+            output.writeLong(copyMostSigBits[i]);
+            output.writeLong(copyLeastSigBits[i]);
+            output.writeByte(buckets);
+
+            for (int day = lastDay - HISTORY_DAYS + 1; day <= lastDay; day++) {
+                final int value = ring[day % HISTORY_DAYS];
+
+                if (value != 0) {
+                    output.writeInt(day);
+                    output.writeInt(value);
+                }
+            }
+        }
+
+        return modificationCount;
+    }
+
+    /**
+     * Read the history of players that was written with
+     * {@link #writeHistory(DataOutput)}.
+     *
+     * @param input Input to read from
+     * @throws IOException when the history could not be read.
+     */
+    public void readHistory(final DataInput input) throws IOException {
+        final int players = input.readInt();
+
+        for (int i = 0; i < players; i++) {
+            final UUID uuid = new UUID(input.readLong(), input.readLong());
+            final int buckets = input.readUnsignedByte();
+
+            for (int j = 0; j < buckets; j++) {
+                final int day = input.readInt();
+                final int value = input.readInt();
+
+                setDay(uuid, day, value);
+            }
+        }
+    }
+
+    /**
+     * A copy of players and their values, stored in primitive arrays.
+     */
+    public static class Snapshot {
+
+        private final long[] mostSigBits;
+        private final long[] leastSigBits;
+        private final int[] values;
+        private final int size;
+        private final long modificationCount;
+
+        /**
+         * Create a snapshot of the first {@code size} players in the given
+         * arrays. The arrays are not copied.
+         */
+        public Snapshot(final long[] mostSigBits, final long[] leastSigBits, final int[] values, final int size,
+                         final long modificationCount) {
+            this.mostSigBits = mostSigBits;
+            this.leastSigBits = leastSigBits;
+            this.values = values;
+            this.size = size;
+            this.modificationCount = modificationCount;
+        }
+
+        /**
+         * Get the number of players in this snapshot.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Get the modification count of the index at the moment this snapshot
+         * was made.
+         */
+        public long getModificationCount() {
+            return modificationCount;
+        }
+
+        public long getMostSignificantBits(final int index) {
+            return mostSigBits[index];
+        }
+
+        public long getLeastSignificantBits(final int index) {
+            return leastSigBits[index];
+        }
+
+        public UUID getUUID(final int index) {
+            return new UUID(mostSigBits[index], leastSigBits[index]);
+        }
+
+        public int getValue(final int index) {
+            return values[index];
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+
+import java.io.*;
+import java.util.UUID;
+
+/**
+ * This class represents an append-only journal of play time mutations. Instead
+ * of rewriting every data file whenever a single value changes, every change is
+ * appended to the journal as a small binary record. The data files are only
+ * rewritten (compacted) once in a while.
+ * <p>
+ * Every record stores the <b>new</b> value of a player, not the difference.
+ * This makes replaying the journal idempotent, so it does not matter if a
+ * record is replayed on top of a data file that already contains it.
+ * <p>
+ * A record consists of an operation (1 byte), a time type (1 byte), the UUID
+ * of the player (2 longs), a day (1 int) and a value (1 int), so every record
+ * is {@value #RECORD_SIZE} bytes. The day is only used by records that change
+ * the day history of a player.
+ *
+ * @author Staartvin
+ */
+public class PlaytimeJournal {
+
+    /**
+     * Size of a single record in bytes.
+     */
+    public static final int RECORD_SIZE = 26;
+
+    private static final byte OP_SET = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+    private static final byte OP_SET_DAY = 4;
+    private static final byte OP_CLEAR_DAYS = 5;
+
+    private final File journalFile;
+    private final File rotatedFile;
+
+    private DataOutputStream output;
+
+    // Number of records written since the last rotation
+    private long recordCount = 0;
+
+    /**
+     * Create a new journal in the given folder.
+     *
+     * @param folder Folder to store the journal in.
+     */
+    public PlaytimeJournal(final File folder) {
+        this.journalFile = new File(folder, "playtime.journal");
+        this.rotatedFile = new File(folder, "playtime.journal.old");
+    }
+
+    /**
+     * Open the journal so records can be appended to it.
+     *
+     * @throws IOException when the journal file could not be opened.
+     */
+    public synchronized void open() throws IOException {
+        if (output != null) {
+            return;
+        }
+
+        journalFile.getParentFile().mkdirs();
+
+        // Records are appended after a record that may be incomplete because of a crash.
+        cutIncompleteRecord(journalFile);
+
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+        recordCount = journalFile.length() / RECORD_SIZE;
+    }
+
+    /**
+     * Remove an incomplete record from the end of a journal file, so that
+     * records that are appended to it can be read again.
+     */
+    private static void cutIncompleteRecord(final File file) throws IOException {
+        if (!file.exists() || file.length() % RECORD_SIZE == 0) {
+            return;
+        }
+
+        final RandomAccessFile data = new RandomAccessFile(file, "rw");
+
+        try {
+            data.setLength(data.length() - data.length() % RECORD_SIZE);
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * Flush and close the journal.
+     */
+    public synchronized void close() {
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.close();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+
+        output = null;
+    }
+
+    /**
+     * Record that a player has a new value for the given time type.
+     *
+     * @param type  Type of time
+     * @param uuid  UUID of the player
+     * @param value New value of the player
+     */
+    public void logSet(final TimeType type, final UUID uuid, final int value) {
+        write(OP_SET, type, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), 0, value);
+    }
+
+    /**
+     * Record that a player was removed from the given time type.
+     *
+     * @param type Type of time
+     * @param uuid UUID of the player
+     */
+    public void logRemove(final TimeType type, final UUID uuid) {
+        write(OP_REMOVE, type, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), 0, 0);
+    }
+
+    /**
+     * Record that all values of the given time type were cleared.
+     *
+     * @param type Type of time
+     */
+    public void logClear(final TimeType type) {
+        write(OP_CLEAR, type, 0, 0, 0, 0);
+    }
+
+    /**
+     * Record that the bucket of a day of a player has a new value.
+     *
+     * @param uuid  UUID of the player
+     * @param day   Day of the bucket
+     * @param value New value of the bucket
+     */
+    public void logSetDay(final UUID uuid, final int day, final int value) {
+        write(OP_SET_DAY, TimeType.DAILY_TIME, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), day,
+                value);
+    }
+
+    /**
+     * Record that the buckets in a range of days were cleared for all players.
+     *
+     * @param fromDay First day of the range (inclusive)
+     * @param toDay   Last day of the range (inclusive)
+     */
+    public void logClearDays(final int fromDay, final int toDay) {
+        write(OP_CLEAR_DAYS, TimeType.DAILY_TIME, 0, 0, fromDay, toDay);
+    }
+
+    private synchronized void write(final byte operation, final TimeType type, final long mostSigBits,
+                                    final long leastSigBits, final int day, final int value) {
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.writeByte(operation);
+            output.writeByte(type.ordinal());
+            output.writeLong(mostSigBits);
+            output.writeLong(leastSigBits);
+            output.writeInt(day);
+            output.writeInt(value);
+
+            recordCount++;
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write all buffered records to disk.
+     */
+    public synchronized void flush() {
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.flush();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the number of records that were written since the last rotation.
+     *
+     * @return number of records in the active journal file.
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Move the active journal aside so a new journal can be started. Records
+     * that are written after this call end up in the new journal. The old
+     * journal should be deleted with {@link #deleteRotated()} once a snapshot
+     * of the data has been written to disk.
+     * <p>
+     * If an old journal still exists (because a previous snapshot failed), the
+     * active journal is appended to it so no records are lost.
+     *
+     * @return true if the journal was rotated, false otherwise.
+     */
+    public synchronized boolean rotate() {
+        final boolean wasOpen = output != null;
+
+        close();
+
+        boolean rotated;
+
+        if (!rotatedFile.exists()) {
+            rotated = journalFile.renameTo(rotatedFile);
+        } else {
+            rotated = appendTo(journalFile, rotatedFile) && journalFile.delete();
+        }
+
+        if (rotated) {
+            recordCount = 0;
+        }
+
+        if (wasOpen) {
+            try {
+                open();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return rotated;
+    }
+
+    /**
+     * Delete the journal that was moved aside by {@link #rotate()}.
+     */
+    public synchronized void deleteRotated() {
+        if (rotatedFile.exists() && !rotatedFile.delete()) {
+            rotatedFile.deleteOnExit();
+        }
+    }
+
+    /**
+     * Replay all records in the journal (first the rotated journal, then the
+     * active journal) and pass them to the given handler. An incomplete record
+     * at the end of a journal (for example caused by a crash) is ignored.
+     *
+     * @param handler Handler that applies the records.
+     * @return the number of records that were replayed.
+     */
+    public synchronized int replay(final Handler handler) {
+        return replay(rotatedFile, handler) + replay(journalFile, handler);
+    }
+
+    private int replay(final File file, final Handler handler) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        final TimeType[] types = TimeType.values();
+
+        int count = 0;
+
+        DataInputStream input = null;
+
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            while (true) {
+                final byte operation = input.readByte();
+                final int typeIndex = input.readByte();
+                final long mostSigBits = input.readLong();
+                final long leastSigBits = input.readLong();
+                final int day = input.readInt();
+                final int value = input.readInt();
+
+                // Skip corrupt records
+                if (typeIndex < 0 || typeIndex >= types.length) {
+                    continue;
+                }
+
+                final TimeType type = types[typeIndex];
+
+                if (operation == OP_SET) {
+                    handler.onSet(type, new UUID(mostSigBits, leastSigBits), value);
+                } else if (operation == OP_REMOVE) {
+                    handler.onRemove(type, new UUID(mostSigBits, leastSigBits));
+                } else if (operation == OP_CLEAR) {
+                    handler.onClear(type);
+                } else if (operation == OP_SET_DAY) {
+                    handler.onSetDay(new UUID(mostSigBits, leastSigBits), day, value);
+                } else if (operation == OP_CLEAR_DAYS) {
+                    handler.onClearDays(day, value);
+                } else {
+                    continue;
+                }
+
+                count++;
+            }
+        } catch (final EOFException e) {
+            // Reached the end of the journal.
+        } catch (final IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (final IOException e) {
+                    // Ignore
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private boolean appendTo(final File source, final File target) {
+        if (!source.exists()) {
+            return true;
+        }
+
+        try {
+            cutIncompleteRecord(source);
+            cutIncompleteRecord(target);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        InputStream input = null;
+        OutputStream output = null;
+
+        try {
+            input = new BufferedInputStream(new FileInputStream(source));
+            output = new BufferedOutputStream(new FileOutputStream(target, true));
+
+            final byte[] buffer = new byte[RECORD_SIZE * 1024];
+            int read;
+
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+
+            return true;
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            try {
+                if (input != null) {
+                    input.close();
+                }
+                if (output != null) {
+                    output.close();
+                }
+            } catch (final IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Applies records that are read from the journal.
+     */
+    public interface Handler {
+
+        /**
+         * Called when a player was given a new value.
+         *
+         * @param type  Type of time
+         * @param uuid  UUID of the player
+         * @param value New value
+         */
+        void onSet(TimeType type, UUID uuid, int value);
+
+        /**
+         * Called when a player was removed.
+         *
+         * @param type Type of time
+         * @param uuid UUID of the player
+         */
+        void onRemove(TimeType type, UUID uuid);
+
+        /**
+         * Called when all values of a time type were cleared.
+         *
+         * @param type Type of time
+         */
+        void onClear(TimeType type);
+
+        /**
+         * Called when the bucket of a day of a player was given a new value.
+         *
+         * @param uuid  UUID of the player
+         * @param day   Day of the bucket
+         * @param value New value of the bucket
+         */
+        void onSetDay(UUID uuid, int day, int value);
+
+        /**
+         * Called when the buckets in a range of days were cleared.
+         *
+         * @param fromDay First day of the range (inclusive)
+         * @param toDay   Last day of the range (inclusive)
+         */
+        void onClearDays(int fromDay, int toDay);
+    }
+}
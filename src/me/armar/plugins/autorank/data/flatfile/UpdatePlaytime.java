@@ -1,7 +1,7 @@
 package me.armar.plugins.autorank.data.flatfile;
 
 import me.armar.plugins.autorank.Autorank;
-import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.PlaytimeStorage;
 import me.armar.plugins.autorank.hooks.DependencyManager;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
 import me.armar.plugins.autorank.playtimes.PlaytimeManager;
@@ -17,11 +17,11 @@ import java.util.UUID;
 public class UpdatePlaytime implements Runnable {
 
     private final Autorank plugin;
-    private FlatFileManager flatFileManager;
+    private PlaytimeStorage playtimeStorage;
 
-    public UpdatePlaytime(final FlatFileManager flatFileManager, final Autorank plugin) {
+    public UpdatePlaytime(final PlaytimeStorage playtimeStorage, final Autorank plugin) {
         this.plugin = plugin;
-        this.flatFileManager = flatFileManager;
+        this.playtimeStorage = playtimeStorage;
     }
 
     @Override
@@ -39,7 +39,7 @@ public class UpdatePlaytime implements Runnable {
             public void run() {
                 // Check whether the files are still up to date - Do this
                 // synchronously
-                flatFileManager.doCalendarCheck();
+                playtimeStorage.doCalendarCheck();
             }
         });
 
@@ -68,6 +68,9 @@ public class UpdatePlaytime implements Runnable {
         // leaderboard exemption
         plugin.getPlayerChecker().doLeaderboardExemptCheck(player);
 
+        // Remember that this player was online today, even when no time is added.
+        playtimeStorage.updateLastSeen(player.getUniqueId());
+
         // Don't add extra time to the player when he is excluded from time updates.
         if (player.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES)) {
             plugin.debugMessage("Player " + player.getName() + " is excluded from time updates by given permissions.");
@@ -84,10 +87,8 @@ public class UpdatePlaytime implements Runnable {
 
         final UUID uuid = plugin.getUUIDStorage().getStoredUUID(player.getName());
 
-        // Modify local time
-        for (final TimeType type : TimeType.values()) {
-            flatFileManager.addLocalTime(uuid, PlaytimeManager.INTERVAL_MINUTES, type);
-        }
+        // Modify local time (daily, weekly and monthly time are derived from the time of today)
+        playtimeStorage.addPlayedTime(uuid, PlaytimeManager.INTERVAL_MINUTES);
 
         // Modify global time
         if (plugin.getMySQLManager().isMySQLEnabled()) {
@@ -0,0 +1,154 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps track of whether the database can be reached. After a
+ * number of connection failures in a row, the circuit is opened: no queries
+ * are sent until a retry succeeds. The time between two retries doubles after
+ * every failed retry, up to a maximum.
+ * <p>
+ * This way, queries do not all have to wait for the connect timeout of the
+ * driver while the database is down.
+ *
+ * @author Staartvin
+ */
+public class CircuitBreaker {
+
+    /**
+     * State of the circuit.
+     */
+    public enum State {
+        /**
+         * The database can be reached; queries are sent.
+         */
+        CLOSED,
+        /**
+         * The database could not be reached; queries are not sent until a
+         * retry succeeds.
+         */
+        OPEN
+    }
+
+    private final int failureThreshold;
+    private final long initialBackoff;
+    private final long maximumBackoff;
+    private final Ticker ticker;
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long backoff;
+    private long openedAt;
+    private long retryAt;
+
+    /**
+     * @param failureThreshold Number of connection failures in a row that
+     *                         open the circuit
+     * @param initialBackoff   Time (in milliseconds) until the first retry
+     * @param maximumBackoff   Maximum time (in milliseconds) between two
+     *                         retries
+     */
+    public CircuitBreaker(final int failureThreshold, final long initialBackoff, final long maximumBackoff) {
+        this(failureThreshold, initialBackoff, maximumBackoff, Ticker.systemTicker());
+    }
+
+    CircuitBreaker(final int failureThreshold, final long initialBackoff, final long maximumBackoff,
+                   final Ticker ticker) {
+        this.failureThreshold = failureThreshold;
+        this.initialBackoff = initialBackoff;
+        this.maximumBackoff = maximumBackoff;
+        this.ticker = ticker;
+        this.backoff = initialBackoff;
+    }
+
+    /**
+     * Check whether queries can be sent to the database.
+     *
+     * @return true if the circuit is closed.
+     */
+    public synchronized boolean allowRequest() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Check whether the circuit is open and it is time to check whether the
+     * database can be reached again.
+     */
+    public synchronized boolean isRetryDue() {
+        return state == State.OPEN && now() >= retryAt;
+    }
+
+    /**
+     * Record that a connection to the database was made.
+     *
+     * @return true if this closed the circuit.
+     */
+    public synchronized boolean recordSuccess() {
+        failures = 0;
+
+        if (state == State.CLOSED) {
+            return false;
+        }
+
+        state = State.CLOSED;
+        backoff = initialBackoff;
+
+        return true;
+    }
+
+    /**
+     * Record that no connection to the database could be made.
+     *
+     * @return true if this opened the circuit.
+     */
+    public synchronized boolean recordFailure() {
+        if (state == State.OPEN) {
+            // A retry failed, so wait longer before the next one.
+            backoff = Math.min(backoff * 2, maximumBackoff);
+            retryAt = now() + backoff;
+
+            return false;
+        }
+
+        if (++failures < failureThreshold) {
+            return false;
+        }
+
+        state = State.OPEN;
+        openedAt = now();
+        retryAt = openedAt + backoff;
+
+        return true;
+    }
+
+    /**
+     * Get the state of the circuit.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the time (in milliseconds) until the next retry.
+     *
+     * @return the time, or 0 if the circuit is closed or a retry is due.
+     */
+    public synchronized long getTimeUntilRetry() {
+        return state == State.OPEN ? Math.max(retryAt - now(), 0) : 0;
+    }
+
+    /**
+     * Get the time (in milliseconds) since the circuit was opened.
+     *
+     * @return the time, or 0 if the circuit is closed.
+     */
+    public synchronized long getTimeOpen() {
+        return state == State.OPEN ? now() - openedAt : 0;
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+    }
+}
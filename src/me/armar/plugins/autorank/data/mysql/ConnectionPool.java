@@ -0,0 +1,264 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of connections to a MySQL database. At most a fixed number of
+ * connections are in use at the same time; other threads wait until a
+ * connection is given back.
+ * <p>
+ * Connections that were not used for a while are checked before they are
+ * handed out again, and connections that stay unused for too long are closed
+ * by {@link #evictIdleConnections()}.
+ *
+ * @author Staartvin
+ */
+public class ConnectionPool {
+
+    // Time (in milliseconds) a thread waits for a connection before giving up
+    private static final long WAIT_TIMEOUT = 30000;
+
+    // Time (in milliseconds) a connection can be unused before it is checked again
+    private static final long VALIDATION_INTERVAL = 30000;
+
+    // Time (in seconds) the database gets to answer when a connection is checked
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    // Time (in milliseconds) a connection can be unused before it is closed
+    private static final long IDLE_TIMEOUT = 10 * 60000;
+
+    /**
+     * A connection that is not in use.
+     */
+    private static class IdleConnection {
+
+        private final Connection connection;
+        private final long idleSince = System.currentTimeMillis();
+
+        IdleConnection(final Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maximumSize;
+
+    private final Semaphore permits;
+
+    // Most recently used connections are at the front.
+    private final LinkedBlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<IdleConnection>();
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Create a new pool. Connections are opened when they are needed.
+     *
+     * @param url         JDBC url of the database
+     * @param username    Username
+     * @param password    Password
+     * @param maximumSize Maximum number of connections that can be open at the
+     *                    same time
+     */
+    public ConnectionPool(final String url, final String username, final String password, final int maximumSize) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maximumSize = Math.max(1, maximumSize);
+        this.permits = new Semaphore(this.maximumSize, true);
+    }
+
+    /**
+     * Get a connection from the pool. It has to be given back with
+     * {@link #release(Connection)} or {@link #invalidate(Connection)} when it
+     * is no longer needed.
+     *
+     * @return an open connection.
+     * @throws SQLException if no connection could be opened, or none became
+     *                      available in time.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        final long start = System.nanoTime();
+
+        try {
+            if (!permits.tryAcquire(WAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection (" + maximumSize
+                        + " connections are in use)");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+        }
+
+        borrowCount.incrementAndGet();
+        totalWaitTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        try {
+            IdleConnection idle;
+
+            while ((idle = idleConnections.pollFirst()) != null) {
+                if (isUsable(idle)) {
+                    return idle.connection;
+                }
+
+                closeQuietly(idle.connection);
+            }
+
+            return DriverManager.getConnection(url, username, password);
+        } catch (final SQLException e) {
+            permits.release();
+            throw e;
+        } catch (final RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give a connection back to the pool so it can be used again.
+     *
+     * @param connection Connection that was obtained by
+     *                   {@link #getConnection()}
+     */
+    public void release(final Connection connection) {
+        try {
+            if (closed || connection.isClosed()) {
+                closeQuietly(connection);
+            } else {
+                idleConnections.offerFirst(new IdleConnection(connection));
+            }
+        } catch (final SQLException e) {
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close a connection that is broken and give its place in the pool back.
+     *
+     * @param connection Connection that was obtained by
+     *                   {@link #getConnection()}
+     */
+    public void invalidate(final Connection connection) {
+        closeQuietly(connection);
+        permits.release();
+    }
+
+    /**
+     * Close all connections that have not been used for a while.
+     *
+     * @return the number of connections that were closed.
+     */
+    public int evictIdleConnections() {
+        final long now = System.currentTimeMillis();
+        int evicted = 0;
+
+        // The least recently used connections are at the back.
+        final Iterator<IdleConnection> iterator = idleConnections.descendingIterator();
+
+        while (iterator.hasNext()) {
+            final IdleConnection idle = iterator.next();
+
+            if (now - idle.idleSince < IDLE_TIMEOUT) {
+                break;
+            }
+
+            // Another thread could have taken the connection in the meantime.
+            if (idleConnections.removeLastOccurrence(idle)) {
+                closeQuietly(idle.connection);
+                evicted++;
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Get the average time (in milliseconds) threads had to wait for a
+     * connection.
+     */
+    public long getAverageWaitTime() {
+        final long borrowed = borrowCount.get();
+
+        return borrowed == 0 ? 0 : totalWaitTime.get() / borrowed;
+    }
+
+    /**
+     * Get the number of connections that are in use.
+     */
+    public int getActiveConnections() {
+        return maximumSize - permits.availablePermits();
+    }
+
+    /**
+     * Get the number of connections that are open, but not in use.
+     */
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    /**
+     * Get the maximum number of connections that can be open at the same
+     * time.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Check whether the pool is closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close all connections that are not in use. Connections that are in use
+     * are closed when they are given back.
+     */
+    public void close() {
+        closed = true;
+
+        IdleConnection idle;
+
+        while ((idle = idleConnections.pollFirst()) != null) {
+            closeQuietly(idle.connection);
+        }
+    }
+
+    private boolean isUsable(final IdleConnection idle) {
+        try {
+            if (System.currentTimeMillis() - idle.idleSince < VALIDATION_INTERVAL) {
+                return !idle.connection.isClosed();
+            }
+
+            return idle.connection.isValid(VALIDATION_TIMEOUT);
+        } catch (final SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(final Connection connection) {
+        try {
+            connection.close();
+        } catch (final SQLException e) {
+            // The connection is not used anymore anyway.
+        }
+    }
+}
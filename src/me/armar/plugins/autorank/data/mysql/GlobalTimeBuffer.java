@@ -0,0 +1,280 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.io.*;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * This class collects the time that is added to the global time of players
+ * and writes it to the database in one go. Time that is added to the same
+ * player multiple times is combined, so every flush only sends one row per
+ * player.
+ * <p>
+ * When the database cannot be reached, the time that was not written is kept
+ * in a spool file, so it is not lost when the server stops. It is written to
+ * the database with the next flush that succeeds. Global times that are set
+ * (instead of added to) while the database cannot be reached are kept in the
+ * same way.
+ *
+ * @author Staartvin
+ */
+public class GlobalTimeBuffer {
+
+    private final SQLDataStorage mysql;
+    private final SchemaManager schema;
+    private final File spoolFile;
+
+    // Time that has to be added to the global time of players
+    private Map<UUID, Integer> pendingTime = new HashMap<UUID, Integer>();
+
+    // Global times that have to be set (before the pending time is added)
+    private Map<UUID, Integer> pendingSets = new HashMap<UUID, Integer>();
+
+    // Only one flush can write to the database and the spool file at the same time.
+    private final Object flushLock = new Object();
+
+    /**
+     * @param mysql     Storage to write to
+     * @param schema    Schema of the storage, which gives the table with
+     *                  global times and the format of its UUIDs
+     * @param spoolFile File to store time in that could not be written
+     */
+    public GlobalTimeBuffer(final SQLDataStorage mysql, final SchemaManager schema, final File spoolFile) {
+        this.mysql = mysql;
+        this.schema = schema;
+        this.spoolFile = spoolFile;
+    }
+
+    /**
+     * Add time to the global time of a player. It is written to the database
+     * with the next flush.
+     *
+     * @param uuid    UUID of the player
+     * @param minutes Minutes to add
+     */
+    public synchronized void addTime(final UUID uuid, final int minutes) {
+        final Integer pending = pendingTime.get(uuid);
+
+        pendingTime.put(uuid, pending == null ? minutes : pending + minutes);
+    }
+
+    /**
+     * Get the time that was added to the global time of a player, but is not
+     * written to the database yet.
+     *
+     * @param uuid UUID of the player
+     * @return minutes that are not written yet.
+     */
+    public synchronized int getPendingTime(final UUID uuid) {
+        final Integer pending = pendingTime.get(uuid);
+
+        return pending == null ? 0 : pending;
+    }
+
+    /**
+     * Forget the time that was added to the global time of a player, but is
+     * not written to the database yet.
+     *
+     * @param uuid UUID of the player
+     */
+    public synchronized void discardPendingTime(final UUID uuid) {
+        pendingTime.remove(uuid);
+    }
+
+    /**
+     * Set the global time of a player. It is written to the database with
+     * the next flush, and replaces the time that was added before.
+     *
+     * @param uuid UUID of the player
+     * @param time Global time of the player
+     */
+    public synchronized void setTime(final UUID uuid, final int time) {
+        pendingTime.remove(uuid);
+        pendingSets.put(uuid, time);
+    }
+
+    /**
+     * Add the pending sets and time to the given maps, and forget them.
+     */
+    private synchronized void takePending(final Map<UUID, Integer> sets, final Map<UUID, Integer> deltas) {
+        for (final Entry<UUID, Integer> entry : pendingSets.entrySet()) {
+            // A new time replaces the time that was added before.
+            sets.put(entry.getKey(), entry.getValue());
+            deltas.remove(entry.getKey());
+        }
+
+        for (final Entry<UUID, Integer> entry : pendingTime.entrySet()) {
+            final Integer spooled = deltas.get(entry.getKey());
+
+            deltas.put(entry.getKey(), spooled == null ? entry.getValue() : spooled + entry.getValue());
+        }
+
+        pendingSets = new HashMap<UUID, Integer>();
+        pendingTime = new HashMap<UUID, Integer>();
+    }
+
+    /**
+     * Write all global times that were set, all time that was added (and all
+     * of the spool file) to the database. The set times and added time are
+     * each written in a single transaction. If that fails, they are stored in
+     * the spool file. This blocks the thread it's on.
+     *
+     * @return the number of players whose global time was updated, or -1 if
+     * the database could not be updated.
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            final Map<UUID, Integer> sets = new HashMap<UUID, Integer>();
+            final Map<UUID, Integer> deltas = new HashMap<UUID, Integer>();
+
+            readSpoolFile(sets, deltas);
+            takePending(sets, deltas);
+
+            if (sets.isEmpty() && deltas.isEmpty()) {
+                return 0;
+            }
+
+            final boolean available = mysql.isAvailable();
+
+            final boolean setsWritten = sets.isEmpty() || available && write(sets,
+                    "ON DUPLICATE KEY UPDATE time = VALUES(time), modified = CURRENT_TIMESTAMP");
+
+            // Time is only added after the times it has to be added to are set.
+            final boolean deltasWritten = deltas.isEmpty() || setsWritten && write(deltas,
+                    "ON DUPLICATE KEY UPDATE time = time + VALUES(time), modified = CURRENT_TIMESTAMP");
+
+            if (setsWritten && deltasWritten) {
+                if (spoolFile.exists() && !spoolFile.delete()) {
+                    // Do not write the spooled time twice.
+                    writeSpoolFile(new HashMap<UUID, Integer>(), new HashMap<UUID, Integer>());
+                }
+
+                final Set<UUID> updated = new HashSet<UUID>(sets.keySet());
+                updated.addAll(deltas.keySet());
+
+                return updated.size();
+            }
+
+            writeSpoolFile(setsWritten ? new HashMap<UUID, Integer>() : sets, deltas);
+
+            return -1;
+        }
+    }
+
+    private boolean write(final Map<UUID, Integer> times, final String onDuplicateKey) {
+        final UUIDFormat format = schema.getUUIDFormat();
+        final String statement = "INSERT INTO " + schema.getTable()
+                + " (uuid, time, modified) VALUES (?, ?, CURRENT_TIMESTAMP) " + onDuplicateKey;
+
+        return mysql.executeBatch(statement, new SQLDataStorage.BatchHandler() {
+            @Override
+            public void addBatch(final PreparedStatement stmt) throws SQLException {
+                for (final Entry<UUID, Integer> entry : times.entrySet()) {
+                    format.setParameter(stmt, 1, entry.getKey());
+                    stmt.setInt(2, entry.getValue());
+                    stmt.addBatch();
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the times that are stored in the spool file. Every line contains a
+     * UUID and the minutes that have to be added, separated by a comma, or a
+     * UUID and the time it has to be set to, separated by an equals sign.
+     */
+    private void readSpoolFile(final Map<UUID, Integer> sets, final Map<UUID, Integer> deltas) {
+        if (!spoolFile.exists()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(spoolFile), "UTF-8"));
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                final boolean set = line.indexOf('=') >= 0;
+                final int separator = line.indexOf(set ? '=' : ',');
+
+                if (separator < 0) {
+                    continue;
+                }
+
+                try {
+                    final UUID uuid = UUID.fromString(line.substring(0, separator));
+                    final int minutes = Integer.parseInt(line.substring(separator + 1).trim());
+                    final Integer spooled = deltas.get(uuid);
+
+                    if (set) {
+                        sets.put(uuid, minutes);
+                    } else {
+                        deltas.put(uuid, spooled == null ? minutes : spooled + minutes);
+                    }
+                } catch (final IllegalArgumentException e) {
+                    // Skip invalid lines
+                }
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the contents of the spool file. The new contents are written to
+     * a temporary file first, so a crash does not leave a half written file.
+     */
+    private void writeSpoolFile(final Map<UUID, Integer> sets, final Map<UUID, Integer> deltas) {
+        final File tempFile = new File(spoolFile.getPath() + ".tmp");
+
+        spoolFile.getParentFile().mkdirs();
+
+        Writer writer = null;
+
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+
+            // Times are set before time is added to them.
+            for (final Entry<UUID, Integer> entry : sets.entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+
+            for (final Entry<UUID, Integer> entry : deltas.entrySet()) {
+                writer.write(entry.getKey() + "," + entry.getValue() + "\n");
+            }
+
+            writer.close();
+            writer = null;
+
+            if (spoolFile.exists() && !spoolFile.delete()) {
+                throw new IOException("Could not replace " + spoolFile);
+            }
+
+            if (!tempFile.renameTo(spoolFile)) {
+                throw new IOException("Could not rename " + tempFile + " to " + spoolFile);
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
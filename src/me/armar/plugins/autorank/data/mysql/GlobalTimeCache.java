@@ -0,0 +1,215 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.*;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class caches the global times of players. Every cached time expires
+ * after a fixed time, and the cache holds a limited number of players: the
+ * players that were looked up least recently are removed first.
+ * <p>
+ * When multiple threads ask for the time of the same player that is not
+ * cached, the time is only looked up once and all threads get the result.
+ * <p>
+ * A global time is -1 if the player is not in the database.
+ * <p>
+ * Times that expired are remembered (for a limited number of players), so
+ * they can still be used when the database cannot be reached.
+ *
+ * @author Staartvin
+ */
+public class GlobalTimeCache {
+
+    private final LoadingCache<UUID, Integer> cache;
+
+    // Times that expired, which are only used when no fresh time can be looked up
+    private final Cache<UUID, Integer> expiredTimes;
+
+    /**
+     * Create a new cache.
+     *
+     * @param loader      Loader that looks up global times that are not
+     *                    cached
+     * @param timeToLive  Time (in minutes) a cached time stays valid
+     * @param maximumSize Maximum number of players that are cached
+     */
+    public GlobalTimeCache(final CacheLoader<UUID, Integer> loader, final long timeToLive, final long maximumSize) {
+        this(loader, timeToLive, maximumSize, Ticker.systemTicker());
+    }
+
+    GlobalTimeCache(final CacheLoader<UUID, Integer> loader, final long timeToLive, final long maximumSize,
+                    final Ticker ticker) {
+        expiredTimes = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+
+        cache = CacheBuilder.newBuilder().expireAfterWrite(timeToLive, TimeUnit.MINUTES).maximumSize(maximumSize)
+                .ticker(ticker).recordStats().removalListener(new RemovalListener<UUID, Integer>() {
+                    @Override
+                    public void onRemoval(final RemovalNotification<UUID, Integer> notification) {
+                        if (notification.getCause() == RemovalCause.EXPIRED) {
+                            expiredTimes.put(notification.getKey(), notification.getValue());
+                        }
+                    }
+                }).build(loader);
+    }
+
+    /**
+     * Get the global time of a player. If it is not cached, it is looked up.
+     * This blocks the thread it's on when the time has to be looked up.
+     *
+     * @param uuid UUID of the player
+     * @return the global time of the player.
+     */
+    public int get(final UUID uuid) {
+        return cache.getUnchecked(uuid);
+    }
+
+    /**
+     * Get the global times of a group of players. Players whose time is not
+     * cached are looked up at once.
+     *
+     * @param uuids UUIDs of the players
+     * @return a map with the global time of every player.
+     */
+    public Map<UUID, Integer> getAll(final Collection<UUID> uuids) {
+        try {
+            return new HashMap<UUID, Integer>(cache.getAll(uuids));
+        } catch (final ExecutionException e) {
+            throw new UncheckedExecutionException(e.getCause());
+        }
+    }
+
+    /**
+     * Get the cached global time of a player. This does not look up the time
+     * and does not count as a hit or miss.
+     *
+     * @param uuid UUID of the player
+     * @return the cached global time, or null if it is not cached (or it has
+     * expired).
+     */
+    public Integer getIfCached(final UUID uuid) {
+        return cache.asMap().get(uuid);
+    }
+
+    /**
+     * Get the latest global time of a player that is known, even if it has
+     * expired. This does not look up the time.
+     *
+     * @param uuid UUID of the player
+     * @return the global time of the player, or -1 if it is not known.
+     */
+    public int getLastKnown(final UUID uuid) {
+        final Integer cached = getIfCached(uuid);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        // Make sure times that expired are remembered.
+        cache.cleanUp();
+
+        final Integer expired = expiredTimes.getIfPresent(uuid);
+
+        return expired == null ? -1 : expired;
+    }
+
+    /**
+     * Check whether the global time of a player is cached and has not
+     * expired.
+     *
+     * @param uuid UUID of the player
+     */
+    public boolean isCached(final UUID uuid) {
+        return cache.asMap().containsKey(uuid);
+    }
+
+    /**
+     * Look up the global time of a player, even if it is cached, and cache
+     * the new time.
+     *
+     * @param uuid UUID of the player
+     * @return the fresh global time of the player.
+     */
+    public int refresh(final UUID uuid) {
+        cache.invalidate(uuid);
+
+        return get(uuid);
+    }
+
+    /**
+     * Look up the global times of a group of players at once, even if they
+     * are cached, and cache the new times.
+     *
+     * @param uuids UUIDs of the players
+     * @return a map with the fresh global time of every player.
+     */
+    public Map<UUID, Integer> refreshAll(final Collection<UUID> uuids) {
+        cache.invalidateAll(uuids);
+
+        return getAll(uuids);
+    }
+
+    /**
+     * Cache the global time of a player.
+     *
+     * @param uuid UUID of the player
+     * @param time Global time of the player
+     */
+    public void put(final UUID uuid, final int time) {
+        cache.put(uuid, time);
+    }
+
+    /**
+     * Replace the cached global time of a player. If the time of the player
+     * is not cached, nothing happens.
+     *
+     * @param uuid UUID of the player
+     * @param time New global time of the player
+     */
+    public void replace(final UUID uuid, final int time) {
+        cache.asMap().replace(uuid, time);
+    }
+
+    /**
+     * Add time to the cached global time of a player. If the time of the
+     * player is not cached, nothing happens.
+     *
+     * @param uuid    UUID of the player
+     * @param minutes Minutes to add
+     */
+    public void add(final UUID uuid, final int minutes) {
+        final ConcurrentMap<UUID, Integer> map = cache.asMap();
+
+        Integer cached;
+
+        do {
+            cached = map.get(uuid);
+
+            if (cached == null) {
+                return;
+            }
+        } while (!map.replace(uuid, cached, Math.max(cached, 0) + minutes));
+    }
+
+    /**
+     * Get the number of players that are cached.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Get the number of hits and misses of the cache.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+}
@@ -0,0 +1,20 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.util.UUID;
+
+/**
+ * Gets the global times of players one at a time, while they are read from
+ * the database.
+ *
+ * @author Staartvin
+ */
+public interface GlobalTimeHandler {
+
+    /**
+     * Called for every player that is read.
+     *
+     * @param uuid UUID of the player
+     * @param time Global time of the player
+     */
+    void handle(UUID uuid, int time);
+}
@@ -9,8 +9,10 @@ import java.util.concurrent.Callable;
 /**
  * This will get all database times. <br>
  * <br>
- * We have to wait for the thread to finish before we can get the results. <br>
- * Every database lookup will have to have its own thread.
+ * The rows are streamed from the database one at a time. Use
+ * {@link #stream(GlobalTimeHandler)} to handle them without keeping all of
+ * them in memory. The lookup blocks the thread it runs on until a connection
+ * is available and all rows are read.
  *
  * @author Staartvin
  */
@@ -18,11 +20,17 @@ public class GrabAllTimesTask implements Callable<HashMap<UUID, Integer>> {
 
     private final SQLDataStorage mysql;
     private final String table;
-    private HashMap<UUID, Integer> times = new HashMap<>();
+    private final UUIDFormat format;
 
-    public GrabAllTimesTask(final SQLDataStorage mysql, final String table) {
+    /**
+     * @param mysql  Storage to read from
+     * @param table  Table with global times
+     * @param format Format of the UUIDs in the table
+     */
+    public GrabAllTimesTask(final SQLDataStorage mysql, final String table, final UUIDFormat format) {
         this.mysql = mysql;
         this.table = table;
+        this.format = format;
     }
 
     /*
@@ -32,26 +40,43 @@ public class GrabAllTimesTask implements Callable<HashMap<UUID, Integer>> {
      */
     @Override
     public HashMap<UUID, Integer> call() {
+        final HashMap<UUID, Integer> times = new HashMap<>();
+
+        stream(new GlobalTimeHandler() {
+            @Override
+            public void handle(final UUID uuid, final int time) {
+                times.put(uuid, time);
+            }
+        });
+
+        return times;
+    }
+
+    /**
+     * Read all database times and give them to a handler, one at a time.
+     *
+     * @param handler Handler that gets the time of every player
+     * @return the number of rows that were read, or -1 if the database could
+     * not be read (the handler may have gotten some rows already).
+     */
+    public long stream(final GlobalTimeHandler handler) {
         if (mysql == null)
-            return times;
+            return -1;
 
-        final String statement = "SELECT * FROM " + table;
-        final ResultSet rs = mysql.executeQuery(statement);
+        final String statement = "SELECT uuid, time FROM " + table;
 
-        if (rs == null)
-            return times;
+        return mysql.streamQuery(statement, null, new SQLDataStorage.RowHandler() {
+            @Override
+            public boolean handle(final ResultSet rs) throws SQLException {
+                try {
+                    handler.handle(format.read(rs, 1), rs.getInt(2));
+                } catch (final IllegalArgumentException e) {
+                    // Skip rows without a valid UUID
+                }
 
-        try {
-            while (rs.next()) {
-                times.put(UUID.fromString(rs.getString(1)), rs.getInt(2));
+                return true;
             }
-        } catch (final SQLException e) {
-            System.out.println("SQLException: " + e.getMessage());
-            System.out.println("SQLState: " + e.getSQLState());
-            System.out.println("VendorError: " + e.getErrorCode());
-        }
-
-        return times;
+        });
     }
 
 }
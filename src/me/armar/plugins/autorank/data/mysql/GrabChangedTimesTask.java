@@ -0,0 +1,163 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * This will get the database times that were changed since a certain moment.
+ * <br>
+ * <br>
+ * Only rows with a newer modified timestamp are read, so a sync does not have
+ * to read the whole table. The rows are streamed from the database one at a
+ * time; use {@link #stream(GlobalTimeHandler)} to handle them without keeping
+ * all of them in memory. The lookup blocks the thread it runs on until a
+ * connection is available and all rows are read.
+ *
+ * @author Staartvin
+ */
+public class GrabChangedTimesTask implements Callable<GrabChangedTimesTask.ChangedTimes> {
+
+    // Rows that were changed in the same second as the latest row of the previous sync
+    // may not have been visible yet, so every sync reads back this many milliseconds.
+    private static final long OVERLAP = 1000;
+
+    /**
+     * The times that were changed, and the modified timestamp of the latest
+     * change.
+     */
+    public static class ChangedTimes {
+
+        private final Map<UUID, Integer> times;
+        private final Timestamp highWaterMark;
+        private final long count;
+
+        ChangedTimes(final Map<UUID, Integer> times, final Timestamp highWaterMark, final long count) {
+            this.times = times;
+            this.highWaterMark = highWaterMark;
+            this.count = count;
+        }
+
+        /**
+         * Get the changed times, from the oldest to the newest change. This is
+         * empty if the times were given to a {@link GlobalTimeHandler}.
+         */
+        public Map<UUID, Integer> getTimes() {
+            return times;
+        }
+
+        /**
+         * Get the number of times that were changed.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the modified timestamp of the latest change. Pass this to the
+         * next sync to only get newer changes.
+         *
+         * @return the timestamp, or null if the table is empty.
+         */
+        public Timestamp getHighWaterMark() {
+            return highWaterMark;
+        }
+    }
+
+    private final SQLDataStorage mysql;
+    private final String table;
+    private final UUIDFormat format;
+    private final Timestamp since;
+
+    /**
+     * @param mysql  Storage to read from
+     * @param table  Table with global times
+     * @param format Format of the UUIDs in the table
+     * @param since  High water mark of the previous sync, or null to read all
+     *               rows
+     */
+    public GrabChangedTimesTask(final SQLDataStorage mysql, final String table, final UUIDFormat format,
+                                final Timestamp since) {
+        this.mysql = mysql;
+        this.table = table;
+        this.format = format;
+        this.since = since;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.concurrent.Callable#call()
+     */
+    @Override
+    public ChangedTimes call() {
+        final Map<UUID, Integer> times = new LinkedHashMap<UUID, Integer>();
+
+        final ChangedTimes changes = stream(new GlobalTimeHandler() {
+            @Override
+            public void handle(final UUID uuid, final int time) {
+                times.put(uuid, time);
+            }
+        });
+
+        return changes == null ? null : new ChangedTimes(times, changes.getHighWaterMark(), changes.getCount());
+    }
+
+    /**
+     * Read the changed times and give them to a handler one at a time, from
+     * the oldest to the newest change.
+     *
+     * @param handler Handler that gets the time of every changed player
+     * @return the high water mark and number of changed times (without the
+     * times themselves), or null if the database could not be read (the
+     * handler may have gotten some rows already).
+     */
+    public ChangedTimes stream(final GlobalTimeHandler handler) {
+        if (mysql == null)
+            return null;
+
+        final String statement = "SELECT uuid, time, modified FROM " + table
+                + (since == null ? "" : " WHERE modified > ?") + " ORDER BY modified";
+
+        final Timestamp[] highWaterMark = {since};
+
+        final long rows = mysql.streamQuery(statement, new SQLDataStorage.ParameterHandler() {
+            @Override
+            public void setParameters(final PreparedStatement stmt) throws SQLException {
+                if (since != null) {
+                    stmt.setTimestamp(1, new Timestamp(since.getTime() - OVERLAP));
+                }
+            }
+        }, new SQLDataStorage.RowHandler() {
+            @Override
+            public boolean handle(final ResultSet rs) throws SQLException {
+                try {
+                    handler.handle(format.read(rs, 1), rs.getInt(2));
+                } catch (final IllegalArgumentException e) {
+                    // Skip rows without a valid UUID
+                }
+
+                final Timestamp modified = rs.getTimestamp(3);
+
+                if (modified != null && (highWaterMark[0] == null || modified.after(highWaterMark[0]))) {
+                    highWaterMark[0] = modified;
+                }
+
+                return true;
+            }
+        });
+
+        if (rows < 0) {
+            return null;
+        }
+
+        return new ChangedTimes(Collections.<UUID, Integer>emptyMap(), highWaterMark[0], rows);
+    }
+
+}
@@ -0,0 +1,69 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * This will get the rank of a player in the database, when the players are
+ * sorted in the same order as {@link GrabTopTimesTask} sorts them. <br>
+ * <br>
+ * The database counts the players with a higher time using the index on the
+ * time column, so no rows are sent. The lookup blocks the thread it runs on
+ * until a connection is available and the database has answered.
+ *
+ * @author Staartvin
+ */
+public class GrabGlobalRankTask implements Callable<Integer> {
+
+    private final SQLDataStorage mysql;
+    private final String table;
+    private final UUID uuid;
+    private final UUIDFormat format;
+
+    /**
+     * @param mysql  Storage to read from
+     * @param uuid   UUID of the player
+     * @param table  Table with global times
+     * @param format Format of the UUIDs in the table
+     */
+    public GrabGlobalRankTask(final SQLDataStorage mysql, final UUID uuid, final String table,
+                              final UUIDFormat format) {
+        this.mysql = mysql;
+        this.uuid = uuid;
+        this.table = table;
+        this.format = format;
+    }
+
+    /**
+     * Get the rank of the player. The player with the highest time has rank 1.
+     *
+     * @return the rank of the player, -1 if the player is not in the database
+     * or null if the database could not be read.
+     */
+    @Override
+    public Integer call() {
+        if (mysql == null)
+            return null;
+
+        return mysql.executeQuery(createStatement(table, format, uuid),
+                new SQLDataStorage.ResultHandler<Integer>() {
+                    @Override
+                    public Integer handle(final ResultSet rs) throws SQLException {
+                        return rs.next() ? rs.getInt(1) + 1 : -1;
+                    }
+                });
+    }
+
+    /**
+     * Create the statement that counts the players that are sorted before a
+     * player. No row is returned if the player is not in the table.
+     */
+    static String createStatement(final String table, final UUIDFormat format, final UUID uuid) {
+        return "SELECT (SELECT COUNT(*) FROM " + table + " o"
+                + " WHERE o.time > p.time OR (o.time = p.time AND o.uuid > p.uuid))"
+                + " FROM " + table + " p WHERE p.uuid = " + format.toSQL(uuid);
+    }
+
+}
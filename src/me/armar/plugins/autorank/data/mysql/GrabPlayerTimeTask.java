@@ -8,8 +8,8 @@ import java.util.concurrent.Callable;
 /**
  * This will get the database time. <br>
  * <br>
- * We have to wait for the thread to finish before we can get the results. <br>
- * Every database lookup will have to have its own thread.
+ * The lookup blocks the thread it runs on until a connection is available and
+ * the database has answered.
  *
  * @author Staartvin
  */
@@ -18,11 +18,20 @@ public class GrabPlayerTimeTask implements Callable<Integer> {
     private final SQLDataStorage mysql;
     private final String table;
     private final UUID uuid;
+    private final UUIDFormat format;
 
-    public GrabPlayerTimeTask(final SQLDataStorage mysql, final UUID uuid, final String table) {
+    /**
+     * @param mysql  Storage to read from
+     * @param uuid   UUID of the player
+     * @param table  Table with global times
+     * @param format Format of the UUIDs in the table
+     */
+    public GrabPlayerTimeTask(final SQLDataStorage mysql, final UUID uuid, final String table,
+                              final UUIDFormat format) {
         this.mysql = mysql;
         this.uuid = uuid;
         this.table = table;
+        this.format = format;
     }
 
     /*
@@ -35,28 +44,16 @@ public class GrabPlayerTimeTask implements Callable<Integer> {
         if (mysql == null)
             return -1;
 
-        int time = -1;
-
-        final String statement = "SELECT * FROM " + table + " WHERE uuid='" + uuid.toString() + "'";
-        final ResultSet rs = mysql.executeQuery(statement);
+        final String statement = "SELECT * FROM " + table + " WHERE uuid=" + format.toSQL(uuid);
 
-        if (rs == null)
-            return time;
-
-        try {
-            if (rs.next()) {
-                time = rs.getInt(2);
-            } else {
-                return time;
+        final Integer time = mysql.executeQuery(statement, new SQLDataStorage.ResultHandler<Integer>() {
+            @Override
+            public Integer handle(final ResultSet rs) throws SQLException {
+                return rs.next() ? rs.getInt(2) : -1;
             }
+        });
 
-        } catch (final SQLException e) {
-            System.out.println("SQLException: " + e.getMessage());
-            System.out.println("SQLState: " + e.getSQLState());
-            System.out.println("VendorError: " + e.getErrorCode());
-        }
-
-        return time;
+        return time == null ? -1 : time;
     }
 
 }
@@ -0,0 +1,106 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * This will get the database times of a group of players. <br>
+ * <br>
+ * Players are looked up in chunks with one query per chunk, instead of one
+ * query per player. The lookup blocks the thread it runs on until a connection
+ * is available and the database has answered.
+ *
+ * @author Staartvin
+ */
+public class GrabPlayerTimesTask implements Callable<Map<UUID, Integer>> {
+
+    // Maximum number of players that are looked up with one query
+    static final int CHUNK_SIZE = 500;
+
+    private final SQLDataStorage mysql;
+    private final String table;
+    private final Collection<UUID> uuids;
+    private final UUIDFormat format;
+
+    /**
+     * @param mysql  Storage to read from
+     * @param uuids  UUIDs of the players
+     * @param table  Table with global times
+     * @param format Format of the UUIDs in the table
+     */
+    public GrabPlayerTimesTask(final SQLDataStorage mysql, final Collection<UUID> uuids, final String table,
+                               final UUIDFormat format) {
+        this.mysql = mysql;
+        this.uuids = uuids;
+        this.table = table;
+        this.format = format;
+    }
+
+    /**
+     * Get the database times of the players.
+     *
+     * @return a map with the database time of every player that was found.
+     * Players that are not in the database are left out.
+     */
+    @Override
+    public Map<UUID, Integer> call() {
+        final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+
+        if (mysql == null)
+            return times;
+
+        final List<UUID> chunk = new ArrayList<UUID>(Math.min(uuids.size(), CHUNK_SIZE));
+
+        for (final UUID uuid : uuids) {
+            chunk.add(uuid);
+
+            if (chunk.size() >= CHUNK_SIZE) {
+                grabTimes(chunk, times);
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            grabTimes(chunk, times);
+        }
+
+        return times;
+    }
+
+    private void grabTimes(final List<UUID> chunk, final Map<UUID, Integer> times) {
+        mysql.executeQuery(createStatement(table, format, chunk), new SQLDataStorage.ResultHandler<Void>() {
+            @Override
+            public Void handle(final ResultSet rs) throws SQLException {
+                while (rs.next()) {
+                    times.put(format.read(rs, 1), rs.getInt(2));
+                }
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Create the query that selects the times of a chunk of players. UUIDs
+     * only consist of hexadecimal digits and dashes, so they can safely be
+     * put in the query.
+     */
+    static String createStatement(final String table, final UUIDFormat format, final List<UUID> chunk) {
+        final StringBuilder statement = new StringBuilder(64 + chunk.size() * 39);
+
+        statement.append("SELECT uuid, time FROM ").append(table).append(" WHERE uuid IN (");
+
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) {
+                statement.append(',');
+            }
+
+            statement.append(format.toSQL(chunk.get(i)));
+        }
+
+        return statement.append(')').toString();
+    }
+
+}
@@ -0,0 +1,77 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * This will get the highest database times. <br>
+ * <br>
+ * The database sorts the times (using the index on the time column), so only
+ * the rows that are asked for are sent. Players with the same time are sorted
+ * on their UUID, so pages never overlap. The lookup blocks the thread it runs
+ * on until a connection is available and the database has answered.
+ *
+ * @author Staartvin
+ */
+public class GrabTopTimesTask implements Callable<LinkedHashMap<UUID, Integer>> {
+
+    private final SQLDataStorage mysql;
+    private final String table;
+    private final UUIDFormat format;
+    private final int limit;
+    private final int offset;
+
+    /**
+     * @param mysql  Storage to read from
+     * @param table  Table with global times
+     * @param format Format of the UUIDs in the table
+     * @param limit  Maximum number of players to get
+     * @param offset Number of players with a higher time to skip
+     */
+    public GrabTopTimesTask(final SQLDataStorage mysql, final String table, final UUIDFormat format,
+                            final int limit, final int offset) {
+        this.mysql = mysql;
+        this.table = table;
+        this.format = format;
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    /**
+     * Get the highest database times.
+     *
+     * @return a map with the times of the players, from the highest to the
+     * lowest time, or null if the database could not be read.
+     */
+    @Override
+    public LinkedHashMap<UUID, Integer> call() {
+        if (mysql == null)
+            return null;
+
+        final String statement = "SELECT uuid, time FROM " + table + " ORDER BY time DESC, uuid DESC LIMIT ? OFFSET ?";
+
+        return mysql.executeQuery(statement, new SQLDataStorage.ParameterHandler() {
+            @Override
+            public void setParameters(final PreparedStatement stmt) throws SQLException {
+                stmt.setInt(1, limit);
+                stmt.setInt(2, offset);
+            }
+        }, new SQLDataStorage.ResultHandler<LinkedHashMap<UUID, Integer>>() {
+            @Override
+            public LinkedHashMap<UUID, Integer> handle(final ResultSet rs) throws SQLException {
+                final LinkedHashMap<UUID, Integer> times = new LinkedHashMap<UUID, Integer>();
+
+                while (rs.next()) {
+                    times.put(format.read(rs, 1), rs.getInt(2));
+                }
+
+                return times;
+            }
+        });
+    }
+
+}
@@ -1,43 +1,96 @@
 package me.armar.plugins.autorank.data.mysql;
 
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.config.SettingsConfig;
 import me.armar.plugins.autorank.config.SettingsConfig.MySQLCredentials;
 import me.armar.plugins.autorank.playtimes.PlaytimeManager;
 import me.armar.plugins.autorank.util.AutorankTools;
+import me.armar.plugins.autorank.util.AutorankTools.Time;
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 
+import java.io.File;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.UUID;
-import java.util.concurrent.*;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class keeps all incoming and outgoing connections under control. It
  * sends MySQL queries and can locate the database. MySQLManager class is
  * (hopefully) fail-prove and organised.
  * <p>
- * This also has a fail-safe when two queries are altering at the same time.
+ * Queries of different threads run at the same time, each on its own
+ * connection of the pool of {@link SQLDataStorage}.
+ * <p>
+ * While the database cannot be reached, global times are read from the cache
+ * and changes are queued until it can be reached again.
  *
  * @author Staartvin
  */
 public class MySQLManager {
 
-    // Thread pool for saving and retrieving data.
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Time that could not be written to the database is stored in this file (relative to the data folder)
+    private static final String SPOOL_PATH = "/data/GlobalTimeSpool.txt";
+
+    // Time (in minutes) between two writes of the added global time
+    private static final int FLUSH_INTERVAL_MINUTES = 1;
+
+    // Maximum number of players whose global time is cached
+    private static final int MAXIMUM_CACHE_SIZE = 10000;
+
+    // Time (in seconds) between two checks whether the database can be reached again
+    private static final int HEALTH_CHECK_INTERVAL_SECONDS = 5;
+
+    private static final String OUTAGE_WARNING = "The MySQL database cannot be reached! Global times are read "
+            + "from the cache and changes are written when it can be reached again.";
+
     String hostname, username, password, database, table;
-    // Keeps track of when a call to the database was for this player
-    private final HashMap<UUID, Long> lastChecked = new HashMap<UUID, Long>();
-    // Stores the last received global time for a player
-    private final HashMap<UUID, Integer> lastReceivedTime = new HashMap<UUID, Integer>();
+
+    // Global times of players that were looked up recently
+    private final GlobalTimeCache globalTimeCache;
+
+    // Modified timestamp of the latest change that was synced from the database
+    private volatile Timestamp syncHighWaterMark = null;
+
+    // Whether the outage of the database was reported, and the warning that reported the last recovery
+    private volatile boolean outageReported = false;
+    private volatile String recoveryWarning = null;
 
     private SQLDataStorage mysql;
+    private SchemaManager schemaManager;
+    private GlobalTimeBuffer globalTimeBuffer;
+    // Threads that look up global times for the async methods
+    private ExecutorService lookupExecutor;
     private final Autorank plugin;
 
     public MySQLManager(final Autorank instance) {
         plugin = instance;
 
+        // Online players are refreshed every interval (see PlaytimeManager.INTERVAL_MINUTES), so they are
+        // refreshed before their cached time expires (a minute later) and do not have to wait for a lookup.
+        globalTimeCache = new GlobalTimeCache(new CacheLoader<UUID, Integer>() {
+            @Override
+            public Integer load(final UUID uuid) {
+                return loadGlobalTime(uuid);
+            }
+
+            @Override
+            public Map<UUID, Integer> loadAll(final Iterable<? extends UUID> uuids) {
+                return loadGlobalTimes(Lists.<UUID>newArrayList(uuids));
+            }
+        }, plugin.getSettingsConfig().getIntervalTime() + 1, MAXIMUM_CACHE_SIZE);
+
         sqlSetup();
     }
 
@@ -45,15 +98,15 @@ public class MySQLManager {
      * Disconnect from database manually.
      */
     public void disconnectDatabase() {
-        executor.shutdown();
-        plugin.debugMessage(ChatColor.RED + "Awaiting termination of MySQL thread...");
-        try {
-            executor.awaitTermination(10, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            plugin.getLogger().warning("Failed to await termination of thread pool. Interrupted.");
+        if (lookupExecutor != null) {
+            lookupExecutor.shutdown();
         }
 
         if (mysql != null) {
+            // Write the time that was added since the last flush (or spool it).
+            flushGlobalTime();
+
+
             mysql.closeConnection();
         }
     }
@@ -70,31 +123,164 @@ public class MySQLManager {
         if (!this.isMySQLEnabled())
             return times;
 
-        // Check if connection is still alive
-        if (mysql.isClosed()) {
-            mysql.connect();
-        }
+        // Retrieve database time (will block thread until a connection of the pool is available)
+        plugin.debugMessage("Fresh AllCheck performed "
+                + (Thread.currentThread().getName().contains("Server thread") ? "not ASYNC" : "ASYNC") + " ("
+                + Thread.currentThread().getName() + ")");
 
-        // Retrieve database time
+        times = new GrabAllTimesTask(mysql, table, schemaManager.getUUIDFormat()).call();
 
-        // Initialise new callable class
-        final Callable<HashMap<UUID, Integer>> callable = new GrabAllTimesTask(mysql, table);
+        return times;
+    }
+
+    /**
+     * Read the times of all players in the MySQL database one at a time, so
+     * they do not all have to fit in memory. This blocks the thread it's on,
+     * so it should be run async.
+     *
+     * @param handler Handler that gets the time of every player
+     * @return the number of players that were read, or -1 if MySQL is
+     * disabled or the database could not be read.
+     */
+    public long streamAllPlayersFromDatabase(final GlobalTimeHandler handler) {
+        if (!this.isMySQLEnabled())
+            return -1;
 
-        // Sumbit callable
-        final Future<HashMap<UUID, Integer>> futureValue = executor.submit(callable);
+        return new GrabAllTimesTask(mysql, table, schemaManager.getUUIDFormat()).stream(handler);
+    }
 
-        try {
-            plugin.debugMessage("Fresh AllCheck performed "
-                    + (Thread.currentThread().getName().contains("Server thread") ? "not ASYNC" : "ASYNC") + " ("
-                    + Thread.currentThread().getName() + ")");
-            times = futureValue.get();
-        } catch (final InterruptedException e) {
-            e.printStackTrace();
-        } catch (final ExecutionException e) {
-            e.printStackTrace();
+    /**
+     * Get all the times of the players in the MySQL database, without
+     * blocking the thread that calls this method.
+     *
+     * @return a future that gives the same result as
+     * {@link #getAllPlayersFromDatabase()}.
+     */
+    public CompletableFuture<HashMap<UUID, Integer>> getAllPlayersFromDatabaseAsync() {
+        if (!this.isMySQLEnabled())
+            return CompletableFuture.completedFuture(new HashMap<UUID, Integer>());
+
+        return submitLookup(new Callable<HashMap<UUID, Integer>>() {
+            @Override
+            public HashMap<UUID, Integer> call() {
+                return getAllPlayersFromDatabase();
+            }
+        });
+    }
+
+    /**
+     * Get the times of the players that were changed in the MySQL database
+     * since a previous sync. This blocks the thread it's on, so it should be
+     * run async.
+     *
+     * @param since High water mark of the previous sync (see
+     *              {@link GrabChangedTimesTask.ChangedTimes#getHighWaterMark()}),
+     *              or null to get the times of all players
+     * @return the changed times, or null if MySQL is disabled or the database
+     * could not be read.
+     */
+    public GrabChangedTimesTask.ChangedTimes getChangedPlayersFromDatabase(final Timestamp since) {
+        if (!this.isMySQLEnabled())
+            return null;
+
+        return new GrabChangedTimesTask(mysql, table, schemaManager.getUUIDFormat(), since).call();
+    }
+
+    /**
+     * Read the times of the players that were changed in the MySQL database
+     * since a previous sync one at a time, so they do not all have to fit in
+     * memory. This blocks the thread it's on, so it should be run async.
+     *
+     * @param since   High water mark of the previous sync, or null to read
+     *                the times of all players
+     * @param handler Handler that gets the time of every changed player
+     * @return the high water mark and number of changed times, or null if
+     * MySQL is disabled or the database could not be read.
+     */
+    public GrabChangedTimesTask.ChangedTimes getChangedPlayersFromDatabase(final Timestamp since,
+                                                                           final GlobalTimeHandler handler) {
+        if (!this.isMySQLEnabled())
+            return null;
+
+        return new GrabChangedTimesTask(mysql, table, schemaManager.getUUIDFormat(), since).stream(handler);
+    }
+
+    /**
+     * Get the players with the highest global time, sorted by the database.
+     * This blocks the thread it's on, so it should be run async.
+     *
+     * @param limit  Maximum number of players to get
+     * @param offset Number of players with a higher time to skip
+     * @return a map with the global times of the players, from the highest to
+     * the lowest time. An empty map if MySQL is disabled or the database could
+     * not be read.
+     */
+    public LinkedHashMap<UUID, Integer> getTopGlobalTimes(final int limit, final int offset) {
+        if (!this.isMySQLEnabled())
+            return new LinkedHashMap<UUID, Integer>();
+
+        final LinkedHashMap<UUID, Integer> times = new GrabTopTimesTask(mysql, table,
+                schemaManager.getUUIDFormat(), limit, offset).call();
+
+        return times == null ? new LinkedHashMap<UUID, Integer>() : times;
+    }
+
+    /**
+     * Get the rank of a player when the players are sorted on their global
+     * time, in the same order as {@link #getTopGlobalTimes(int, int)}. This
+     * blocks the thread it's on, so it should be run async.
+     *
+     * @param uuid UUID of the player
+     * @return the rank of the player (1 for the highest time), or -1 if the
+     * player is not in the database, MySQL is disabled or the database could
+     * not be read.
+     */
+    public int getGlobalRank(final UUID uuid) {
+        if (!this.isMySQLEnabled())
+            return -1;
+
+        final Integer rank = new GrabGlobalRankTask(mysql, uuid, table, schemaManager.getUUIDFormat()).call();
+
+        return rank == null ? -1 : rank;
+    }
+
+    /**
+     * Update the cached global times of players whose time was changed in the
+     * database (for example by another server) since the last sync.
+     */
+    private void syncChangedTimes() {
+        if (syncHighWaterMark == null) {
+            // Only changes after the first sync are interesting; nothing was cached before.
+            syncHighWaterMark = mysql.executeQuery("SELECT MAX(modified) FROM " + table,
+                    new SQLDataStorage.ResultHandler<Timestamp>() {
+                        @Override
+                        public Timestamp handle(final ResultSet rs) throws SQLException {
+                            return rs.next() ? rs.getTimestamp(1) : null;
+                        }
+                    });
+
+            if (syncHighWaterMark != null) {
+                return;
+            }
         }
 
-        return times;
+        final GrabChangedTimesTask.ChangedTimes changes = getChangedPlayersFromDatabase(syncHighWaterMark,
+                new GlobalTimeHandler() {
+                    @Override
+                    public void handle(final UUID uuid, final int time) {
+                        globalTimeCache.replace(uuid, includePendingTime(uuid, time));
+                    }
+                });
+
+        if (changes == null) {
+            return;
+        }
+
+        syncHighWaterMark = changes.getHighWaterMark();
+
+        if (changes.getCount() > 0) {
+            plugin.debugMessage("Synced " + changes.getCount() + " changed global time(s) from database");
+        }
     }
 
     /**
@@ -104,14 +290,10 @@ public class MySQLManager {
      * @return cached global time or 0 if nothing was cached.
      */
     public Integer getCachedGlobalTime(final UUID uuid) {
-        if (!lastReceivedTime.containsKey(uuid)) {
-            return 0;
-        }
+        final Integer cached = globalTimeCache.getIfCached(uuid);
 
-        final int cached = lastReceivedTime.get(uuid);
-
-        // Weird cached
-        if (cached <= 0) {
+        // Not cached or not in the database
+        if (cached == null || cached <= 0) {
             return 0;
         }
 
@@ -128,7 +310,10 @@ public class MySQLManager {
     }
 
     /**
-     * Add minutes to the global time of a player.
+     * Add minutes to the global time of a player. This does not block: the
+     * minutes are collected and written to the database every
+     * {@value #FLUSH_INTERVAL_MINUTES} minute(s), together with the minutes of
+     * all other players.
      *
      * @param uuid           UUID of the player
      * @param timeDifference Minutes to add
@@ -145,14 +330,28 @@ public class MySQLManager {
             }
         }
 
-        final int time = getFreshGlobalTime(uuid);
+        globalTimeBuffer.addTime(uuid, timeDifference);
 
-        if (time >= 0) {
-            setGlobalTime(uuid, time + timeDifference);
-        } else {
-            setGlobalTime(uuid, timeDifference);
-        }
+        // Keep the cached value up to date, without looking it up.
+        globalTimeCache.add(uuid, timeDifference);
+    }
 
+    /**
+     * Write the time that was added to the global time of players to the
+     * database. This blocks the thread it's on.
+     */
+    public void flushGlobalTime() {
+        if (!isMySQLEnabled())
+            return;
+
+        final int updated = globalTimeBuffer.flush();
+
+        if (updated < 0) {
+            plugin.debugMessage(ChatColor.RED + "Could not write global times to database, stored them in "
+                    + SPOOL_PATH);
+        } else if (updated > 0) {
+            plugin.debugMessage("Wrote global time of " + updated + " player(s) to database");
+        }
     }
 
     /**
@@ -181,6 +380,80 @@ public class MySQLManager {
         return plugin.getMySQLManager().getDatabaseTime(uuid);
     }
 
+    /**
+     * Get the total playtime across all servers, without blocking the thread
+     * that calls this method. If the cached value is not out of date, the
+     * returned future is done right away.
+     *
+     * @param uuid UUID to check for
+     * @return a future that gives the same result as
+     * {@link #getGlobalTime(UUID)}.
+     */
+    public CompletableFuture<Integer> getGlobalTimeAsync(final UUID uuid) {
+        if (uuid == null || !isMySQLEnabled())
+            return CompletableFuture.completedFuture(0);
+
+        if (!isOutOfDate(uuid))
+            return CompletableFuture.completedFuture(getCachedGlobalTime(uuid));
+
+        // The last known time is used right away.
+        if (!mysql.isAvailable())
+            return CompletableFuture.completedFuture(getDatabaseTime(uuid));
+
+        return submitLookup(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                // Lookups of the same player share one query.
+                return getDatabaseTime(uuid);
+            }
+        });
+    }
+
+    /**
+     * Get the global time of a group of players, without blocking the thread
+     * that calls this method.
+     *
+     * @param uuids UUIDs of the players
+     * @return a future that gives the same result as
+     * {@link #getGlobalTimes(Collection)}.
+     */
+    public CompletableFuture<Map<UUID, Integer>> getGlobalTimesAsync(final Collection<UUID> uuids) {
+        final List<UUID> copy = new ArrayList<UUID>(uuids);
+
+        // Nothing has to be looked up (or can be).
+        if (!isMySQLEnabled() || !mysql.isAvailable())
+            return CompletableFuture.completedFuture(getGlobalTimes(copy));
+
+        return submitLookup(new Callable<Map<UUID, Integer>>() {
+            @Override
+            public Map<UUID, Integer> call() {
+                return getGlobalTimes(copy);
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> submitLookup(final Callable<T> lookup) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        try {
+            lookupExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        future.complete(lookup.call());
+                    } catch (final Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // MySQL was disconnected in the meantime.
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
     /**
      * Get the database time of player <br>
      * Run this ASYNC, because it will block the thread it's on.
@@ -194,17 +467,14 @@ public class MySQLManager {
      */
     public int getDatabaseTime(final UUID uuid) {
 
-        // Do not make a call to the database every time.
-        // Instead, only call once every 5 minutes.
-        if (!isOutOfDate(uuid)) {
-
-            int cachedTime = getCachedGlobalTime(uuid);
-            plugin.debugMessage("Obtained cached global time of '" + uuid.toString() + "' with value " + cachedTime);
-
-            return cachedTime;
-        }
+        // Mysql is not enabled
+        if (!isMySQLEnabled())
+            return 0;
 
-        return this.getFreshDatabaseTime(uuid);
+        // Do not make a call to the database every time.
+        // Instead, only call once every interval. Threads that ask for the
+        // same player at the same time share one lookup.
+        return globalTimeCache.get(uuid);
     }
 
     /**
@@ -226,41 +496,140 @@ public class MySQLManager {
         if (!isMySQLEnabled())
             return 0;
 
-        // Check if connection is still alive
-        if (mysql.isClosed()) {
-            mysql.connect();
+        // The database cannot be reached, so use the cached (or last known) value.
+        if (!mysql.isAvailable())
+            return getDatabaseTime(uuid);
+
+        // Grab value (will block thread, but there is no other way)
+        // That's why you need to run this async.
+        plugin.debugMessage("Fresh Gcheck performed "
+                + (Thread.currentThread().getName().contains("Server thread") ? "not ASYNC" : "ASYNC") + " ("
+                + Thread.currentThread().getName() + ")");
+
+        final int value = globalTimeCache.refresh(uuid);
+
+        plugin.debugMessage("Obtained fresh global time of '" + uuid.toString() + "' with value " + value);
+
+        return value;
+    }
+
+    /**
+     * Get the database times of a group of players. The players are looked up
+     * with as few queries as possible, instead of one query per player.
+     * <p>
+     * This will always return the results that are currently in the database
+     * and never cached values. This blocks the thread it's on, so it should be
+     * run async.
+     *
+     * @param uuids UUIDs of the players
+     * @return a map with the fresh database time of every player, or -1 if a
+     * player was not found. An empty map if MySQL is not enabled.
+     */
+    public Map<UUID, Integer> getFreshDatabaseTimes(final Collection<UUID> uuids) {
+        final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+
+        if (!isMySQLEnabled() || uuids.isEmpty())
+            return times;
+
+        plugin.debugMessage("Obtaining fresh global time of " + uuids.size() + " player(s) ("
+                + Thread.currentThread().getName() + ")");
+
+        // The database cannot be reached, so do not throw the cached values away.
+        times.putAll(mysql.isAvailable() ? globalTimeCache.refreshAll(uuids) : globalTimeCache.getAll(uuids));
+
+        return times;
+    }
+
+    /**
+     * Get the global time of a group of players. Cached values are used when
+     * they are not out of date; all other players are looked up at once. Run
+     * this ASYNC, because it can block the thread it's on.
+     *
+     * @param uuids UUIDs of the players
+     * @return a map with the global time of every player, or 0 if no time was
+     * found for a player.
+     */
+    public Map<UUID, Integer> getGlobalTimes(final Collection<UUID> uuids) {
+        final Set<UUID> players = new HashSet<UUID>(uuids);
+        players.remove(null);
+
+        final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
+
+        if (isMySQLEnabled() && !players.isEmpty()) {
+            times.putAll(globalTimeCache.getAll(players));
         }
 
-        // Retrieve database time
+        for (final UUID uuid : players) {
+            final Integer time = times.get(uuid);
 
-        // Initialise new callable class
-        final Callable<Integer> callable = new GrabPlayerTimeTask(mysql, uuid, table);
+            // Players that were not found (or could not be looked up)
+            times.put(uuid, time == null ? 0 : Math.max(time, 0));
+        }
 
-        // Sumbit callable
-        final Future<Integer> futureValue = executor.submit(callable);
+        return times;
+    }
 
-        // Grab value (will block thread, but there is no other way)
-        // That's why you need to run this async.
-        int value = 0;
+    /**
+     * Look up the global time of a player for the cache.
+     *
+     * @param uuid UUID of the player
+     * @return the global time of the player, or -1 if it was not found.
+     */
+    private int loadGlobalTime(final UUID uuid) {
+        if (!isMySQLEnabled())
+            return 0;
 
-        try {
-            plugin.debugMessage("Fresh Gcheck performed "
-                    + (Thread.currentThread().getName().contains("Server thread") ? "not ASYNC" : "ASYNC") + " ("
-                    + Thread.currentThread().getName() + ")");
-            value = futureValue.get();
-        } catch (final InterruptedException e) {
-            e.printStackTrace();
-        } catch (final ExecutionException e) {
-            e.printStackTrace();
+        if (!mysql.isAvailable())
+            return globalTimeCache.getLastKnown(uuid);
+
+        return includePendingTime(uuid, new GrabPlayerTimeTask(mysql, uuid, table,
+                schemaManager.getUUIDFormat()).call());
+    }
+
+    /**
+     * Look up the global times of a group of players at once for the cache.
+     *
+     * @param uuids UUIDs of the players
+     * @return a map with the global time of every player, or -1 if a player
+     * was not found.
+     */
+    private Map<UUID, Integer> loadGlobalTimes(final List<UUID> uuids) {
+        if (isMySQLEnabled() && !mysql.isAvailable()) {
+            final Map<UUID, Integer> lastKnownTimes = new HashMap<UUID, Integer>();
+
+            for (final UUID uuid : uuids) {
+                lastKnownTimes.put(uuid, globalTimeCache.getLastKnown(uuid));
+            }
+
+            return lastKnownTimes;
         }
 
-        // Store last received time and last received value
-        lastChecked.put(uuid, System.currentTimeMillis());
-        lastReceivedTime.put(uuid, value);
+        final Map<UUID, Integer> storedTimes = isMySQLEnabled()
+                ? new GrabPlayerTimesTask(mysql, uuids, table, schemaManager.getUUIDFormat()).call()
+                : new HashMap<UUID, Integer>();
 
-        plugin.debugMessage("Obtained fresh global time of '" + uuid.toString() + "' with value " + value);
+        final Map<UUID, Integer> times = new HashMap<UUID, Integer>();
 
-        return value;
+        for (final UUID uuid : uuids) {
+            final Integer storedValue = storedTimes.get(uuid);
+
+            times.put(uuid, includePendingTime(uuid, storedValue == null ? -1 : storedValue));
+        }
+
+        return times;
+    }
+
+    /**
+     * Include time that was added, but is not written to the database yet.
+     *
+     * @param uuid        UUID of the player
+     * @param storedValue Time in the database, or -1 if the player was not
+     *                    found
+     */
+    private int includePendingTime(final UUID uuid, final int storedValue) {
+        final int pendingValue = globalTimeBuffer.getPendingTime(uuid);
+
+        return pendingValue == 0 ? storedValue : Math.max(storedValue, 0) + pendingValue;
     }
 
     /**
@@ -281,26 +650,9 @@ public class MySQLManager {
      * False otherwise.
      */
     public boolean isOutOfDate(final UUID uuid) {
-        // Checks whether the last check was five minutes ago.
-        // When the last check was more than five minutes ago,
-        // the database time is 'outdated'
-
-        // Never checked
-        if (!lastChecked.containsKey(uuid)) {
-            return true;
-        }
-
-        final long currentTime = System.currentTimeMillis();
-
-        final long lastCheckedTime = lastChecked.get(uuid);
-
-        // Weird time received.
-        if (lastCheckedTime <= 0) {
-            return true;
-        }
-
-        // Get the difference in minutes
-        return (currentTime - lastCheckedTime) / 60000 >= PlaytimeManager.INTERVAL_MINUTES;
+        // Cached times expire after an interval, so the database time is
+        // 'outdated' when it is not cached anymore.
+        return !globalTimeCache.isCached(uuid);
     }
 
     /**
@@ -317,10 +669,19 @@ public class MySQLManager {
 
             @Override
             public void run() {
+                final List<UUID> uuids = new ArrayList<UUID>();
+
                 for (Player p : plugin.getServer().getOnlinePlayers()) {
-                    // Update fresh database time.
-                    getFreshDatabaseTime(p.getUniqueId());
+                    uuids.add(p.getUniqueId());
                 }
+
+                // Update fresh database time of all players at once.
+                getFreshDatabaseTimes(uuids);
+
+                final CacheStats stats = globalTimeCache.getStats();
+
+                plugin.debugMessage("Global time cache: " + globalTimeCache.size() + " cached, " + stats.hitCount()
+                        + " hits, " + stats.missCount() + " misses");
             }
 
         }, AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_MINUTE * PlaytimeManager.INTERVAL_MINUTES);
@@ -328,63 +689,195 @@ public class MySQLManager {
     }
 
     /**
-     * Set the global time of a player
-     *
-     * @param uuid UUID of the player
-     * @param time Time to change to in minutes
+     * Close connections to the database that have not been used for a while.
+     * This runs every minute.
      */
-    public boolean setGlobalTime(final UUID uuid, final int time) {
+    private void evictIdleConnections() {
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
 
-        plugin.debugMessage("Setting global time of '" + uuid.toString() + "' to " + time);
+            @Override
+            public void run() {
+                if (mysql != null) {
+                    mysql.evictIdleConnections();
+                }
+            }
 
-        if (!isMySQLEnabled())
-            return false;
+        }, AutorankTools.TICKS_PER_MINUTE, AutorankTools.TICKS_PER_MINUTE);
+    }
+
+    /**
+     * Write the time that was added to the global time of players to the
+     * database every {@value #FLUSH_INTERVAL_MINUTES} minute(s).
+     */
+    private void scheduleGlobalTimeFlush() {
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
+
+            @Override
+            public void run() {
+                flushGlobalTime();
+            }
+
+        }, AutorankTools.TICKS_PER_MINUTE * FLUSH_INTERVAL_MINUTES,
+                AutorankTools.TICKS_PER_MINUTE * FLUSH_INTERVAL_MINUTES);
+    }
+
+    /**
+     * Sync global times that were changed in the database every couple of
+     * minutes (see {@link SettingsConfig#getMySQLSyncInterval()}).
+     */
+    private void scheduleIncrementalSync() {
+        final int interval = plugin.getSettingsConfig().getMySQLSyncInterval();
 
-        // Check if connection is still alive
-        if (mysql.isClosed()) {
-            mysql.connect();
+        if (interval <= 0) {
+            return;
         }
 
-        final String statement = "INSERT INTO " + table + " VALUES ('" + uuid.toString() + "', " + time
-                + ", CURRENT_TIMESTAMP) " + "ON DUPLICATE KEY UPDATE " + "time=" + time;
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
 
-        // Run async to prevent load issues.
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            @Override
+            public void run() {
+                if (mysql != null) {
+                    syncChangedTimes();
+                }
+            }
+
+        }, AutorankTools.TICKS_PER_SECOND, (long) AutorankTools.TICKS_PER_MINUTE * interval);
+    }
+
+    /**
+     * Check whether the database can be reached again when it could not be
+     * reached before, every {@value #HEALTH_CHECK_INTERVAL_SECONDS} seconds.
+     * An outage and the recovery of the database are reported to the
+     * {@link me.armar.plugins.autorank.warningmanager.WarningManager}.
+     */
+    private void scheduleHealthMonitor() {
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
 
             @Override
             public void run() {
-                mysql.execute(statement);
+                final SQLDataStorage storage = mysql;
+
+                if (storage == null) {
+                    return;
+                }
+
+                final long outageTime = storage.getCircuitBreaker().getTimeOpen();
+
+                if (storage.retryConnection()) {
+                    reportRecovery(outageTime);
+
+                    // Write what was queued and get the times that were changed in the meantime.
+                    flushGlobalTime();
+
+                    final List<UUID> uuids = new ArrayList<UUID>();
+
+                    for (Player p : plugin.getServer().getOnlinePlayers()) {
+                        uuids.add(p.getUniqueId());
+                    }
+
+                    getFreshDatabaseTimes(uuids);
+                } else if (!storage.isAvailable() && !outageReported) {
+                    reportOutage();
+                }
+            }
+
+        }, AutorankTools.TICKS_PER_SECOND * HEALTH_CHECK_INTERVAL_SECONDS,
+                AutorankTools.TICKS_PER_SECOND * HEALTH_CHECK_INTERVAL_SECONDS);
+    }
+
+    private void reportOutage() {
+        outageReported = true;
+
+        plugin.getLogger().warning("Could not reach MySQL database at " + hostname
+                + ", global times are read from the cache until it can be reached again");
+
+        // Warnings are registered on the main thread.
+        plugin.getServer().getScheduler().runTask(plugin, new Runnable() {
+
+            @Override
+            public void run() {
+                plugin.getWarningManager().registerWarning(OUTAGE_WARNING, 8);
             }
         });
+    }
 
-        // Update cache records
-        this.lastChecked.put(uuid, System.currentTimeMillis());
-        this.lastReceivedTime.put(uuid, time);
+    private void reportRecovery(final long outageTime) {
+        outageReported = false;
 
-        return true;
+        final String duration = AutorankTools.timeToString(
+                (int) Math.max(TimeUnit.MILLISECONDS.toSeconds(outageTime), 1), Time.SECONDS);
+
+        plugin.getLogger().info("Connection to MySQL database at " + hostname + " was restored after " + duration);
+
+        final String warning = "The MySQL database could not be reached for " + duration
+                + ". Global times that changed in the meantime were written when it came back.";
+
+        plugin.getServer().getScheduler().runTask(plugin, new Runnable() {
+
+            @Override
+            public void run() {
+                plugin.getWarningManager().unregisterWarning(OUTAGE_WARNING);
+
+                // Only the latest recovery is shown.
+                if (recoveryWarning != null) {
+                    plugin.getWarningManager().unregisterWarning(recoveryWarning);
+                }
+
+                recoveryWarning = warning;
+                plugin.getWarningManager().registerWarning(warning, 2);
+            }
+        });
     }
 
     /**
-     * Initialise the tables for the MySQL database.
+     * Set the global time of a player
+     *
+     * @param uuid UUID of the player
+     * @param time Time to change to in minutes
      */
-    public void setupTable() {
-        // Check if connection is still alive
-        if (mysql.isClosed()) {
-            mysql.connect();
-        }
+    public boolean setGlobalTime(final UUID uuid, final int time) {
 
-        final String statement = "CREATE TABLE  IF NOT EXISTS " + table + " " + "(uuid VARCHAR(255) not NULL, "
-                + " time INTEGER not NULL, " + " modified TIMESTAMP not NULL, " + " PRIMARY KEY ( uuid ))";
+        plugin.debugMessage("Setting global time of '" + uuid.toString() + "' to " + time);
+
+        if (!isMySQLEnabled())
+            return false;
+
+        // The new time replaces the time that was added before.
+        globalTimeBuffer.discardPendingTime(uuid);
 
         // Run async to prevent load issues.
         plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
 
             @Override
             public void run() {
-                mysql.execute(statement);
+                // The format is read when the statement runs, in case the UUIDs were converted in the meantime.
+                if (!mysql.isAvailable() || !mysql.execute("INSERT INTO " + table + " VALUES ("
+                        + schemaManager.getUUIDFormat().toSQL(uuid) + ", " + time + ", CURRENT_TIMESTAMP) "
+                        + "ON DUPLICATE KEY UPDATE " + "time=" + time + ", modified=CURRENT_TIMESTAMP")) {
+                    // Write it when the database can be reached again.
+                    globalTimeBuffer.setTime(uuid, time);
+
+                    plugin.debugMessage("Could not set global time of '" + uuid.toString()
+                            + "', it is written with the next flush");
+                }
             }
         });
 
+        // Update cache records
+        globalTimeCache.put(uuid, time);
+
+        return true;
+    }
+
+    /**
+     * Initialise the tables for the MySQL database, by applying all
+     * migrations of {@link SchemaManager} that were not applied yet. This
+     * blocks the thread it's on.
+     *
+     * @return true if the tables are up to date.
+     */
+    public boolean setupTable() {
+        return schemaManager.migrate();
     }
 
     /**
@@ -409,7 +902,15 @@ public class MySQLManager {
             database = configHandler.getMySQLCredentials(MySQLCredentials.DATABASE);
             table = configHandler.getMySQLCredentials(MySQLCredentials.TABLE);
 
-            mysql = new SQLDataStorage(hostname, username, password, database);
+            mysql = new SQLDataStorage(plugin, hostname, username, password, database,
+                    configHandler.getMySQLPoolSize());
+            schemaManager = new SchemaManager(plugin, mysql, table);
+            globalTimeBuffer = new GlobalTimeBuffer(mysql, schemaManager,
+                    new File(plugin.getDataFolder(), SPOOL_PATH));
+
+            // One lookup thread per connection, so lookups do not wait for each other.
+            lookupExecutor = Executors.newFixedThreadPool(configHandler.getMySQLPoolSize(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Autorank MySQL lookup %d").build());
 
             plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
 
@@ -424,6 +925,11 @@ public class MySQLManager {
                     }
 
                     if (mysql != null) {
+                        // Global times are read and written while the tables are migrated.
+                        evictIdleConnections();
+                        scheduleHealthMonitor();
+                        scheduleGlobalTimeFlush();
+                        scheduleIncrementalSync();
                         setupTable();
                     }
                 }
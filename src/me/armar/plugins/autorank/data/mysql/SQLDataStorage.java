@@ -1,74 +1,196 @@
 package me.armar.plugins.autorank.data.mysql;
 
+import me.armar.plugins.autorank.Autorank;
+
 import java.sql.*;
+import java.util.concurrent.TimeUnit;
 
 /**
- * This class is used to create a connection between the MySQL database and
- * Autorank.
+ * This class is used to create connections between the MySQL database and
+ * Autorank. Connections are taken from a {@link ConnectionPool}, so queries of
+ * different threads can run at the same time.
+ * <p>
+ * When connections to the database fail a couple of times in a row, queries
+ * are not sent (and fail right away) until {@link #retryConnection()} reaches
+ * the database again. See {@link CircuitBreaker}.
  *
  * @author Staartvin
  */
 public class SQLDataStorage {
 
-    private Connection conn = null;
+    /**
+     * Reads the result of a query. The result set is closed after it is read.
+     */
+    public interface ResultHandler<T> {
+
+        /**
+         * Read the result of a query.
+         *
+         * @param rs Result of the query
+         * @return the value that was read.
+         * @throws SQLException if the result could not be read.
+         */
+        T handle(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Reads the rows of a query one at a time. See
+     * {@link #streamQuery(String, ParameterHandler, RowHandler)}.
+     */
+    public interface RowHandler {
+
+        /**
+         * Read the current row of the result. The handler should not move
+         * the cursor of the result set.
+         *
+         * @param rs Result of the query, positioned at the row
+         * @return true to read the next row, false to stop.
+         * @throws SQLException if the row could not be read.
+         */
+        boolean handle(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Adds rows to a batch of a prepared statement.
+     */
+    public interface BatchHandler {
+
+        /**
+         * Set the parameters of every row and add each row to the batch.
+         *
+         * @param stmt Statement to add rows to
+         * @throws SQLException if a row could not be added.
+         */
+        void addBatch(PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * Sets the parameters of a prepared statement.
+     */
+    public interface ParameterHandler {
+
+        /**
+         * Set the parameters of the statement.
+         *
+         * @param stmt Statement to set the parameters of
+         * @throws SQLException if a parameter could not be set.
+         */
+        void setParameters(PreparedStatement stmt) throws SQLException;
+    }
+
+    // Waiting longer than this (in milliseconds) for a connection is logged.
+    private static final long SLOW_WAIT_TIME = 100;
+
+    // Tells the MySQL driver to send the rows of a result one at a time, instead of reading all of them at once
+    private static final int STREAM_FETCH_SIZE = Integer.MIN_VALUE;
+
+    // Time (in milliseconds) the driver may take to open a connection
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    // Connection failures in a row after which no queries are sent until a retry succeeds
+    private static final int FAILURE_THRESHOLD = 3;
+
+    // Time (in milliseconds) until the first retry, which doubles after every failed retry
+    private static final long INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAXIMUM_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(FAILURE_THRESHOLD, INITIAL_BACKOFF,
+            MAXIMUM_BACKOFF);
+
+    private volatile ConnectionPool pool = null;
     private final String database;
     private final String hostname;
     private final String password;
 
     private final String username;
+    private final int poolSize;
+
+    private final Autorank plugin;
 
     /**
      * Create a new MySQL Connection
      *
+     * @param instance Autorank instance
      * @param hostname Hostname (Ex. 127.0.0.1:3306)
      * @param username Username
      * @param password Password
      * @param database Database
+     * @param poolSize Maximum number of connections that are open at the same
+     *                 time
      */
-    public SQLDataStorage(final String hostname, final String username, final String password, final String database) {
+    public SQLDataStorage(final Autorank instance, final String hostname, final String username,
+                          final String password, final String database, final int poolSize) {
+        this.plugin = instance;
         this.hostname = hostname;
         this.username = username;
         this.password = password;
         this.database = database;
+        this.poolSize = poolSize;
     }
 
     /**
-     * Tries to close the MySQL connection. If already closed, nothing will
+     * Tries to close all MySQL connections. If already closed, nothing will
      * happen.
      */
     public void closeConnection() {
-        try {
-            if (conn != null) {
-                conn.close();
-            }
-        } catch (final SQLException e) {
-            e.printStackTrace();
+        if (pool != null) {
+            pool.close();
         }
     }
 
     /**
-     * Open a new MySQL connection
+     * Set up the connection pool and open a first connection to check whether
+     * the database can be reached.
      *
      * @return true if connection was successfully set up.
      */
     public boolean connect() {
-        try {
-            final String url = "jdbc:mysql://" + hostname + "/" + database;
+        final String url = "jdbc:mysql://" + hostname + "/" + database + "?connectTimeout=" + CONNECT_TIMEOUT;
 
-            conn = DriverManager.getConnection(url, username, password);
+        final ConnectionPool newPool = new ConnectionPool(url, username, password, poolSize);
 
+        try {
+            newPool.release(newPool.getConnection());
         } catch (final SQLException ex) {
-            System.out.println("SQLDataStorage.connect");
-            System.out.println("SQLException: " + ex.getMessage());
-            System.out.println("SQLState: " + ex.getSQLState());
-            System.out.println("VendorError: " + ex.getErrorCode());
+            printException("SQLDataStorage.connect", ex);
 
+            newPool.close();
             return false;
-        } catch (final Exception e) {
+        }
 
-            e.printStackTrace();
+        if (pool != null) {
+            pool.close();
         }
-        return conn != null;
+
+        pool = newPool;
+        circuitBreaker.recordSuccess();
+
+        return true;
+    }
+
+    /**
+     * Check whether the database can be reached again, if it could not be
+     * reached before and it is time for a retry. This blocks the thread it's
+     * on for at most the connect timeout.
+     *
+     * @return true if the database was reached and queries are sent again.
+     */
+    public boolean retryConnection() {
+        if (pool == null || !circuitBreaker.isRetryDue()) {
+            return false;
+        }
+
+        try {
+            pool.release(pool.getConnection());
+        } catch (final SQLException ex) {
+            circuitBreaker.recordFailure();
+
+            plugin.debugMessage("Could not reach MySQL database, trying again in "
+                    + TimeUnit.MILLISECONDS.toSeconds(circuitBreaker.getTimeUntilRetry()) + " seconds");
+            return false;
+        }
+
+        return circuitBreaker.recordSuccess();
     }
 
     /**
@@ -76,61 +198,212 @@ public class SQLDataStorage {
      * anything. (Good for updating tables)
      *
      * @param sql Query to execute
+     * @return true if the query was executed, false if an error occured.
      */
-    public void execute(final String sql) {
+    public boolean execute(final String sql) {
+        final Connection conn = borrowConnection();
+
+        if (conn == null) {
+            return false;
+        }
+
         Statement stmt = null;
+        SQLException error = null;
 
-        if (conn != null) {
-            try {
+        try {
+            stmt = conn.createStatement();
+            stmt.execute(sql);
+        } catch (final SQLException ex) {
+            error = ex;
+            printException("SQLDataStorage.execute", ex);
+        } finally {
+            closeStatement(stmt);
+            returnConnection(conn, error);
+        }
+
+        return error == null;
+    }
+
+    /**
+     * Execute a prepared statement for a batch of rows in a single
+     * transaction. Either all rows are written or none.
+     *
+     * @param sql     Statement to execute, with parameters
+     * @param handler Handler that adds the rows
+     * @return true if all rows were written, false if an error occured.
+     */
+    public boolean executeBatch(final String sql, final BatchHandler handler) {
+        final Connection conn = borrowConnection();
+
+        if (conn == null) {
+            return false;
+        }
+
+        PreparedStatement stmt = null;
+        SQLException error = null;
+
+        try {
+            conn.setAutoCommit(false);
+
+            stmt = conn.prepareStatement(sql);
+            handler.addBatch(stmt);
+            stmt.executeBatch();
+
+            conn.commit();
+        } catch (final SQLException ex) {
+            error = ex;
+            printException("SQLDataStorage.executeBatch", ex);
 
-                stmt = conn.createStatement();
-                stmt.execute(sql);
+            try {
+                conn.rollback();
+            } catch (final SQLException rollbackEx) {
+            }
+        } finally {
+            closeStatement(stmt);
 
+            try {
+                conn.setAutoCommit(true);
             } catch (final SQLException ex) {
-                System.out.println("SQLDataStorage.execute");
-                System.out.println("SQLException: " + ex.getMessage());
-                System.out.println("SQLState: " + ex.getSQLState());
-                System.out.println("VendorError: " + ex.getErrorCode());
-            } finally {
-
-                if (stmt != null) {
-                    try {
-                        stmt.close();
-                    } catch (final SQLException sqlEx) {
-                    }
-
-                    stmt = null;
+                if (error == null) {
+                    error = ex;
                 }
             }
+
+            returnConnection(conn, error);
         }
 
+        return error == null;
     }
 
     /**
-     * Execute a query and returns a ResultSet. Query cannot be null.
+     * Execute a query and read its result. Query cannot be null. The
+     * connection is given back to the pool after the result is read.
      *
-     * @param sql Query to execute
-     * @return ResultSet if successfully performed, null if an error occured.
+     * @param sql     Query to execute
+     * @param handler Handler that reads the result
+     * @return the value the handler returned, or null if an error occured.
      */
-    public ResultSet executeQuery(final String sql) {
-        Statement stmt = null;
+    public <T> T executeQuery(final String sql, final ResultHandler<T> handler) {
+        return executeQuery(sql, null, handler);
+    }
+
+    /**
+     * Execute a query with parameters and read its result. Query cannot be
+     * null. The connection is given back to the pool after the result is
+     * read.
+     *
+     * @param sql        Query to execute, with parameters
+     * @param parameters Handler that sets the parameters, or null if the query
+     *                   has none
+     * @param handler    Handler that reads the result
+     * @return the value the handler returned, or null if an error occured.
+     */
+    public <T> T executeQuery(final String sql, final ParameterHandler parameters, final ResultHandler<T> handler) {
+        final Connection conn = borrowConnection();
+
+        if (conn == null) {
+            return null;
+        }
+
+        PreparedStatement stmt = null;
+        SQLException error = null;
+
+        try {
+            stmt = conn.prepareStatement(sql);
+
+            if (parameters != null) {
+                parameters.setParameters(stmt);
+            }
+
+            return handler.handle(stmt.executeQuery());
+        } catch (final SQLException ex) {
+            error = ex;
+            printException("SQLDataStorage.executeQuery", ex);
+
+            return null;
+        } finally {
+            // Closing the statement closes its result set as well.
+            closeStatement(stmt);
+            returnConnection(conn, error);
+        }
+    }
+
+    /**
+     * Execute a query and read its result one row at a time, so the result
+     * does not have to fit in memory. Query cannot be null. The result set,
+     * statement and connection are closed (or given back to the pool) before
+     * this method returns, also when an error occurs.
+     * <p>
+     * The connection is busy until all rows are read, so the handler should
+     * not run other queries. If the handler stops early, the driver still
+     * reads (and skips) the remaining rows.
+     *
+     * @param sql        Query to execute, with parameters
+     * @param parameters Handler that sets the parameters, or null if the query
+     *                   has none
+     * @param handler    Handler that reads every row
+     * @return the number of rows that were read, or -1 if an error occured.
+     */
+    public long streamQuery(final String sql, final ParameterHandler parameters, final RowHandler handler) {
+        final Connection conn = borrowConnection();
+
+        if (conn == null) {
+            return -1;
+        }
+
+        PreparedStatement stmt = null;
         ResultSet rs = null;
+        SQLException error = null;
+        long rows = 0;
 
-        if (conn != null) {
-            try {
+        try {
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
 
-                stmt = conn.createStatement();
-                rs = stmt.executeQuery(sql);
+            if (parameters != null) {
+                parameters.setParameters(stmt);
+            }
 
-            } catch (final SQLException ex) {
-                System.out.println("SQLDataStorage.executeQuery");
-                System.out.println("SQLException: " + ex.getMessage());
-                System.out.println("SQLState: " + ex.getSQLState());
-                System.out.println("VendorError: " + ex.getErrorCode());
+            rs = stmt.executeQuery();
 
+            while (rs.next()) {
+                rows++;
+
+                if (!handler.handle(rs)) {
+                    break;
+                }
             }
+
+            return rows;
+        } catch (final SQLException ex) {
+            error = ex;
+            printException("SQLDataStorage.streamQuery", ex);
+
+            return -1;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(stmt);
+            returnConnection(conn, error);
         }
-        return rs;
+    }
+
+    /**
+     * Close connections that have not been used for a while.
+     */
+    public void evictIdleConnections() {
+        if (pool == null) {
+            return;
+        }
+
+        final int evicted = pool.evictIdleConnections();
+
+        if (evicted == 0) {
+            return;
+        }
+
+        plugin.debugMessage("MySQL connection pool: " + pool.getActiveConnections() + " active, "
+                + pool.getIdleConnections() + " idle, " + evicted + " closed, average wait time "
+                + pool.getAverageWaitTime() + " ms");
     }
 
     /**
@@ -139,16 +412,103 @@ public class SQLDataStorage {
      * @return true if closed, false if open.
      */
     public boolean isClosed() {
+        return pool == null || pool.isClosed();
+    }
 
-        if (conn == null)
-            return true;
+    /**
+     * Check whether queries are sent to the database. They are not when the
+     * connection is closed or the database could not be reached lately.
+     *
+     * @return true if queries are sent, false otherwise.
+     */
+    public boolean isAvailable() {
+        return !isClosed() && circuitBreaker.allowRequest();
+    }
+
+    /**
+     * Get the circuit breaker that keeps track of whether the database can be
+     * reached.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private Connection borrowConnection() {
+        // Fail right away instead of waiting for the connect timeout.
+        if (pool == null || !circuitBreaker.allowRequest()) {
+            return null;
+        }
+
+        final long start = System.nanoTime();
 
         try {
-            return conn.isClosed();
-        } catch (final SQLException e) {
-            e.printStackTrace();
-            return true;
+            final Connection conn = pool.getConnection();
+
+            final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            if (waited >= SLOW_WAIT_TIME) {
+                plugin.debugMessage("Waited " + waited + " ms for a MySQL connection ("
+                        + pool.getActiveConnections() + "/" + pool.getMaximumSize() + " in use)");
+            }
+
+            circuitBreaker.recordSuccess();
+
+            return conn;
+        } catch (final SQLException ex) {
+            printException("SQLDataStorage.borrowConnection", ex);
+
+            if (isConnectionFailure(ex)) {
+                recordConnectionFailure();
+            }
+
+            return null;
         }
     }
 
+    private void returnConnection(final Connection conn, final SQLException error) {
+        if (isConnectionFailure(error)) {
+            pool.invalidate(conn);
+            recordConnectionFailure();
+        } else {
+            pool.release(conn);
+        }
+    }
+
+    private void recordConnectionFailure() {
+        if (circuitBreaker.recordFailure()) {
+            plugin.getLogger().warning("Could not reach MySQL database " + FAILURE_THRESHOLD
+                    + " times in a row, no queries are sent until it can be reached again");
+        }
+    }
+
+    private static boolean isConnectionFailure(final SQLException error) {
+        // SQL state class 08 means the connection itself failed.
+        return error != null && error.getSQLState() != null && error.getSQLState().startsWith("08");
+    }
+
+    private static void closeResultSet(final ResultSet rs) {
+        if (rs != null) {
+            try {
+                rs.close();
+            } catch (final SQLException sqlEx) {
+            }
+        }
+    }
+
+    private static void closeStatement(final Statement stmt) {
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (final SQLException sqlEx) {
+            }
+        }
+    }
+
+    private static void printException(final String location, final SQLException ex) {
+        System.out.println(location);
+        System.out.println("SQLException: " + ex.getMessage());
+        System.out.println("SQLState: " + ex.getSQLState());
+        System.out.println("VendorError: " + ex.getErrorCode());
+    }
+
 }
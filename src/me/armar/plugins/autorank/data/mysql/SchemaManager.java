@@ -0,0 +1,479 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import me.armar.plugins.autorank.Autorank;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This class keeps the tables of the MySQL database up to date. Every change
+ * to the tables is a migration with a version number. The versions that were
+ * applied are stored in a separate table, so every migration is only applied
+ * once. Migrations are never undone.
+ * <p>
+ * Migrations can be applied by several servers at the same time: every
+ * migration checks whether its work was already done.
+ *
+ * @author Staartvin
+ */
+public class SchemaManager {
+
+    /**
+     * A change to the tables of the database.
+     */
+    abstract static class Migration {
+
+        private final int version;
+        private final String description;
+
+        Migration(final int version, final String description) {
+            this.version = version;
+            this.description = description;
+        }
+
+        /**
+         * Apply the change. This blocks the thread it's on.
+         *
+         * @return true if the change was applied, false if an error occured.
+         */
+        abstract boolean apply();
+    }
+
+    /**
+     * A row of a table with global times that stores UUIDs as text.
+     */
+    private static class TextRow {
+
+        private final String uuid;
+        private final int time;
+        private final Timestamp modified;
+
+        TextRow(final String uuid, final int time, final Timestamp modified) {
+            this.uuid = uuid;
+            this.time = time;
+            this.modified = modified;
+        }
+    }
+
+    // Number of rows that are copied at once when the UUIDs are converted
+    static final int COPY_BATCH_SIZE = 1000;
+
+    // Time (in milliseconds) between two batches, so other queries are not held up
+    private static final long COPY_PAUSE = 50;
+
+    // Rows that were changed in the same second as the start of a copy may not have been seen by it.
+    private static final long COPY_OVERLAP = 1000;
+
+    private final Autorank plugin;
+    private final SQLDataStorage mysql;
+    private final String table;
+    private final List<Migration> migrations;
+
+    private volatile UUIDFormat uuidFormat = UUIDFormat.TEXT;
+
+    /**
+     * @param instance Autorank instance
+     * @param mysql    Storage to migrate
+     * @param table    Table with global times
+     */
+    public SchemaManager(final Autorank instance, final SQLDataStorage mysql, final String table) {
+        this.plugin = instance;
+        this.mysql = mysql;
+        this.table = table;
+
+        migrations = Arrays.asList(new Migration(1, "Create table with global times") {
+            @Override
+            boolean apply() {
+                return createTimeTable();
+            }
+        }, new Migration(2, "Store UUIDs as 16 bytes") {
+            @Override
+            boolean apply() {
+                return convertToBinaryUUIDs();
+            }
+        }, new Migration(3, "Create tables with period times and path progress") {
+            @Override
+            boolean apply() {
+                return createPeriodAndProgressTables();
+            }
+        });
+    }
+
+    /**
+     * Get the table with global times.
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Get the table that stores which migrations were applied.
+     */
+    public String getVersionTable() {
+        return table + "_schema";
+    }
+
+    /**
+     * Get the table with the daily, weekly and monthly global times.
+     */
+    public String getPeriodTable() {
+        return table + "_periods";
+    }
+
+    /**
+     * Get the table with the progress of players on their paths.
+     */
+    public String getProgressTable() {
+        return table + "_progress";
+    }
+
+    /**
+     * Get the format of the UUIDs in the tables. This changes when the UUIDs
+     * of an older table are converted.
+     */
+    public UUIDFormat getUUIDFormat() {
+        return uuidFormat;
+    }
+
+    /**
+     * Get the latest version that was applied to the database.
+     *
+     * @return the version, 0 if no migration was applied yet or -1 if the
+     * database could not be read.
+     */
+    public int getVersion() {
+        final Integer version = mysql.executeQuery("SELECT MAX(version) FROM " + getVersionTable(),
+                new SQLDataStorage.ResultHandler<Integer>() {
+                    @Override
+                    public Integer handle(final ResultSet rs) throws SQLException {
+                        // MAX() of an empty table is NULL, which is read as 0.
+                        return rs.next() ? rs.getInt(1) : 0;
+                    }
+                });
+
+        return version == null ? -1 : version;
+    }
+
+    /**
+     * Get the latest version a migration exists for.
+     */
+    public int getLatestVersion() {
+        return migrations.get(migrations.size() - 1).version;
+    }
+
+    /**
+     * Apply all migrations that were not applied yet, in order of their
+     * version. This blocks the thread it's on (possibly for a while, when a
+     * large table is converted), so it should be run async.
+     *
+     * @return true if the database is up to date, false if a migration could
+     * not be applied.
+     */
+    public boolean migrate() {
+        final boolean created = mysql.execute("CREATE TABLE IF NOT EXISTS " + getVersionTable()
+                + " (version INTEGER NOT NULL, description VARCHAR(255) NOT NULL, "
+                + "applied TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (version))");
+
+        final int currentVersion = created ? getVersion() : -1;
+
+        if (currentVersion < 0) {
+            plugin.getLogger().severe("Could not read the schema version of the MySQL database!");
+            return false;
+        }
+
+        updateUUIDFormat(currentVersion);
+
+        for (final Migration migration : migrations) {
+            if (migration.version <= currentVersion) {
+                continue;
+            }
+
+            plugin.debugMessage("Applying MySQL migration " + migration.version + ": " + migration.description);
+
+            if (!migration.apply() || !recordMigration(migration)) {
+                plugin.getLogger().severe("Could not apply MySQL migration " + migration.version + " ("
+                        + migration.description + ")! It will be tried again on the next start.");
+                return false;
+            }
+
+            updateUUIDFormat(migration.version);
+        }
+
+        if (currentVersion < getLatestVersion()) {
+            plugin.getLogger().info("MySQL database is up to date (version " + getLatestVersion() + ")");
+        }
+
+        return true;
+    }
+
+    private void updateUUIDFormat(final int version) {
+        if (version >= 2) {
+            uuidFormat = UUIDFormat.BINARY;
+        }
+    }
+
+    private boolean recordMigration(final Migration migration) {
+        // Another server may have recorded it already.
+        return mysql.executeBatch("INSERT IGNORE INTO " + getVersionTable() + " (version, description) VALUES (?, ?)",
+                new SQLDataStorage.BatchHandler() {
+                    @Override
+                    public void addBatch(final PreparedStatement stmt) throws SQLException {
+                        stmt.setInt(1, migration.version);
+                        stmt.setString(2, migration.description);
+                        stmt.addBatch();
+                    }
+                });
+    }
+
+    /**
+     * Version 1: the table with global times as older versions of Autorank
+     * created it. It has an index on the modified column, which is used to
+     * sync changes, and an index on the time column, which is used for the
+     * leaderboard.
+     */
+    private boolean createTimeTable() {
+        final String statement = "CREATE TABLE  IF NOT EXISTS " + table + " " + "(uuid VARCHAR(255) not NULL, "
+                + " time INTEGER not NULL, " + " modified TIMESTAMP not NULL, " + " PRIMARY KEY ( uuid ))";
+
+        return mysql.execute(statement) && createIndex(table, "idx_modified", "modified")
+                // MySQL 8+ stores it descending
+                && createIndex(table, "idx_time", "time DESC");
+    }
+
+    /**
+     * Version 2: store UUIDs as 16 bytes instead of 36 characters. The rows
+     * are copied to a new table in small batches, so the old table is never
+     * locked for long and global times can still be read and written while
+     * the rows are copied. When all rows are copied, the tables are swapped
+     * at once. The old table is kept (with the suffix _legacy) as a backup.
+     */
+    private boolean convertToBinaryUUIDs() {
+        if ("binary".equalsIgnoreCase(getUUIDColumnType(table))) {
+            // Another server converted the table already.
+            return true;
+        }
+
+        final String newTable = table + "_binary";
+        final String legacyTable = table + "_legacy";
+
+        final boolean created = mysql.execute("CREATE TABLE IF NOT EXISTS " + newTable
+                + " (uuid BINARY(16) NOT NULL, time INTEGER NOT NULL, modified TIMESTAMP NOT NULL, "
+                + "PRIMARY KEY (uuid), INDEX idx_modified (modified), INDEX idx_time (time DESC))");
+
+        Timestamp since = getDatabaseTime();
+
+        if (!created || since == null) {
+            return false;
+        }
+
+        // Copy all rows, in order of their primary key.
+        String lastUUID = "";
+        int copied = 0;
+
+        while (lastUUID != null) {
+            final List<TextRow> rows = readTextRows("SELECT uuid, time, modified FROM " + table
+                    + " WHERE uuid > ? ORDER BY uuid LIMIT " + COPY_BATCH_SIZE, lastUUID, null);
+
+            if (rows == null || !copyRows(newTable, rows)) {
+                return false;
+            }
+
+            copied += rows.size();
+            lastUUID = rows.size() < COPY_BATCH_SIZE ? null : rows.get(rows.size() - 1).uuid;
+
+            if (lastUUID != null) {
+                plugin.debugMessage("Converted UUIDs of " + copied + " rows of " + table);
+
+                try {
+                    Thread.sleep(COPY_PAUSE);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        // Copy the rows that were changed while copying.
+        Timestamp catchUp = getDatabaseTime();
+
+        if (catchUp == null || !copyChangedRows(table, newTable, since)) {
+            return false;
+        }
+
+        since = catchUp;
+
+        if (!"binary".equalsIgnoreCase(getUUIDColumnType(table))) {
+            if (!mysql.execute("RENAME TABLE " + table + " TO " + legacyTable + ", " + newTable + " TO " + table)) {
+                // Another server may have swapped the tables at the same time.
+                return "binary".equalsIgnoreCase(getUUIDColumnType(table));
+            }
+
+            uuidFormat = UUIDFormat.BINARY;
+
+            // Copy the rows that were changed right before the swap.
+            copyChangedRows(legacyTable, table, since);
+        }
+
+        plugin.debugMessage("Converted UUIDs of " + copied + " rows of " + table + ", kept old table as "
+                + legacyTable);
+
+        return true;
+    }
+
+    /**
+     * Version 3: tables for the global daily, weekly and monthly times and
+     * for the progress of players on their paths. A period is the number of
+     * the day, week or month.
+     */
+    private boolean createPeriodAndProgressTables() {
+        return mysql.execute("CREATE TABLE IF NOT EXISTS " + getPeriodTable()
+                + " (uuid BINARY(16) NOT NULL, type ENUM('DAILY_TIME', 'WEEKLY_TIME', 'MONTHLY_TIME') NOT NULL, "
+                + "period INTEGER NOT NULL, time INTEGER NOT NULL, modified TIMESTAMP NOT NULL, "
+                + "PRIMARY KEY (uuid, type, period), INDEX idx_period_time (type, period, time DESC))")
+                && mysql.execute("CREATE TABLE IF NOT EXISTS " + getProgressTable()
+                + " (uuid BINARY(16) NOT NULL, path VARCHAR(100) NOT NULL, completed BOOLEAN NOT NULL, "
+                + "requirements VARCHAR(1000) NOT NULL, modified TIMESTAMP NOT NULL, "
+                + "PRIMARY KEY (uuid, path), INDEX idx_modified (modified))");
+    }
+
+    /**
+     * Copy the rows of a table with text UUIDs that were changed since a
+     * certain moment to a table with binary UUIDs.
+     */
+    private boolean copyChangedRows(final String fromTable, final String toTable, final Timestamp since) {
+        final List<TextRow> rows = readTextRows("SELECT uuid, time, modified FROM " + fromTable
+                + " WHERE modified >= ?", null, new Timestamp(since.getTime() - COPY_OVERLAP));
+
+        return rows != null && copyRows(toTable, rows);
+    }
+
+    private List<TextRow> readTextRows(final String statement, final String uuidParameter,
+                                       final Timestamp timeParameter) {
+        return mysql.executeQuery(statement, new SQLDataStorage.ParameterHandler() {
+            @Override
+            public void setParameters(final PreparedStatement stmt) throws SQLException {
+                if (uuidParameter != null) {
+                    stmt.setString(1, uuidParameter);
+                } else {
+                    stmt.setTimestamp(1, timeParameter);
+                }
+            }
+        }, new SQLDataStorage.ResultHandler<List<TextRow>>() {
+            @Override
+            public List<TextRow> handle(final ResultSet rs) throws SQLException {
+                final List<TextRow> rows = new ArrayList<TextRow>();
+
+                while (rs.next()) {
+                    rows.add(new TextRow(rs.getString(1), rs.getInt(2), rs.getTimestamp(3)));
+                }
+
+                return rows;
+            }
+        });
+    }
+
+    /**
+     * Write rows to a table with binary UUIDs. A row that is already in the
+     * table is only replaced if it was not changed later.
+     */
+    private boolean copyRows(final String toTable, final List<TextRow> rows) {
+        if (rows.isEmpty()) {
+            return true;
+        }
+
+        return mysql.executeBatch("INSERT INTO " + toTable + " (uuid, time, modified) VALUES (?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE time = IF(VALUES(modified) >= modified, VALUES(time), time), "
+                + "modified = GREATEST(modified, VALUES(modified))", new SQLDataStorage.BatchHandler() {
+            @Override
+            public void addBatch(final PreparedStatement stmt) throws SQLException {
+                for (final TextRow row : rows) {
+                    final UUID uuid;
+
+                    try {
+                        uuid = UUID.fromString(row.uuid);
+                    } catch (final IllegalArgumentException e) {
+                        plugin.getLogger().warning("Skipped invalid UUID '" + row.uuid + "' in " + table);
+                        continue;
+                    }
+
+                    UUIDFormat.BINARY.setParameter(stmt, 1, uuid);
+                    stmt.setInt(2, row.time);
+                    stmt.setTimestamp(3, row.modified);
+                    stmt.addBatch();
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the type of the uuid column of a table.
+     *
+     * @return the type (in lower case), or null if the table does not exist
+     * or the database could not be read.
+     */
+    private String getUUIDColumnType(final String tableName) {
+        return mysql.executeQuery("SELECT DATA_TYPE FROM information_schema.COLUMNS "
+                        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = 'uuid'",
+                new SQLDataStorage.ParameterHandler() {
+                    @Override
+                    public void setParameters(final PreparedStatement stmt) throws SQLException {
+                        stmt.setString(1, tableName);
+                    }
+                }, new SQLDataStorage.ResultHandler<String>() {
+                    @Override
+                    public String handle(final ResultSet rs) throws SQLException {
+                        return rs.next() ? rs.getString(1).toLowerCase() : null;
+                    }
+                });
+    }
+
+    /**
+     * Get the current time of the database, so it can be compared with the
+     * modified column.
+     */
+    private Timestamp getDatabaseTime() {
+        return mysql.executeQuery("SELECT CURRENT_TIMESTAMP", new SQLDataStorage.ResultHandler<Timestamp>() {
+            @Override
+            public Timestamp handle(final ResultSet rs) throws SQLException {
+                return rs.next() ? rs.getTimestamp(1) : null;
+            }
+        });
+    }
+
+    /**
+     * Create an index on a table, if it does not exist yet.
+     *
+     * @param tableName Table to create the index on
+     * @param name      Name of the index
+     * @param columns   Columns of the index, as they appear in the CREATE
+     *                  INDEX statement
+     * @return true if the index exists.
+     */
+    private boolean createIndex(final String tableName, final String name, final String columns) {
+        // MySQL does not support CREATE INDEX IF NOT EXISTS.
+        final Boolean exists = mysql.executeQuery("SHOW INDEX FROM " + tableName + " WHERE Key_name = ?",
+                new SQLDataStorage.ParameterHandler() {
+                    @Override
+                    public void setParameters(final PreparedStatement stmt) throws SQLException {
+                        stmt.setString(1, name);
+                    }
+                }, new SQLDataStorage.ResultHandler<Boolean>() {
+                    @Override
+                    public Boolean handle(final ResultSet rs) throws SQLException {
+                        return rs.next();
+                    }
+                });
+
+        if (exists == null) {
+            return false;
+        }
+
+        return exists || mysql.execute("CREATE INDEX " + name + " ON " + tableName + " (" + columns + ")");
+    }
+}
@@ -0,0 +1,119 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * The ways a UUID can be stored in the MySQL database. Tables that were
+ * created by older versions of Autorank store UUIDs as text; newer tables
+ * store them as 16 bytes, which keeps the primary key small.
+ *
+ * @author Staartvin
+ */
+public enum UUIDFormat {
+
+    /**
+     * A UUID is stored as a string of 36 characters, in a VARCHAR column.
+     */
+    TEXT {
+        @Override
+        public String toSQL(final UUID uuid) {
+            return "'" + uuid.toString() + "'";
+        }
+
+        @Override
+        public void setParameter(final PreparedStatement stmt, final int index, final UUID uuid)
+                throws SQLException {
+            stmt.setString(index, uuid.toString());
+        }
+
+        @Override
+        public UUID read(final ResultSet rs, final int column) throws SQLException {
+            return UUID.fromString(rs.getString(column));
+        }
+    },
+
+    /**
+     * A UUID is stored as 16 bytes, in a BINARY(16) column.
+     */
+    BINARY {
+        @Override
+        public String toSQL(final UUID uuid) {
+            final StringBuilder builder = new StringBuilder(35);
+
+            builder.append("X'");
+
+            for (final byte b : toBytes(uuid)) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return builder.append('\'').toString();
+        }
+
+        @Override
+        public void setParameter(final PreparedStatement stmt, final int index, final UUID uuid)
+                throws SQLException {
+            stmt.setBytes(index, toBytes(uuid));
+        }
+
+        @Override
+        public UUID read(final ResultSet rs, final int column) throws SQLException {
+            return fromBytes(rs.getBytes(column));
+        }
+    };
+
+    /**
+     * Get a UUID as a literal that can be put in a query. UUIDs only consist
+     * of hexadecimal digits and dashes, so this is safe.
+     *
+     * @param uuid UUID to convert
+     * @return the literal.
+     */
+    public abstract String toSQL(UUID uuid);
+
+    /**
+     * Set a parameter of a prepared statement to a UUID.
+     *
+     * @param stmt  Statement to set the parameter of
+     * @param index Index of the parameter
+     * @param uuid  UUID to set
+     */
+    public abstract void setParameter(PreparedStatement stmt, int index, UUID uuid) throws SQLException;
+
+    /**
+     * Read a UUID from a result.
+     *
+     * @param rs     Result to read from
+     * @param column Index of the column
+     * @return the UUID.
+     * @throws IllegalArgumentException if the column does not contain a valid
+     *                                  UUID.
+     */
+    public abstract UUID read(ResultSet rs, int column) throws SQLException;
+
+    /**
+     * Convert a UUID to 16 bytes.
+     */
+    public static byte[] toBytes(final UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    /**
+     * Convert 16 bytes to a UUID.
+     *
+     * @throws IllegalArgumentException if there are not 16 bytes.
+     */
+    public static UUID fromBytes(final byte[] bytes) {
+        if (bytes == null || bytes.length != 16) {
+            throw new IllegalArgumentException("A UUID has 16 bytes");
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,1083 @@
+package me.armar.plugins.autorank.data.sqlite;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.config.SimpleYamlConfiguration;
+import me.armar.plugins.autorank.data.PlaytimeStorage;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.flatfile.PlaytimeIndex;
+import me.armar.plugins.autorank.util.AutorankTools;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * This class stores the local play time of players in a single SQLite
+ * database file, so no MySQL server is needed. Total time is stored per
+ * player, while daily, weekly and monthly time are computed from the time
+ * players played on each day.
+ * <p>
+ * The database also has tables for the properties of players (see
+ * {@link me.armar.plugins.autorank.config.PlayerDataConfig}) and the UUIDs of
+ * player names (see
+ * {@link me.armar.plugins.autorank.util.uuid.storage.UUIDStorage}). Those
+ * keep their data in memory as well and write every change to the database,
+ * instead of rewriting their files.
+ * <p>
+ * All access to the database goes through one connection, so all methods that
+ * use it are synchronized. Play time is also kept in a {@link PlaytimeIndex}
+ * that is changed after every successful write, so reads are served from
+ * memory and never wait for the database.
+ *
+ * @author Staartvin
+ */
+public class SQLiteManager extends PlaytimeStorage {
+
+    // Path of the database file, relative to the data folder of Autorank
+    private static final String DATABASE_PATH = "/data/Playtime.db";
+
+    // Remove days that left the history every hour
+    private static final int PRUNE_INTERVAL_MINUTES = 60;
+
+    private Connection connection = null;
+
+    // Copy of the play time in the database, read without locking the database
+    private final PlaytimeIndex index = new PlaytimeIndex();
+
+    public SQLiteManager(final Autorank instance) {
+        super(instance);
+    }
+
+    /**
+     * Open the database file and create the tables if they do not exist yet.
+     * When the database is empty, the play time in the flat files is imported.
+     *
+     * @return true if the database could be opened, false otherwise.
+     */
+    public synchronized boolean connect() {
+        final File databaseFile = new File(plugin.getDataFolder(), DATABASE_PATH);
+
+        databaseFile.getParentFile().mkdirs();
+
+        try {
+            Class.forName("org.sqlite.JDBC");
+
+            connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+
+            createTables();
+        } catch (final ClassNotFoundException e) {
+            plugin.getLogger().severe("Could not find the SQLite driver!");
+            return false;
+        } catch (final SQLException e) {
+            plugin.getLogger().severe("Could not open SQLite database " + databaseFile.getName() + "!");
+            e.printStackTrace();
+
+            closeConnection();
+            return false;
+        }
+
+        plugin.getLogger().info("Loaded SQLite database (" + databaseFile.getName() + ")");
+
+        if (isEmpty()) {
+            importFlatFiles();
+        } else {
+            loadIndex();
+        }
+
+        registerTasks();
+
+        return true;
+    }
+
+    private void createTables() throws SQLException {
+        final Statement statement = connection.createStatement();
+
+        try {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS playtime_total ("
+                    + "uuid CHAR(36) NOT NULL PRIMARY KEY, time INTEGER NOT NULL)");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS playtime_total_time ON playtime_total (time)");
+
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS playtime_days ("
+                    + "uuid CHAR(36) NOT NULL, day INTEGER NOT NULL, time INTEGER NOT NULL, "
+                    + "PRIMARY KEY (uuid, day))");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS playtime_days_day ON playtime_days (day)");
+
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS last_seen ("
+                    + "uuid CHAR(36) NOT NULL PRIMARY KEY, day INTEGER NOT NULL)");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS last_seen_day ON last_seen (day)");
+
+            // Every property of a player is stored as a YAML value.
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS player_data ("
+                    + "player VARCHAR(36) NOT NULL, property VARCHAR(64) NOT NULL, value TEXT NOT NULL, "
+                    + "PRIMARY KEY (player, property))");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS player_data_property ON player_data (property)");
+
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS uuids ("
+                    + "name VARCHAR(16) NOT NULL PRIMARY KEY, uuid CHAR(36) NOT NULL, real_name VARCHAR(16), "
+                    + "update_time BIGINT NOT NULL)");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS uuids_uuid ON uuids (uuid)");
+        } finally {
+            close(statement);
+        }
+    }
+
+    private boolean isEmpty() {
+        return queryInt("SELECT COUNT(*) FROM playtime_total") == 0
+                && queryInt("SELECT COUNT(*) FROM playtime_days") == 0;
+    }
+
+    /**
+     * Read the total time and the day history in the database into memory.
+     */
+    private void loadIndex() {
+        final PlaytimeIndex.Snapshot totals = querySnapshot("SELECT uuid, time FROM playtime_total");
+
+        for (int i = 0; i < totals.size(); i++) {
+            index.setTotal(totals.getUUID(i), totals.getValue(i));
+        }
+
+        PreparedStatement statement = null;
+
+        try {
+            statement = prepare("SELECT uuid, day, time FROM playtime_days WHERE day > ? ORDER BY day",
+                    getCurrentDay() - PlaytimeIndex.HISTORY_DAYS);
+
+            final ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                try {
+                    index.setDay(UUID.fromString(result.getString(1)), result.getInt(2), result.getInt(3));
+                } catch (final IllegalArgumentException e) {
+                    // Skip invalid UUIDs
+                }
+            }
+        } catch (final SQLException e) {
+            plugin.getLogger().severe("Could not read day history from SQLite database!");
+            e.printStackTrace();
+        } finally {
+            close(statement);
+        }
+    }
+
+    /**
+     * Copy the total time and day history in the flat files of Autorank to
+     * the database. Changes in the journal that were not written to the data
+     * files yet are copied as well.
+     */
+    private void importFlatFiles() {
+        final PlaytimeIndex flatFileIndex = new PlaytimeIndex();
+
+        final boolean hasTotalFile = new File(plugin.getDataFolder(),
+                FlatFileManager.dataTypePaths.get(TimeType.TOTAL_TIME)).exists();
+        final boolean hasHistoryFile = FlatFileManager.readHistoryFile(plugin, flatFileIndex);
+
+        if (hasTotalFile) {
+            FlatFileManager.readTotalTimes(plugin, flatFileIndex);
+        }
+
+        final int replayed = FlatFileManager.replayJournal(plugin, flatFileIndex);
+
+        if (!hasTotalFile && !hasHistoryFile && replayed == 0) {
+            return;
+        }
+
+        plugin.getLogger().info("Importing play time from data files into SQLite database...");
+
+        importTotalTimes(flatFileIndex.snapshotTotals());
+
+        final int today = getCurrentDay();
+        int rows = 0;
+
+        try {
+            beginTransaction();
+
+            final PreparedStatement statement = connection
+                    .prepareStatement("INSERT OR REPLACE INTO playtime_days (uuid, day, time) VALUES (?, ?, ?)");
+
+            try {
+                for (int day = today - PlaytimeIndex.HISTORY_DAYS + 1; day <= today; day++) {
+                    final PlaytimeIndex.Snapshot snapshot = flatFileIndex.snapshotDays(day, day);
+
+                    for (int i = 0; i < snapshot.size(); i++) {
+                        statement.setString(1, snapshot.getUUID(i).toString());
+                        statement.setInt(2, day);
+                        statement.setInt(3, snapshot.getValue(i));
+                        statement.addBatch();
+                        rows++;
+                    }
+                }
+
+                statement.executeBatch();
+            } finally {
+                close(statement);
+            }
+
+            connection.commit();
+
+            for (int day = today - PlaytimeIndex.HISTORY_DAYS + 1; day <= today; day++) {
+                final PlaytimeIndex.Snapshot snapshot = flatFileIndex.snapshotDays(day, day);
+
+                for (int i = 0; i < snapshot.size(); i++) {
+                    index.setDay(snapshot.getUUID(i), day, snapshot.getValue(i));
+                }
+            }
+        } catch (final SQLException e) {
+            plugin.getLogger().severe("Could not import day history into SQLite database!");
+            e.printStackTrace();
+
+            rollback();
+        } finally {
+            resetAutoCommit();
+        }
+
+        plugin.getLogger().info("Imported " + rows + " days of play time into SQLite database.");
+    }
+
+    /**
+     * Register tasks for maintaining the database.
+     */
+    private void registerTasks() {
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
+            public void run() {
+                saveFiles();
+            }
+        }, AutorankTools.TICKS_PER_MINUTE, (long) AutorankTools.TICKS_PER_MINUTE * PRUNE_INTERVAL_MINUTES);
+    }
+
+    @Override
+    public int getLocalTime(final TimeType type, final UUID uuid) {
+        if (type == TimeType.TOTAL_TIME) {
+            return index.getTotal(uuid);
+        }
+
+        final Calendar cal = Calendar.getInstance();
+
+        return index.getDaySum(uuid, getFirstDay(type, cal), getDay(cal));
+    }
+
+    @Override
+    protected synchronized void doSetLocalTime(final TimeType type, final int value, final UUID uuid) {
+        if (type == TimeType.TOTAL_TIME) {
+            try {
+                execute("INSERT OR REPLACE INTO playtime_total (uuid, time) VALUES (?, ?)", uuid.toString(), value);
+
+                index.setTotal(uuid, value);
+            } catch (final SQLException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        final Calendar cal = Calendar.getInstance();
+        final int firstDay = getFirstDay(type, cal);
+        final int today = getDay(cal);
+
+        // Clear the other days of the period, so the time of a day never becomes negative.
+        try {
+            beginTransaction();
+
+            execute("DELETE FROM playtime_days WHERE uuid = ? AND day BETWEEN ? AND ?", uuid.toString(),
+                    firstDay, today);
+            execute("INSERT INTO playtime_days (uuid, day, time) VALUES (?, ?, ?)", uuid.toString(), today, value);
+
+            connection.commit();
+
+            for (int day = firstDay; day < today; day++) {
+                if (index.getDaySum(uuid, day, day) != 0) {
+                    index.setDay(uuid, day, 0);
+                }
+            }
+
+            index.setDay(uuid, today, value);
+        } catch (final SQLException e) {
+            e.printStackTrace();
+
+            rollback();
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    @Override
+    protected synchronized void doSetTotalTimes(final Map<UUID, Integer> totalTimes) {
+        try {
+            beginTransaction();
+
+            final PreparedStatement statement = connection
+                    .prepareStatement("INSERT OR REPLACE INTO playtime_total (uuid, time) VALUES (?, ?)");
+
+            try {
+                for (final Map.Entry<UUID, Integer> entry : totalTimes.entrySet()) {
+                    statement.setString(1, entry.getKey().toString());
+                    statement.setInt(2, entry.getValue());
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            } finally {
+                close(statement);
+            }
+
+            connection.commit();
+
+            for (final Map.Entry<UUID, Integer> entry : totalTimes.entrySet()) {
+                index.setTotal(entry.getKey(), entry.getValue());
+            }
+        } catch (final SQLException e) {
+            plugin.getLogger().severe("Could not store total time in SQLite database!");
+            e.printStackTrace();
+
+            rollback();
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    @Override
+    protected synchronized void doAddLocalTime(final UUID uuid, final int timeDifference, final TimeType type) {
+        try {
+            if (type == TimeType.TOTAL_TIME) {
+                addTotal(uuid, timeDifference);
+
+                index.addTotal(uuid, timeDifference);
+            } else {
+                final int today = getCurrentDay();
+
+                addToDay(uuid, today, timeDifference);
+
+                index.addToDay(uuid, today, timeDifference);
+            }
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected synchronized void doAddPlayedTime(final UUID uuid, final int minutes) {
+        // Change both tables at once, so they never disagree.
+        try {
+            beginTransaction();
+
+            final int today = getCurrentDay();
+
+            addTotal(uuid, minutes);
+            addToDay(uuid, today, minutes);
+
+            connection.commit();
+
+            index.addTotal(uuid, minutes);
+            index.addToDay(uuid, today, minutes);
+        } catch (final SQLException e) {
+            e.printStackTrace();
+
+            rollback();
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    private void addTotal(final UUID uuid, final int timeDifference) throws SQLException {
+        if (execute("UPDATE playtime_total SET time = time + ? WHERE uuid = ?", timeDifference,
+                uuid.toString()) == 0) {
+            execute("INSERT INTO playtime_total (uuid, time) VALUES (?, ?)", uuid.toString(), timeDifference);
+        }
+    }
+
+    private void addToDay(final UUID uuid, final int day, final int timeDifference) throws SQLException {
+        if (execute("UPDATE playtime_days SET time = time + ? WHERE uuid = ? AND day = ?", timeDifference,
+                uuid.toString(), day) == 0) {
+            execute("INSERT INTO playtime_days (uuid, day, time) VALUES (?, ?, ?)", uuid.toString(), day,
+                    timeDifference);
+        }
+    }
+
+    @Override
+    public int getRecentTime(final UUID uuid, final int days) {
+        final int today = getCurrentDay();
+
+        return index.getDaySum(uuid, today - Math.min(days, PlaytimeIndex.HISTORY_DAYS) + 1, today);
+    }
+
+    @Override
+    public PlaytimeIndex.Snapshot getLocalTimes(final TimeType type) {
+        if (type == TimeType.TOTAL_TIME) {
+            return index.snapshotTotals();
+        }
+
+        final Calendar cal = Calendar.getInstance();
+
+        return index.snapshotDays(getFirstDay(type, cal), getDay(cal));
+    }
+
+    @Override
+    public PlaytimeIndex.Snapshot getRecentTimes(final int days) {
+        final int today = getCurrentDay();
+
+        return index.snapshotDays(today - Math.min(days, PlaytimeIndex.HISTORY_DAYS) + 1, today);
+    }
+
+    @Override
+    protected synchronized List<UUID> findUnseenPlayers() {
+        return queryUUIDs("SELECT uuid FROM playtime_total WHERE uuid NOT IN (SELECT uuid FROM last_seen)");
+    }
+
+    @Override
+    protected synchronized void doSetLastPlayedDays(final Map<UUID, Integer> lastPlayedDays) {
+        try {
+            beginTransaction();
+
+            // The player may have been seen while the day was looked up, so do not replace it.
+            for (final Map.Entry<UUID, Integer> entry : lastPlayedDays.entrySet()) {
+                execute("INSERT OR IGNORE INTO last_seen (uuid, day) VALUES (?, ?)", entry.getKey().toString(),
+                        entry.getValue());
+            }
+
+            connection.commit();
+        } catch (final SQLException e) {
+            e.printStackTrace();
+
+            rollback();
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    @Override
+    protected synchronized List<UUID> findInactivePlayers() {
+        return queryUUIDs("SELECT uuid FROM last_seen WHERE day < ?", getCurrentDay() - OLD_ENTRY_DAYS + 1);
+    }
+
+    @Override
+    protected synchronized void doRemovePlayer(final UUID uuid) {
+        try {
+            beginTransaction();
+
+            execute("DELETE FROM playtime_total WHERE uuid = ?", uuid.toString());
+            execute("DELETE FROM last_seen WHERE uuid = ?", uuid.toString());
+
+            connection.commit();
+
+            index.removeTotal(uuid);
+        } catch (final SQLException e) {
+            e.printStackTrace();
+
+            rollback();
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    @Override
+    protected synchronized void doUpdateLastSeen(final UUID uuid) {
+        update("INSERT OR REPLACE INTO last_seen (uuid, day) VALUES (?, ?)", uuid.toString(), getCurrentDay());
+    }
+
+    @Override
+    protected synchronized void doResetDatafile(final TimeType type) {
+        plugin.debugMessage("Resetting data of '" + type + "'!");
+
+        try {
+            if (type != TimeType.TOTAL_TIME) {
+                final Calendar cal = Calendar.getInstance();
+                final int fromDay = getFirstDay(type, cal);
+                final int toDay = getDay(cal);
+
+                execute("DELETE FROM playtime_days WHERE day BETWEEN ? AND ?", fromDay, toDay);
+
+                index.clearDays(fromDay, toDay);
+                return;
+            }
+
+            execute("DELETE FROM playtime_total");
+
+            index.clearTotals();
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Every change is written to the database file immediately, so this only
+     * removes days that are too old to be part of the day history anymore.
+     */
+    @Override
+    public synchronized void saveFiles() {
+        final int removed = update("DELETE FROM playtime_days WHERE day <= ?",
+                getCurrentDay() - PlaytimeIndex.HISTORY_DAYS);
+
+        index.pruneHistory(getCurrentDay() - PlaytimeIndex.HISTORY_DAYS + 1);
+
+        if (removed > 0) {
+            plugin.debugMessage("Removed " + removed + " old days of play time from SQLite database.");
+        }
+    }
+
+    @Override
+    protected synchronized void doShutdown() {
+        saveFiles();
+
+        closeConnection();
+    }
+
+    /**
+     * Import total play time from the {@link TimeType#TOTAL_TIME} data file
+     * and the journal of the flat file storage. Total times in the database
+     * are replaced.
+     */
+    @Override
+    protected synchronized void doImportData() {
+        final PlaytimeIndex index = new PlaytimeIndex();
+
+        FlatFileManager.readTotalTimes(plugin, index);
+        FlatFileManager.replayJournal(plugin, index);
+
+        importTotalTimes(index.snapshotTotals());
+    }
+
+    /**
+     * Replace all total times in the database.
+     */
+    private void importTotalTimes(final PlaytimeIndex.Snapshot totalTimes) {
+        try {
+            beginTransaction();
+
+            execute("DELETE FROM playtime_total");
+
+            final PreparedStatement statement = connection
+                    .prepareStatement("INSERT INTO playtime_total (uuid, time) VALUES (?, ?)");
+
+            try {
+                for (int i = 0; i < totalTimes.size(); i++) {
+                    statement.setString(1, totalTimes.getUUID(i).toString());
+                    statement.setInt(2, totalTimes.getValue(i));
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            } finally {
+                close(statement);
+            }
+
+            connection.commit();
+
+            index.clearTotals();
+
+            for (int i = 0; i < totalTimes.size(); i++) {
+                index.setTotal(totalTimes.getUUID(i), totalTimes.getValue(i));
+            }
+        } catch (final SQLException e) {
+            plugin.getLogger().severe("Could not import total time into SQLite database!");
+            e.printStackTrace();
+
+            rollback();
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    // ---------- PLAYER DATA ---------- \\
+
+    /**
+     * Check whether any properties of players are stored in the database.
+     *
+     * @return true if there are properties of at least one player.
+     */
+    public synchronized boolean hasPlayerProperties() {
+        return queryInt("SELECT COUNT(*) FROM (SELECT 1 FROM player_data LIMIT 1)") > 0;
+    }
+
+    /**
+     * Read the properties of all players.
+     *
+     * @return a map of the key of a player (usually the UUID) to the
+     *         properties of that player.
+     */
+    public synchronized Map<String, Map<String, Object>> loadPlayerProperties() {
+        final Map<String, Map<String, Object>> players = new HashMap<String, Map<String, Object>>();
+
+        if (connection == null) {
+            return players;
+        }
+
+        PreparedStatement statement = null;
+
+        try {
+            statement = prepare("SELECT player, property, value FROM player_data");
+
+            final ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                Map<String, Object> properties = players.get(result.getString(1));
+
+                if (properties == null) {
+                    properties = new HashMap<String, Object>();
+                    players.put(result.getString(1), properties);
+                }
+
+                properties.put(result.getString(2), deserialize(result.getString(3)));
+            }
+        } catch (final SQLException e) {
+            plugin.getLogger().severe("Could not read player data from SQLite database!");
+            e.printStackTrace();
+        } finally {
+            close(statement);
+        }
+
+        return players;
+    }
+
+    /**
+     * Change a property of a player.
+     *
+     * @param player   Key of the player (usually the UUID)
+     * @param property Name of the property
+     * @param value    New value, or null to remove the property
+     */
+    public synchronized void setPlayerProperty(final String player, final String property, final Object value) {
+        if (value == null) {
+            update("DELETE FROM player_data WHERE player = ? AND property = ?", player, property);
+        } else {
+            update("INSERT OR REPLACE INTO player_data (player, property, value) VALUES (?, ?, ?)", player,
+                    property, serialize(value));
+        }
+    }
+
+    /**
+     * Remove all properties of a player.
+     *
+     * @param player Key of the player (usually the UUID)
+     */
+    public synchronized void removePlayerProperties(final String player) {
+        update("DELETE FROM player_data WHERE player = ?", player);
+    }
+
+    /**
+     * Store the properties of many players at once, for example when they are
+     * copied from the player data file.
+     *
+     * @param players Map of the key of a player to the properties of that
+     *                player
+     */
+    public synchronized void importPlayerProperties(final Map<String, Map<String, Object>> players) {
+        try {
+            beginTransaction();
+
+            final PreparedStatement statement = connection
+                    .prepareStatement("INSERT OR REPLACE INTO player_data (player, property, value) VALUES (?, ?, ?)");
+
+            try {
+                for (final Map.Entry<String, Map<String, Object>> player : players.entrySet()) {
+                    for (final Map.Entry<String, Object> property : player.getValue().entrySet()) {
+                        statement.setString(1, player.getKey());
+                        statement.setString(2, property.getKey());
+                        statement.setString(3, serialize(property.getValue()));
+                        statement.addBatch();
+                    }
+                }
+
+                statement.executeBatch();
+            } finally {
+                close(statement);
+            }
+
+            connection.commit();
+        } catch (final SQLException e) {
+            plugin.getLogger().severe("Could not import player data into SQLite database!");
+            e.printStackTrace();
+
+            rollback();
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    private static String serialize(final Object value) {
+        final YamlConfiguration yaml = new YamlConfiguration();
+
+        yaml.set("value", value);
+
+        return yaml.saveToString();
+    }
+
+    private static Object deserialize(final String value) {
+        final YamlConfiguration yaml = new YamlConfiguration();
+
+        try {
+            yaml.loadFromString(value);
+        } catch (final InvalidConfigurationException e) {
+            return null;
+        }
+
+        return yaml.get("value");
+    }
+
+    // ---------- UUIDS ---------- \\
+
+    /**
+     * Check whether any UUIDs of players are stored in the database.
+     *
+     * @return true if the UUID of at least one player is stored.
+     */
+    public synchronized boolean hasUUIDs() {
+        return queryInt("SELECT COUNT(*) FROM (SELECT 1 FROM uuids LIMIT 1)") > 0;
+    }
+
+    /**
+     * Read the UUIDs of all player names. The properties of a name are called
+     * like they are in the UUID files: uuid, realName and updateTime.
+     *
+     * @return a map of the (lower case) name of a player to its properties.
+     */
+    public synchronized Map<String, Map<String, Object>> loadUUIDs() {
+        final Map<String, Map<String, Object>> names = new HashMap<String, Map<String, Object>>();
+
+        if (connection == null) {
+            return names;
+        }
+
+        PreparedStatement statement = null;
+
+        try {
+            statement = prepare("SELECT name, uuid, real_name, update_time FROM uuids");
+
+            final ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                final Map<String, Object> properties = new HashMap<String, Object>();
+
+                properties.put("uuid", result.getString(2));
+                properties.put("updateTime", result.getLong(4));
+
+                if (result.getString(3) != null) {
+                    properties.put("realName", result.getString(3));
+                }
+
+                names.put(result.getString(1), properties);
+            }
+        } catch (final SQLException e) {
+            plugin.getLogger().severe("Could not read UUIDs from SQLite database!");
+            e.printStackTrace();
+        } finally {
+            close(statement);
+        }
+
+        return names;
+    }
+
+    /**
+     * Store the UUID of a player name.
+     *
+     * @param name       Name of the player (lower case)
+     * @param uuid       UUID of the player
+     * @param realName   Name of the player with proper capitalisation, can be
+     *                   null
+     * @param updateTime Time (UNIX timestamp in milliseconds) the UUID was
+     *                   looked up
+     */
+    public synchronized void storeUUID(final String name, final String uuid, final String realName,
+                                       final long updateTime) {
+        update("INSERT OR REPLACE INTO uuids (name, uuid, real_name, update_time) VALUES (?, ?, ?, ?)", name, uuid,
+                realName, updateTime);
+    }
+
+    /**
+     * Remove the UUID of a player name.
+     *
+     * @param name Name of the player (lower case)
+     */
+    public synchronized void removeUUID(final String name) {
+        update("DELETE FROM uuids WHERE name = ?", name);
+    }
+
+    /**
+     * Store the UUIDs of many player names at once, for example when they are
+     * copied from the UUID files.
+     *
+     * @param names Map of the name of a player to its properties, as returned
+     *              by {@link #loadUUIDs()}
+     */
+    public synchronized void importUUIDs(final Map<String, Map<String, Object>> names) {
+        try {
+            beginTransaction();
+
+            final PreparedStatement statement = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO uuids (name, uuid, real_name, update_time) VALUES (?, ?, ?, ?)");
+
+            try {
+                for (final Map.Entry<String, Map<String, Object>> name : names.entrySet()) {
+                    final Object uuid = name.getValue().get("uuid");
+                    final Object realName = name.getValue().get("realName");
+                    final Object updateTime = name.getValue().get("updateTime");
+
+                    // Names without a UUID are not used.
+                    if (uuid == null) {
+                        continue;
+                    }
+
+                    statement.setString(1, name.getKey());
+                    statement.setString(2, uuid.toString());
+                    statement.setString(3, realName == null ? null : realName.toString());
+                    statement.setLong(4, updateTime instanceof Number ? ((Number) updateTime).longValue() : 0);
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            } finally {
+                close(statement);
+            }
+
+            connection.commit();
+        } catch (final SQLException e) {
+            plugin.getLogger().severe("Could not import UUIDs into SQLite database!");
+            e.printStackTrace();
+
+            rollback();
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    /**
+     * The database is always up to date, so the only data files that can be
+     * reloaded are the flat files. The total time of those is imported.
+     */
+    @Override
+    protected void doReloadDataFiles() {
+        doImportData();
+    }
+
+    @Override
+    public Collection<String> getDataFilePaths() {
+        return Collections.singletonList(DATABASE_PATH);
+    }
+
+    private synchronized void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.close();
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
+
+        connection = null;
+    }
+
+    private PreparedStatement prepare(final String sql, final Object... parameters) throws SQLException {
+        final PreparedStatement statement = connection.prepareStatement(sql);
+
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+        }
+
+        return statement;
+    }
+
+    /**
+     * Execute a statement that changes the database. Errors are only logged,
+     * so this should not be used inside a transaction (see
+     * {@link #execute(String, Object...)}).
+     *
+     * @return the number of rows that were changed, or 0 if the statement
+     *         failed.
+     */
+    private int update(final String sql, final Object... parameters) {
+        try {
+            return execute(sql, parameters);
+        } catch (final SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Execute a statement that changes the database.
+     *
+     * @return the number of rows that were changed.
+     * @throws SQLException if the statement failed, so a transaction can be
+     *                      rolled back.
+     */
+    private int execute(final String sql, final Object... parameters) throws SQLException {
+        if (connection == null) {
+            throw new SQLException("SQLite database is not connected");
+        }
+
+        PreparedStatement statement = null;
+
+        try {
+            statement = prepare(sql, parameters);
+
+            return statement.executeUpdate();
+        } finally {
+            close(statement);
+        }
+    }
+
+    /**
+     * Execute a query that returns a single number.
+     *
+     * @return the number in the first column of the first row, or 0 if there
+     *         is none.
+     */
+    private int queryInt(final String sql, final Object... parameters) {
+        if (connection == null) {
+            return 0;
+        }
+
+        PreparedStatement statement = null;
+
+        try {
+            statement = prepare(sql, parameters);
+
+            final ResultSet result = statement.executeQuery();
+
+            return result.next() ? result.getInt(1) : 0;
+        } catch (final SQLException e) {
+            e.printStackTrace();
+            return 0;
+        } finally {
+            close(statement);
+        }
+    }
+
+    /**
+     * Execute a query that returns the UUID of a player in the first column.
+     *
+     * @return a list of all UUIDs that were returned.
+     */
+    private List<UUID> queryUUIDs(final String sql, final Object... parameters) {
+        final List<UUID> uuids = new ArrayList<UUID>();
+
+        if (connection == null) {
+            return uuids;
+        }
+
+        PreparedStatement statement = null;
+
+        try {
+            statement = prepare(sql, parameters);
+
+            final ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                try {
+                    uuids.add(UUID.fromString(result.getString(1)));
+                } catch (final IllegalArgumentException e) {
+                    // Skip invalid UUIDs
+                }
+            }
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        } finally {
+            close(statement);
+        }
+
+        return uuids;
+    }
+
+    /**
+     * Execute a query that returns the UUID of a player in the first column
+     * and a time in the second column.
+     *
+     * @return a snapshot of all rows that were returned.
+     */
+    private PlaytimeIndex.Snapshot querySnapshot(final String sql, final Object... parameters) {
+        long[] mostSigBits = new long[64];
+        long[] leastSigBits = new long[64];
+        int[] values = new int[64];
+        int size = 0;
+
+        if (connection == null) {
+            return new PlaytimeIndex.Snapshot(mostSigBits, leastSigBits, values, size, 0);
+        }
+
+        PreparedStatement statement = null;
+
+        try {
+            statement = prepare(sql, parameters);
+
+            final ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                UUID uuid = null;
+                try {
+                    uuid = UUID.fromString(result.getString(1));
+                } catch (final IllegalArgumentException e) {
+                    continue;
+                }
+
+                if (size == values.length) {
+                    mostSigBits = Arrays.copyOf(mostSigBits, size * 2);
+                    leastSigBits = Arrays.copyOf(leastSigBits, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+
+                mostSigBits[size] = uuid.getMostSignificantBits();
+                leastSigBits[size] = uuid.getLeastSignificantBits();
+                values[size] = result.getInt(2);
+                size++;
+            }
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        } finally {
+            close(statement);
+        }
+
+        return new PlaytimeIndex.Snapshot(mostSigBits, leastSigBits, values, size, 0);
+    }
+
+    /**
+     * Start a transaction. It ends with a commit or {@link #rollback()}, after
+     * which {@link #resetAutoCommit()} must be called.
+     *
+     * @throws SQLException if the database is not connected.
+     */
+    private void beginTransaction() throws SQLException {
+        if (connection == null) {
+            throw new SQLException("SQLite database is not connected");
+        }
+
+        connection.setAutoCommit(false);
+    }
+
+    private void rollback() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.rollback();
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void resetAutoCommit() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.setAutoCommit(true);
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void close(final Statement statement) {
+        if (statement == null) {
+            return;
+        }
+
+        try {
+            statement.close();
+        } catch (final SQLException e) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import java.io.*;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads player records that were written by {@link BinaryRecordWriter}.
+ *
+ * @author Staartvin
+ */
+public class BinaryRecordReader implements RecordReader {
+
+    // Progress of a single player is never this large, unless the file is corrupt.
+    private static final int MAX_PROGRESS_LENGTH = 16 * 1024 * 1024;
+
+    private final DataInputStream input;
+
+    private boolean headerRead = false;
+    private boolean ended = false;
+
+    public BinaryRecordReader(final InputStream input) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(input, 64 * 1024), 64 * 1024));
+    }
+
+    @Override
+    public PlayerRecord read() throws IOException {
+        if (ended) {
+            return null;
+        }
+
+        try {
+            if (!headerRead) {
+                if (input.readInt() != BinaryRecordWriter.FILE_MAGIC
+                        || input.readInt() != BinaryRecordWriter.FILE_VERSION) {
+                    throw new IOException("File is not an Autorank export or has an unknown version");
+                }
+
+                headerRead = true;
+            }
+
+            final byte type = input.readByte();
+
+            if (type == BinaryRecordWriter.END) {
+                ended = true;
+                return null;
+            } else if (type != BinaryRecordWriter.RECORD) {
+                throw new IOException("File contains an unknown record type " + type);
+            }
+
+            final UUID uuid = new UUID(input.readLong(), input.readLong());
+            final int totalTime = input.readInt();
+            final int progressLength = input.readInt();
+
+            if (progressLength > MAX_PROGRESS_LENGTH) {
+                throw new IOException("Progress of " + uuid + " is too large, the file is probably corrupt");
+            }
+
+            String progress = null;
+
+            if (progressLength >= 0) {
+                final byte[] bytes = new byte[progressLength];
+                input.readFully(bytes);
+
+                progress = new String(bytes, "UTF-8");
+            }
+
+            return new PlayerRecord(uuid, totalTime, progress);
+        } catch (final EOFException e) {
+            throw new IOException("File ends unexpectedly, it was probably not completely written");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,68 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import java.io.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes player records in a compact, gzipped binary format. Every record
+ * contains the UUID, the total time and the progress (as UTF-8 encoded YAML)
+ * of a player. The last record is followed by an end marker, so a file that
+ * was not completely written can be detected.
+ *
+ * @author Staartvin
+ */
+public class BinaryRecordWriter implements RecordWriter {
+
+    static final int FILE_MAGIC = 0x41525458;
+    static final int FILE_VERSION = 1;
+
+    static final byte RECORD = 1;
+    static final byte END = 0;
+
+    private final DataOutputStream output;
+
+    private boolean headerWritten = false;
+
+    public BinaryRecordWriter(final OutputStream output) throws IOException {
+        this.output = new DataOutputStream(
+                new BufferedOutputStream(new GZIPOutputStream(output, 64 * 1024), 64 * 1024));
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten) {
+            return;
+        }
+
+        output.writeInt(FILE_MAGIC);
+        output.writeInt(FILE_VERSION);
+
+        headerWritten = true;
+    }
+
+    @Override
+    public void write(final PlayerRecord record) throws IOException {
+        writeHeader();
+
+        output.writeByte(RECORD);
+        output.writeLong(record.getUUID().getMostSignificantBits());
+        output.writeLong(record.getUUID().getLeastSignificantBits());
+        output.writeInt(record.getTotalTime());
+
+        if (record.getProgress() == null) {
+            output.writeInt(-1);
+        } else {
+            final byte[] progress = record.getProgress().getBytes("UTF-8");
+
+            output.writeInt(progress.length);
+            output.write(progress);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeHeader();
+
+        output.writeByte(END);
+        output.close();
+    }
+}
@@ -0,0 +1,141 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads player records that were written by {@link CsvRecordWriter}. Quoted
+ * fields may contain commas, escaped quotes and line breaks.
+ *
+ * @author Staartvin
+ */
+public class CsvRecordReader implements RecordReader {
+
+    private final Reader reader;
+
+    // Number of the line the next record starts on, used in error messages
+    private long lineNumber = 1;
+
+    private boolean headerSkipped = false;
+
+    public CsvRecordReader(final InputStream input) {
+        try {
+            this.reader = new BufferedReader(new InputStreamReader(input, "UTF-8"), 64 * 1024);
+        } catch (final UnsupportedEncodingException e) {
+            // Every JVM supports UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public PlayerRecord read() throws IOException {
+        if (!headerSkipped) {
+            headerSkipped = true;
+
+            final List<String> header = readLine();
+
+            if (header == null) {
+                return null;
+            }
+
+            if (!header.isEmpty() && !header.get(0).equalsIgnoreCase("uuid")) {
+                throw new IOException("CSV file does not start with the header '" + CsvRecordWriter.HEADER + "'");
+            }
+        }
+
+        long recordLine;
+        List<String> fields;
+
+        // Skip empty lines
+        do {
+            recordLine = lineNumber;
+            fields = readLine();
+        } while (fields != null && fields.size() == 1 && fields.get(0).isEmpty());
+
+        if (fields == null) {
+            return null;
+        }
+
+        if (fields.size() < 2) {
+            throw new IOException("Line " + recordLine + " of CSV file has too few fields");
+        }
+
+        try {
+            final UUID uuid = UUID.fromString(fields.get(0).trim());
+            final int totalTime = Integer.parseInt(fields.get(1).trim());
+            final String progress = fields.size() > 2 && !fields.get(2).isEmpty() ? fields.get(2) : null;
+
+            return new PlayerRecord(uuid, totalTime, progress);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Line " + recordLine + " of CSV file is invalid: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read the fields of the next line. A quoted field can span multiple
+     * lines.
+     *
+     * @return the fields of the line, or null if the end of the file was
+     * reached.
+     */
+    private List<String> readLine() throws IOException {
+        final List<String> fields = new ArrayList<String>(3);
+        final StringBuilder field = new StringBuilder();
+
+        boolean quoted = false;
+        int character = reader.read();
+
+        if (character < 0) {
+            return null;
+        }
+
+        while (character >= 0) {
+            if (quoted) {
+                if (character == '"') {
+                    reader.mark(1);
+
+                    if (reader.read() == '"') {
+                        // An escaped quote
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    if (character == '\n') {
+                        lineNumber++;
+                    }
+
+                    field.append((char) character);
+                }
+            } else if (character == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (character == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (character == '\n') {
+                lineNumber++;
+                break;
+            } else if (character != '\r') {
+                field.append((char) character);
+            }
+
+            character = reader.read();
+        }
+
+        if (quoted) {
+            throw new IOException("CSV file ends inside a quoted field");
+        }
+
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
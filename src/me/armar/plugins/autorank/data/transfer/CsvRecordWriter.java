@@ -0,0 +1,76 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import java.io.*;
+
+/**
+ * Writes player records as CSV: a header line, followed by one line per
+ * player with the UUID, the total time and the progress of the player.
+ * Fields that contain commas, quotes or line breaks are quoted, so the
+ * progress of a player (which is YAML) can span multiple lines.
+ *
+ * @author Staartvin
+ */
+public class CsvRecordWriter implements RecordWriter {
+
+    static final String HEADER = "uuid,total_time,progress";
+
+    private final Writer writer;
+
+    private boolean headerWritten = false;
+
+    public CsvRecordWriter(final OutputStream output) {
+        try {
+            this.writer = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"), 64 * 1024);
+        } catch (final UnsupportedEncodingException e) {
+            // Every JVM supports UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten) {
+            return;
+        }
+
+        writer.write(HEADER);
+        writer.write('\n');
+
+        headerWritten = true;
+    }
+
+    @Override
+    public void write(final PlayerRecord record) throws IOException {
+        writeHeader();
+
+        writer.write(record.getUUID().toString());
+        writer.write(',');
+        writer.write(Integer.toString(record.getTotalTime()));
+        writer.write(',');
+
+        if (record.getProgress() != null) {
+            writeField(record.getProgress());
+        }
+
+        writer.write('\n');
+    }
+
+    private void writeField(final String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        // An empty file still gets a header.
+        writeHeader();
+
+        writer.close();
+    }
+}
@@ -0,0 +1,333 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import com.google.common.io.CountingInputStream;
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.PlaytimeStorage;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.data.flatfile.PlaytimeIndex;
+import me.armar.plugins.autorank.util.DataWriter;
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class imports and exports the total time and progress of all players.
+ * Records are read and written one at a time and stored in small batches, so
+ * the memory that is used does not depend on the size of the file.
+ * <p>
+ * Only one import or export can run at the same time.
+ *
+ * @author Staartvin
+ */
+public class DataTransfer {
+
+    /**
+     * Gets told how far an import or export is.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called every couple of seconds while data is transferred, and once
+         * when the transfer is done.
+         *
+         * @param records    Number of records that were transferred so far
+         * @param percentage Estimated percentage of the transfer that is done
+         */
+        void onProgress(long records, int percentage);
+    }
+
+    // Folder (relative to the data folder of Autorank) with imported and exported files
+    private static final String TRANSFER_FOLDER = "exports";
+
+    // Number of total times that are stored at once while importing
+    private static final int BATCH_SIZE = 1000;
+
+    // Time (in milliseconds) between two progress reports
+    private static final long PROGRESS_INTERVAL = 5000;
+
+    private final Autorank plugin;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public DataTransfer(final Autorank instance) {
+        this.plugin = instance;
+    }
+
+    /**
+     * Get the folder that files are imported from and exported to.
+     */
+    public File getTransferFolder() {
+        return new File(plugin.getDataFolder(), TRANSFER_FOLDER);
+    }
+
+    /**
+     * Get a file in the transfer folder.
+     *
+     * @param fileName Name of the file
+     * @return the file, or null if the name is not a plain file name (and
+     * could point outside the transfer folder).
+     */
+    public File getTransferFile(final String fileName) {
+        final File file = new File(getTransferFolder(), fileName);
+
+        if (!file.getName().equals(fileName)) {
+            return null;
+        }
+
+        return file;
+    }
+
+    /**
+     * Check whether an import or export is running.
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Export the total time and progress of all players, including players
+     * that are archived.
+     *
+     * @param file     File to write to
+     * @param format   Format of the file
+     * @param listener Listener that is told about the progress
+     * @return the number of records that were exported.
+     * @throws IOException           if the file could not be written.
+     * @throws IllegalStateException if another import or export is running.
+     */
+    public long exportData(final File file, final TransferFormat format, final ProgressListener listener)
+            throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Another import or export is running");
+        }
+
+        try {
+            return writeRecords(file, format, listener);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private long writeRecords(final File file, final TransferFormat format, final ProgressListener listener)
+            throws IOException {
+        final PlaytimeStorage storage = plugin.getPlaytimeStorage();
+
+        // Export all changes that were made so far.
+        storage.flush();
+
+        // Players with data that is both archived and active are merged first, so every player is written once.
+        for (final UUID uuid : plugin.getArchiveManager().getArchivedPlayers()) {
+            if (storage.getLocalTime(TimeType.TOTAL_TIME, uuid) > 0
+                    || plugin.getPlayerDataConfig().hasPlayerData(uuid)) {
+                plugin.getArchiveManager().restorePlayer(uuid);
+            }
+        }
+
+        final PlaytimeIndex.Snapshot totalTimes = storage.getLocalTimes(TimeType.TOTAL_TIME);
+        final Set<String> progressKeys = plugin.getPlayerDataConfig().getConfig().getKeys(false);
+        final List<UUID> archivedPlayers = plugin.getArchiveManager().getArchivedPlayers();
+
+        final Progress progress = new Progress(listener,
+                (long) totalTimes.size() + progressKeys.size() + archivedPlayers.size());
+
+        file.getParentFile().mkdirs();
+
+        final RecordWriter writer = format.createWriter(new FileOutputStream(file));
+
+        try {
+            // Players with total time (and maybe progress)
+            for (int i = 0; i < totalTimes.size(); i++) {
+                progress.step();
+
+                if (totalTimes.getValue(i) <= 0) {
+                    continue;
+                }
+
+                final UUID uuid = totalTimes.getUUID(i);
+
+                writer.write(new PlayerRecord(uuid, totalTimes.getValue(i),
+                        plugin.getPlayerDataConfig().exportPlayerData(uuid)));
+                progress.record();
+            }
+
+            // Players with only progress
+            for (final String key : progressKeys) {
+                progress.step();
+
+                UUID uuid = null;
+
+                try {
+                    uuid = UUID.fromString(key);
+                } catch (final IllegalArgumentException e) {
+                    continue;
+                }
+
+                if (storage.getLocalTime(TimeType.TOTAL_TIME, uuid) > 0) {
+                    continue;
+                }
+
+                final String playerData = plugin.getPlayerDataConfig().exportPlayerData(uuid);
+
+                if (playerData != null) {
+                    writer.write(new PlayerRecord(uuid, 0, playerData));
+                    progress.record();
+                }
+            }
+
+            // Players that are archived
+            for (final UUID uuid : archivedPlayers) {
+                progress.step();
+
+                final PlayerRecord record = plugin.getArchiveManager().getArchivedRecord(uuid);
+
+                if (record != null) {
+                    writer.write(record);
+                    progress.record();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+
+        progress.finish();
+
+        return progress.records;
+    }
+
+    /**
+     * Import the total time and progress of players. The total time of
+     * players in the file replaces their current total time, unless it is 0.
+     * Progress in the file replaces the current progress of players.
+     *
+     * @param file     File to read from
+     * @param format   Format of the file
+     * @param listener Listener that is told about the progress
+     * @return the number of records that were imported.
+     * @throws IOException           if the file could not be read or is
+     *                               invalid. Records before the invalid record
+     *                               are imported.
+     * @throws IllegalStateException if another import or export is running.
+     */
+    public long importData(final File file, final TransferFormat format, final ProgressListener listener)
+            throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Another import or export is running");
+        }
+
+        try {
+            return readRecords(file, format, listener);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private long readRecords(final File file, final TransferFormat format, final ProgressListener listener)
+            throws IOException {
+        final CountingInputStream input = new CountingInputStream(new FileInputStream(file));
+        final RecordReader reader = format.createReader(input);
+
+        // Progress is estimated from the number of bytes that were read.
+        final Progress progress = new Progress(listener, file.length());
+
+        Map<UUID, Integer> totalTimes = new LinkedHashMap<UUID, Integer>();
+
+        try {
+            PlayerRecord record;
+
+            while ((record = reader.read()) != null) {
+                final UUID uuid = record.getUUID();
+
+                // Imported data replaces archived data as well.
+                plugin.getArchiveManager().restorePlayer(uuid);
+
+                if (record.getTotalTime() > 0) {
+                    totalTimes.put(uuid, record.getTotalTime());
+                }
+
+                if (record.getProgress() != null) {
+                    try {
+                        plugin.getPlayerDataConfig().removePlayerData(uuid);
+                        plugin.getPlayerDataConfig().importPlayerData(uuid, record.getProgress());
+                    } catch (final InvalidConfigurationException e) {
+                        plugin.getLogger().warning("Could not import progress of " + uuid + ": " + e.getMessage());
+                    }
+                }
+
+                if (totalTimes.size() >= BATCH_SIZE) {
+                    // Wait for the batch to be stored, so batches do not pile up in memory.
+                    DataWriter.await(plugin.getPlaytimeStorage().setTotalTimes(totalTimes));
+                    totalTimes = new LinkedHashMap<UUID, Integer>();
+                }
+
+                progress.record();
+                progress.update(input.getCount());
+            }
+        } finally {
+            reader.close();
+
+            // Store what was read, even if the rest of the file is invalid.
+            if (!totalTimes.isEmpty()) {
+                DataWriter.await(plugin.getPlaytimeStorage().setTotalTimes(totalTimes));
+            }
+
+            plugin.getPlaytimeStorage().saveFiles();
+            plugin.getPlayerDataConfig().saveConfig();
+        }
+
+        progress.finish();
+
+        return progress.records;
+    }
+
+    /**
+     * Keeps track of the progress of a transfer and reports it every
+     * {@value #PROGRESS_INTERVAL} milliseconds.
+     */
+    private static class Progress {
+
+        private final ProgressListener listener;
+        private final long total;
+
+        private long records = 0;
+        private long done = 0;
+        private long lastReport = System.currentTimeMillis();
+
+        Progress(final ProgressListener listener, final long total) {
+            this.listener = listener;
+            this.total = total;
+        }
+
+        void record() {
+            records++;
+        }
+
+        void step() {
+            update(done + 1);
+        }
+
+        void update(final long done) {
+            this.done = done;
+
+            final long now = System.currentTimeMillis();
+
+            if (now - lastReport >= PROGRESS_INTERVAL) {
+                lastReport = now;
+                listener.onProgress(records, getPercentage());
+            }
+        }
+
+        void finish() {
+            listener.onProgress(records, 100);
+        }
+
+        private int getPercentage() {
+            return total <= 0 ? 0 : (int) Math.min(100, done * 100 / total);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import java.util.UUID;
+
+/**
+ * The data of a single player that is imported or exported: the total time
+ * and the progress of the player (as stored in
+ * {@link me.armar.plugins.autorank.config.PlayerDataConfig}).
+ *
+ * @author Staartvin
+ */
+public class PlayerRecord {
+
+    private final UUID uuid;
+    private final int totalTime;
+    private final String progress;
+
+    /**
+     * Create a record of a player.
+     *
+     * @param uuid      UUID of the player
+     * @param totalTime Total time (in minutes) of the player
+     * @param progress  Progress of the player as a YAML string, or null if the
+     *                  player has no progress.
+     */
+    public PlayerRecord(final UUID uuid, final int totalTime, final String progress) {
+        this.uuid = uuid;
+        this.totalTime = totalTime;
+        this.progress = progress;
+    }
+
+    public UUID getUUID() {
+        return uuid;
+    }
+
+    public int getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Get the progress of the player as a YAML string.
+     *
+     * @return the progress of the player, or null if the player has no
+     * progress.
+     */
+    public String getProgress() {
+        return progress;
+    }
+}
@@ -0,0 +1,20 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads player records one at a time, so files of any size can be read.
+ *
+ * @author Staartvin
+ */
+public interface RecordReader extends Closeable {
+
+    /**
+     * Read the next record.
+     *
+     * @return the next record, or null if there are no more records.
+     * @throws IOException if the record could not be read or is invalid.
+     */
+    PlayerRecord read() throws IOException;
+}
@@ -0,0 +1,21 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes player records one at a time, so files of any size can be written.
+ * The output is only complete after {@link #close()} has been called.
+ *
+ * @author Staartvin
+ */
+public interface RecordWriter extends Closeable {
+
+    /**
+     * Write a record.
+     *
+     * @param record Record to write
+     * @throws IOException if the record could not be written.
+     */
+    void write(PlayerRecord record) throws IOException;
+}
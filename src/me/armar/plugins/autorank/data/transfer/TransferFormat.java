@@ -0,0 +1,82 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Represents a file format that player data can be imported from and exported
+ * to.
+ *
+ * @author Staartvin
+ */
+public enum TransferFormat {
+
+    /**
+     * Plain text, can be opened in a spreadsheet or created by other tools.
+     */
+    CSV("csv"),
+
+    /**
+     * Compact binary format, best for moving data between servers.
+     */
+    BINARY("dat");
+
+    private final String extension;
+
+    TransferFormat(final String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public RecordWriter createWriter(final OutputStream output) throws IOException {
+        if (this == CSV) {
+            return new CsvRecordWriter(output);
+        }
+
+        return new BinaryRecordWriter(output);
+    }
+
+    public RecordReader createReader(final InputStream input) throws IOException {
+        if (this == CSV) {
+            return new CsvRecordReader(input);
+        }
+
+        return new BinaryRecordReader(input);
+    }
+
+    /**
+     * Get a format by its name (e.g. 'csv' or 'binary').
+     *
+     * @param name Name of the format
+     * @return the matching format, or null if there is none.
+     */
+    public static TransferFormat fromName(final String name) {
+        for (final TransferFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the format of a file by its extension.
+     *
+     * @param fileName Name of the file
+     * @return the format of the file, or null if the extension is unknown.
+     */
+    public static TransferFormat fromFileName(final String fileName) {
+        for (final TransferFormat format : values()) {
+            if (fileName.toLowerCase().endsWith("." + format.getExtension())) {
+                return format;
+            }
+        }
+
+        return null;
+    }
+}
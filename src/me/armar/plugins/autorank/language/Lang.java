@@ -236,10 +236,42 @@ public enum Lang {
      * &a-------- Leaderboard (Monthly time) --------
      */
     LEADERBOARD_HEADER_MONTHLY("leaderboard-header-monthly", "&a-------- Leaderboard (Monthly time) --------"),
+    /**
+     * &a-------- Leaderboard ({0}) --------
+     */
+    LEADERBOARD_HEADER_STAT("leaderboard-header-stat", "&a-------- Leaderboard ({0}) --------"),
     /**
      * &a-------- Leaderboard (Weekly time) --------
      */
     LEADERBOARD_HEADER_WEEKLY("leaderboard-header-weekly", "&a-------- Leaderboard (Weekly time) --------"),
+    /**
+     * &cYou cannot make a leaderboard of that stat! &eOnly these stats are allowed: {0}
+     */
+    LEADERBOARD_INVALID_STAT("leaderboard-invalid-stat", "&cYou cannot make a leaderboard of that stat! &eOnly these stats are allowed: {0}"),
+    /**
+     * &cThere is no page {0} on this leaderboard.
+     */
+    LEADERBOARD_INVALID_PAGE("leaderboard-invalid-page", "&cThere is no page {0} on this leaderboard."),
+    /**
+     * &c{0} is not on this leaderboard.
+     */
+    LEADERBOARD_NO_RANK("leaderboard-no-rank", "&c{0} is not on this leaderboard."),
+    /**
+     * &7Page {0}
+     */
+    LEADERBOARD_PAGE("leaderboard-page", "&7Page {0}"),
+    /**
+     * &b{0} &7is ranked &6#{1} &7with {2}.
+     */
+    LEADERBOARD_RANK("leaderboard-rank", "&b{0} &7is ranked &6#{1} &7with {2}."),
+    /**
+     * &7This leaderboard is still being built ({0}% done).
+     */
+    LEADERBOARD_STAT_BUILDING("leaderboard-stat-building", "&7This leaderboard is still being built ({0}% done)."),
+    /**
+     * &6{0} | &b{1} - &7{2}
+     */
+    LEADERBOARD_STAT_LINE("leaderboard-stat-line", "&6{0} | &b{1} - &7{2}"),
     /**
      * Be at {0}.
      */
@@ -0,0 +1,313 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps the lines of every leaderboard in memory. <br>
+ * <br>
+ * A leaderboard is rebuilt when it is asked for and it is not valid anymore.
+ * A leaderboard is not valid anymore when:
+ * <ul>
+ * <li>it is older than the valid time,</li>
+ * <li>it was invalidated (for example because an admin changed the time of a
+ * player), or</li>
+ * <li>the version of the data it was built from has changed (see
+ * {@link VersionSource}) and it is older than the rebuild interval.</li>
+ * </ul>
+ * The rebuild interval makes sure a leaderboard is not rebuilt every time it
+ * is asked for when its data changes often. Leaderboards that were stored
+ * earlier (see {@link #warmUp(TimeType, List, long)}) are not built from a
+ * known version, so only their age is checked.
+ * When a leaderboard is asked for while it is being rebuilt, no other rebuild
+ * is started: the running rebuild gives the lines to both.
+ *
+ * @author Staartvin
+ */
+public class LeaderboardCache {
+
+    /**
+     * Builds the lines of a leaderboard.
+     */
+    public interface Builder {
+
+        /**
+         * Build the lines of a leaderboard. This is called on the executor of
+         * the cache.
+         *
+         * @param type Type of leaderboard
+         * @return the lines of the leaderboard.
+         */
+        List<String> build(TimeType type);
+    }
+
+    /**
+     * Gives the version of the data a leaderboard is built from.
+     */
+    public interface VersionSource {
+
+        /**
+         * Get the version of the data a leaderboard is built from. This is
+         * called on any thread, so it should not block.
+         *
+         * @param type Type of leaderboard
+         * @return the version of the data, which changes whenever the data
+         * changes, or -1 if the version is not known. A leaderboard that was
+         * built from data of an unknown version is never valid.
+         */
+        long getVersion(TimeType type);
+    }
+
+    // Version of leaderboards that were not built by this cache
+    private static final long WARM_VERSION = Long.MIN_VALUE;
+
+    private static final class CachedLeaderboard {
+
+        private final List<String> lines;
+        private final long updateTime;
+        private final long version;
+        private final long invalidation;
+
+        CachedLeaderboard(final List<String> lines, final long updateTime, final long version,
+                          final long invalidation) {
+            this.lines = lines;
+            this.updateTime = updateTime;
+            this.version = version;
+            this.invalidation = invalidation;
+        }
+    }
+
+    private final Builder builder;
+    private final VersionSource versionSource;
+    private final long validTime;
+    private final long rebuildInterval;
+    private final Executor executor;
+    private final Ticker ticker;
+
+    private final ConcurrentMap<TimeType, CachedLeaderboard> leaderboards =
+            new ConcurrentHashMap<TimeType, CachedLeaderboard>();
+    // Rebuilds that are running
+    private final ConcurrentMap<TimeType, ListenableFutureTask<List<String>>> rebuilds =
+            new ConcurrentHashMap<TimeType, ListenableFutureTask<List<String>>>();
+
+    // Number of times every leaderboard was invalidated
+    private final Map<TimeType, AtomicLong> invalidations = new EnumMap<TimeType, AtomicLong>(TimeType.class);
+
+    /**
+     * @param builder         Builder of the lines of a leaderboard
+     * @param versionSource   Source of the version of the data of a leaderboard
+     * @param validTime       Time (in milliseconds) a leaderboard is valid
+     * @param rebuildInterval Time (in milliseconds) a leaderboard stays valid
+     *                        after the version of its data has changed
+     * @param executor        Executor that rebuilds leaderboards
+     */
+    public LeaderboardCache(final Builder builder, final VersionSource versionSource, final long validTime,
+                            final long rebuildInterval, final Executor executor) {
+        this(builder, versionSource, validTime, rebuildInterval, executor, Ticker.systemTicker());
+    }
+
+    LeaderboardCache(final Builder builder, final VersionSource versionSource, final long validTime,
+                     final long rebuildInterval, final Executor executor, final Ticker ticker) {
+        this.builder = builder;
+        this.versionSource = versionSource;
+        this.validTime = validTime;
+        this.rebuildInterval = rebuildInterval;
+        this.executor = executor;
+        this.ticker = ticker;
+
+        for (final TimeType type : TimeType.values()) {
+            invalidations.put(type, new AtomicLong());
+        }
+    }
+
+    /**
+     * Get the lines of a leaderboard. If the cached leaderboard is not valid
+     * anymore, it is rebuilt first.
+     *
+     * @param type Type of leaderboard
+     * @return a future that gives the lines of the leaderboard.
+     */
+    public ListenableFuture<List<String>> get(final TimeType type) {
+        final List<String> lines = getIfValid(type);
+
+        if (lines != null) {
+            return Futures.immediateFuture(lines);
+        }
+
+        return refresh(type);
+    }
+
+    /**
+     * Get the lines of a leaderboard if the cached leaderboard is valid.
+     *
+     * @param type Type of leaderboard
+     * @return the lines of the leaderboard, or null if it is not valid.
+     */
+    public List<String> getIfValid(final TimeType type) {
+        final CachedLeaderboard leaderboard = leaderboards.get(type);
+
+        if (leaderboard == null || !isValid(type, leaderboard)) {
+            return null;
+        }
+
+        return leaderboard.lines;
+    }
+
+    /**
+     * Get the lines of a leaderboard, even if the cached leaderboard is not
+     * valid anymore.
+     *
+     * @param type Type of leaderboard
+     * @return the lines of the leaderboard, or null if nothing is cached.
+     */
+    public List<String> getIfPresent(final TimeType type) {
+        final CachedLeaderboard leaderboard = leaderboards.get(type);
+
+        return leaderboard == null ? null : leaderboard.lines;
+    }
+
+    /**
+     * Rebuild a leaderboard, unless it is already being rebuilt.
+     *
+     * @param type Type of leaderboard
+     * @return a future that gives the lines of the rebuilt leaderboard.
+     */
+    public ListenableFuture<List<String>> refresh(final TimeType type) {
+        final ListenableFutureTask<List<String>> running = rebuilds.get(type);
+
+        if (running != null) {
+            return running;
+        }
+
+        final ListenableFutureTask<List<String>> rebuild = ListenableFutureTask.create(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                // Read the versions first, so changes during the rebuild make it invalid.
+                final long invalidation = invalidations.get(type).get();
+                final long version = versionSource.getVersion(type);
+
+                final List<String> lines = Collections.unmodifiableList(new ArrayList<String>(builder.build(type)));
+
+                leaderboards.put(type, new CachedLeaderboard(lines, now(), version, invalidation));
+
+                return lines;
+            }
+        });
+
+        final ListenableFutureTask<List<String>> other = rebuilds.putIfAbsent(type, rebuild);
+
+        if (other != null) {
+            return other;
+        }
+
+        rebuild.addListener(new Runnable() {
+            @Override
+            public void run() {
+                rebuilds.remove(type, rebuild);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        });
+
+        try {
+            executor.execute(rebuild);
+        } catch (final RuntimeException e) {
+            rebuilds.remove(type, rebuild);
+            rebuild.cancel(false);
+
+            return Futures.immediateFailedFuture(e);
+        }
+
+        return rebuild;
+    }
+
+    /**
+     * Make a leaderboard invalid, so it is rebuilt the next time it is asked
+     * for. A rebuild that is running is not used anymore.
+     *
+     * @param type Type of leaderboard
+     */
+    public void invalidate(final TimeType type) {
+        invalidations.get(type).incrementAndGet();
+        rebuilds.remove(type);
+    }
+
+    /**
+     * Make all leaderboards invalid.
+     */
+    public void invalidateAll() {
+        for (final TimeType type : TimeType.values()) {
+            invalidate(type);
+        }
+    }
+
+    /**
+     * Put the lines of a leaderboard that were stored earlier (for example on
+     * disk) in the cache. The leaderboard is valid until it is older than the
+     * valid time or it is invalidated. The version of the data it was built
+     * from is not known, so changes of the data are not checked.
+     *
+     * @param type  Type of leaderboard
+     * @param lines Lines of the leaderboard
+     * @param age   Time (in milliseconds) since the leaderboard was built
+     */
+    public void warmUp(final TimeType type, final List<String> lines, final long age) {
+        final List<String> copy = Collections.unmodifiableList(new ArrayList<String>(lines));
+
+        leaderboards.putIfAbsent(type, new CachedLeaderboard(copy, now() - Math.max(age, 0), WARM_VERSION,
+                invalidations.get(type).get()));
+    }
+
+    /**
+     * Get the time (in milliseconds) since a leaderboard was built.
+     *
+     * @param type Type of leaderboard
+     * @return the age of the leaderboard, or -1 if nothing is cached.
+     */
+    public long getAge(final TimeType type) {
+        final CachedLeaderboard leaderboard = leaderboards.get(type);
+
+        return leaderboard == null ? -1 : now() - leaderboard.updateTime;
+    }
+
+    private boolean isValid(final TimeType type, final CachedLeaderboard leaderboard) {
+        final long age = now() - leaderboard.updateTime;
+
+        if (age >= validTime || leaderboard.invalidation != invalidations.get(type).get()) {
+            return false;
+        }
+
+        if (leaderboard.version == WARM_VERSION) {
+            return true;
+        }
+
+        // Built from data of an unknown version
+        if (leaderboard.version < 0) {
+            return false;
+        }
+
+        return age < rebuildInterval || leaderboard.version == versionSource.getVersion(type);
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+    }
+}
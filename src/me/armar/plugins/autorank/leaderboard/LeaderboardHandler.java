@@ -1,21 +1,32 @@
 package me.armar.plugins.autorank.leaderboard;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
 import me.armar.plugins.autorank.hooks.DependencyManager.AutorankDependency;
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.statsmanager.StatsPlugin.StatType;
 import me.armar.plugins.autorank.util.AutorankTools;
+import me.armar.plugins.autorank.util.AutorankTools.Time;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import java.text.DecimalFormat;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * This class is used to handle all leaderboard things. <br>
  * When a player calls /ar leaderboard, it will show the currently cached
- * leaderboard. <br>
+ * leaderboard (see {@link LeaderboardCache}). A cached leaderboard is updated
+ * when it is older than 30 minutes or it is invalidated. Leaderboards of local
+ * time are also updated when the rankings that
+ * {@link me.armar.plugins.autorank.data.PlaytimeStorage} keeps have changed,
+ * but at most once a minute, as the rankings change whenever play time is
+ * added.
+ * <br>
  * <i>/ar leaderboard force</i> can be used to forcefully update the current
  * leaderboard. <br>
  * <i>/ar leaderboard broadcast</i> can be used to broadcast the leaderboard
@@ -27,21 +38,51 @@ import java.util.Map.Entry;
  */
 public class LeaderboardHandler {
 
+    // A cached leaderboard is valid for 30 minutes.
     private static final double LEADERBOARD_TIME_VALID = 30;
+    // A leaderboard is rebuilt at most once a minute when its ranking changes.
+    private static final double LEADERBOARD_REBUILD_INTERVAL = 1;
     private final Autorank plugin;
     private String layout = "&6&r | &b&p - &7&d %day%, &h %hour% and &m %minute%.";
     private int leaderboardLength = 10;
 
+    // Lines of the leaderboards
+    private final LeaderboardCache cache;
+
+    // Players sorted on their stats
+    private final StatRankings statRankings;
+
     public LeaderboardHandler(final Autorank plugin) {
         this.plugin = plugin;
 
         leaderboardLength = plugin.getConfigHandler().getLeaderboardLength();
         layout = plugin.getConfigHandler().getLeaderboardLayout();
+
+        statRankings = new StatRankings(plugin);
+
+        cache = new LeaderboardCache(new LeaderboardCache.Builder() {
+            @Override
+            public List<String> build(final TimeType type) {
+                return buildLeaderboard(type);
+            }
+        }, new LeaderboardCache.VersionSource() {
+            @Override
+            public long getVersion(final TimeType type) {
+                // Leaderboards of local time are valid until the ranking changes.
+                if (isSortedByAutorank(type)) {
+                    return plugin.getPlaytimeStorage().getRankingVersion(type);
+                }
+
+                return 0;
+            }
+        }, (long) (60000 * LEADERBOARD_TIME_VALID), (long) (60000 * LEADERBOARD_REBUILD_INTERVAL), new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                // Run async because it uses UUID lookup
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, command);
+            }
+        });
     }
-    // LeaderboardHandler
-    // is valid
-    // for 30
-    // minutes.
 
     /**
      * Sort a map by its values.
@@ -73,245 +114,587 @@ public class LeaderboardHandler {
      * @param type Type of leaderboard
      */
     public void broadcastLeaderboard(final TimeType type) {
-        if (shouldUpdateLeaderboard(type)) {
-            // Update leaderboard because it is not valid anymore.
-            // Run async because it uses UUID lookup
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-                @Override
-                public void run() {
-                    updateLeaderboard(type);
-
-                    // Send them afterwards, not at the same time.
-                    for (final String msg : plugin.getInternalPropertiesConfig().getCachedLeaderboard(type)) {
-                        plugin.getServer().broadcastMessage(ChatColor.translateAlternateColorCodes('&', msg));
-                    }
+        Futures.addCallback(cache.get(type), new FutureCallback<List<String>>() {
+            @Override
+            public void onSuccess(final List<String> lines) {
+                for (final String msg : lines) {
+                    plugin.getServer().broadcastMessage(ChatColor.translateAlternateColorCodes('&', msg));
                 }
-            });
-        } else {
-            // send them instantly
-            for (final String msg : plugin.getInternalPropertiesConfig().getCachedLeaderboard(type)) {
-                plugin.getServer().broadcastMessage(ChatColor.translateAlternateColorCodes('&', msg));
             }
-        }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                plugin.getLogger().warning("Could not update leaderboard '" + type + "'!");
+                t.printStackTrace();
+            }
+        });
     }
 
     /**
-     * Get a hashmap, the key is the UUID of a player and the value is time that
-     * player has played. <br>
-     * This map is sorted on player time.
+     * Get the players with the highest time, without players that are
+     * exempted from the leaderboard. Only the top of the ranking is read, so
+     * the times of all players do not have to be sorted.
      *
      * @param type TimeType to get the sort for.
-     * @return a sorted map.
+     * @return a map with the times, from the highest to the lowest time.
      */
     private Map<UUID, Integer> getSortedTimesByUUID(final TimeType type) {
+        // Get more players than shown, as some players may not have a known name.
+        return getLeaderboardPage(type, 0, leaderboardLength * 2);
+    }
+
+    /**
+     * Get a part of a leaderboard, without players that are exempted from the
+     * leaderboard. Local times are read from the rankings that
+     * {@link me.armar.plugins.autorank.data.PlaytimeStorage} keeps up to date
+     * and global times are sorted by the database, so only the players on the
+     * page (and exempted players) are looked up.
+     * <p>
+     * This can block the thread it's on when the database is used, so do not
+     * call it on the main thread.
+     *
+     * @param type   Type of leaderboard
+     * @param offset Number of players with a higher time to skip
+     * @param count  Maximum number of players to get
+     * @return a map with the times, from the highest to the lowest time.
+     */
+    public LinkedHashMap<UUID, Integer> getLeaderboardPage(final TimeType type, final int offset, final int count) {
+        return getLeaderboardPage(getRankSource(type), offset, count);
+    }
 
-        final List<UUID> uuids = plugin.getFlatFileManager().getUUIDKeys(type);
+    /**
+     * Get a part of the leaderboard of a stat, without players that are
+     * exempted from the leaderboard. The ranking of a stat is built in the
+     * background the first time it is asked for, so it may not contain all
+     * players yet (see {@link StatRankings#getProgress(StatType)}).
+     *
+     * @param type   Type of stat
+     * @param offset Number of players with a higher value to skip
+     * @param count  Maximum number of players to get
+     * @return a map with the values, from the highest to the lowest value. An
+     * empty map if the stat cannot be ranked.
+     */
+    public LinkedHashMap<UUID, Integer> getStatLeaderboardPage(final StatType type, final int offset,
+                                                               final int count) {
+        final RankedIndex ranking = statRankings.getRanking(type);
 
-        final HashMap<UUID, Integer> times = new HashMap<UUID, Integer>();
+        if (ranking == null) {
+            return new LinkedHashMap<UUID, Integer>();
+        }
 
-        int size = uuids.size();
+        return getLeaderboardPage(getRankSource(ranking), offset, count);
+    }
 
-        int lastSentPercentage = 0;
+    /**
+     * Get a part of a leaderboard, without players that are exempted from the
+     * leaderboard.
+     */
+    private LinkedHashMap<UUID, Integer> getLeaderboardPage(final RankSource source, final int offset,
+                                                            final int count) {
+        final LinkedHashMap<UUID, Integer> page = new LinkedHashMap<UUID, Integer>();
 
-        // Fill unsorted lists
-        for (int i = 0; i < uuids.size(); i++) {
+        if (count <= 0) {
+            return page;
+        }
+
+        final Set<UUID> exemptions = plugin.getPlayerDataConfig().getLeaderboardExemptions();
+        final List<Integer> exemptedPositions = getExemptedPositions(source, exemptions);
 
-            UUID uuid = uuids.get(i);
+        final int position = getPositionInSortedTimes(Math.max(offset, 0), exemptedPositions);
 
-            // If UUID is null, we can't do anything with it.
-            if (uuid == null) {
-                continue;
+        // Exempted players that come after the first player are skipped as well.
+        for (final Entry<UUID, Integer> entry : source.getPage(count + exemptedPositions.size(), position)
+                .entrySet()) {
+            if (page.size() >= count) {
+                break;
             }
 
-            // If player is exempted
-            if (plugin.getPlayerDataConfig().hasLeaderboardExemption(uuid)) {
-                continue;
+            if (!exemptions.contains(entry.getKey())) {
+                page.put(entry.getKey(), entry.getValue());
             }
+        }
 
-            DecimalFormat df = new DecimalFormat("#.#");
-            double percentage = ((i * 1.0) / size) * 100;
-            int floored = (int) Math.floor(percentage);
+        return page;
+    }
 
-            if (lastSentPercentage != floored && floored % 10 == 0) {
-                lastSentPercentage = floored;
-                plugin.debugMessage("Autorank leaderboard update is at " + df.format(percentage) + "%.");
-            }
+    /**
+     * Get the rank of a player on a leaderboard. Players that are exempted
+     * from the leaderboard are not counted.
+     * <p>
+     * This can block the thread it's on when the database is used, so do not
+     * call it on the main thread.
+     *
+     * @param uuid UUID of the player
+     * @param type Type of leaderboard
+     * @return the rank of the player (1 for the highest time), or -1 if the
+     * player is not on the leaderboard.
+     */
+    public int getRank(final UUID uuid, final TimeType type) {
+        final Set<UUID> exemptions = plugin.getPlayerDataConfig().getLeaderboardExemptions();
 
-            // Use cache on .getTimeOfPlayer() so that we don't refresh all
-            // uuids in existence.
-            if (type == TimeType.TOTAL_TIME) {
+        if (exemptions.contains(uuid)) {
+            return -1;
+        }
 
-                if (plugin.getConfigHandler().useGlobalTimeInLeaderboard()) {
-                    times.put(uuid, plugin.getMySQLManager().getGlobalTime(uuid));
-                } else {
+        final RankSource source = getRankSource(type);
+        final int position = source.getPosition(uuid);
 
-                    // If we are using Autorank, we do not need the player name.
-                    if (plugin.getPlaytimes().getUsedTimePlugin().equals(AutorankDependency.AUTORANK)) {
-                        times.put(uuid, plugin.getFlatFileManager().getLocalTime(type, uuid));
-                    } else {
-                        // Get the cached value of this uuid
-                        final String playerName = plugin.getUUIDStorage().getCachedPlayerName(uuid);
+        if (position < 0) {
+            return -1;
+        }
 
-                        if (playerName == null) {
-                            plugin.debugMessage("Could not get cached player name of uuid '" + uuid + "'!");
-                            continue;
-                        }
+        int rank = position + 1;
 
-                        times.put(uuid, (plugin.getPlaytimes().getTimeOfPlayer(playerName, true) / 60));
-                    }
-                }
-            } else {
-                times.put(uuid, plugin.getFlatFileManager().getLocalTime(type, uuid));
+        for (final int exemptedPosition : getExemptedPositions(source, exemptions)) {
+            if (exemptedPosition > position) {
+                break;
             }
+
+            rank--;
         }
 
-        // Sort all values
-        final Map<UUID, Integer> sortedMap = LeaderboardHandler.sortByValue(times);
+        return rank;
+    }
 
-        return sortedMap;
+    /**
+     * Gives players in order of their time.
+     */
+    private interface RankSource {
+
+        /**
+         * Get a page of players.
+         *
+         * @param limit  Maximum number of players to get
+         * @param offset Number of players with a higher time to skip
+         * @return a map with the times, from the highest to the lowest time.
+         */
+        Map<UUID, Integer> getPage(int limit, int offset);
+
+        /**
+         * Get the position of a player.
+         *
+         * @param uuid UUID of the player
+         * @return the number of players with a higher time, or -1 if the
+         * player is not ranked.
+         */
+        int getPosition(UUID uuid);
     }
 
-    private Map<String, Integer> getSortedTimesByNames(final TimeType type) {
+    /**
+     * Get the players of a leaderboard in order of their time, including
+     * exempted players.
+     */
+    private RankSource getRankSource(final TimeType type) {
 
-        final List<String> playerNames = plugin.getUUIDStorage().getStoredPlayerNames();
+        // The database can sort the global times itself.
+        if (isSortedByDatabase(type)) {
+            return new RankSource() {
+                @Override
+                public Map<UUID, Integer> getPage(final int limit, final int offset) {
+                    return plugin.getMySQLManager().getTopGlobalTimes(limit, offset);
+                }
 
-        final Map<String, Integer> times = new HashMap<String, Integer>();
+                @Override
+                public int getPosition(final UUID uuid) {
+                    final int rank = plugin.getMySQLManager().getGlobalRank(uuid);
 
-        int size = playerNames.size();
+                    return rank < 0 ? -1 : rank - 1;
+                }
+            };
+        }
 
-        int lastSentPercentage = 0;
+        return getRankSource(plugin.getPlaytimeStorage().getRanking(type));
+    }
 
-        // Fill unsorted lists
-        for (int i = 0; i < playerNames.size(); i++) {
+    /**
+     * Get the players of a ranking in order of their value, including
+     * exempted players.
+     */
+    private RankSource getRankSource(final RankedIndex ranking) {
+        return new RankSource() {
+            @Override
+            public Map<UUID, Integer> getPage(final int limit, final int offset) {
+                return ranking.getPage(offset, limit);
+            }
 
-            String playerName = playerNames.get(i);
+            @Override
+            public int getPosition(final UUID uuid) {
+                final int rank = ranking.getRank(uuid);
 
-            if (playerName == null) {
-                continue;
+                return rank < 0 ? -1 : rank - 1;
             }
+        };
+    }
+
+    /**
+     * Get the positions of the exempted players that are ranked, from the
+     * lowest to the highest position. Only a few players are exempted, so
+     * this is much cheaper than going past all players.
+     */
+    private List<Integer> getExemptedPositions(final RankSource source, final Set<UUID> exemptions) {
+        final List<Integer> positions = new ArrayList<Integer>();
 
-            UUID uuid = plugin.getUUIDStorage().getStoredUUID(playerName);
+        for (final UUID uuid : exemptions) {
+            final int position = source.getPosition(uuid);
 
-            if (uuid == null) {
-                continue;
+            if (position >= 0) {
+                positions.add(position);
             }
+        }
 
-            // If player is exempted
-            if (plugin.getPlayerDataConfig().hasLeaderboardExemption(uuid)) {
-                continue;
-            }
+        Collections.sort(positions);
 
-            DecimalFormat df = new DecimalFormat("#.#");
-            double percentage = ((i * 1.0) / size) * 100;
-            int floored = (int) Math.floor(percentage);
+        return positions;
+    }
 
-            if (lastSentPercentage != floored) {
-                lastSentPercentage = floored;
-                plugin.debugMessage("Autorank leaderboard update is at " + df.format(percentage) + "%.");
+    /**
+     * Get the position of a player in the sorted times of all players, from
+     * the position of the player on the leaderboard. Exempted players are
+     * part of the sorted times, but not of the leaderboard.
+     *
+     * @param offset            Number of players before the player on the
+     *                          leaderboard
+     * @param exemptedPositions Positions of the exempted players in the sorted
+     *                          times, from the lowest to the highest position
+     * @return the number of players before the player in the sorted times.
+     */
+    static int getPositionInSortedTimes(final int offset, final List<Integer> exemptedPositions) {
+        int position = offset;
+
+        for (final int exemptedPosition : exemptedPositions) {
+            if (exemptedPosition > position) {
+                break;
             }
 
-            // Use cache on .getTimeOfPlayer() so that we don't refresh all
-            // uuids in existence.
-            if (type == TimeType.TOTAL_TIME) {
+            position++;
+        }
 
-                if (plugin.getConfigHandler().useGlobalTimeInLeaderboard()) {
-                    times.put(playerName, plugin.getMySQLManager().getGlobalTime(uuid));
-                } else {
+        return position;
+    }
+
+    /**
+     * Get the players with the highest time, without players that are
+     * exempted from the leaderboard. The time of every stored player is
+     * looked up (in parallel), but only the players that are shown are
+     * sorted.
+     *
+     * @param type TimeType to get the sort for.
+     * @return a map with the times, from the highest to the lowest time.
+     */
+    private Map<String, Integer> getSortedTimesByNames(final TimeType type) {
+
+        final List<String> playerNames = plugin.getUUIDStorage().getStoredPlayerNames();
+
+        // Look up the exempted players once, instead of for every player.
+        final Set<UUID> exemptions = plugin.getPlayerDataConfig().getLeaderboardExemptions();
+
+        final long startTime = System.currentTimeMillis();
+
+        final Map<String, Integer> sortedMap = new TopTimesSelector<String>(new TopTimesSelector.TimeLookup<String>() {
+            @Override
+            public Integer getTime(final String playerName) {
+                final UUID uuid = plugin.getUUIDStorage().getStoredUUID(playerName);
+
+                // If player is unknown or exempted
+                if (uuid == null || exemptions.contains(uuid)) {
+                    return null;
+                }
+
+                // Use cache on .getTimeOfPlayer() so that we don't refresh all
+                // uuids in existence.
+                if (type == TimeType.TOTAL_TIME) {
+
+                    if (plugin.getConfigHandler().useGlobalTimeInLeaderboard()) {
+                        return plugin.getMySQLManager().getGlobalTime(uuid);
+                    }
 
                     // If we are using Autorank, we do not need the player name.
                     if (plugin.getPlaytimes().getUsedTimePlugin().equals(AutorankDependency.AUTORANK)) {
-                        times.put(playerName, plugin.getFlatFileManager().getLocalTime(type, uuid));
-                    } else {
-                        times.put(playerName, (plugin.getPlaytimes().getTimeOfPlayer(playerName, true) / 60));
+                        return plugin.getPlaytimeStorage().getLocalTime(type, uuid);
                     }
+
+                    return plugin.getPlaytimes().getTimeOfPlayer(playerName, true) / 60;
                 }
-            } else {
-                times.put(playerName, plugin.getFlatFileManager().getLocalTime(type, uuid));
+
+                return plugin.getPlaytimeStorage().getLocalTime(type, uuid);
             }
-        }
+        }, leaderboardLength).select(playerNames, Runtime.getRuntime().availableProcessors());
 
-        // Sort all values
-        // final Map<String, Integer> sortedMap = sortByComparatorString(times,
-        // false);
-        final Map<String, Integer> sortedMap = LeaderboardHandler.sortByValue(times);
+        plugin.debugMessage("Autorank leaderboard update looked up " + playerNames.size() + " players in "
+                + (System.currentTimeMillis() - startTime) + " ms.");
 
         return sortedMap;
     }
 
     /**
-     * Send the leaderboard to a {@linkplain CommandSender}.
+     * Send the leaderboard to a {@linkplain CommandSender}. If the cached
+     * leaderboard is not valid anymore, it is updated first.
      *
      * @param sender Sender to send it to.
      * @param type   Type of leaderboard to send.
      */
     public void sendLeaderboard(final CommandSender sender, final TimeType type) {
-        if (shouldUpdateLeaderboard(type)) {
-            // Update leaderboard because it is not valid anymore.
-            // Run async because it uses UUID lookup
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-                @Override
-                public void run() {
-                    updateLeaderboard(type);
-
-                    // Send them afterwards, not at the same time.
-                    sendMessages(sender, type);
+        Futures.addCallback(cache.get(type), new FutureCallback<List<String>>() {
+            @Override
+            public void onSuccess(final List<String> lines) {
+                for (final String msg : lines) {
+                    AutorankTools.sendColoredMessage(sender, msg);
                 }
-            });
-        } else {
-            // send them instantly
-            sendMessages(sender, type);
-        }
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                sender.sendMessage(ChatColor.RED + "Could not update the leaderboard.");
+                t.printStackTrace();
+            }
+        });
     }
 
     /**
-     * Send the given message to a {@linkplain CommandSender}.
+     * Send a page of a leaderboard to a {@linkplain CommandSender}. Pages are
+     * made from the latest times, so they are not cached.
      *
-     * @param sender Sender to send message to.
-     * @param type   Type of leaderboard to send
+     * @param sender Sender to send it to.
+     * @param type   Type of leaderboard to send.
+     * @param page   Number of the page (the first page is 1).
      */
-    public void sendMessages(final CommandSender sender, final TimeType type) {
-        for (final String msg : plugin.getInternalPropertiesConfig().getCachedLeaderboard(type)) {
-            AutorankTools.sendColoredMessage(sender, msg);
-        }
+    public void sendLeaderboardPage(final CommandSender sender, final TimeType type, final int page) {
+        // Run async because it may use the database
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            @Override
+            public void run() {
+                final int offset = (int) Math.min((long) (page - 1) * leaderboardLength, Integer.MAX_VALUE);
+                final Map<UUID, Integer> times = getLeaderboardPage(type, offset, leaderboardLength);
+
+                if (times.isEmpty()) {
+                    AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_INVALID_PAGE.getConfigValue(page));
+                    return;
+                }
+
+                AutorankTools.sendColoredMessage(sender, getHeader(type));
+                AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_PAGE.getConfigValue(page));
+
+                int rank = offset;
+
+                for (final Entry<UUID, Integer> entry : times.entrySet()) {
+                    rank++;
+
+                    AutorankTools.sendColoredMessage(sender,
+                            formatEntry(rank, getPlayerName(entry.getKey()), entry.getValue()));
+                }
+
+                AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_FOOTER.getConfigValue());
+            }
+        });
     }
 
     /**
-     * Check whether we should update a leaderboard.
+     * Send a page of the leaderboard of a stat to a
+     * {@linkplain CommandSender}.
      *
-     * @param type Type of leaderboard check
-     * @return true if we should update the leaderboard
+     * @param sender Sender to send it to.
+     * @param type   Type of stat
+     * @param page   Number of the page (the first page is 1).
      */
-    private boolean shouldUpdateLeaderboard(TimeType type) {
-        if (System.currentTimeMillis() - plugin.getInternalPropertiesConfig().getLeaderboardLastUpdateTime(type) > (60000
-                * LEADERBOARD_TIME_VALID)) {
-            return true;
-        } else return plugin.getInternalPropertiesConfig().getCachedLeaderboard(type).size() <= 2;
+    public void sendStatLeaderboard(final CommandSender sender, final StatType type, final int page) {
+        // Run async because it may look up names
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            @Override
+            public void run() {
+                final int offset = (int) Math.min((long) (page - 1) * leaderboardLength, Integer.MAX_VALUE);
+                final Map<UUID, Integer> values = getStatLeaderboardPage(type, offset, leaderboardLength);
+                final int progress = statRankings.getProgress(type);
+
+                if (values.isEmpty() && progress >= 100) {
+                    AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_INVALID_PAGE.getConfigValue(page));
+                    return;
+                }
+
+                final String statName = type.toString().toLowerCase().replace("_", " ");
+
+                AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_HEADER_STAT
+                        .getConfigValue(statName.substring(0, 1).toUpperCase() + statName.substring(1)));
+
+                if (page > 1) {
+                    AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_PAGE.getConfigValue(page));
+                }
+
+                // Not all players are ranked yet.
+                if (progress < 100) {
+                    AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_STAT_BUILDING.getConfigValue(progress));
+                }
+
+                int rank = offset;
+
+                for (final Entry<UUID, Integer> entry : values.entrySet()) {
+                    rank++;
+
+                    AutorankTools.sendColoredMessage(sender,
+                            Lang.LEADERBOARD_STAT_LINE.getConfigValue(rank, getPlayerName(entry.getKey()),
+                                    entry.getValue()));
+                }
+
+                AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_FOOTER.getConfigValue());
+            }
+        });
     }
 
     /**
-     * Update all leaderboards
+     * Get the rankings of stats that are used for the leaderboards of stats.
+     *
+     * @return the {@link StatRankings} of this handler.
      */
-    public void updateAllLeaderboards() {
+    public StatRankings getStatRankings() {
+        return statRankings;
+    }
 
+    /**
+     * Send the rank of a player on a leaderboard to a
+     * {@linkplain CommandSender}.
+     *
+     * @param sender     Sender to send it to.
+     * @param type       Type of leaderboard
+     * @param uuid       UUID of the player
+     * @param playerName Name of the player
+     */
+    public void sendRank(final CommandSender sender, final TimeType type, final UUID uuid, final String playerName) {
+        // Run async because it may use the database
         plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
             @Override
             public void run() {
-                for (final TimeType type : TimeType.values()) {
-                    if (!shouldUpdateLeaderboard(type))
-                        continue;
+                final int rank = getRank(uuid, type);
 
-                    updateLeaderboard(type);
+                if (rank < 0) {
+                    AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_NO_RANK.getConfigValue(playerName));
+                    return;
                 }
+
+                final int time = isSortedByDatabase(type) ? plugin.getMySQLManager().getGlobalTime(uuid)
+                        : plugin.getPlaytimeStorage().getLocalTime(type, uuid);
+
+                AutorankTools.sendColoredMessage(sender, Lang.LEADERBOARD_RANK.getConfigValue(playerName, rank,
+                        AutorankTools.timeToString(time, Time.MINUTES)));
             }
         });
     }
 
     /**
-     * Forcefully update a leaderboard (ignoring cached versions).
+     * Get the name of a player to show on a leaderboard.
+     *
+     * @param uuid UUID of the player
+     * @return the name of the player, or the UUID if no name is known.
+     */
+    private String getPlayerName(final UUID uuid) {
+        String name = plugin.getUUIDStorage().getRealName(uuid);
+
+        // There was no real name found, use cached player name
+        if (name == null) {
+            name = plugin.getUUIDStorage().getCachedPlayerName(uuid);
+        }
+
+        return name == null ? uuid.toString() : name;
+    }
+
+    /**
+     * Check whether the leaderboard of a time type is made from the rankings
+     * that {@link me.armar.plugins.autorank.data.PlaytimeStorage} keeps.
+     */
+    private boolean isSortedByAutorank(final TimeType type) {
+        return plugin.getSettingsConfig().useTimeOf().equals(AutorankDependency.AUTORANK) && !isSortedByDatabase(type);
+    }
+
+    /**
+     * Check whether the leaderboard of a time type is made from global times,
+     * which the database sorts.
+     *
+     * @param type Type of leaderboard
+     * @return true if the leaderboard shows global times.
+     */
+    public boolean isSortedByDatabase(final TimeType type) {
+        return type == TimeType.TOTAL_TIME && plugin.getConfigHandler().useGlobalTimeInLeaderboard()
+                && plugin.getMySQLManager().isMySQLEnabled();
+    }
+
+    /**
+     * Update all leaderboards that are not valid anymore. Leaderboards that
+     * were stored on disk are used if they are still valid.
+     */
+    public void updateAllLeaderboards() {
+        if (plugin.getSettingsConfig().shouldStoreLeaderboardsOnDisk()) {
+            for (final TimeType type : TimeType.values()) {
+                final long lastUpdateTime = plugin.getInternalPropertiesConfig().getLeaderboardLastUpdateTime(type);
+
+                if (lastUpdateTime > 0) {
+                    cache.warmUp(type, plugin.getInternalPropertiesConfig().getCachedLeaderboard(type),
+                            System.currentTimeMillis() - lastUpdateTime);
+                }
+            }
+        }
+
+        for (final TimeType type : TimeType.values()) {
+            // Leaderboards that are still valid are not rebuilt.
+            if (cache.getIfValid(type) == null) {
+                cache.refresh(type);
+            }
+        }
+    }
+
+    /**
+     * Store the leaderboards on disk, so they can be used after a restart.
+     * Nothing is stored if this is disabled in the config.
+     */
+    public void saveLeaderboards() {
+        if (!plugin.getSettingsConfig().shouldStoreLeaderboardsOnDisk()) {
+            return;
+        }
+
+        for (final TimeType type : TimeType.values()) {
+            final List<String> lines = cache.getIfPresent(type);
+            final long age = cache.getAge(type);
+
+            if (lines != null && age >= 0) {
+                plugin.getInternalPropertiesConfig().setCachedLeaderboard(type, lines,
+                        System.currentTimeMillis() - age);
+            }
+        }
+    }
+
+    /**
+     * Make a leaderboard invalid, so it is updated the next time it is shown.
+     * Call this when times change in a way the leaderboard cannot notice,
+     * such as an admin changing the time of a player.
+     *
+     * @param type Type of leaderboard
+     */
+    public void invalidateLeaderboard(final TimeType type) {
+        cache.invalidate(type);
+    }
+
+    /**
+     * Forcefully update a leaderboard (ignoring cached versions). This blocks
+     * the thread it's on until the leaderboard is updated.
      *
      * @param type Type of leaderboard to update.
      */
     public void updateLeaderboard(final TimeType type) {
+        cache.invalidate(type);
+
+        try {
+            cache.refresh(type).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Build the lines of a leaderboard.
+     *
+     * @param type Type of leaderboard to build.
+     * @return the lines of the leaderboard.
+     */
+    private List<String> buildLeaderboard(final TimeType type) {
         plugin.debugMessage(ChatColor.BLUE + "Updating leaderboard '" + type.toString() + "'!");
 
         // Store messages to make leaderboard
@@ -320,15 +703,7 @@ public class LeaderboardHandler {
         // Only store the users that should appear on the leaderboard, along with their time.
         Map<String, Integer> finalLeaderboard = getAccurateLeaderboard(type);
 
-        if (type == TimeType.TOTAL_TIME) {
-            stringList.add(Lang.LEADERBOARD_HEADER_ALL_TIME.getConfigValue());
-        } else if (type == TimeType.DAILY_TIME) {
-            stringList.add(Lang.LEADERBOARD_HEADER_DAILY.getConfigValue());
-        } else if (type == TimeType.WEEKLY_TIME) {
-            stringList.add(Lang.LEADERBOARD_HEADER_WEEKLY.getConfigValue());
-        } else if (type == TimeType.MONTHLY_TIME) {
-            stringList.add(Lang.LEADERBOARD_HEADER_MONTHLY.getConfigValue());
-        }
+        stringList.add(getHeader(type));
 
         Iterator<Entry<String, Integer>> iterator = finalLeaderboard.entrySet().iterator();
 
@@ -336,59 +711,83 @@ public class LeaderboardHandler {
 
             final Entry<String, Integer> entry = iterator.next();
 
-            Integer time = entry.getValue().intValue();
+            stringList.add(formatEntry(i + 1, entry.getKey(), entry.getValue()));
+        }
 
-            String message = layout.replace("&p", entry.getKey());
+        stringList.add(Lang.LEADERBOARD_FOOTER.getConfigValue());
 
-            // divided by 1440
-            final int days = (time / 1440);
+        return stringList;
+    }
 
-            // (time - days) / 60
-            final int hours = (time - (days * 1440)) / 60;
+    /**
+     * Get the header of a leaderboard.
+     *
+     * @param type Type of leaderboard
+     * @return the header, as it is set in the language file.
+     */
+    private String getHeader(final TimeType type) {
+        if (type == TimeType.DAILY_TIME) {
+            return Lang.LEADERBOARD_HEADER_DAILY.getConfigValue();
+        } else if (type == TimeType.WEEKLY_TIME) {
+            return Lang.LEADERBOARD_HEADER_WEEKLY.getConfigValue();
+        } else if (type == TimeType.MONTHLY_TIME) {
+            return Lang.LEADERBOARD_HEADER_MONTHLY.getConfigValue();
+        }
 
-            // (time - days - hours)
-            final int minutes = time - (days * 1440) - (hours * 60);
+        return Lang.LEADERBOARD_HEADER_ALL_TIME.getConfigValue();
+    }
 
-            message = message.replace("&r", Integer.toString(i + 1));
-            message = message.replace("&tm", Integer.toString(time));
-            message = message.replace("&th", Integer.toString(time / 60));
-            message = message.replace("&d", Integer.toString(days));
-            time = time - ((time / 1440) * 1440);
-            message = message.replace("&h", Integer.toString(hours));
-            time = time - ((time / 60) * 60);
+    /**
+     * Format a line of a leaderboard with the layout of the config.
+     *
+     * @param rank Rank of the player
+     * @param name Name of the player
+     * @param time Time of the player (in minutes)
+     * @return the formatted line.
+     */
+    private String formatEntry(final int rank, final String name, int time) {
+        String message = layout.replace("&p", name);
 
-            message = message.replace("&m", Integer.toString(minutes));
-            message = ChatColor.translateAlternateColorCodes('&', message);
+        // divided by 1440
+        final int days = (time / 1440);
 
-            // Correctly show plural or singular format.
-            if (days > 1 || days == 0) {
-                message = message.replace("%day%", Lang.DAY_PLURAL.getConfigValue());
-            } else {
-                message = message.replace("%day%", Lang.DAY_SINGULAR.getConfigValue());
-            }
+        // (time - days) / 60
+        final int hours = (time - (days * 1440)) / 60;
 
-            if (hours > 1 || hours == 0) {
-                message = message.replace("%hour%", Lang.HOUR_PLURAL.getConfigValue());
-            } else {
-                message = message.replace("%hour%", Lang.HOUR_SINGULAR.getConfigValue());
-            }
+        // (time - days - hours)
+        final int minutes = time - (days * 1440) - (hours * 60);
 
-            if (minutes > 1 || minutes == 0) {
-                message = message.replace("%minute%", Lang.MINUTE_PLURAL.getConfigValue());
-            } else {
-                message = message.replace("%minute%", Lang.MINUTE_SINGULAR.getConfigValue());
-            }
+        message = message.replace("&r", Integer.toString(rank));
+        message = message.replace("&tm", Integer.toString(time));
+        message = message.replace("&th", Integer.toString(time / 60));
+        message = message.replace("&d", Integer.toString(days));
+        time = time - ((time / 1440) * 1440);
+        message = message.replace("&h", Integer.toString(hours));
+        time = time - ((time / 60) * 60);
+
+        message = message.replace("&m", Integer.toString(minutes));
+        message = ChatColor.translateAlternateColorCodes('&', message);
 
-            stringList.add(message);
+        // Correctly show plural or singular format.
+        if (days > 1 || days == 0) {
+            message = message.replace("%day%", Lang.DAY_PLURAL.getConfigValue());
+        } else {
+            message = message.replace("%day%", Lang.DAY_SINGULAR.getConfigValue());
         }
 
-        stringList.add(Lang.LEADERBOARD_FOOTER.getConfigValue());
+        if (hours > 1 || hours == 0) {
+            message = message.replace("%hour%", Lang.HOUR_PLURAL.getConfigValue());
+        } else {
+            message = message.replace("%hour%", Lang.HOUR_SINGULAR.getConfigValue());
+        }
 
-        // Cache this leaderboard
-        plugin.getInternalPropertiesConfig().setCachedLeaderboard(type, stringList);
+        if (minutes > 1 || minutes == 0) {
+            message = message.replace("%minute%", Lang.MINUTE_PLURAL.getConfigValue());
+        } else {
+            message = message.replace("%minute%", Lang.MINUTE_SINGULAR.getConfigValue());
+        }
 
-        // Update latest update-time
-        plugin.getInternalPropertiesConfig().setLeaderboardLastUpdateTime(type, System.currentTimeMillis());
+        return message;
     }
 
     /**
@@ -402,14 +801,16 @@ public class LeaderboardHandler {
 
         // If we are using Autorank as timekeeper, we can ask all UUIDs in the uuids file and sort the playtime
         // After we sorted the playtime, we collect the playernames of the top x (leaderboard length variable).
-        if (plugin.getSettingsConfig().useTimeOf().equals(AutorankDependency.AUTORANK)) {
+        // Global times are sorted by the database, whichever plugin keeps the local time.
+        if (plugin.getSettingsConfig().useTimeOf().equals(AutorankDependency.AUTORANK) || isSortedByDatabase(type)) {
             final Map<UUID, Integer> sortedPlaytimes = getSortedTimesByUUID(type);
 
             Iterator<Entry<UUID, Integer>> itr = sortedPlaytimes.entrySet().iterator();
 
             plugin.debugMessage("Size leaderboard: " + sortedPlaytimes.size());
 
-            for (int i = 0; i < leaderboardLength && itr.hasNext(); i++) {
+            // Players without a name are skipped, so their place goes to the next player.
+            while (finalLeaderboard.size() < leaderboardLength && itr.hasNext()) {
                 final Entry<UUID, Integer> entry = itr.next();
 
                 final UUID uuid = entry.getKey();
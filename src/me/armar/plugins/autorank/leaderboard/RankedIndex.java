@@ -0,0 +1,325 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps players sorted on a value (such as their play time), from
+ * the highest to the lowest value. Players with the same value are sorted on
+ * their UUID, so the order is always the same.
+ * <p>
+ * The players are stored in a treap (a binary search tree that is balanced by
+ * random priorities) where every node knows the size of its subtree. Changing
+ * the value of a player and looking up the rank of a player take O(log n)
+ * time. Getting n players from a certain rank takes O(log n + n) time, so the
+ * top of a leaderboard can be read without sorting all players.
+ * <p>
+ * Only players with a value higher than 0 are ranked.
+ *
+ * @author Staartvin
+ */
+public class RankedIndex {
+
+    private static final class Node {
+
+        private final UUID uuid;
+        private final int value;
+        private final int priority;
+
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        Node(final UUID uuid, final int value, final int priority) {
+            this.uuid = uuid;
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    // Every change of any index gets a new version, so versions of different indexes never match.
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final Map<UUID, Integer> values = new HashMap<UUID, Integer>();
+    private final Random random = new Random();
+
+    private Node root;
+    private long version = VERSIONS.incrementAndGet();
+
+    /**
+     * Set the value of a player. A player with a value of 0 or lower is
+     * removed.
+     *
+     * @param uuid  UUID of the player
+     * @param value New value of the player
+     */
+    public synchronized void set(final UUID uuid, final int value) {
+        final Integer oldValue = values.get(uuid);
+
+        if (oldValue != null) {
+            if (oldValue == value) {
+                return;
+            }
+
+            root = delete(root, uuid, oldValue);
+            values.remove(uuid);
+        }
+
+        if (value > 0) {
+            root = insert(root, new Node(uuid, value, random.nextInt()));
+            values.put(uuid, value);
+        }
+
+        if (oldValue != null || value > 0) {
+            version = VERSIONS.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove a player.
+     *
+     * @param uuid UUID of the player
+     * @return true if the player was ranked, false otherwise.
+     */
+    public synchronized boolean remove(final UUID uuid) {
+        final Integer oldValue = values.remove(uuid);
+
+        if (oldValue == null) {
+            return false;
+        }
+
+        root = delete(root, uuid, oldValue);
+        version = VERSIONS.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Remove all players.
+     */
+    public synchronized void clear() {
+        values.clear();
+        root = null;
+        version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Get the value of a player.
+     *
+     * @param uuid UUID of the player
+     * @return the value of the player, or 0 if the player is not ranked.
+     */
+    public synchronized int getValue(final UUID uuid) {
+        final Integer value = values.get(uuid);
+
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Get the rank of a player. The player with the highest value has rank 1.
+     *
+     * @param uuid UUID of the player
+     * @return the rank of the player, or -1 if the player is not ranked.
+     */
+    public synchronized int getRank(final UUID uuid) {
+        final Integer value = values.get(uuid);
+
+        if (value == null) {
+            return -1;
+        }
+
+        int ahead = 0;
+        Node node = root;
+
+        while (node != null) {
+            final int compare = compare(uuid, value, node);
+
+            if (compare < 0) {
+                node = node.left;
+            } else if (compare > 0) {
+                ahead += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return ahead + size(node.left) + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get players in order of their rank.
+     *
+     * @param offset Number of players with a higher rank to skip
+     * @param count  Maximum number of players to get
+     * @return a map with the values of the players, from the highest to the
+     * lowest value.
+     */
+    public synchronized LinkedHashMap<UUID, Integer> getPage(final int offset, final int count) {
+        final LinkedHashMap<UUID, Integer> page = new LinkedHashMap<UUID, Integer>();
+
+        if (count > 0) {
+            collect(root, Math.max(offset, 0), count, page);
+        }
+
+        return page;
+    }
+
+    /**
+     * Get the version of this index. The version changes whenever a player is
+     * added, removed or gets another value, and is never the same for two
+     * different indexes.
+     *
+     * @return the version of this index.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the number of players that are ranked.
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    private static void collect(final Node node, final int offset, final int count,
+                                final LinkedHashMap<UUID, Integer> page) {
+        if (node == null || page.size() >= count) {
+            return;
+        }
+
+        final int leftSize = size(node.left);
+
+        if (offset < leftSize) {
+            collect(node.left, offset, count, page);
+        }
+
+        if (page.size() < count && offset <= leftSize) {
+            page.put(node.uuid, node.value);
+        }
+
+        if (page.size() < count) {
+            collect(node.right, Math.max(offset - leftSize - 1, 0), count, page);
+        }
+    }
+
+    private static Node insert(final Node node, final Node newNode) {
+        if (node == null) {
+            return newNode;
+        }
+
+        if (compare(newNode.uuid, newNode.value, node) < 0) {
+            node.left = insert(node.left, newNode);
+
+            if (node.left.priority > node.priority) {
+                return rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, newNode);
+
+            if (node.right.priority > node.priority) {
+                return rotateLeft(node);
+            }
+        }
+
+        update(node);
+
+        return node;
+    }
+
+    private static Node delete(final Node node, final UUID uuid, final int value) {
+        if (node == null) {
+            return null;
+        }
+
+        final int compare = compare(uuid, value, node);
+
+        if (compare == 0) {
+            return merge(node.left, node.right);
+        }
+
+        if (compare < 0) {
+            node.left = delete(node.left, uuid, value);
+        } else {
+            node.right = delete(node.right, uuid, value);
+        }
+
+        update(node);
+
+        return node;
+    }
+
+    /**
+     * Merge two treaps, where all nodes of the first one come before all
+     * nodes of the second one.
+     */
+    private static Node merge(final Node first, final Node second) {
+        if (first == null) {
+            return second;
+        }
+
+        if (second == null) {
+            return first;
+        }
+
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            update(first);
+
+            return first;
+        }
+
+        second.left = merge(first, second.left);
+        update(second);
+
+        return second;
+    }
+
+    private static Node rotateRight(final Node node) {
+        final Node left = node.left;
+
+        node.left = left.right;
+        left.right = node;
+
+        update(node);
+        update(left);
+
+        return left;
+    }
+
+    private static Node rotateLeft(final Node node) {
+        final Node right = node.right;
+
+        node.right = right.left;
+        right.left = node;
+
+        update(node);
+        update(right);
+
+        return right;
+    }
+
+    private static void update(final Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static int size(final Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Compare a player to a node. Players with a higher value come first.
+     */
+    private static int compare(final UUID uuid, final int value, final Node node) {
+        if (value != node.value) {
+            return value > node.value ? -1 : 1;
+        }
+
+        return uuid.compareTo(node.uuid);
+    }
+}
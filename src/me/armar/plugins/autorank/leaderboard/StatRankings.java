@@ -0,0 +1,388 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import me.armar.plugins.autorank.statsmanager.StatsPlugin;
+import me.armar.plugins.autorank.statsmanager.StatsPlugin.StatType;
+import me.armar.plugins.autorank.util.AutorankTools;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps players sorted on the value of a stat (such as the number
+ * of mobs they killed), so leaderboards of stats can be shown. <br>
+ * <br>
+ * The stats are looked up in the hooked {@link StatsPlugin} by a background
+ * task, at most {@value #LOOKUPS_PER_RUN} lookups every second, so the stats
+ * plugin (and its database) is not flooded. The ranking of a stat is built
+ * the first time it is asked for, by looking up the stat of every player
+ * Autorank knows. After that, only the players that were online since the
+ * previous refresh are looked up again every {@value #REFRESH_INTERVAL_MINUTES}
+ * minutes: the stats of offline players do not change.
+ *
+ * @author Staartvin
+ */
+public class StatRankings {
+
+    // Number of stats that are looked up every run of the lookup task
+    private static final int LOOKUPS_PER_RUN = 50;
+
+    // Minutes between two refreshes of the players that were online
+    private static final int REFRESH_INTERVAL_MINUTES = 5;
+
+    // Stats that need more info than a world (such as a block type) cannot be ranked.
+    private static final Set<StatType> UNSUPPORTED_STATS = EnumSet.of(StatType.BLOCKS_BROKEN,
+            StatType.BLOCKS_PLACED, StatType.BLOCKS_MOVED);
+
+    /**
+     * A stat of a player that has to be looked up.
+     */
+    private static final class Lookup {
+
+        private final StatType type;
+        private final UUID uuid;
+        private final boolean initial;
+
+        Lookup(final StatType type, final UUID uuid, final boolean initial) {
+            this.type = type;
+            this.uuid = uuid;
+            this.initial = initial;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Lookup)) {
+                return false;
+            }
+
+            final Lookup other = (Lookup) o;
+
+            return type == other.type && uuid.equals(other.uuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + uuid.hashCode();
+        }
+    }
+
+    /**
+     * Provides the players and stats that the rankings are built from, and
+     * runs the tasks that look them up.
+     */
+    interface StatSource {
+
+        /**
+         * Get all players Autorank knows.
+         */
+        Set<UUID> getPlayers();
+
+        /**
+         * Get the players that are online. Only called on the main thread.
+         */
+        Collection<UUID> getOnlinePlayers();
+
+        /**
+         * Get the stats plugin to look up stats in.
+         */
+        StatsPlugin getStatsPlugin();
+
+        /**
+         * Run the lookups every second (asynchronously) and the refresh every
+         * few minutes (on the main thread).
+         */
+        void startTasks(Runnable lookups, Runnable refresh);
+
+        /**
+         * Show a message when debug mode is enabled.
+         */
+        void debugMessage(String message);
+    }
+
+    private final StatSource source;
+
+    private final ConcurrentMap<StatType, RankedIndex> rankings = new ConcurrentHashMap<StatType, RankedIndex>();
+
+    // Number of players whose stat still has to be looked up for the first time
+    private final ConcurrentMap<StatType, AtomicInteger> remainingLookups =
+            new ConcurrentHashMap<StatType, AtomicInteger>();
+    // Number of players whose stat is looked up to build the ranking
+    private final ConcurrentMap<StatType, Integer> initialLookups = new ConcurrentHashMap<StatType, Integer>();
+
+    // Stats of which the ranking has to be built
+    private final Queue<StatType> newStats = new ConcurrentLinkedQueue<StatType>();
+    private final Queue<Lookup> pendingLookups = new ConcurrentLinkedQueue<Lookup>();
+    private final Set<Lookup> queuedLookups = Collections.newSetFromMap(new ConcurrentHashMap<Lookup, Boolean>());
+
+    // Players that were online since the previous refresh
+    private final Set<UUID> activePlayers = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicBoolean lookingUp = new AtomicBoolean(false);
+
+    public StatRankings(final Autorank plugin) {
+        this(new StatSource() {
+            @Override
+            public Set<UUID> getPlayers() {
+                final RankedIndex players = plugin.getPlaytimeStorage().getRanking(TimeType.TOTAL_TIME);
+
+                return players.getPage(0, players.size()).keySet();
+            }
+
+            @Override
+            public Collection<UUID> getOnlinePlayers() {
+                final List<UUID> players = new ArrayList<UUID>();
+
+                for (final Player player : plugin.getServer().getOnlinePlayers()) {
+                    players.add(player.getUniqueId());
+                }
+
+                return players;
+            }
+
+            @Override
+            public StatsPlugin getStatsPlugin() {
+                return plugin.getHookedStatsPlugin();
+            }
+
+            @Override
+            public void startTasks(final Runnable lookups, final Runnable refresh) {
+                plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, lookups,
+                        AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_SECOND);
+
+                plugin.getServer().getScheduler().runTaskTimer(plugin, refresh,
+                        AutorankTools.TICKS_PER_MINUTE * REFRESH_INTERVAL_MINUTES,
+                        AutorankTools.TICKS_PER_MINUTE * REFRESH_INTERVAL_MINUTES);
+            }
+
+            @Override
+            public void debugMessage(final String message) {
+                plugin.debugMessage(message);
+            }
+        });
+    }
+
+    StatRankings(final StatSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Check whether a stat can be ranked.
+     *
+     * @param type Type of stat
+     * @return true if players can be ranked on the stat, false otherwise.
+     */
+    public static boolean isSupported(final StatType type) {
+        return !UNSUPPORTED_STATS.contains(type);
+    }
+
+    /**
+     * Get the stats that can be ranked.
+     *
+     * @return a set of stats that can be ranked.
+     */
+    public static Set<StatType> getSupportedStats() {
+        return EnumSet.complementOf(EnumSet.copyOf(UNSUPPORTED_STATS));
+    }
+
+    /**
+     * Get the players sorted on the value of a stat. The first time a stat
+     * is asked for, its ranking is empty: the stat of every player is looked
+     * up in the background (see {@link #getProgress(StatType)}).
+     *
+     * @param type Type of stat
+     * @return the players sorted on the value of the stat, or null if the
+     * stat cannot be ranked. It should not be changed.
+     */
+    public RankedIndex getRanking(final StatType type) {
+        if (!isSupported(type)) {
+            return null;
+        }
+
+        RankedIndex ranking = rankings.get(type);
+
+        if (ranking != null) {
+            return ranking;
+        }
+
+        final RankedIndex newRanking = new RankedIndex();
+
+        ranking = rankings.putIfAbsent(type, newRanking);
+
+        if (ranking != null) {
+            return ranking;
+        }
+
+        newStats.add(type);
+        startTasks();
+
+        return newRanking;
+    }
+
+    /**
+     * Get how far the ranking of a stat is built.
+     *
+     * @param type Type of stat
+     * @return the percentage of players whose stat was looked up, from 0 to
+     * 100.
+     */
+    public int getProgress(final StatType type) {
+        final Integer total = initialLookups.get(type);
+        final AtomicInteger remaining = remainingLookups.get(type);
+
+        // The lookups were not started yet.
+        if (total == null || remaining == null) {
+            return 0;
+        }
+
+        if (total == 0) {
+            return 100;
+        }
+
+        return (int) (100L * (total - Math.max(remaining.get(), 0)) / total);
+    }
+
+    /**
+     * Remember that a player was online, so their stats are looked up again
+     * at the next refresh.
+     *
+     * @param uuid UUID of the player
+     */
+    public void markActive(final UUID uuid) {
+        if (!rankings.isEmpty()) {
+            activePlayers.add(uuid);
+        }
+    }
+
+    /**
+     * Start the tasks that look up stats, if they were not started yet.
+     */
+    private void startTasks() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+
+        source.startTasks(new Runnable() {
+            @Override
+            public void run() {
+                runLookups();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                // Runs on the main thread, as it needs the online players.
+                refreshActivePlayers();
+            }
+        });
+    }
+
+    /**
+     * Look up the stats of the players that were online since the previous
+     * refresh again.
+     */
+    void refreshActivePlayers() {
+        activePlayers.addAll(source.getOnlinePlayers());
+
+        final Set<UUID> players = new HashSet<UUID>(activePlayers);
+        activePlayers.removeAll(players);
+
+        for (final StatType type : rankings.keySet()) {
+            for (final UUID uuid : players) {
+                queue(new Lookup(type, uuid, false));
+            }
+        }
+    }
+
+    /**
+     * Look up the next stats that are queued.
+     */
+    void runLookups() {
+        // Do not run twice at the same time when a run takes longer than a second.
+        if (!lookingUp.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            StatType newStat;
+
+            while ((newStat = newStats.poll()) != null) {
+                queueAllPlayers(newStat);
+            }
+
+            final StatsPlugin stats = source.getStatsPlugin();
+
+            for (int i = 0; i < LOOKUPS_PER_RUN; i++) {
+                final Lookup lookup = pendingLookups.poll();
+
+                if (lookup == null) {
+                    break;
+                }
+
+                queuedLookups.remove(lookup);
+
+                try {
+                    // A value of -1 means the stat is not supported, so the player is not ranked.
+                    rankings.get(lookup.type).set(lookup.uuid,
+                            stats.getNormalStat(lookup.type, lookup.uuid, AutorankTools.makeStatsInfo()));
+                } catch (final RuntimeException e) {
+                    source.debugMessage("Could not look up stat " + lookup.type + " of " + lookup.uuid + ": "
+                            + e.getMessage());
+                }
+
+                if (lookup.initial) {
+                    remainingLookups.get(lookup.type).decrementAndGet();
+                }
+            }
+        } finally {
+            lookingUp.set(false);
+        }
+    }
+
+    /**
+     * Queue the lookup of a stat of all players Autorank knows.
+     */
+    private void queueAllPlayers(final StatType type) {
+        final Set<UUID> uuids = source.getPlayers();
+
+        remainingLookups.put(type, new AtomicInteger(uuids.size()));
+        initialLookups.put(type, uuids.size());
+
+        for (final UUID uuid : uuids) {
+            if (!queue(new Lookup(type, uuid, true))) {
+                // The stat of the player was already queued by a refresh.
+                remainingLookups.get(type).decrementAndGet();
+            }
+        }
+
+        source.debugMessage("Building leaderboard of stat " + type + " for " + uuids.size() + " players.");
+    }
+
+    /**
+     * Queue the lookup of a stat, unless it is already queued.
+     *
+     * @return true if it was queued, false if it was already queued.
+     */
+    private boolean queue(final Lookup lookup) {
+        if (!queuedLookups.add(lookup)) {
+            return false;
+        }
+
+        pendingLookups.add(lookup);
+
+        return true;
+    }
+}
@@ -0,0 +1,178 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class selects the players with the highest time from a list of
+ * players, without sorting all of them. <br>
+ * <br>
+ * The list is split into parts that are handled by a fork-join pool. Every
+ * part keeps a heap with the highest times it has seen, which never grows
+ * larger than the number of players that are asked for. The heaps of the
+ * parts are then merged. This way, only the times of the selected players
+ * are sorted, and the time of every player can be looked up in parallel.
+ * <p>
+ * Players with the same time are sorted on their key, so the result is
+ * always the same.
+ *
+ * @param <K> Type of key that identifies a player (such as a name)
+ * @author Staartvin
+ */
+public class TopTimesSelector<K extends Comparable<? super K>> {
+
+    /**
+     * Looks up the time of a player.
+     *
+     * @param <K> Type of key that identifies a player
+     */
+    public interface TimeLookup<K> {
+
+        /**
+         * Get the time of a player. This is called from multiple threads at
+         * the same time.
+         *
+         * @param key Key of the player
+         * @return the time of the player, or null if the player should not be
+         * selected.
+         */
+        Integer getTime(K key);
+    }
+
+    // Number of players that are handled by a single thread
+    static final int SPLIT_THRESHOLD = 1000;
+
+    private final TimeLookup<K> lookup;
+    private final int limit;
+
+    // Sorts the lowest time first, so the head of a heap is the first player to drop.
+    private final Comparator<Map.Entry<K, Integer>> lowestFirst = new Comparator<Map.Entry<K, Integer>>() {
+        @Override
+        public int compare(final Map.Entry<K, Integer> o1, final Map.Entry<K, Integer> o2) {
+            final int compare = o1.getValue().compareTo(o2.getValue());
+
+            return compare != 0 ? compare : o2.getKey().compareTo(o1.getKey());
+        }
+    };
+
+    /**
+     * @param lookup Lookup of the time of a player
+     * @param limit  Maximum number of players to select
+     */
+    public TopTimesSelector(final TimeLookup<K> lookup, final int limit) {
+        this.lookup = lookup;
+        this.limit = limit;
+    }
+
+    /**
+     * Select the players with the highest time. This blocks the thread it's
+     * on until the times of all players are looked up.
+     *
+     * @param keys        Keys of the players to select from
+     * @param parallelism Number of threads that look up times
+     * @return a map with the times of the selected players, from the highest
+     * to the lowest time.
+     */
+    public LinkedHashMap<K, Integer> select(final List<K> keys, final int parallelism) {
+        final LinkedHashMap<K, Integer> selected = new LinkedHashMap<K, Integer>();
+
+        if (limit <= 0 || keys.isEmpty()) {
+            return selected;
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+        final PriorityQueue<Map.Entry<K, Integer>> heap;
+
+        try {
+            heap = pool.invoke(new SelectTask(keys, 0, keys.size()));
+        } finally {
+            pool.shutdown();
+        }
+
+        final List<Map.Entry<K, Integer>> entries = new ArrayList<Map.Entry<K, Integer>>(heap);
+
+        Collections.sort(entries, Collections.reverseOrder(lowestFirst));
+
+        for (final Map.Entry<K, Integer> entry : entries) {
+            selected.put(entry.getKey(), entry.getValue());
+        }
+
+        return selected;
+    }
+
+    /**
+     * Add a player to a heap if it has one of the highest times.
+     */
+    private void offer(final PriorityQueue<Map.Entry<K, Integer>> heap, final Map.Entry<K, Integer> entry) {
+        if (heap.size() < limit) {
+            heap.add(entry);
+        } else if (lowestFirst.compare(entry, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    /**
+     * Selects the players with the highest time from a part of the list.
+     */
+    private class SelectTask extends RecursiveTask<PriorityQueue<Map.Entry<K, Integer>>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<K> keys;
+        private final int from;
+        private final int to;
+
+        SelectTask(final List<K> keys, final int from, final int to) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PriorityQueue<Map.Entry<K, Integer>> compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                final PriorityQueue<Map.Entry<K, Integer>> heap = new PriorityQueue<Map.Entry<K, Integer>>(
+                        limit + 1, lowestFirst);
+
+                for (int i = from; i < to; i++) {
+                    final K key = keys.get(i);
+
+                    if (key == null) {
+                        continue;
+                    }
+
+                    final Integer time = lookup.getTime(key);
+
+                    if (time != null) {
+                        offer(heap, new AbstractMap.SimpleImmutableEntry<K, Integer>(key, time));
+                    }
+                }
+
+                return heap;
+            }
+
+            final int middle = (from + to) >>> 1;
+
+            final SelectTask left = new SelectTask(keys, from, middle);
+            left.fork();
+
+            final PriorityQueue<Map.Entry<K, Integer>> right = new SelectTask(keys, middle, to).compute();
+            final PriorityQueue<Map.Entry<K, Integer>> merged = left.join();
+
+            for (final Map.Entry<K, Integer> entry : right) {
+                offer(merged, entry);
+            }
+
+            return merged;
+        }
+    }
+}
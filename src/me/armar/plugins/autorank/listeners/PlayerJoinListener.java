@@ -7,11 +7,13 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 
 /**
  * This listener will listen to players joining and send them a message when an
- * update is available or an error has been found
+ * update is available or an error has been found. Data of players that was
+ * archived is restored before they join.
  *
  * @author Staartvin
  */
@@ -23,6 +25,17 @@ public class PlayerJoinListener implements Listener {
         plugin = instance;
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(final AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        // Bring back data of the player if it was archived because the player was inactive.
+        // This event is not called on the main thread, so the server does not wait for the disk.
+        plugin.getArchiveManager().restorePlayer(event.getUniqueId());
+    }
+
     @EventHandler(priority = EventPriority.HIGH)
     public void onPlayerJoin(final PlayerJoinEvent event) {
         final Player player = event.getPlayer();
@@ -40,6 +53,9 @@ public class PlayerJoinListener implements Listener {
         plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
             public void run() {
 
+                // Remember that this player was online today
+                plugin.getPlaytimeStorage().updateLastSeen(player.getUniqueId());
+
                 // Try to auto assign path to a player
                 plugin.getPathManager().autoAssignPath(player);
 
@@ -0,0 +1,35 @@
+package me.armar.plugins.autorank.listeners;
+
+import me.armar.plugins.autorank.Autorank;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.UUID;
+
+/**
+ * This listener will listen to players leaving and remember when they were
+ * last online
+ *
+ * @author Staartvin
+ */
+public class PlayerQuitListener implements Listener {
+
+    private final Autorank plugin;
+
+    public PlayerQuitListener(final Autorank instance) {
+        plugin = instance;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(final PlayerQuitEvent event) {
+        final UUID uuid = event.getPlayer().getUniqueId();
+
+        // The stats of the player may have changed, so look them up again for the leaderboards of stats.
+        plugin.getLeaderboardManager().getStatRankings().markActive(uuid);
+
+        // This does not wait for the change to be stored, so the server doesn't lag.
+        plugin.getPlaytimeStorage().updateLastSeen(uuid);
+    }
+}
@@ -1,11 +1,13 @@
 package me.armar.plugins.autorank.pathbuilder.requirement;
 
+import me.armar.plugins.autorank.data.mysql.MySQLManager;
 import me.armar.plugins.autorank.language.Lang;
 import me.armar.plugins.autorank.util.AutorankTools;
 import me.armar.plugins.autorank.util.AutorankTools.Time;
 import org.bukkit.entity.Player;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This requirement checks for global playtime Date created: 13:49:53 15 jan.
@@ -25,7 +27,7 @@ public class GlobalTimeAbstractRequirement extends AbstractRequirement {
     @Override
     public String getProgress(final Player player) {
 
-        final int playtime = getAutorank().getMySQLManager().getGlobalTime(player.getUniqueId());
+        final int playtime = getGlobalTime(player.getUniqueId());
 
         return playtime + "/" + globalTime;
     }
@@ -34,11 +36,28 @@ public class GlobalTimeAbstractRequirement extends AbstractRequirement {
     public boolean meetsRequirement(final Player player) {
         final UUID uuid = player.getUniqueId();
 
-        final double playtime = this.getAutorank().getMySQLManager().getGlobalTime(uuid);
+        final double playtime = getGlobalTime(uuid);
 
         return globalTime != -1 && playtime >= globalTime;
     }
 
+    /**
+     * Get the global time of a player without waiting for the database. If
+     * the time has to be looked up, the cached time is used until the lookup
+     * is done.
+     */
+    private int getGlobalTime(final UUID uuid) {
+        final MySQLManager mySQLManager = getAutorank().getMySQLManager();
+        final CompletableFuture<Integer> future = mySQLManager.getGlobalTimeAsync(uuid);
+
+        // When the lookup failed, the last known time is used.
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            return future.join();
+        }
+
+        return mySQLManager.getCachedGlobalTime(uuid);
+    }
+
     @Override
     public boolean setOptions(final String[] options) {
 
@@ -26,6 +26,7 @@ public final class AutorankPermission {
     public static final String HELP_PAGES = "autorank.help";
     public static final String SHOW_HOOKS = "autorank.hooks";
     public static final String IMPORT_DATA = "autorank.import";
+    public static final String EXPORT_DATA = "autorank.export";
     public static final String FORCE_UPDATE_LEADERBOARD = "autorank.leaderboard.force";
     public static final String BROADCAST_LEADERBOARD = "autorank.leaderboard.broadcast";
     public static final String VIEW_LEADERBOARD = "autorank.leaderboard";
@@ -36,7 +36,7 @@ public class PlaytimeManager {
 
         plugin.getLogger().info("Interval check every " + INTERVAL_MINUTES + " minutes.");
 
-        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new UpdatePlaytime(plugin.getFlatFileManager(), plugin),
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new UpdatePlaytime(plugin.getPlaytimeStorage(), plugin),
                 PlaytimeManager.INTERVAL_MINUTES * AutorankTools.TICKS_PER_MINUTE, PlaytimeManager.INTERVAL_MINUTES * AutorankTools.TICKS_PER_MINUTE);
 
         timePlugin = plugin.getConfigHandler().useTimeOf();
@@ -77,7 +77,7 @@ public class PlaytimeManager {
                     return playTime;
 
                 // Stats not found, using Autorank's system.
-                playTime = plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid) * 60;
+                playTime = plugin.getPlaytimeStorage().getLocalTime(TimeType.TOTAL_TIME, uuid) * 60;
             }
         } else if (timePlugin.equals(AutorankDependency.ONTIME)) {
             playTime = (int) (((OnTimeHook) plugin.getDependencyManager().getLibraryHook(Library.ONTIME)).getPlayerData(playerName, "TOTALPLAY") / 1000);
@@ -91,7 +91,7 @@ public class PlaytimeManager {
                 return playTime;
 
             // Use internal system of Autorank.
-            playTime = plugin.getFlatFileManager().getLocalTime(TimeType.TOTAL_TIME, uuid) * 60;
+            playTime = plugin.getPlaytimeStorage().getLocalTime(TimeType.TOTAL_TIME, uuid) * 60;
         }
 
         return playTime;
@@ -0,0 +1,80 @@
+package me.armar.plugins.autorank.util;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class loads data files of Autorank in parallel while Autorank is
+ * enabling. Every file that is loaded gets a future; code that needs the data
+ * of a file waits on that future the first time it touches the file, so the
+ * server does not have to wait for files that are not used yet.
+ *
+ * @author Staartvin
+ */
+public class DataLoader {
+
+    private final ExecutorService executor;
+
+    public DataLoader() {
+        final int threads = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "Autorank data loader #" + threadCount.incrementAndGet());
+
+                // Do not keep the server alive when it is shutting down.
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Load data in the background.
+     *
+     * @param task Task that loads the data
+     * @return a future that is done when the data is loaded.
+     */
+    public <T> Future<T> submit(final Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Load data in the background.
+     *
+     * @param task Task that loads the data
+     * @return a future that is done when the data is loaded.
+     */
+    public Future<?> submit(final Runnable task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Stop accepting new tasks. Tasks that were already submitted are still
+     * run, after which the threads of the loader are stopped.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Wait until data has been loaded.
+     *
+     * @param future Future of the data
+     * @return the loaded data.
+     * @throws IllegalStateException if the data could not be loaded.
+     */
+    public static <T> T await(final Future<T> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Could not load data", e.getCause());
+        }
+    }
+}
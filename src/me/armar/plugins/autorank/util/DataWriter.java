@@ -0,0 +1,176 @@
+package me.armar.plugins.autorank.util;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.concurrent.*;
+
+/**
+ * This class applies all changes to a data store on a single thread, in the
+ * order they were made. Changes never run at the same time, so a change can
+ * read a value and write a new one without another change getting in between.
+ * Reading data does not go through the writer.
+ * <p>
+ * After the writer is shut down, changes are applied on the thread that makes
+ * them. They still hold the lock of the writer while they are applied, so two
+ * changes never run at the same time.
+ *
+ * @author Staartvin
+ */
+public class DataWriter {
+
+    private final ExecutorService executor;
+
+    private volatile Thread writerThread = null;
+
+    // Held while a change is applied
+    private final Object changeLock = new Object();
+
+    /**
+     * Create a writer with its own thread.
+     *
+     * @param name Name of the thread of the writer
+     */
+    public DataWriter(final String name) {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, name);
+
+                // Do not keep the server alive when it is shutting down.
+                thread.setDaemon(true);
+
+                writerThread = thread;
+
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Check whether the current thread is the thread of this writer.
+     */
+    public boolean isWriterThread() {
+        return Thread.currentThread() == writerThread;
+    }
+
+    /**
+     * Apply a change after all changes that were submitted before. The caller
+     * does not wait for the change.
+     *
+     * @param change Change to apply
+     * @return a future that is done when the change is applied.
+     */
+    public <T> Future<T> submit(final Callable<T> change) {
+        if (!isWriterThread() && !executor.isShutdown()) {
+            try {
+                return executor.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        try {
+                            return apply(change);
+                        } catch (final Exception e) {
+                            // Callers often do not wait for a change, so make sure a failure is noticed.
+                            e.printStackTrace();
+                            throw e;
+                        }
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                // The writer was shut down in the meantime.
+            }
+        }
+
+        try {
+            return Futures.immediateFuture(apply(change));
+        } catch (final Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    private <T> T apply(final Callable<T> change) throws Exception {
+        synchronized (changeLock) {
+            return change.call();
+        }
+    }
+
+    /**
+     * Apply a change after all changes that were submitted before. The caller
+     * does not wait for the change.
+     *
+     * @param change Change to apply
+     * @return a future that is done when the change is applied.
+     */
+    public Future<?> submit(final Runnable change) {
+        return submit(Executors.callable(change));
+    }
+
+    /**
+     * Apply a change after all changes that were submitted before, and wait
+     * until it is applied.
+     *
+     * @param change Change to apply
+     * @return the result of the change.
+     */
+    public <T> T call(final Callable<T> change) {
+        return await(submit(change));
+    }
+
+    /**
+     * Apply a change after all changes that were submitted before, and wait
+     * until it is applied.
+     *
+     * @param change Change to apply
+     */
+    public void run(final Runnable change) {
+        await(submit(change));
+    }
+
+    /**
+     * Wait until all changes that were submitted so far are applied.
+     */
+    public void flush() {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                // All changes before this one are applied now.
+            }
+        });
+    }
+
+    /**
+     * Apply all changes that were submitted and stop the thread of the writer.
+     *
+     * @return true if all changes were applied, false if they could not be
+     * applied within 30 seconds.
+     */
+    public boolean shutdown() {
+        executor.shutdown();
+
+        try {
+            return executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Wait until a change is applied.
+     *
+     * @param future Future of the change
+     * @return the result of the change.
+     * @throws RuntimeException if the change failed.
+     */
+    public static <T> T await(final Future<T> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException("Could not apply change", e.getCause());
+        }
+    }
+}
@@ -41,7 +41,7 @@ public class UUIDRefresher implements Runnable {
         isRunning = true;
 
         // Get a list of all uuid keys.
-        final List<UUID> uuids = plugin.getFlatFileManager().getUUIDKeys(TimeType.TOTAL_TIME);
+        final List<UUID> uuids = plugin.getPlaytimeStorage().getUUIDKeys(TimeType.TOTAL_TIME);
 
         final List<UUID> notOutdated = new ArrayList<UUID>();
 
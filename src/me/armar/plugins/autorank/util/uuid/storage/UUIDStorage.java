@@ -1,16 +1,22 @@
 package me.armar.plugins.autorank.util.uuid.storage;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
 import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.config.SimpleYamlConfiguration;
+import me.armar.plugins.autorank.data.sqlite.SQLiteManager;
 import me.armar.plugins.autorank.util.AutorankTools;
+import me.armar.plugins.autorank.util.DataLoader;
+import me.armar.plugins.autorank.util.DataWriter;
 import org.bukkit.ChatColor;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.*;
-import java.util.Map.Entry;
-import java.util.logging.Level;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class represents a multitude of files where are looked up uuids are
@@ -18,16 +24,22 @@ import java.util.logging.Level;
  * Every player has its own uuid, which is stored with the time it was last
  * stored.
  * <p>
+ * All changes are applied one at a time by a {@link DataWriter}, so a player
+ * that is renamed never ends up in two files.
+ * <p>
+ * When the local play time is stored in SQLite, the UUIDs are stored in that
+ * database as well (see {@link #useDatabase(SQLiteManager)}). The files are
+ * then only kept in memory and every change is written to the database.
+ * <p>
  * Date created: 15:35:30 13 okt. 2014
  *
  * @author Staartvin
  */
 public class UUIDStorage {
 
-    private final HashMap<String, File> configFiles = new HashMap<String, File>();
-    private final HashMap<String, FileConfiguration> configs = new HashMap<String, FileConfiguration>();
-
-    private final String desFolder;
+    // Files are loaded in the background, so every file is stored as a future.
+    private final Map<String, Future<SimpleYamlConfiguration>> configs =
+            new ConcurrentHashMap<String, Future<SimpleYamlConfiguration>>();
 
     // Expiration date in hours
     private final int expirationDate = 24;
@@ -37,11 +49,15 @@ public class UUIDStorage {
 
     private final Autorank plugin;
 
+    // Applies all changes to the files, one at a time
+    private final DataWriter writer = new DataWriter("Autorank UUID writer");
+
+    // Database that stores the UUIDs, or null if they are stored in the files.
+    private volatile SQLiteManager database = null;
+
     public UUIDStorage(final Autorank instance) {
         this.plugin = instance;
 
-        desFolder = plugin.getDataFolder() + "/uuids";
-
         // Run save task every 2 minutes
         plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
             @Override
@@ -51,20 +67,161 @@ public class UUIDStorage {
         }, AutorankTools.TICKS_PER_MINUTE, AutorankTools.TICKS_PER_MINUTE * 2);
     }
 
+    /**
+     * Store the UUIDs in the given database instead of the files. Must be
+     * called before {@link #createNewFiles()}.
+     *
+     * @param database Database to store the UUIDs in
+     */
+    public void useDatabase(final SQLiteManager database) {
+        this.database = database;
+    }
+
+    /**
+     * Load all UUID files in parallel on the data loader of Autorank. Methods
+     * that need a file wait until that file is loaded. When the UUIDs are
+     * stored in a database that has any, they are read from the database
+     * instead. Otherwise, the files are copied to the database.
+     */
     public void createNewFiles() {
 
         plugin.getLogger().info("Loading UUID data files...");
-        long startTime = System.currentTimeMillis();
+        final long startTime = System.currentTimeMillis();
+
+        if (database != null && database.hasUUIDs()) {
+            loadFromDatabase(startTime);
+            return;
+        }
+
+        final AtomicInteger filesToLoad = new AtomicInteger(fileSuffixes.size());
+
+        for (final String suffix : fileSuffixes) {
+            configs.put(suffix, plugin.getDataLoader().submit(new Callable<SimpleYamlConfiguration>() {
+                @Override
+                public SimpleYamlConfiguration call() {
+                    try {
+                        plugin.debugMessage("Loading uuids_" + suffix + " ...");
+
+                        final SimpleYamlConfiguration config = loadConfigFile(suffix);
+
+                        if (database != null) {
+                            database.importUUIDs(getProperties(config));
+                        }
+
+                        return config;
+                    } finally {
+                        if (filesToLoad.decrementAndGet() == 0) {
+                            plugin.getLogger().info("Loaded UUID data in " + (System.currentTimeMillis() - startTime)
+                                    + " ms.");
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Fill all files in memory with the UUIDs in the database, on the data
+     * loader of Autorank.
+     *
+     * @param startTime Time the loading started at
+     */
+    private void loadFromDatabase(final long startTime) {
+        final Map<String, SettableFuture<SimpleYamlConfiguration>> loading =
+                new HashMap<String, SettableFuture<SimpleYamlConfiguration>>();
 
         for (final String suffix : fileSuffixes) {
-            plugin.debugMessage("Loading uuids_" + suffix + " ...");
+            final SettableFuture<SimpleYamlConfiguration> config = SettableFuture.create();
+
+            loading.put(suffix, config);
+            configs.put(suffix, config);
+        }
+
+        plugin.getDataLoader().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Map<String, SimpleYamlConfiguration> files = new HashMap<String, SimpleYamlConfiguration>();
+
+                    for (final String suffix : fileSuffixes) {
+                        final SimpleYamlConfiguration config = new SimpleYamlConfiguration(
+                                new File(plugin.getDataFolder(), "/uuids/uuids_" + suffix + ".yml"));
+
+                        prepareConfig(config);
+
+                        files.put(suffix, config);
+                    }
+
+                    for (final Map.Entry<String, Map<String, Object>> name : database.loadUUIDs().entrySet()) {
+                        final SimpleYamlConfiguration config = files.get(findMatchingKey(name.getKey()));
+
+                        for (final Map.Entry<String, Object> property : name.getValue().entrySet()) {
+                            config.set(name.getKey() + "." + property.getKey(), property.getValue());
+                        }
+                    }
+
+                    for (final String suffix : fileSuffixes) {
+                        loading.get(suffix).set(files.get(suffix));
+                    }
+
+                    plugin.getLogger().info("Loaded UUID data from the SQLite database in "
+                            + (System.currentTimeMillis() - startTime) + " ms.");
+                } catch (final RuntimeException e) {
+                    for (final SettableFuture<SimpleYamlConfiguration> config : loading.values()) {
+                        config.setException(e);
+                    }
+
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the properties of all names in a UUID file, as they are stored in
+     * the database.
+     *
+     * @param config UUID file
+     * @return a map of the name of a player to its properties.
+     */
+    private Map<String, Map<String, Object>> getProperties(final FileConfiguration config) {
+        final Map<String, Map<String, Object>> names = new HashMap<String, Map<String, Object>>();
+
+        for (final String name : config.getKeys(false)) {
+            final Map<String, Object> properties = new HashMap<String, Object>();
+
+            properties.put("uuid", config.getString(name + ".uuid", null));
+            properties.put("realName", config.getString(name + ".realName", null));
+            properties.put("updateTime", config.getLong(name + ".updateTime", 0));
+
+            names.put(name, properties);
+        }
+
+        return names;
+    }
+
+    /**
+     * Write the stored UUID of a name to the database, if it is used. Must be
+     * called by the writer after the name was changed.
+     *
+     * @param playerName Name of the player (lower case)
+     */
+    private void updateDatabase(final String playerName) {
+        final SQLiteManager database = this.database;
 
-            reloadConfig(suffix);
-            loadConfig(suffix);
+        if (database == null) {
+            return;
         }
 
-        plugin.getLogger().info("Loaded UUID data in " + (System.currentTimeMillis() - startTime) /
-                1000 + " seconds.");
+        final FileConfiguration config = findCorrectConfig(playerName);
+        final String uuid = config.getString(playerName + ".uuid", null);
+
+        if (uuid == null) {
+            database.removeUUID(playerName);
+        } else {
+            database.storeUUID(playerName, uuid, config.getString(playerName + ".realName", null),
+                    config.getLong(playerName + ".updateTime", 0));
+        }
     }
 
     public FileConfiguration findCorrectConfig(String playerName) {
@@ -74,9 +231,7 @@ public class UUIDStorage {
 
         final String key = findMatchingKey(playerName);
 
-        final FileConfiguration config = configs.get(key);
-
-        return config;
+        return getConfig(key);
     }
 
     public String findMatchingKey(String text) {
@@ -122,7 +277,7 @@ public class UUIDStorage {
     }
 
     public String getCachedPlayerName(final UUID uuid, final String key) {
-        final FileConfiguration config = configs.get(key);
+        final FileConfiguration config = getConfig(key);
 
         if (config == null) {
             return null;
@@ -140,13 +295,29 @@ public class UUIDStorage {
     }
 
     public FileConfiguration getConfig(final String key) {
-        final FileConfiguration config = configs.get(key);
+        return getLoadedConfig(key);
+    }
+
+    /**
+     * Get a UUID file, waiting until it is loaded if it is still being loaded.
+     *
+     * @param key Suffix of the file
+     * @return the UUID file.
+     */
+    private SimpleYamlConfiguration getLoadedConfig(final String key) {
+        Future<SimpleYamlConfiguration> config = configs.get(key);
 
         if (config == null) {
             this.reloadConfig(key);
+
+            config = configs.get(key);
         }
 
-        return config;
+        if (!config.isDone()) {
+            plugin.debugMessage("Waiting for uuids_" + key + " to be loaded...");
+        }
+
+        return DataLoader.await(config);
     }
 
     public int getLastUpdateTime(String playerName) {
@@ -221,28 +392,47 @@ public class UUIDStorage {
     }
 
     public void loadConfig(final String key) {
+        prepareConfig(getLoadedConfig(key));
+
+        saveConfig(key);
+    }
+
+    private SimpleYamlConfiguration loadConfigFile(final String key) {
+        final SimpleYamlConfiguration config = new SimpleYamlConfiguration(plugin, "/uuids/uuids_" + key + ".yml",
+                "UUID data (" + key + ")", false);
+
+        prepareConfig(config);
 
-        final FileConfiguration config = configs.get(key);
+        config.saveFile();
+
+        return config;
+    }
 
+    private void prepareConfig(final FileConfiguration config) {
         config.options().header("This file stores all uuids of players that Autorank has looked up before."
                 + "\nEach file stores accounts with the starting letter of the player's name.");
 
         config.options().copyDefaults(true);
-        saveConfig(key);
     }
 
     public void reloadConfig(final String key) {
-        File configFile = null;
-        FileConfiguration config = null;
+        final SimpleYamlConfiguration config = new SimpleYamlConfiguration(plugin, "/uuids/uuids_" + key + ".yml",
+                "UUID data (" + key + ")", false);
+
+        // Store new configs
+        configs.put(key, Futures.immediateFuture(config));
+    }
 
-        if (!configFiles.containsKey(key) || configFiles.get(key) == null) {
-            configFile = new File(desFolder, "uuids_" + key + ".yml");
+    /**
+     * Apply all changes that were made and save all files. Should be called
+     * when Autorank is disabled.
+     */
+    public void shutdown() {
+        if (!writer.shutdown()) {
+            plugin.getLogger().warning("Not all UUID changes could be applied before shutting down!");
         }
-        config = YamlConfiguration.loadConfiguration(configFile);
 
-        // Store new configs
-        configs.put(key, config);
-        configFiles.put(key, configFile);
+        saveAllFiles();
     }
 
     public void saveAllFiles() {
@@ -252,21 +442,39 @@ public class UUIDStorage {
     }
 
     public void saveConfig(final String key) {
-        final File configFile = configFiles.get(key);
-        final FileConfiguration config = configs.get(key);
-
-        if (config == null || configFile == null) {
+        // Every change is already written to the database.
+        if (!configs.containsKey(key) || database != null) {
             return;
         }
 
-        try {
-            getConfig(key).save(configFile);
-        } catch (final IOException ex) {
-            plugin.getLogger().log(Level.SEVERE, "Could not save config to " + configFile, ex);
-        }
+        final SimpleYamlConfiguration config = getLoadedConfig(key);
+
+        // Only written when a uuid was changed since the last save.
+        config.saveFile();
+    }
+
+    /**
+     * Store the UUID of a player. If the player was stored under another name
+     * before, the old name is removed.
+     *
+     * @param playerName Name of the player
+     * @param uuid       UUID of the player
+     * @param realName   Name of the player with proper capitalisation, can be
+     *                   null
+     * @return a future that is done when the UUID is stored. The caller does
+     * not wait for it, so this can be called on the main thread.
+     */
+    public Future<?> storeUUID(final String playerName, final UUID uuid, final String realName) {
+        // The old name and the new name can be in different files, so change them in one go.
+        return writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                doStoreUUID(playerName, uuid, realName);
+            }
+        });
     }
 
-    public void storeUUID(String playerName, final UUID uuid, final String realName) {
+    private void doStoreUUID(String playerName, final UUID uuid, final String realName) {
         FileConfiguration config;
 
         // Everything is now stored in lowercase.
@@ -290,6 +498,8 @@ public class UUIDStorage {
                 // Don't do anything besides updating updateTime.
                 config.set(playerName + ".updateTime", System.currentTimeMillis());
 
+                updateDatabase(playerName);
+
                 // plugin.debugMessage("Refreshed user '" + playerName
                 // + "' with uuid " + uuid + "!");
                 return;
@@ -297,6 +507,8 @@ public class UUIDStorage {
 
             config.set(oldUser, null);
 
+            updateDatabase(oldUser);
+
             // plugin.debugMessage("Deleting old user '" + oldUser + "'!");
         }
 
@@ -312,6 +524,8 @@ public class UUIDStorage {
             // The real name is useful for leaderboards.
         }
 
+        updateDatabase(playerName);
+
         // plugin.debugMessage("Stored user '" + playerName + "' with uuid "
         // + uuid + "!");
     }
@@ -338,18 +552,26 @@ public class UUIDStorage {
             // All names that are in this config
             final Set<String> names = config.getKeys(false);
 
-            for (final String name : names) {
-                // Get old values
-                final String uuidString = config.getString(name + ".uuid");
-                final long updateTime = config.getLong(name + ".updateTime", 0);
+            writer.run(new Runnable() {
+                @Override
+                public void run() {
+                    for (final String name : names) {
+                        // Get old values
+                        final String uuidString = config.getString(name + ".uuid");
+                        final long updateTime = config.getLong(name + ".updateTime", 0);
 
-                // Delete old name
-                config.set(name, null);
+                        // Delete old name
+                        config.set(name, null);
 
-                // Add new (lowercase) name
-                config.set(name.toLowerCase() + ".uuid", uuidString);
-                config.set(name.toLowerCase() + ".updateTime", updateTime);
-            }
+                        // Add new (lowercase) name
+                        config.set(name.toLowerCase() + ".uuid", uuidString);
+                        config.set(name.toLowerCase() + ".updateTime", updateTime);
+
+                        updateDatabase(name);
+                        updateDatabase(name.toLowerCase());
+                    }
+                }
+            });
         }
 
         plugin.getServer().getConsoleSender().sendMessage("[Autorank] " + ChatColor.GREEN
@@ -364,8 +586,8 @@ public class UUIDStorage {
 
         List<String> playerNames = new ArrayList<>();
 
-        for (Entry<String, FileConfiguration> entry : this.configs.entrySet()) {
-            FileConfiguration config = entry.getValue();
+        for (String suffix : fileSuffixes) {
+            FileConfiguration config = getLoadedConfig(suffix);
 
             for (String playerName : config.getKeys(false)) {
                 playerNames.add(playerName);
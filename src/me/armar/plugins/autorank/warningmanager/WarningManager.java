@@ -32,8 +32,10 @@ import java.util.Map.Entry;
  * <p>
  * <p>
  * <b>NOTE:</b> <br>
- * Warnings cannot be unregistered. The only way to remove the warnings is to
- * fix them so they don't ever get registered.
+ * Warnings of the configs cannot be unregistered. The only way to remove those
+ * warnings is to fix them so they don't ever get registered. Warnings about
+ * problems that fix themselves (such as a database that cannot be reached) are
+ * unregistered when the problem is gone.
  *
  * @author Staartvin
  */
@@ -98,6 +100,15 @@ public class WarningManager {
         warnings.put(message, priority);
     }
 
+    /**
+     * Unregister a warning. Nothing happens if it was not registered.
+     *
+     * @param message Warning message description
+     */
+    public void unregisterWarning(final String message) {
+        warnings.remove(message);
+    }
+
     public void startWarningTask() {
         // Create a new task that runs every 30 seconds (will show a warning
         // every 30 seconds)
@@ -0,0 +1,30 @@
+package me.armar.plugins.autorank;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ticker for tests that only moves when it is told to, so tests of expiring
+ * data do not have to wait.
+ */
+public class FakeTicker extends Ticker {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Override
+    public long read() {
+        return nanos.get();
+    }
+
+    /**
+     * Move the time forward.
+     *
+     * @param time Amount of time to move forward
+     * @param unit Unit of the time
+     */
+    public void advance(final long time, final TimeUnit unit) {
+        nanos.addAndGet(unit.toNanos(time));
+    }
+}
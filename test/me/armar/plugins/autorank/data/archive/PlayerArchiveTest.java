@@ -0,0 +1,150 @@
+package me.armar.plugins.autorank.data.archive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link PlayerArchive}.
+ */
+public class PlayerArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldKeepLastStoredDataAfterReopening() throws IOException {
+        // given
+        File file = new File(folder.getRoot(), "Archive.dat");
+        PlayerArchive archive = new PlayerArchive(file);
+        UUID kept = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+
+        archive.open();
+        archive.store(kept, "first".getBytes("UTF-8"));
+        archive.store(removed, "removed".getBytes("UTF-8"));
+        archive.store(kept, "second".getBytes("UTF-8"));
+        archive.remove(removed);
+        archive.close();
+
+        // when
+        archive = new PlayerArchive(file);
+        archive.open();
+
+        // then
+        assertThat(archive.size(), equalTo(1));
+        assertThat(new String(archive.load(kept), "UTF-8"), equalTo("second"));
+        assertThat(archive.contains(removed), equalTo(false));
+        assertThat(archive.load(removed), nullValue());
+        archive.close();
+    }
+
+    @Test
+    public void shouldIgnorePartlyWrittenRecord() throws IOException {
+        // given
+        File file = new File(folder.getRoot(), "Archive.dat");
+        PlayerArchive archive = new PlayerArchive(file);
+        UUID uuid = UUID.randomUUID();
+
+        archive.open();
+        archive.store(uuid, "complete".getBytes("UTF-8"));
+        archive.close();
+
+        long length = file.length();
+
+        archive.open();
+        archive.store(UUID.randomUUID(), new byte[100]);
+        archive.close();
+
+        // Simulate a crash while writing the last record.
+        RandomAccessFile data = new RandomAccessFile(file, "rw");
+        data.setLength(length + 10);
+        data.close();
+
+        // when
+        archive.open();
+
+        // then
+        assertThat(archive.size(), equalTo(1));
+        assertThat(new String(archive.load(uuid), "UTF-8"), equalTo("complete"));
+        assertThat(file.length(), equalTo(length));
+        archive.close();
+    }
+
+    @Test
+    public void shouldKeepLiveRecordsWhenCompacting() throws IOException {
+        // given
+        File file = new File(folder.getRoot(), "Archive.dat");
+        PlayerArchive archive = new PlayerArchive(file);
+        UUID[] uuids = new UUID[200];
+
+        archive.open();
+
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = UUID.randomUUID();
+            archive.store(uuids[i], ("old " + i).getBytes("UTF-8"));
+            archive.store(uuids[i], ("new " + i).getBytes("UTF-8"));
+        }
+
+        for (int i = 0; i < uuids.length; i += 2) {
+            archive.remove(uuids[i]);
+        }
+
+        long length = file.length();
+
+        // when
+        archive.compact();
+
+        // then
+        assertThat(file.length() < length, equalTo(true));
+        assertThat(archive.size(), equalTo(uuids.length / 2));
+
+        for (int i = 0; i < uuids.length; i++) {
+            if (i % 2 == 0) {
+                assertThat(archive.contains(uuids[i]), equalTo(false));
+            } else {
+                assertThat(new String(archive.load(uuids[i]), "UTF-8"), equalTo("new " + i));
+            }
+        }
+
+        archive.close();
+
+        archive.open();
+        assertThat(archive.size(), equalTo(uuids.length / 2));
+        assertThat(new String(archive.load(uuids[1]), "UTF-8"), equalTo("new 1"));
+        archive.close();
+    }
+
+    @Test
+    public void shouldUseCompactedFileWhenArchiveFileIsMissing() throws IOException {
+        // given
+        File file = new File(folder.getRoot(), "Archive.dat");
+        PlayerArchive archive = new PlayerArchive(file);
+        UUID uuid = UUID.randomUUID();
+
+        archive.open();
+        archive.store(uuid, "kept".getBytes("UTF-8"));
+        archive.close();
+
+        // Simulate a compaction that wrote the new file, but could not replace the archive file.
+        assertThat(file.renameTo(new File(folder.getRoot(), "Archive.dat.tmp")), equalTo(true));
+
+        // when
+        archive.open();
+
+        // then
+        assertThat(archive.size(), equalTo(1));
+        assertThat(new String(archive.load(uuid), "UTF-8"), equalTo("kept"));
+        assertThat(new File(folder.getRoot(), "Archive.dat.tmp").exists(), equalTo(false));
+        archive.close();
+    }
+}
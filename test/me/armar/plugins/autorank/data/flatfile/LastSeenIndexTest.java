@@ -0,0 +1,86 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link LastSeenIndex}.
+ */
+public class LastSeenIndexTest {
+
+    private static final int TODAY = 17000;
+
+    @Test
+    public void shouldOnlyReturnPlayersSeenBeforeDay() {
+        // given
+        LastSeenIndex index = new LastSeenIndex();
+        UUID recent = UUID.randomUUID();
+        UUID old = UUID.randomUUID();
+        UUID older = UUID.randomUUID();
+
+        index.update(recent, TODAY);
+        index.update(old, TODAY - 60);
+        index.update(older, TODAY - 100);
+
+        // when / then
+        assertThat(new HashSet<UUID>(index.getPlayersNotSeenSince(TODAY - 59)),
+                equalTo(new HashSet<UUID>(Arrays.asList(old, older))));
+        assertThat(index.getPlayersNotSeenSince(TODAY - 100).isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void shouldOnlyMoveLastSeenDayForward() {
+        // given
+        LastSeenIndex index = new LastSeenIndex();
+        UUID uuid = UUID.randomUUID();
+
+        index.update(uuid, TODAY - 70);
+
+        // when
+        index.update(uuid, TODAY);
+        boolean changed = index.update(uuid, TODAY - 80);
+
+        // then
+        assertThat(changed, equalTo(false));
+        assertThat(index.getLastSeenDay(uuid), equalTo(TODAY));
+        assertThat(index.getPlayersNotSeenSince(TODAY).isEmpty(), equalTo(true));
+
+        // when
+        index.remove(uuid);
+
+        // then
+        assertThat(index.contains(uuid), equalTo(false));
+        assertThat(index.size(), equalTo(0));
+    }
+
+    @Test
+    public void shouldReadWrittenIndex() throws IOException {
+        // given
+        LastSeenIndex index = new LastSeenIndex();
+        UUID uuid = UUID.randomUUID();
+
+        index.update(uuid, TODAY - 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+
+        // when
+        LastSeenIndex copy = new LastSeenIndex();
+        copy.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        // then
+        assertThat(copy.getLastSeenDay(uuid), equalTo(TODAY - 3));
+        assertThat(copy.size(), equalTo(1));
+    }
+}
@@ -0,0 +1,188 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link PlaytimeIndex}.
+ */
+public class PlaytimeIndexTest {
+
+    private static final int TODAY = 17000;
+
+    @Test
+    public void shouldReturnZeroForUnknownPlayer() {
+        // given
+        PlaytimeIndex index = new PlaytimeIndex();
+
+        // when / then
+        assertThat(index.getTotal(UUID.randomUUID()), equalTo(0));
+        assertThat(index.containsTotal(UUID.randomUUID()), equalTo(false));
+        assertThat(index.getDaySum(UUID.randomUUID(), TODAY, TODAY), equalTo(0));
+    }
+
+    @Test
+    public void shouldKeepTotalAndHistorySeparate() {
+        // given
+        PlaytimeIndex index = new PlaytimeIndex();
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        index.setTotal(uuid, 100);
+        index.addToDay(uuid, TODAY, 5);
+        index.addToDay(uuid, TODAY, 5);
+
+        // then
+        assertThat(index.getTotal(uuid), equalTo(100));
+        assertThat(index.getDaySum(uuid, TODAY, TODAY), equalTo(10));
+        assertThat(index.getTotalCount(), equalTo(1));
+
+        // when
+        index.removeTotal(uuid);
+
+        // then
+        assertThat(index.containsTotal(uuid), equalTo(false));
+        assertThat(index.getDaySum(uuid, TODAY, TODAY), equalTo(10));
+    }
+
+    @Test
+    public void shouldMatchHashMapAfterRandomChanges() {
+        // given
+        PlaytimeIndex index = new PlaytimeIndex(16);
+        Map<UUID, Integer> expected = new HashMap<UUID, Integer>();
+        Random random = new Random(42);
+        UUID[] uuids = new UUID[2000];
+
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+
+        // when
+        for (int i = 0; i < 50000; i++) {
+            UUID uuid = uuids[random.nextInt(uuids.length)];
+
+            if (random.nextInt(4) == 0) {
+                index.removeTotal(uuid);
+                expected.remove(uuid);
+            } else {
+                int value = random.nextInt(1000);
+                index.setTotal(uuid, value);
+                expected.put(uuid, value);
+            }
+        }
+
+        // then
+        assertThat(index.getTotalCount(), equalTo(expected.size()));
+
+        for (UUID uuid : uuids) {
+            Integer value = expected.get(uuid);
+
+            assertThat(index.containsTotal(uuid), equalTo(value != null));
+            assertThat(index.getTotal(uuid), equalTo(value == null ? 0 : value));
+        }
+
+        PlaytimeIndex.Snapshot snapshot = index.snapshotTotals();
+
+        assertThat(snapshot.size(), equalTo(expected.size()));
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertThat(snapshot.getValue(i), equalTo(expected.get(snapshot.getUUID(i))));
+        }
+    }
+
+    @Test
+    public void shouldSumRangesOfDays() {
+        // given
+        PlaytimeIndex index = new PlaytimeIndex();
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        for (int day = TODAY - 9; day <= TODAY; day++) {
+            index.addToDay(uuid, day, 10);
+        }
+
+        // then
+        assertThat(index.getDaySum(uuid, TODAY, TODAY), equalTo(10));
+        assertThat(index.getDaySum(uuid, TODAY - 6, TODAY), equalTo(70));
+        assertThat(index.getDaySum(uuid, TODAY - 30, TODAY), equalTo(100));
+    }
+
+    @Test
+    public void shouldForgetDaysThatLeftTheHistory() {
+        // given
+        PlaytimeIndex index = new PlaytimeIndex();
+        UUID uuid = UUID.randomUUID();
+
+        index.addToDay(uuid, TODAY, 10);
+
+        // when
+        int tomorrow = TODAY + 1;
+        int later = TODAY + PlaytimeIndex.HISTORY_DAYS;
+
+        index.addToDay(uuid, tomorrow, 20);
+
+        // then
+        assertThat(index.getDaySum(uuid, TODAY, tomorrow), equalTo(30));
+
+        // when
+        index.addToDay(uuid, later, 5);
+
+        // then
+        assertThat(index.getDaySum(uuid, TODAY, later), equalTo(25));
+        assertThat(index.addToDay(uuid, TODAY, 10), equalTo(0));
+        assertThat(index.pruneHistory(later + 1), equalTo(1));
+        assertThat(index.getDaySum(uuid, TODAY, later), equalTo(0));
+    }
+
+    @Test
+    public void shouldLeaveOutPlayersThatDidNotPlayInRange() {
+        // given
+        PlaytimeIndex index = new PlaytimeIndex();
+        UUID active = UUID.randomUUID();
+        UUID inactive = UUID.randomUUID();
+
+        index.addToDay(active, TODAY, 15);
+        index.addToDay(inactive, TODAY - 3, 15);
+
+        // when
+        PlaytimeIndex.Snapshot snapshot = index.snapshotDays(TODAY, TODAY);
+
+        // then
+        assertThat(snapshot.size(), equalTo(1));
+        assertThat(snapshot.getUUID(0), equalTo(active));
+        assertThat(snapshot.getValue(0), equalTo(15));
+    }
+
+    @Test
+    public void shouldReadWrittenHistory() throws IOException {
+        // given
+        PlaytimeIndex index = new PlaytimeIndex();
+        UUID uuid = UUID.randomUUID();
+
+        index.addToDay(uuid, TODAY - 20, 7);
+        index.addToDay(uuid, TODAY, 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeHistory(new DataOutputStream(bytes));
+
+        // when
+        PlaytimeIndex copy = new PlaytimeIndex();
+        copy.readHistory(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        // then
+        assertThat(copy.getDaySum(uuid, TODAY - 20, TODAY - 20), equalTo(7));
+        assertThat(copy.getDaySum(uuid, TODAY - 34, TODAY), equalTo(10));
+    }
+}
@@ -0,0 +1,79 @@
+package me.armar.plugins.autorank.data.flatfile;
+
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link PlaytimeJournal}.
+ */
+public class PlaytimeJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldAppendAfterPartlyWrittenRecord() throws IOException {
+        // given
+        File journalFile = new File(folder.getRoot(), "playtime.journal");
+        PlaytimeJournal journal = new PlaytimeJournal(folder.getRoot());
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        journal.open();
+        journal.logSet(TimeType.TOTAL_TIME, first, 10);
+        journal.close();
+
+        // Simulate a crash while writing the second record.
+        RandomAccessFile data = new RandomAccessFile(journalFile, "rw");
+        data.setLength(PlaytimeJournal.RECORD_SIZE + 10);
+        data.close();
+
+        // when
+        journal.open();
+        journal.logSet(TimeType.TOTAL_TIME, second, 20);
+        journal.close();
+
+        // then
+        final Map<UUID, Integer> replayed = new LinkedHashMap<>();
+
+        int count = journal.replay(new PlaytimeJournal.Handler() {
+            @Override
+            public void onSet(final TimeType type, final UUID uuid, final int value) {
+                replayed.put(uuid, value);
+            }
+
+            @Override
+            public void onRemove(final TimeType type, final UUID uuid) {
+            }
+
+            @Override
+            public void onClear(final TimeType type) {
+            }
+
+            @Override
+            public void onSetDay(final UUID uuid, final int day, final int value) {
+            }
+
+            @Override
+            public void onClearDays(final int fromDay, final int toDay) {
+            }
+        });
+
+        assertThat(count, equalTo(2));
+        assertThat(replayed.get(first), equalTo(10));
+        assertThat(replayed.get(second), equalTo(20));
+        assertThat(journalFile.length(), equalTo(2L * PlaytimeJournal.RECORD_SIZE));
+    }
+}
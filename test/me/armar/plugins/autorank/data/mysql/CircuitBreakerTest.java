@@ -0,0 +1,80 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import me.armar.plugins.autorank.FakeTicker;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void shouldOpenAfterFailuresInARow() {
+        // given
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 8000, ticker);
+
+        // when
+        boolean openedFirst = breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        boolean openedLast = breaker.recordFailure();
+
+        // then
+        assertThat(openedFirst, equalTo(false));
+        assertThat(openedLast, equalTo(true));
+        assertThat(breaker.allowRequest(), equalTo(false));
+        assertThat(breaker.isRetryDue(), equalTo(false));
+    }
+
+    @Test
+    public void shouldDoubleBackoffAfterFailedRetry() {
+        // given
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 3000, ticker);
+        breaker.recordFailure();
+
+        // when
+        ticker.advance(1000, TimeUnit.MILLISECONDS);
+        boolean firstRetryDue = breaker.isRetryDue();
+        breaker.recordFailure();
+        long secondBackoff = breaker.getTimeUntilRetry();
+        ticker.advance(2000, TimeUnit.MILLISECONDS);
+        breaker.recordFailure();
+        long thirdBackoff = breaker.getTimeUntilRetry();
+
+        // then
+        assertThat(firstRetryDue, equalTo(true));
+        assertThat(secondBackoff, equalTo(2000L));
+        assertThat(thirdBackoff, equalTo(3000L));
+        assertThat(breaker.getTimeOpen(), equalTo(3000L));
+    }
+
+    @Test
+    public void shouldCloseAfterSuccessfulRetry() {
+        // given
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 8000, ticker);
+        breaker.recordFailure();
+        ticker.advance(1000, TimeUnit.MILLISECONDS);
+        breaker.recordFailure();
+
+        // when
+        ticker.advance(2000, TimeUnit.MILLISECONDS);
+        boolean closed = breaker.recordSuccess();
+
+        // then
+        assertThat(closed, equalTo(true));
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+        assertThat(breaker.allowRequest(), equalTo(true));
+
+        // The backoff starts over with the next outage.
+        breaker.recordFailure();
+        assertThat(breaker.getTimeUntilRetry(), equalTo(1000L));
+    }
+}
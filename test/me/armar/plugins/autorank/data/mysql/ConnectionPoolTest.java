@@ -0,0 +1,164 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link ConnectionPool}, using a driver that hands out fake
+ * connections.
+ */
+public class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:autorank-test:pool";
+
+    private static final AtomicInteger openedConnections = new AtomicInteger();
+
+    @BeforeClass
+    public static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(new FakeDriver());
+    }
+
+    @Test
+    public void shouldReuseReleasedConnection() throws SQLException {
+        // given
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 2);
+        Connection first = pool.getConnection();
+        pool.release(first);
+
+        // when
+        Connection second = pool.getConnection();
+
+        // then
+        assertThat(second, sameInstance(first));
+        assertThat(pool.getActiveConnections(), equalTo(1));
+        assertThat(pool.getIdleConnections(), equalTo(0));
+    }
+
+    @Test
+    public void shouldNotOpenMoreConnectionsThanMaximum() throws SQLException {
+        // given
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 1);
+        pool.getConnection();
+        int opened = openedConnections.get();
+
+        // when
+        boolean gotConnection = true;
+
+        // An interrupted thread stops waiting for a connection right away.
+        Thread.currentThread().interrupt();
+
+        try {
+            pool.getConnection();
+        } catch (SQLException e) {
+            gotConnection = false;
+        } finally {
+            Thread.interrupted();
+        }
+
+        // then
+        assertThat(gotConnection, equalTo(false));
+        assertThat(openedConnections.get(), equalTo(opened));
+        assertThat(pool.getActiveConnections(), equalTo(1));
+    }
+
+    @Test
+    public void shouldCloseIdleConnectionsWhenPoolIsClosed() throws SQLException {
+        // given
+        ConnectionPool pool = new ConnectionPool(URL, "user", "password", 2);
+        Connection idle = pool.getConnection();
+        Connection active = pool.getConnection();
+        pool.release(idle);
+
+        // when
+        pool.close();
+        pool.release(active);
+
+        // then
+        assertThat(idle.isClosed(), equalTo(true));
+        assertThat(active.isClosed(), equalTo(true));
+        assertThat(pool.getActiveConnections(), equalTo(0));
+        assertThat(pool.getIdleConnections(), equalTo(0));
+    }
+
+    /**
+     * Driver that opens connections which only know whether they are closed.
+     */
+    private static class FakeDriver implements Driver {
+
+        @Override
+        public Connection connect(final String url, final Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+
+            openedConnections.incrementAndGet();
+
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new InvocationHandler() {
+
+                        private boolean closed = false;
+
+                        @Override
+                        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                            switch (method.getName()) {
+                                case "close":
+                                    closed = true;
+                                    return null;
+                                case "isClosed":
+                                    return closed;
+                                case "isValid":
+                                    return !closed;
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                case "equals":
+                                    return proxy == args[0];
+                                default:
+                                    throw new UnsupportedOperationException(method.getName());
+                            }
+                        }
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(final String url) {
+            return url.startsWith("jdbc:autorank-test:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
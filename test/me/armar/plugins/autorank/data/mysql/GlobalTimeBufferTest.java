@@ -0,0 +1,92 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link GlobalTimeBuffer} when the database cannot be reached.
+ */
+public class GlobalTimeBufferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldCombineAddedTime() {
+        // given
+        GlobalTimeBuffer buffer = createBuffer(new File(folder.getRoot(), "spool.txt"));
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        buffer.addTime(uuid, 5);
+        buffer.addTime(uuid, 10);
+
+        // then
+        assertThat(buffer.getPendingTime(uuid), equalTo(15));
+    }
+
+    @Test
+    public void shouldSpoolTimeWhenDatabaseIsDown() throws IOException {
+        // given
+        File spoolFile = new File(folder.getRoot(), "spool.txt");
+        UUID uuid = UUID.randomUUID();
+
+        GlobalTimeBuffer buffer = createBuffer(spoolFile);
+        buffer.addTime(uuid, 5);
+        buffer.flush();
+
+        // when
+        GlobalTimeBuffer restartedBuffer = createBuffer(spoolFile);
+        restartedBuffer.addTime(uuid, 10);
+        int updated = restartedBuffer.flush();
+
+        // then
+        List<String> lines = Files.readAllLines(spoolFile.toPath(), StandardCharsets.UTF_8);
+
+        assertThat(updated, equalTo(-1));
+        assertThat(buffer.getPendingTime(uuid), equalTo(0));
+        assertThat(lines.size(), equalTo(1));
+        assertThat(lines.get(0), equalTo(uuid + ",15"));
+    }
+
+    @Test
+    public void shouldSpoolSetTimeBeforeAddedTime() throws IOException {
+        // given
+        File spoolFile = new File(folder.getRoot(), "spool.txt");
+        UUID uuid = UUID.randomUUID();
+
+        GlobalTimeBuffer buffer = createBuffer(spoolFile);
+        buffer.addTime(uuid, 5);
+        buffer.flush();
+
+        // when
+        buffer.setTime(uuid, 30);
+        buffer.addTime(uuid, 10);
+        buffer.flush();
+
+        // then
+        List<String> lines = Files.readAllLines(spoolFile.toPath(), StandardCharsets.UTF_8);
+
+        assertThat(lines.size(), equalTo(2));
+        assertThat(lines.get(0), equalTo(uuid + "=30"));
+        assertThat(lines.get(1), equalTo(uuid + ",10"));
+    }
+
+    private static GlobalTimeBuffer createBuffer(File spoolFile) {
+        // A storage that never connected cannot reach the database.
+        SQLDataStorage mysql = new SQLDataStorage(null, "localhost:3306", "user", "password", "database", 1);
+
+        return new GlobalTimeBuffer(mysql, new SchemaManager(null, mysql, "autorank"), spoolFile);
+    }
+}
@@ -0,0 +1,124 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import com.google.common.cache.CacheLoader;
+import me.armar.plugins.autorank.FakeTicker;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link GlobalTimeCache}.
+ */
+public class GlobalTimeCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void shouldExpireCachedTime() {
+        // given
+        FakeTicker ticker = new FakeTicker();
+        GlobalTimeCache cache = new GlobalTimeCache(countingLoader(null), 5, 100, ticker);
+        UUID uuid = UUID.randomUUID();
+        cache.put(uuid, 20);
+
+        // when
+        ticker.advance(5, TimeUnit.MINUTES);
+
+        // then
+        assertThat(cache.isCached(uuid), equalTo(false));
+        assertThat(cache.get(uuid), equalTo(60));
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    public void shouldRememberExpiredTime() {
+        // given
+        FakeTicker ticker = new FakeTicker();
+        GlobalTimeCache cache = new GlobalTimeCache(countingLoader(null), 5, 100, ticker);
+        UUID uuid = UUID.randomUUID();
+        cache.put(uuid, 20);
+
+        // when
+        ticker.advance(5, TimeUnit.MINUTES);
+
+        // then
+        assertThat(cache.getIfCached(uuid), nullValue());
+        assertThat(cache.getLastKnown(uuid), equalTo(20));
+        assertThat(cache.getLastKnown(UUID.randomUUID()), equalTo(-1));
+        assertThat(loads.get(), equalTo(0));
+    }
+
+    @Test
+    public void shouldAddTimeOnlyToCachedPlayers() {
+        // given
+        GlobalTimeCache cache = new GlobalTimeCache(countingLoader(null), 5, 100);
+        UUID cached = UUID.randomUUID();
+        UUID notCached = UUID.randomUUID();
+        cache.put(cached, 20);
+
+        // when
+        cache.add(cached, 5);
+        cache.add(notCached, 5);
+
+        // then
+        assertThat(cache.getIfCached(cached), equalTo(25));
+        assertThat(cache.getIfCached(notCached), nullValue());
+    }
+
+    @Test
+    public void shouldShareLookupOfSamePlayer() throws Exception {
+        // given
+        final CountDownLatch release = new CountDownLatch(1);
+        final GlobalTimeCache cache = new GlobalTimeCache(countingLoader(release), 5, 100);
+        final UUID uuid = UUID.randomUUID();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        Callable<Integer> lookup = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return cache.get(uuid);
+            }
+        };
+
+        // when
+        Future<Integer> first = executor.submit(lookup);
+        Future<Integer> second = executor.submit(lookup);
+        Future<Integer> third = executor.submit(lookup);
+        Thread.sleep(100);
+        release.countDown();
+
+        // then
+        assertThat(first.get(), equalTo(60));
+        assertThat(second.get(), equalTo(60));
+        assertThat(third.get(), equalTo(60));
+        assertThat(loads.get(), equalTo(1));
+        assertThat(cache.getStats().missCount(), equalTo(3L));
+
+        executor.shutdown();
+    }
+
+    /**
+     * Create a loader that counts its lookups and gives every player 60
+     * minutes. If a latch is given, lookups wait for it.
+     */
+    private CacheLoader<UUID, Integer> countingLoader(final CountDownLatch release) {
+        return new CacheLoader<UUID, Integer>() {
+            @Override
+            public Integer load(UUID uuid) throws InterruptedException {
+                loads.incrementAndGet();
+
+                if (release != null) {
+                    release.await();
+                }
+
+                return 60;
+            }
+        };
+    }
+}
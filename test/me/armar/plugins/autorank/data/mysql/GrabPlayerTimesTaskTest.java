@@ -0,0 +1,44 @@
+package me.armar.plugins.autorank.data.mysql;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for the queries of {@link GrabPlayerTimesTask}.
+ */
+public class GrabPlayerTimesTaskTest {
+
+    @Test
+    public void shouldSelectAllPlayersOfChunk() {
+        // given
+        UUID first = UUID.fromString("11111111-2222-3333-4444-555555555555");
+        UUID second = UUID.fromString("aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee");
+
+        // when
+        String statement = GrabPlayerTimesTask.createStatement("autorank", UUIDFormat.TEXT,
+                Arrays.asList(first, second));
+
+        // then
+        assertThat(statement, equalTo("SELECT uuid, time FROM autorank WHERE uuid IN "
+                + "('11111111-2222-3333-4444-555555555555','aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee')"));
+    }
+
+    @Test
+    public void shouldSelectBinaryUUIDs() {
+        // given
+        UUID uuid = UUID.fromString("11111111-2222-3333-4444-55555555abcd");
+
+        // when
+        String statement = GrabPlayerTimesTask.createStatement("autorank", UUIDFormat.BINARY,
+                Arrays.asList(uuid));
+
+        // then
+        assertThat(statement, equalTo("SELECT uuid, time FROM autorank WHERE uuid IN "
+                + "(X'1111111122223333444455555555abcd')"));
+    }
+}
@@ -0,0 +1,92 @@
+package me.armar.plugins.autorank.data.transfer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for the record readers and writers of every {@link TransferFormat}.
+ */
+public class TransferFormatTest {
+
+    private static final String PROGRESS = "chosen path: \"Miner, level 2\"\ncompleted paths:\n- Builder\n";
+
+    @Test
+    public void shouldReadWrittenRecords() throws IOException {
+        for (TransferFormat format : TransferFormat.values()) {
+            // given
+            UUID withProgress = UUID.randomUUID();
+            UUID withoutProgress = UUID.randomUUID();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            RecordWriter writer = format.createWriter(output);
+            writer.write(new PlayerRecord(withProgress, 120, PROGRESS));
+            writer.write(new PlayerRecord(withoutProgress, 5, null));
+            writer.close();
+
+            // when
+            RecordReader reader = format.createReader(new ByteArrayInputStream(output.toByteArray()));
+            PlayerRecord first = reader.read();
+            PlayerRecord second = reader.read();
+            PlayerRecord end = reader.read();
+            reader.close();
+
+            // then
+            assertThat(first.getUUID(), equalTo(withProgress));
+            assertThat(first.getTotalTime(), equalTo(120));
+            assertThat(first.getProgress(), equalTo(PROGRESS));
+            assertThat(second.getUUID(), equalTo(withoutProgress));
+            assertThat(second.getTotalTime(), equalTo(5));
+            assertThat(second.getProgress(), nullValue());
+            assertThat(end, nullValue());
+        }
+    }
+
+    @Test
+    public void shouldReadEmptyExport() throws IOException {
+        for (TransferFormat format : TransferFormat.values()) {
+            // given
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            format.createWriter(output).close();
+
+            // when
+            RecordReader reader = format.createReader(new ByteArrayInputStream(output.toByteArray()));
+
+            // then
+            assertThat(reader.read(), nullValue());
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectTruncatedBinaryFile() throws IOException {
+        // given
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RecordWriter writer = TransferFormat.BINARY.createWriter(output);
+
+        for (int i = 0; i < 100; i++) {
+            writer.write(new PlayerRecord(UUID.randomUUID(), i, PROGRESS));
+        }
+
+        writer.close();
+
+        byte[] bytes = output.toByteArray();
+        byte[] truncated = new byte[bytes.length / 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        // when
+        RecordReader reader = TransferFormat.BINARY.createReader(new ByteArrayInputStream(truncated));
+
+        // then
+        while (reader.read() != null) {
+            // Read until the file ends
+        }
+    }
+}
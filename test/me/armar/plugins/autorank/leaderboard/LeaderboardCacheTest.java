@@ -0,0 +1,144 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import me.armar.plugins.autorank.FakeTicker;
+import me.armar.plugins.autorank.data.flatfile.FlatFileManager.TimeType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link LeaderboardCache}.
+ */
+public class LeaderboardCacheTest {
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final AtomicInteger builds = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong();
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final LeaderboardCache cache = new LeaderboardCache(new LeaderboardCache.Builder() {
+        @Override
+        public List<String> build(final TimeType type) {
+            return Arrays.asList("build " + builds.incrementAndGet());
+        }
+    }, new LeaderboardCache.VersionSource() {
+        @Override
+        public long getVersion(final TimeType type) {
+            return version.get();
+        }
+    }, 1000, 100, new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            tasks.add(command);
+        }
+    }, ticker);
+
+    @Test
+    public void shouldRebuildOnlyOnceWhileRebuilding() throws Exception {
+        // given
+        ListenableFuture<List<String>> first = cache.get(TimeType.TOTAL_TIME);
+
+        // when
+        ListenableFuture<List<String>> second = cache.get(TimeType.TOTAL_TIME);
+        runTasks();
+        ListenableFuture<List<String>> third = cache.get(TimeType.TOTAL_TIME);
+
+        // then
+        assertThat(second, sameInstance(first));
+        assertThat(builds.get(), equalTo(1));
+        assertThat(first.get(), equalTo(Arrays.asList("build 1")));
+        assertThat(third.get(), equalTo(Arrays.asList("build 1")));
+        assertThat(tasks.size(), equalTo(0));
+    }
+
+    @Test
+    public void shouldRebuildWhenInvalid() {
+        // given
+        cache.get(TimeType.TOTAL_TIME);
+        runTasks();
+
+        // when
+        cache.invalidate(TimeType.TOTAL_TIME);
+        List<String> afterInvalidation = cache.getIfValid(TimeType.TOTAL_TIME);
+        cache.get(TimeType.TOTAL_TIME);
+        runTasks();
+
+        ticker.advance(100, TimeUnit.MILLISECONDS);
+        version.incrementAndGet();
+        List<String> afterChange = cache.getIfValid(TimeType.TOTAL_TIME);
+        cache.get(TimeType.TOTAL_TIME);
+        runTasks();
+
+        ticker.advance(1000, TimeUnit.MILLISECONDS);
+        List<String> afterExpiry = cache.getIfValid(TimeType.TOTAL_TIME);
+
+        // then
+        assertThat(afterInvalidation, nullValue());
+        assertThat(afterChange, nullValue());
+        assertThat(afterExpiry, nullValue());
+        assertThat(builds.get(), equalTo(3));
+        assertThat(cache.getIfPresent(TimeType.TOTAL_TIME), equalTo(Arrays.asList("build 3")));
+    }
+
+    @Test
+    public void shouldRebuildAtMostOncePerIntervalWhenVersionChanges() {
+        // given
+        cache.get(TimeType.TOTAL_TIME);
+        runTasks();
+
+        // when
+        version.incrementAndGet();
+        cache.get(TimeType.TOTAL_TIME);
+        runTasks();
+        List<String> withinInterval = cache.getIfValid(TimeType.TOTAL_TIME);
+
+        ticker.advance(100, TimeUnit.MILLISECONDS);
+        List<String> afterInterval = cache.getIfValid(TimeType.TOTAL_TIME);
+        cache.get(TimeType.TOTAL_TIME);
+        runTasks();
+
+        // then
+        assertThat(withinInterval, equalTo(Arrays.asList("build 1")));
+        assertThat(afterInterval, nullValue());
+        assertThat(builds.get(), equalTo(2));
+    }
+
+    @Test
+    public void shouldUseWarmLeaderboardUntilOutdated() {
+        // given
+        version.set(-1);
+        cache.warmUp(TimeType.DAILY_TIME, Arrays.asList("stored"), 600);
+
+        // when
+        List<String> warm = cache.getIfValid(TimeType.DAILY_TIME);
+        version.set(5);
+        List<String> afterChange = Futures.getUnchecked(cache.get(TimeType.DAILY_TIME));
+        ticker.advance(400, TimeUnit.MILLISECONDS);
+        List<String> outdated = cache.getIfValid(TimeType.DAILY_TIME);
+
+        // then
+        assertThat(warm, equalTo(Arrays.asList("stored")));
+        assertThat(afterChange, equalTo(Arrays.asList("stored")));
+        assertThat(outdated, nullValue());
+        assertThat(builds.get(), equalTo(0));
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link LeaderboardHandler}.
+ */
+public class LeaderboardHandlerTest {
+
+    @Test
+    public void shouldSkipExemptedPlayersBeforePosition() {
+        // given
+        // Sorted times: 0 = exempted, 1, 2 = exempted, 3 = exempted, 4, 5 = exempted
+        final List<Integer> exempted = Arrays.asList(0, 2, 3, 5);
+
+        // when / then
+        assertThat(LeaderboardHandler.getPositionInSortedTimes(0, exempted), equalTo(1));
+        assertThat(LeaderboardHandler.getPositionInSortedTimes(1, exempted), equalTo(4));
+        assertThat(LeaderboardHandler.getPositionInSortedTimes(2, exempted), equalTo(6));
+        assertThat(LeaderboardHandler.getPositionInSortedTimes(3, Collections.<Integer>emptyList()), equalTo(3));
+    }
+}
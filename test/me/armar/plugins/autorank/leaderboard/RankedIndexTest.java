@@ -0,0 +1,100 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link RankedIndex}.
+ */
+public class RankedIndexTest {
+
+    @Test
+    public void shouldRankPlayersOnValue() {
+        // given
+        RankedIndex index = new RankedIndex();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+
+        // when
+        index.set(first, 10);
+        index.set(second, 30);
+        index.set(third, 20);
+        index.set(first, 40);
+
+        // then
+        assertThat(index.getRank(first), equalTo(1));
+        assertThat(index.getRank(second), equalTo(2));
+        assertThat(index.getRank(third), equalTo(3));
+        assertThat(new ArrayList<>(index.getPage(1, 5).keySet()), equalTo(Arrays.asList(second, third)));
+    }
+
+    @Test
+    public void shouldRemovePlayersWithoutValue() {
+        // given
+        RankedIndex index = new RankedIndex();
+        UUID uuid = UUID.randomUUID();
+        index.set(uuid, 10);
+
+        // when
+        index.set(uuid, 0);
+
+        // then
+        assertThat(index.size(), equalTo(0));
+        assertThat(index.getRank(uuid), equalTo(-1));
+        assertThat(index.getValue(uuid), equalTo(0));
+    }
+
+    @Test
+    public void shouldMatchSortedListAfterRandomChanges() {
+        // given
+        Random random = new Random(42);
+        RankedIndex index = new RankedIndex();
+        Map<UUID, Integer> values = new HashMap<>();
+        List<UUID> players = new ArrayList<>();
+
+        for (int i = 0; i < 300; i++) {
+            players.add(UUID.randomUUID());
+        }
+
+        // when
+        for (int i = 0; i < 5000; i++) {
+            UUID uuid = players.get(random.nextInt(players.size()));
+            int value = random.nextInt(50) - 5;
+
+            index.set(uuid, value);
+
+            if (value > 0) {
+                values.put(uuid, value);
+            } else {
+                values.remove(uuid);
+            }
+        }
+
+        // then
+        List<Map.Entry<UUID, Integer>> expected = new ArrayList<>(values.entrySet());
+        Collections.sort(expected, new Comparator<Map.Entry<UUID, Integer>>() {
+            @Override
+            public int compare(Map.Entry<UUID, Integer> o1, Map.Entry<UUID, Integer> o2) {
+                int compare = o2.getValue().compareTo(o1.getValue());
+
+                return compare != 0 ? compare : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+
+        List<Map.Entry<UUID, Integer>> actual = new ArrayList<>(index.getPage(0, players.size()).entrySet());
+
+        assertThat(index.size(), equalTo(expected.size()));
+        assertThat(actual, equalTo(expected));
+
+        for (int rank = 0; rank < expected.size(); rank++) {
+            assertThat(index.getRank(expected.get(rank).getKey()), equalTo(rank + 1));
+        }
+
+        assertThat(new ArrayList<>(index.getPage(10, 5).entrySet()), equalTo(expected.subList(10, 15)));
+    }
+}
@@ -0,0 +1,234 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import me.armar.plugins.autorank.statsmanager.StatsPlugin;
+import me.armar.plugins.autorank.statsmanager.StatsPlugin.StatType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link StatRankings}.
+ */
+public class StatRankingsTest {
+
+    private final FakeStatSource source = new FakeStatSource();
+    private final StatRankings rankings = new StatRankings(source);
+
+    @Test
+    public void shouldNotRankStatsThatNeedMoreInfo() {
+        // given / when / then
+        assertThat(StatRankings.isSupported(StatType.MOBS_KILLED), equalTo(true));
+        assertThat(StatRankings.isSupported(StatType.BLOCKS_BROKEN), equalTo(false));
+        assertThat(StatRankings.getSupportedStats().size(), equalTo(StatType.values().length - 3));
+        assertThat(StatRankings.getSupportedStats().contains(StatType.BLOCKS_MOVED), equalTo(false));
+        assertThat(rankings.getRanking(StatType.BLOCKS_BROKEN), nullValue());
+    }
+
+    @Test
+    public void shouldLookUpAtMostFiftyStatsPerRun() {
+        // given
+        final List<UUID> players = source.addPlayers(120);
+
+        // when
+        final RankedIndex ranking = rankings.getRanking(StatType.MOBS_KILLED);
+
+        // then
+        assertThat(source.taskStarts, equalTo(1));
+        assertThat(ranking.size(), equalTo(0));
+        assertThat(rankings.getProgress(StatType.MOBS_KILLED), equalTo(0));
+
+        // when
+        rankings.runLookups();
+
+        // then
+        assertThat(source.lookups.get(), equalTo(50));
+        assertThat(ranking.size(), equalTo(50));
+        assertThat(rankings.getProgress(StatType.MOBS_KILLED), equalTo(41));
+
+        // when
+        rankings.runLookups();
+        rankings.runLookups();
+        rankings.runLookups();
+
+        // then
+        assertThat(source.lookups.get(), equalTo(120));
+        assertThat(ranking.size(), equalTo(120));
+        assertThat(rankings.getProgress(StatType.MOBS_KILLED), equalTo(100));
+        assertThat(ranking.getRank(players.get(119)), equalTo(1));
+        assertThat(ranking.getRank(players.get(0)), equalTo(120));
+    }
+
+    @Test
+    public void shouldBeDoneWhenThereAreNoPlayers() {
+        // given
+        rankings.getRanking(StatType.MOBS_KILLED);
+
+        // when
+        rankings.runLookups();
+
+        // then
+        assertThat(rankings.getProgress(StatType.MOBS_KILLED), equalTo(100));
+        assertThat(source.lookups.get(), equalTo(0));
+    }
+
+    @Test
+    public void shouldNotLookUpPlayerTwiceWhenRefreshedBeforeRankingIsBuilt() {
+        // given
+        final List<UUID> players = source.addPlayers(2);
+        final RankedIndex ranking = rankings.getRanking(StatType.MOBS_KILLED);
+
+        // The first player comes online before the ranking is built.
+        source.online.add(players.get(0));
+        rankings.refreshActivePlayers();
+
+        // when
+        rankings.runLookups();
+
+        // then
+        assertThat(source.lookups.get(), equalTo(2));
+        assertThat(ranking.size(), equalTo(2));
+        assertThat(rankings.getProgress(StatType.MOBS_KILLED), equalTo(100));
+    }
+
+    @Test
+    public void shouldLookUpActivePlayersAgainOnRefresh() {
+        // given
+        final List<UUID> players = source.addPlayers(3);
+        final RankedIndex ranking = rankings.getRanking(StatType.MOBS_KILLED);
+        rankings.runLookups();
+
+        source.stats.put(players.get(1), 500);
+        rankings.markActive(players.get(1));
+
+        // when
+        rankings.refreshActivePlayers();
+        rankings.runLookups();
+
+        // then
+        assertThat(source.lookups.get(), equalTo(4));
+        assertThat(ranking.getRank(players.get(1)), equalTo(1));
+    }
+
+    @Test
+    public void shouldNotRankPlayersWhoseStatIsNotSupported() {
+        // given
+        final List<UUID> players = source.addPlayers(3);
+        source.stats.put(players.get(0), -1);
+        final RankedIndex ranking = rankings.getRanking(StatType.MOBS_KILLED);
+
+        // when
+        rankings.runLookups();
+
+        // then
+        assertThat(ranking.size(), equalTo(2));
+        assertThat(ranking.getRank(players.get(0)), equalTo(-1));
+
+        // when the stat of a ranked player is not supported anymore
+        source.stats.put(players.get(2), -1);
+        source.online.add(players.get(2));
+        rankings.refreshActivePlayers();
+        rankings.runLookups();
+
+        // then
+        assertThat(ranking.size(), equalTo(1));
+        assertThat(ranking.getRank(players.get(2)), equalTo(-1));
+    }
+
+    @Test
+    public void shouldCountFailedLookupsAsDone() {
+        // given
+        final List<UUID> players = source.addPlayers(2);
+        source.failing.add(players.get(0));
+        final RankedIndex ranking = rankings.getRanking(StatType.MOBS_KILLED);
+
+        // when
+        rankings.runLookups();
+
+        // then
+        assertThat(ranking.size(), equalTo(1));
+        assertThat(rankings.getProgress(StatType.MOBS_KILLED), equalTo(100));
+    }
+
+    /**
+     * Source with players whose stat is their position (starting at 1),
+     * unless another value is set.
+     */
+    private static class FakeStatSource implements StatRankings.StatSource {
+
+        private final Set<UUID> players = new LinkedHashSet<UUID>();
+        private final List<UUID> online = new ArrayList<UUID>();
+        private final Map<UUID, Integer> stats = new ConcurrentHashMap<UUID, Integer>();
+        private final Set<UUID> failing = new LinkedHashSet<UUID>();
+        private final AtomicInteger lookups = new AtomicInteger();
+        private int taskStarts = 0;
+
+        List<UUID> addPlayers(final int count) {
+            final List<UUID> added = new ArrayList<UUID>();
+
+            for (int i = 0; i < count; i++) {
+                final UUID uuid = UUID.randomUUID();
+
+                players.add(uuid);
+                stats.put(uuid, players.size());
+                added.add(uuid);
+            }
+
+            return added;
+        }
+
+        @Override
+        public Set<UUID> getPlayers() {
+            return players;
+        }
+
+        @Override
+        public Collection<UUID> getOnlinePlayers() {
+            return online;
+        }
+
+        @Override
+        public StatsPlugin getStatsPlugin() {
+            return new StatsPlugin() {
+                @Override
+                public int getNormalStat(final StatType statType, final UUID uuid,
+                                         final HashMap<String, Object> arguments) {
+                    lookups.incrementAndGet();
+
+                    if (failing.contains(uuid)) {
+                        throw new IllegalStateException("Stats are not available");
+                    }
+
+                    return stats.get(uuid);
+                }
+
+                @Override
+                public boolean isEnabled() {
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public void startTasks(final Runnable lookups, final Runnable refresh) {
+            // Tests run the lookups and refreshes themselves.
+            taskStarts++;
+        }
+
+        @Override
+        public void debugMessage(final String message) {
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link TopTimesSelector} against sorting all times with
+ * {@link LeaderboardHandler#sortByValue(Map)}, which is how the leaderboard
+ * used to be built. <br>
+ * Run it with the test classpath, for example by running {@link #main} from
+ * the IDE after the test classes are compiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TopTimesSelectorBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int players;
+
+    @Param({"10"})
+    public int leaderboardLength;
+
+    private final Map<String, Integer> times = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    private TopTimesSelector<String> selector;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+
+        times.clear();
+        names.clear();
+
+        for (int i = 0; i < players; i++) {
+            names.add("player" + i);
+            times.put("player" + i, random.nextInt(1000000));
+        }
+
+        Collections.shuffle(names, random);
+
+        selector = new TopTimesSelector<String>(new TopTimesSelector.TimeLookup<String>() {
+            @Override
+            public Integer getTime(final String key) {
+                return times.get(key);
+            }
+        }, leaderboardLength);
+    }
+
+    @Benchmark
+    public Map<String, Integer> sortByValue() {
+        // Look up every time and sort all of them, then keep the first ones.
+        final Map<String, Integer> all = new HashMap<>();
+
+        for (final String name : names) {
+            final Integer time = times.get(name);
+
+            if (time != null) {
+                all.put(name, time);
+            }
+        }
+
+        final Map<String, Integer> top = new LinkedHashMap<>();
+        final Iterator<Map.Entry<String, Integer>> iterator = LeaderboardHandler.sortByValue(all).entrySet()
+                .iterator();
+
+        while (top.size() < leaderboardLength && iterator.hasNext()) {
+            final Map.Entry<String, Integer> entry = iterator.next();
+            top.put(entry.getKey(), entry.getValue());
+        }
+
+        return top;
+    }
+
+    @Benchmark
+    public Map<String, Integer> topTimesSelector() {
+        return selector.select(names, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TopTimesSelectorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link TopTimesSelector}.
+ */
+public class TopTimesSelectorTest {
+
+    @Test
+    public void shouldSelectSameTimesAsSortingAllTimes() {
+        // given
+        final Random random = new Random(42);
+        final Map<String, Integer> times = new HashMap<>();
+        final List<String> names = new ArrayList<>();
+
+        // Enough players to be split over multiple threads, with unique times
+        for (int i = 0; i < TopTimesSelector.SPLIT_THRESHOLD * 10; i++) {
+            names.add("player" + i);
+            times.put("player" + i, i * 7919 % 100003);
+        }
+
+        // A player without time is skipped
+        names.add("unknown");
+
+        Collections.shuffle(names, random);
+
+        // when
+        final LinkedHashMap<String, Integer> selected = new TopTimesSelector<String>(
+                new TopTimesSelector.TimeLookup<String>() {
+                    @Override
+                    public Integer getTime(final String key) {
+                        return times.get(key);
+                    }
+                }, 15).select(names, 4);
+
+        // then
+        final Map<String, Integer> sorted = LeaderboardHandler.sortByValue(times);
+        final Map<String, Integer> expected = new LinkedHashMap<>();
+        final Iterator<Map.Entry<String, Integer>> iterator = sorted.entrySet().iterator();
+
+        for (int i = 0; i < 15; i++) {
+            final Map.Entry<String, Integer> entry = iterator.next();
+            expected.put(entry.getKey(), entry.getValue());
+        }
+
+        assertThat(new ArrayList<>(selected.entrySet()), equalTo(new ArrayList<>(expected.entrySet())));
+    }
+
+    @Test
+    public void shouldSortEqualTimesOnKey() {
+        // given
+        final List<String> names = new ArrayList<>();
+        names.add("c");
+        names.add("a");
+        names.add("d");
+        names.add("b");
+
+        // when
+        final LinkedHashMap<String, Integer> selected = new TopTimesSelector<String>(
+                new TopTimesSelector.TimeLookup<String>() {
+                    @Override
+                    public Integer getTime(final String key) {
+                        return key.equals("d") ? 20 : 10;
+                    }
+                }, 3).select(names, 2);
+
+        // then
+        assertThat(new ArrayList<>(selected.keySet()), equalTo(Arrays.asList("d", "a", "b")));
+    }
+}
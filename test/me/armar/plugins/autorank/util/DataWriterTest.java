@@ -0,0 +1,76 @@
+package me.armar.plugins.autorank.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link DataWriter}.
+ */
+public class DataWriterTest {
+
+    // Only changed by the writer
+    private int counter = 0;
+
+    @Test
+    public void shouldNotLoseChangesFromDifferentThreads() throws InterruptedException {
+        // given
+        final DataWriter writer = new DataWriter("Test writer");
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        writer.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                counter++;
+                            }
+                        });
+                    }
+                }
+            }));
+        }
+
+        // when
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        writer.flush();
+
+        // then
+        assertThat(counter, equalTo(8000));
+        assertThat(writer.shutdown(), equalTo(true));
+    }
+
+    @Test
+    public void shouldApplyChangesInlineAfterShutdown() {
+        // given
+        DataWriter writer = new DataWriter("Test writer");
+        writer.shutdown();
+
+        // when
+        Future<?> future = writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                counter = 42;
+            }
+        });
+
+        // then
+        assertThat(future.isDone(), equalTo(true));
+        assertThat(counter, equalTo(42));
+    }
+}